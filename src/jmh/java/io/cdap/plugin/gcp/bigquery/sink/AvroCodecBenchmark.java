@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.AvroKey;
+import org.apache.hadoop.io.NullWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encode throughput and the size of Avro staging files for every {@link AvroCodec} and a range of block
+ * sizes, the two settings of the BigQuery sinks for Avro staging files. Records are converted to Avro up front, so
+ * the throughput in records per second only covers encoding and compression. The size of the files is reported as
+ * bytes per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvroCodecBenchmark {
+
+  // Enough records for several blocks at the largest block size
+  private static final int RECORDS = 16384;
+
+  @Param
+  public BenchmarkSchema schema;
+
+  @Param
+  public AvroCodec codec;
+
+  @Param({"64", "1024"})
+  public int blockSizeKB;
+
+  private org.apache.avro.Schema avroSchema;
+  private CodecFactory codecFactory;
+  private List<AvroKey<GenericRecord>> records;
+
+  @Setup
+  public void setUp() {
+    Schema outputSchema = schema.getSchema();
+    CompiledBigQueryAvroConverter converter = new CompiledBigQueryAvroConverter(false);
+    records = new ArrayList<>(RECORDS);
+    for (StructuredRecord record : schema.generate(RECORDS, 42)) {
+      records.add(converter.transform(record, outputSchema));
+    }
+    avroSchema = records.get(0).datum().getSchema();
+    codecFactory = CodecFactory.fromString(codec.getAvroName());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public long write(StagedFileCounters counters) throws IOException {
+    CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+    AvroRecordWriter writer = new AvroRecordWriter(avroSchema, GenericData.get(), codecFactory, out,
+                                                   blockSizeKB * 1024);
+    for (AvroKey<GenericRecord> record : records) {
+      writer.write(record, NullWritable.get());
+    }
+    writer.close(null);
+    counters.record(out.getCount(), RECORDS);
+    return out.getCount();
+  }
+}
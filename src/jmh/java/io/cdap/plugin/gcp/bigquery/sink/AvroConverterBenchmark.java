@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link BigQueryAvroConverter} and {@link CompiledBigQueryAvroConverter}, in records
+ * converted per second. The compiled converter is measured both with a new output record per call and with the
+ * record reuse the sink enables when writing Avro staging files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvroConverterBenchmark {
+
+  private static final int RECORDS = 1024;
+
+  @Param
+  public BenchmarkSchema schema;
+
+  private Schema outputSchema;
+  private List<StructuredRecord> records;
+  private BigQueryAvroConverter converter;
+  private CompiledBigQueryAvroConverter compiledConverter;
+  private CompiledBigQueryAvroConverter reusingConverter;
+
+  @Setup
+  public void setUp() {
+    outputSchema = schema.getSchema();
+    records = schema.generate(RECORDS, 42);
+    converter = new BigQueryAvroConverter();
+    compiledConverter = new CompiledBigQueryAvroConverter(false);
+    reusingConverter = new CompiledBigQueryAvroConverter(true);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void converter(Blackhole blackhole) throws IOException {
+    for (StructuredRecord record : records) {
+      blackhole.consume(converter.transform(record, outputSchema));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void compiledConverter(Blackhole blackhole) {
+    for (StructuredRecord record : records) {
+      blackhole.consume(compiledConverter.transform(record, outputSchema));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void compiledConverterReusingRecords(Blackhole blackhole) {
+    for (StructuredRecord record : records) {
+      blackhole.consume(reusingConverter.transform(record, outputSchema));
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Representative schemas of records written by the BigQuery sinks, with generated records for each of them.
+ */
+public enum BenchmarkSchema {
+  /**
+   * Only primitive fields, some of them nullable, like most tables loaded from files or databases.
+   */
+  FLAT(Schema.recordOf(
+    "flat",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("email", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("age", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("score", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("ratio", Schema.nullableOf(Schema.of(Schema.Type.FLOAT))),
+    Schema.Field.of("active", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("country", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("city", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("visits", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("payload", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+    Schema.Field.of("comment", Schema.nullableOf(Schema.of(Schema.Type.STRING))))),
+
+  /**
+   * Nested records, arrays and maps.
+   */
+  NESTED(Schema.recordOf(
+    "nested",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("tags", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.STRING)))),
+    Schema.Field.of("attributes", Schema.nullableOf(Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                 Schema.of(Schema.Type.LONG)))),
+    Schema.Field.of("address", Schema.nullableOf(Schema.recordOf(
+      "address",
+      Schema.Field.of("street", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("zip", Schema.nullableOf(Schema.of(Schema.Type.STRING)))))),
+    Schema.Field.of("items", Schema.arrayOf(Schema.recordOf(
+      "item",
+      Schema.Field.of("sku", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("quantity", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("price", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE)))))))),
+
+  /**
+   * Date, time and numeric logical types, including DATETIME which used to force JSON staging files.
+   */
+  LOGICAL(Schema.recordOf(
+    "logical",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("date", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("time", Schema.nullableOf(Schema.of(Schema.LogicalType.TIME_MICROS))),
+    Schema.Field.of("created", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))),
+    Schema.Field.of("updated", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))),
+    Schema.Field.of("amount", Schema.nullableOf(Schema.decimalOf(18, 4))),
+    Schema.Field.of("note", Schema.nullableOf(Schema.of(Schema.Type.STRING)))));
+
+  private static final String[] WORDS = {
+    "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliett"
+  };
+
+  private final Schema schema;
+
+  BenchmarkSchema(Schema schema) {
+    this.schema = schema;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Generates records of this schema. Nullable fields are null in about one record out of five. The records only
+   * depend on the seed, so every benchmark measures the same data.
+   */
+  public List<StructuredRecord> generate(int count, long seed) {
+    Random random = new Random(seed);
+    List<StructuredRecord> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(generate(i, random));
+    }
+    return records;
+  }
+
+  private StructuredRecord generate(long id, Random random) {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema).set("id", id);
+    switch (this) {
+      case FLAT:
+        builder.set("name", word(random) + " " + word(random))
+          .set("score", random.nextDouble() * 100)
+          .set("active", random.nextBoolean());
+        if (present(random)) {
+          builder.set("email", word(random) + "." + word(random) + "@example.com");
+        }
+        if (present(random)) {
+          builder.set("age", 18 + random.nextInt(70));
+        }
+        if (present(random)) {
+          builder.set("ratio", random.nextFloat());
+        }
+        if (present(random)) {
+          builder.set("country", word(random));
+        }
+        if (present(random)) {
+          builder.set("city", word(random));
+        }
+        if (present(random)) {
+          builder.set("visits", (long) random.nextInt(100000));
+        }
+        if (present(random)) {
+          byte[] payload = new byte[16 + random.nextInt(48)];
+          random.nextBytes(payload);
+          builder.set("payload", payload);
+        }
+        if (present(random)) {
+          builder.set("comment", sentence(random, 4 + random.nextInt(12)));
+        }
+        break;
+      case NESTED:
+        Schema itemSchema = schema.getField("items").getSchema().getComponentSchema();
+        List<StructuredRecord> items = new ArrayList<>();
+        for (int i = random.nextInt(5); i >= 0; i--) {
+          StructuredRecord.Builder item = StructuredRecord.builder(itemSchema)
+            .set("sku", word(random) + "-" + random.nextInt(1000))
+            .set("quantity", 1 + random.nextInt(10));
+          if (present(random)) {
+            item.set("price", random.nextInt(100000) / 100d);
+          }
+          items.add(item.build());
+        }
+        builder.set("items", items);
+        if (present(random)) {
+          builder.set("tags", Arrays.asList(word(random), word(random), word(random)));
+        }
+        if (present(random)) {
+          Map<String, Long> attributes = new HashMap<>();
+          for (int i = random.nextInt(4); i >= 0; i--) {
+            attributes.put(word(random), random.nextLong());
+          }
+          builder.set("attributes", attributes);
+        }
+        if (present(random)) {
+          Schema addressSchema = schema.getField("address").getSchema().getNonNullable();
+          StructuredRecord.Builder address = StructuredRecord.builder(addressSchema)
+            .set("street", random.nextInt(1000) + " " + word(random) + " street");
+          if (present(random)) {
+            address.set("zip", String.valueOf(10000 + random.nextInt(90000)));
+          }
+          builder.set("address", address.build());
+        }
+        break;
+      case LOGICAL:
+        LocalDateTime dateTime = LocalDateTime.of(2022, 1, 1, 0, 0)
+          .plusSeconds(random.nextInt(365 * 24 * 3600)).plusNanos(random.nextInt(1000000) * 1000L);
+        if (present(random)) {
+          builder.setDate("date", dateTime.toLocalDate());
+        }
+        if (present(random)) {
+          builder.setTime("time", dateTime.toLocalTime());
+        }
+        if (present(random)) {
+          builder.setTimestamp("created", ZonedDateTime.of(dateTime, ZoneOffset.UTC));
+        }
+        if (present(random)) {
+          builder.setDateTime("updated", dateTime);
+        }
+        if (present(random)) {
+          builder.setDecimal("amount", BigDecimal.valueOf(random.nextInt(100000000), 4));
+        }
+        if (present(random)) {
+          builder.set("note", sentence(random, 2 + random.nextInt(6)));
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unsupported benchmark schema " + this);
+    }
+    return builder.build();
+  }
+
+  private static boolean present(Random random) {
+    return random.nextInt(5) != 0;
+  }
+
+  private static String word(Random random) {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private static String sentence(Random random, int words) {
+    StringBuilder sentence = new StringBuilder(word(random));
+    for (int i = 1; i < words; i++) {
+      sentence.append(' ').append(word(random));
+    }
+    return sentence.toString();
+  }
+}
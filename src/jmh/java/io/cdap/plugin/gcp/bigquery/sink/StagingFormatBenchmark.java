@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.generic.GenericData;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Avro and newline delimited JSON staging files, as written by {@link BigQueryRecordWriter} in the sink
+ * tasks. Throughput is in records per second, including conversion and encoding, and the size of the staged data is
+ * reported as bytes per record. Avro files are not compressed, like with the default sink settings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StagingFormatBenchmark {
+
+  private static final int RECORDS = 4096;
+
+  @Param
+  public BenchmarkSchema schema;
+
+  @Param({"AVRO", "NEWLINE_DELIMITED_JSON"})
+  public BigQueryFileFormat format;
+
+  private Schema outputSchema;
+  private org.apache.avro.Schema avroSchema;
+  private List<StructuredRecord> records;
+
+  @Setup
+  public void setUp() {
+    outputSchema = schema.getSchema();
+    avroSchema = new org.apache.avro.Schema.Parser().parse(outputSchema.toString());
+    records = schema.generate(RECORDS, 42);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public long write(StagedFileCounters counters) throws IOException, InterruptedException {
+    CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+    BigQueryRecordWriter writer = new BigQueryRecordWriter(createDelegate(out), format, outputSchema);
+    for (StructuredRecord record : records) {
+      writer.write(record, NullWritable.get());
+    }
+    writer.close(null);
+    counters.record(out.getCount(), RECORDS);
+    return out.getCount();
+  }
+
+  private RecordWriter<?, NullWritable> createDelegate(OutputStream out) throws IOException {
+    if (format == BigQueryFileFormat.AVRO) {
+      return new AvroRecordWriter(avroSchema, GenericData.get(), CodecFactory.nullCodec(), out,
+                                  DataFileConstants.DEFAULT_SYNC_INTERVAL);
+    }
+    return new LineRecordWriter(out);
+  }
+
+  /**
+   * Writes JSON records like the writer of {@link JsonOutputFormat}, one per line.
+   */
+  private static final class LineRecordWriter extends RecordWriter<Text, NullWritable> {
+    private final OutputStream out;
+
+    private LineRecordWriter(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(Text key, NullWritable value) throws IOException {
+      out.write(key.getBytes(), 0, key.getLength());
+      out.write('\n');
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      out.close();
+    }
+  }
+}
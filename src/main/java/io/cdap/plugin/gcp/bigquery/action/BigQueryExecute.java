@@ -133,9 +133,12 @@ public final class BigQueryExecute extends AbstractBigQueryAction {
     LOG.debug("The BigQuery SQL is {}", config.getSql());
 
     // Wait for the query to complete
-    queryJob.waitFor();
+    queryJob = queryJob.waitFor();
 
     // Check for errors
+    if (queryJob == null) {
+      throw new RuntimeException(String.format("BigQuery job %s not found.", jobId.getJob()));
+    }
     if (queryJob.getStatus().getError() != null) {
       // You can also look at queryJob.getStatus().getExecutionErrors() for all
       // errors, not just the latest one.
@@ -12,8 +12,6 @@ import io.cdap.cdap.features.Feature;
 import io.cdap.plugin.gcp.bigquery.sqlengine.BigQuerySQLDataset;
 import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryDeduplicateSQLBuilder;
 import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryGroupBySQLBuilder;
-import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryNestedSelectSQLBuilder;
-import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQuerySelectSQLBuilder;
 import org.apache.parquet.Strings;
 
 import java.util.Collection;
@@ -37,6 +35,7 @@ public class BigQueryRelation implements Relation {
   private final Set<String> columns;
   private final BigQueryRelation parent;
   private final Supplier<String> sqlStatementSupplier;
+  private final Supplier<BigQuerySelectStatement> selectStatementSupplier;
 
   private Map<String, BigQuerySQLDataset> sourceDatasets;
 
@@ -61,7 +60,8 @@ public class BigQueryRelation implements Relation {
     this.columns = columns;
     this.featureFlagsProvider = featureFlagsProvider;
     this.parent = null;
-    this.sqlStatementSupplier = () -> {
+    this.sqlStatementSupplier = null;
+    this.selectStatementSupplier = () -> {
 
       // Check if Dataset exists
       BigQuerySQLDataset sourceDataset = sourceDatasets.get(datasetName);
@@ -77,7 +77,7 @@ public class BigQueryRelation implements Relation {
                                          sourceDataset.getBigQueryDataset(),
                                          sourceDataset.getBigQueryTable());
       // Build initial select from the source table.
-      return buildBaseSelect(selectedColumns, sourceTable, datasetName);
+      return new BigQuerySelectStatement(selectedColumns, sourceTable, false, datasetName, null);
     };
   }
 
@@ -87,11 +87,21 @@ public class BigQueryRelation implements Relation {
                              FeatureFlagsProvider featureFlagsProvider,
                              @Nullable BigQueryRelation parent,
                              Supplier<String> sqlStatementSupplier) {
+    this(datasetName, columns, featureFlagsProvider, parent, sqlStatementSupplier, null);
+  }
+
+  private BigQueryRelation(String datasetName,
+                           Set<String> columns,
+                           FeatureFlagsProvider featureFlagsProvider,
+                           @Nullable BigQueryRelation parent,
+                           @Nullable Supplier<String> sqlStatementSupplier,
+                           @Nullable Supplier<BigQuerySelectStatement> selectStatementSupplier) {
     this.datasetName = datasetName;
     this.columns = columns;
     this.featureFlagsProvider = featureFlagsProvider;
     this.parent = parent;
     this.sqlStatementSupplier = sqlStatementSupplier;
+    this.selectStatementSupplier = selectStatementSupplier;
   }
 
   private Relation getInvalidRelation(String validationError) {
@@ -124,7 +134,18 @@ public class BigQueryRelation implements Relation {
    * @return transform expression used when executing SQL statements.
    */
   public String getSQLStatement() {
-    return sqlStatementSupplier.get();
+    BigQuerySelectStatement selectStatement = getSelectStatement();
+    return selectStatement != null ? selectStatement.getQuery() : sqlStatementSupplier.get();
+  }
+
+  /**
+   * Gets the select statement of this relation, if this relation is a projection or a filter of its parent.
+   *
+   * @return select statement, or null if the SQL statement of this relation is not a select statement.
+   */
+  @Nullable
+  BigQuerySelectStatement getSelectStatement() {
+    return selectStatementSupplier != null ? selectStatementSupplier.get() : null;
   }
 
   /**
@@ -166,9 +187,7 @@ public class BigQueryRelation implements Relation {
   public Relation setDatasetName(String newDatasetName) {
     Map<String, Expression> selectedColumns = getSelectedColumns(columns);
     // Build new transform expression and return new instance.
-    Supplier<String> supplier =
-      () -> buildNestedSelect(selectedColumns, getSQLStatement(), newDatasetName, null);
-    return new BigQueryRelation(newDatasetName, columns, featureFlagsProvider, this, supplier);
+    return buildSelect(selectedColumns, newDatasetName, null);
   }
 
   @Override
@@ -183,9 +202,7 @@ public class BigQueryRelation implements Relation {
     selectedColumns.put(column, value);
 
     // Build new transform expression and return new instance.
-    Supplier<String> supplier =
-      () -> buildNestedSelect(selectedColumns, getSQLStatement(), datasetName, null);
-    return new BigQueryRelation(datasetName, selectedColumns.keySet(), featureFlagsProvider, this, supplier);
+    return buildSelect(selectedColumns, datasetName, null);
   }
 
   @Override
@@ -200,9 +217,7 @@ public class BigQueryRelation implements Relation {
     selectedColumns.remove(column);
 
     // Build new transform expression and return new instance.
-    Supplier<String> supplier =
-      () -> buildNestedSelect(selectedColumns, getSQLStatement(), datasetName, null);
-    return new BigQueryRelation(datasetName, selectedColumns.keySet(), featureFlagsProvider, this, supplier);
+    return buildSelect(selectedColumns, datasetName, null);
   }
 
   @Override
@@ -214,9 +229,7 @@ public class BigQueryRelation implements Relation {
     }
 
     // Build new transform expression and return new instance.
-    Supplier<String> supplier =
-      () -> buildNestedSelect(columns, getSQLStatement(), datasetName, null);
-    return new BigQueryRelation(datasetName, columns.keySet(), featureFlagsProvider, this, supplier);
+    return buildSelect(columns, datasetName, null);
   }
 
   @Override
@@ -229,9 +242,7 @@ public class BigQueryRelation implements Relation {
 
     Map<String, Expression> selectedColumns = getSelectedColumns(columns);
     // Build new transform expression and return new instance.
-    Supplier<String> supplier =
-      () -> buildNestedSelect(selectedColumns, getSQLStatement(), datasetName, filter);
-    return new BigQueryRelation(datasetName, columns, featureFlagsProvider, this, supplier);
+    return buildSelect(selectedColumns, datasetName, filter);
   }
 
   @Override
@@ -278,30 +289,35 @@ public class BigQueryRelation implements Relation {
     return new BigQueryRelation(datasetName, columns, featureFlagsProvider, this, supplier);
   }
 
-  private static String buildBaseSelect(Map<String, Expression> columns,
-                                        String sourceTable,
-                                        String datasetName) {
-    // We qualify all inputs when building the SQL query.
-    BigQuerySelectSQLBuilder builder = new BigQuerySelectSQLBuilder(qualifyKeys(columns),
-                                                                    qualify(sourceTable),
-                                                                    qualify(datasetName),
-                                                                    null);
-    return builder.getQuery();
-  }
-
-  private static String buildNestedSelect(Map<String, Expression> columns,
-                                          String sourceExpression,
-                                          String datasetName,
-                                          @Nullable Expression filter) {
+  /**
+   * Builds a relation which selects columns from this relation.
+   * <p>
+   * The select statement of the new relation is merged into the select statement of this relation by the
+   * {@link BigQueryRelationRewriter} when possible, and nested on top of the SQL statement of this relation otherwise.
+   *
+   * @param columns map containing column aliases and column expressions
+   * @param datasetName dataset name of the new relation
+   * @param filter filter condition, or null if all rows are selected
+   * @return new relation
+   */
+  private BigQueryRelation buildSelect(Map<String, Expression> columns,
+                                       String datasetName,
+                                       @Nullable Expression filter) {
     // Get filter conditions
     String filterCondition = filter != null ? ((SQLExpression) filter).extract() : null;
 
-    // Instantiate query builder and generate select expression
-    BigQueryNestedSelectSQLBuilder builder = new BigQueryNestedSelectSQLBuilder(qualifyKeys(columns),
-                                                                                sourceExpression,
-                                                                                qualify(datasetName),
-                                                                                filterCondition);
-    return builder.getQuery();
+    Supplier<BigQuerySelectStatement> supplier = () -> {
+      BigQuerySelectStatement parentStatement = getSelectStatement();
+      if (parentStatement == null) {
+        return new BigQuerySelectStatement(columns, getSQLStatement(), true, datasetName, filterCondition);
+      }
+
+      BigQuerySelectStatement rewritten =
+        BigQueryRelationRewriter.rewrite(columns, filterCondition, datasetName, parentStatement);
+      return rewritten != null ? rewritten :
+        new BigQuerySelectStatement(columns, parentStatement.getQuery(), true, datasetName, filterCondition);
+    };
+    return new BigQueryRelation(datasetName, columns.keySet(), featureFlagsProvider, this, null, supplier);
   }
 
   private static String buildGroupBy(GroupByAggregationDefinition definition,
@@ -330,7 +346,7 @@ public class BigQueryRelation implements Relation {
    * @param identifier identifier to qualify
    * @return qualified identifier
    */
-  private static String qualify(String identifier) {
+  static String qualify(String identifier) {
     return factory.qualify(identifier);
   }
 
@@ -340,7 +356,7 @@ public class BigQueryRelation implements Relation {
    * @param columns map containing column aliases and expressions
    * @return Map with aliases qualified
    */
-  private static Map<String, Expression> qualifyKeys(Map<String, Expression> columns) {
+  static Map<String, Expression> qualifyKeys(Map<String, Expression> columns) {
     // Keep the order of the original map
     Map<String, Expression> qualified = new LinkedHashMap<>();
     // We always qualify keys as we use them to build "column AS `key`"
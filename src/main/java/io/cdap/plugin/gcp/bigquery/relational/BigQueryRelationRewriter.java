@@ -0,0 +1,446 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.relational;
+
+import com.google.common.collect.ImmutableSet;
+import io.cdap.cdap.etl.api.relational.Expression;
+import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryBaseSQLBuilder;
+import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Rewrites a select statement which reads from the select statement of the parent relation into a single select
+ * statement, so that a chain of projections and filters does not generate one nested select per operation.
+ * <p>
+ * The outer statement is merged into the inner statement by replacing the references to the columns of the inner
+ * statement with the expressions of these columns. This merges adjacent projections, inlines renamed columns, and
+ * pushes filters below the projection, where they are combined with the filter of the inner statement.
+ * <p>
+ * Expressions are only scanned for identifiers, so statements are kept nested whenever the rewrite is not known to be
+ * safe:
+ * <ul>
+ *   <li>Expressions containing comments, query parameters, raw strings, struct types or subqueries.</li>
+ *   <li>Aggregate and analytic expressions, unless the outer statement selects them as is without a filter.</li>
+ *   <li>Non-deterministic expressions which would be evaluated more than once.</li>
+ * </ul>
+ */
+final class BigQueryRelationRewriter {
+  private static final SQLExpressionFactory factory = new SQLExpressionFactory();
+
+  // Reserved keywords of Standard SQL, which are never column references when they are not quoted.
+  private static final Set<String> RESERVED_KEYWORDS = ImmutableSet.of(
+    "ALL", "AND", "ANY", "ARRAY", "AS", "ASC", "ASSERT_ROWS_MODIFIED", "AT", "BETWEEN", "BY", "CASE", "CAST",
+    "COLLATE", "CONTAINS", "CREATE", "CROSS", "CUBE", "CURRENT", "DEFAULT", "DEFINE", "DESC", "DISTINCT", "ELSE",
+    "END", "ENUM", "ESCAPE", "EXCEPT", "EXCLUDE", "EXISTS", "EXTRACT", "FALSE", "FETCH", "FOLLOWING", "FOR", "FROM",
+    "FULL", "GROUP", "GROUPING", "GROUPS", "HASH", "HAVING", "IF", "IGNORE", "IN", "INNER", "INTERSECT", "INTERVAL",
+    "INTO", "IS", "JOIN", "LATERAL", "LEFT", "LIKE", "LIMIT", "LOOKUP", "MERGE", "NATURAL", "NEW", "NO", "NOT",
+    "NULL", "NULLS", "OF", "ON", "OR", "ORDER", "OUTER", "OVER", "PARTITION", "PRECEDING", "PROTO", "QUALIFY",
+    "RANGE", "RECURSIVE", "RESPECT", "RIGHT", "ROLLUP", "ROWS", "SELECT", "SET", "SOME", "STRUCT", "TABLESAMPLE",
+    "THEN", "TO", "TREAT", "TRUE", "UNBOUNDED", "UNION", "UNNEST", "USING", "WHEN", "WHERE", "WINDOW", "WITH",
+    "WITHIN");
+
+  // Unquoted words which are date parts or type names in some positions, such as DATE_TRUNC(d, DAY) or
+  // CAST(x AS STRING). They are not rewritten when they are also the name of a column.
+  private static final Set<String> AMBIGUOUS_WORDS = ImmutableSet.of(
+    "MICROSECOND", "MILLISECOND", "SECOND", "MINUTE", "HOUR", "DAY", "DAYOFWEEK", "DAYOFYEAR", "WEEK", "ISOWEEK",
+    "MONTH", "QUARTER", "YEAR", "ISOYEAR", "DATE", "DATETIME", "TIME", "TIMESTAMP", "INT64", "INT", "INTEGER",
+    "SMALLINT", "BIGINT", "TINYINT", "BYTEINT", "FLOAT64", "NUMERIC", "BIGNUMERIC", "DECIMAL", "BIGDECIMAL", "BOOL",
+    "BOOLEAN", "STRING", "BYTES", "GEOGRAPHY", "JSON");
+
+  private static final Set<String> AGGREGATE_FUNCTIONS = ImmutableSet.of(
+    "ANY_VALUE", "ARRAY_AGG", "ARRAY_CONCAT_AGG", "AVG", "BIT_AND", "BIT_OR", "BIT_XOR", "COUNT", "COUNTIF",
+    "LOGICAL_AND", "LOGICAL_OR", "MAX", "MIN", "STRING_AGG", "SUM", "APPROX_COUNT_DISTINCT", "APPROX_QUANTILES",
+    "APPROX_TOP_COUNT", "APPROX_TOP_SUM", "CORR", "COVAR_POP", "COVAR_SAMP", "STDDEV", "STDDEV_POP", "STDDEV_SAMP",
+    "VARIANCE", "VAR_POP", "VAR_SAMP", "INIT", "MERGE", "MERGE_PARTIAL", "ST_UNION_AGG", "ST_CENTROID_AGG",
+    "GROUPING");
+
+  private BigQueryRelationRewriter() {
+  }
+
+  /**
+   * Merges a select statement into the select statement it reads from.
+   *
+   * @param columns map containing the unqualified column aliases and the column expressions of the outer statement
+   * @param filter filter condition of the outer statement, or null if it selects all rows
+   * @param alias unqualified alias of the inner statement in the outer statement
+   * @param inner the inner statement
+   * @return the merged statement, or null if the statements can not be merged
+   */
+  @Nullable
+  static BigQuerySelectStatement rewrite(Map<String, Expression> columns, @Nullable String filter, String alias,
+                                         BigQuerySelectStatement inner) {
+    // Column names are not case sensitive
+    Map<String, InnerColumn> innerColumns = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (Map.Entry<String, Expression> entry : inner.getColumns().entrySet()) {
+      InnerColumn column = InnerColumn.of(((SQLExpression) entry.getValue()).extract());
+      if (column == null || innerColumns.put(entry.getKey(), column) != null) {
+        return null;
+      }
+    }
+
+    // Aggregate and analytic expressions are computed after the filter, and over all rows selected by the statement
+    boolean innerAggregates = innerColumns.values().stream().anyMatch(c -> c.aggregate);
+    if (innerAggregates && filter != null) {
+      return null;
+    }
+
+    List<InnerColumn> references = new ArrayList<>();
+    Map<String, Expression> rewrittenColumns = new LinkedHashMap<>();
+    for (Map.Entry<String, Expression> entry : columns.entrySet()) {
+      List<Token> tokens = tokenize(((SQLExpression) entry.getValue()).extract());
+      if (tokens == null || (innerAggregates && isAggregate(tokens))) {
+        return null;
+      }
+
+      List<InnerColumn> columnReferences = new ArrayList<>();
+      String rewritten = substitute(tokens, innerColumns, alias, inner.getAlias(), columnReferences);
+      if (rewritten == null) {
+        return null;
+      }
+
+      // Aggregate and analytic expressions can only be selected as is
+      for (InnerColumn column : columnReferences) {
+        if (column.aggregate && !rewritten.trim().equals(column.getReference())) {
+          return null;
+        }
+      }
+
+      references.addAll(columnReferences);
+      rewrittenColumns.put(entry.getKey(), factory.compile(rewritten));
+    }
+
+    String rewrittenFilter = inner.getFilter();
+    if (filter != null) {
+      List<Token> tokens = tokenize(filter);
+      String rewritten = tokens != null ? substitute(tokens, innerColumns, alias, inner.getAlias(), references) : null;
+      if (rewritten == null) {
+        return null;
+      }
+      rewrittenFilter = rewrittenFilter == null ? rewritten : group(rewrittenFilter) + BigQueryBaseSQLBuilder.AND
+        + group(rewritten);
+    }
+
+    // Non-deterministic expressions must be evaluated once per row. Aggregate expressions must be kept, as they
+    // determine the number of rows of the statement
+    for (InnerColumn column : innerColumns.values()) {
+      int frequency = Collections.frequency(references, column);
+      if ((column.nonDeterministic && frequency > 1) || (column.aggregate && frequency != 1)) {
+        return null;
+      }
+    }
+
+    return new BigQuerySelectStatement(rewrittenColumns, inner.getSource(), inner.isNested(), inner.getAlias(),
+                                       rewrittenFilter);
+  }
+
+  /**
+   * Replaces the references to the columns of the inner statement with the expressions of these columns.
+   *
+   * @param tokens tokens of the expression
+   * @param columns columns of the inner statement
+   * @param alias alias of the inner statement in the outer statement, which can qualify column references
+   * @param innerAlias alias of the source of the inner statement
+   * @param references list to which the replaced columns are added
+   * @return rewritten expression, or null if the expression can not be rewritten
+   */
+  @Nullable
+  private static String substitute(List<Token> tokens, Map<String, InnerColumn> columns, String alias,
+                                   String innerAlias, List<InnerColumn> references) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (!token.isIdentifier() || token.isKeyword()) {
+        builder.append(token.text);
+        continue;
+      }
+
+      Token previous = getPrevious(tokens, i);
+      int next = getNext(tokens, i);
+      // Fields of structs and function names are kept as is
+      if ((previous != null && previous.type == TokenType.DOT)
+        || (next >= 0 && tokens.get(next).type == TokenType.OPEN_GROUP)) {
+        builder.append(token.text);
+        continue;
+      }
+
+      String name = token.getName();
+      InnerColumn column = columns.get(name);
+      if (name.equalsIgnoreCase(alias) || name.equalsIgnoreCase(innerAlias)) {
+        // Only references to columns qualified by the alias, such as `alias`.`column`, can be rewritten
+        if (column != null || !name.equalsIgnoreCase(alias) || next < 0
+          || tokens.get(next).type != TokenType.DOT) {
+          return null;
+        }
+        int field = getNext(tokens, next);
+        column = field >= 0 && tokens.get(field).isIdentifier() ? columns.get(tokens.get(field).getName()) : null;
+        if (column == null) {
+          return null;
+        }
+        i = field;
+      } else if (column == null) {
+        builder.append(token.text);
+        continue;
+      } else if (token.type == TokenType.IDENTIFIER && (AMBIGUOUS_WORDS.contains(token.getKeyword())
+        || (previous != null && "AS".equals(previous.getKeyword())))) {
+        return null;
+      }
+
+      references.add(column);
+      builder.append(column.getReference());
+    }
+    return builder.toString();
+  }
+
+  private static boolean isAggregate(List<Token> tokens) {
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.type != TokenType.IDENTIFIER) {
+        continue;
+      }
+      int next = getNext(tokens, i);
+      if ("OVER".equals(token.getKeyword())
+        || (next >= 0 && tokens.get(next).type == TokenType.OPEN_GROUP
+        && AGGREGATE_FUNCTIONS.contains(token.getKeyword()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isNonDeterministic(List<Token> tokens) {
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      int next = getNext(tokens, i);
+      if (token.type == TokenType.IDENTIFIER
+        && BigQuerySQLEngineUtils.NON_DETERMINISTIC_FUNCTIONS.contains(token.getKeyword())
+        && next >= 0 && tokens.get(next).type == TokenType.OPEN_GROUP) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  private static Token getPrevious(List<Token> tokens, int index) {
+    for (int i = index - 1; i >= 0; i--) {
+      if (tokens.get(i).type != TokenType.WHITESPACE) {
+        return tokens.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static int getNext(List<Token> tokens, int index) {
+    for (int i = index + 1; i < tokens.size(); i++) {
+      if (tokens.get(i).type != TokenType.WHITESPACE) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String group(String expression) {
+    return BigQueryBaseSQLBuilder.OPEN_GROUP + expression + BigQueryBaseSQLBuilder.CLOSE_GROUP;
+  }
+
+  /**
+   * Splits an expression into identifiers and the tokens which surround them.
+   *
+   * @return the tokens, or null if the expression contains constructs which are not supported by the rewrite
+   */
+  @Nullable
+  private static List<Token> tokenize(String expression) {
+    List<Token> tokens = new ArrayList<>();
+    int length = expression.length();
+    int start = 0;
+    while (start < length) {
+      char c = expression.charAt(start);
+      char nextChar = start + 1 < length ? expression.charAt(start + 1) : 0;
+      int end = start + 1;
+      TokenType type = TokenType.OTHER;
+      if (Character.isWhitespace(c)) {
+        while (end < length && Character.isWhitespace(expression.charAt(end))) {
+          end++;
+        }
+        type = TokenType.WHITESPACE;
+      } else if (c == '`') {
+        end = expression.indexOf('`', start + 1) + 1;
+        // Quoted paths and escaped characters in quoted identifiers are not supported
+        if (end <= 0 || expression.substring(start, end).matches(".*[.\\\\].*")) {
+          return null;
+        }
+        type = TokenType.QUOTED_IDENTIFIER;
+      } else if (c == '\'' || c == '"') {
+        end = skipString(expression, start);
+        if (end < 0) {
+          return null;
+        }
+      } else if (Character.isLetter(c) || c == '_') {
+        while (end < length && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_')) {
+          end++;
+        }
+        type = TokenType.IDENTIFIER;
+        String keyword = expression.substring(start, end).toUpperCase(Locale.ROOT);
+        // Raw and bytes literals, such as r'...' and b'...', and struct types
+        if ((end < length && (expression.charAt(end) == '\'' || expression.charAt(end) == '"'))
+          || "SELECT".equals(keyword) || "STRUCT".equals(keyword)) {
+          return null;
+        }
+      } else if (Character.isDigit(c)) {
+        while (end < length && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_'
+          || expression.charAt(end) == '.')) {
+          end++;
+        }
+      } else if (c == '.') {
+        type = TokenType.DOT;
+      } else if (c == '(') {
+        type = TokenType.OPEN_GROUP;
+      } else if (c == '@' || c == '#' || (c == '-' && nextChar == '-') || (c == '/' && nextChar == '*')) {
+        // Query parameters and comments
+        return null;
+      }
+      tokens.add(new Token(type, expression.substring(start, end)));
+      start = end;
+    }
+    return tokens;
+  }
+
+  /**
+   * Returns the end of the string literal starting at the given position, or -1 if the literal is not terminated.
+   */
+  private static int skipString(String expression, int start) {
+    char quote = expression.charAt(start);
+    String tripleQuote = new String(new char[]{quote, quote, quote});
+    String delimiter = expression.startsWith(tripleQuote, start) ? tripleQuote : String.valueOf(quote);
+    int index = start + delimiter.length();
+    while (index < expression.length()) {
+      if (expression.charAt(index) == '\\') {
+        index += 2;
+      } else if (expression.startsWith(delimiter, index)) {
+        return index + delimiter.length();
+      } else {
+        index++;
+      }
+    }
+    return -1;
+  }
+
+  private enum TokenType {
+    IDENTIFIER,
+    QUOTED_IDENTIFIER,
+    DOT,
+    OPEN_GROUP,
+    WHITESPACE,
+    OTHER
+  }
+
+  /**
+   * Token of an expression.
+   */
+  private static final class Token {
+    private final TokenType type;
+    private final String text;
+
+    private Token(TokenType type, String text) {
+      this.type = type;
+      this.text = text;
+    }
+
+    private boolean isIdentifier() {
+      return type == TokenType.IDENTIFIER || type == TokenType.QUOTED_IDENTIFIER;
+    }
+
+    private boolean isKeyword() {
+      return type == TokenType.IDENTIFIER && RESERVED_KEYWORDS.contains(getKeyword());
+    }
+
+    private String getKeyword() {
+      return text.toUpperCase(Locale.ROOT);
+    }
+
+    private String getName() {
+      return type == TokenType.QUOTED_IDENTIFIER ? text.substring(1, text.length() - 1) : text;
+    }
+  }
+
+  /**
+   * Column of the inner statement.
+   */
+  private static final class InnerColumn {
+    private final String expression;
+    // Whether the expression can replace a column reference without parentheses
+    private final boolean trivial;
+    private final boolean aggregate;
+    private final boolean nonDeterministic;
+
+    private InnerColumn(String expression, boolean trivial, boolean aggregate, boolean nonDeterministic) {
+      this.expression = expression;
+      this.trivial = trivial;
+      this.aggregate = aggregate;
+      this.nonDeterministic = nonDeterministic;
+    }
+
+    @Nullable
+    private static InnerColumn of(String expression) {
+      List<Token> tokens = tokenize(expression);
+      if (tokens == null) {
+        return null;
+      }
+
+      // Column references, such as `column` or `alias`.`column`, are inlined as is
+      List<Token> significant = new ArrayList<>();
+      tokens.stream().filter(t -> t.type != TokenType.WHITESPACE).forEach(significant::add);
+      if (significant.isEmpty()) {
+        return null;
+      }
+      boolean trivial = significant.get(0).isIdentifier() && !significant.get(0).isKeyword()
+        && (significant.size() == 1 || (significant.size() == 3 && significant.get(1).type == TokenType.DOT
+        && significant.get(2).isIdentifier()));
+
+      // Expressions which are already enclosed in parentheses are not enclosed again
+      int depth = 0;
+      boolean grouped = significant.get(0).type == TokenType.OPEN_GROUP;
+      for (int i = 0; i < significant.size() && grouped; i++) {
+        Token token = significant.get(i);
+        if (token.type == TokenType.OPEN_GROUP) {
+          depth++;
+        } else if (BigQueryBaseSQLBuilder.CLOSE_GROUP.equals(token.text)) {
+          depth--;
+        }
+        grouped = depth > 0 || i == significant.size() - 1;
+      }
+
+      return new InnerColumn(expression.trim(), trivial || grouped, isAggregate(tokens), isNonDeterministic(tokens));
+    }
+
+    /**
+     * Returns the expression which replaces a reference to this column.
+     */
+    private String getReference() {
+      return trivial ? expression : group(expression);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.relational;
+
+import io.cdap.cdap.etl.api.relational.Expression;
+import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryNestedSelectSQLBuilder;
+import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQuerySelectSQLBuilder;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Select statement of a {@link BigQueryRelation}, kept in a structured form until the SQL statement is generated so
+ * that the {@link BigQueryRelationRewriter} can merge it with the select statements of the relations built on top of
+ * it.
+ */
+final class BigQuerySelectStatement {
+  private final Map<String, Expression> columns;
+  private final String source;
+  private final boolean nested;
+  private final String alias;
+  private final String filter;
+
+  /**
+   * @param columns map containing the unqualified column aliases and the column expressions
+   * @param source the table to select from, or the SQL statement to select from if the statement is nested
+   * @param nested whether the source is a SQL statement
+   * @param alias unqualified alias of the source
+   * @param filter filter condition, or null if all rows are selected
+   */
+  BigQuerySelectStatement(Map<String, Expression> columns, String source, boolean nested, String alias,
+                          @Nullable String filter) {
+    this.columns = columns;
+    this.source = source;
+    this.nested = nested;
+    this.alias = alias;
+    this.filter = filter;
+  }
+
+  Map<String, Expression> getColumns() {
+    return columns;
+  }
+
+  String getSource() {
+    return source;
+  }
+
+  boolean isNested() {
+    return nested;
+  }
+
+  String getAlias() {
+    return alias;
+  }
+
+  @Nullable
+  String getFilter() {
+    return filter;
+  }
+
+  /**
+   * Generates the SQL statement. Column aliases, the source alias and the source table are qualified.
+   *
+   * @return SQL statement
+   */
+  String getQuery() {
+    BigQuerySelectSQLBuilder builder = nested ?
+      new BigQueryNestedSelectSQLBuilder(BigQueryRelation.qualifyKeys(columns), source,
+                                         BigQueryRelation.qualify(alias), filter) :
+      new BigQuerySelectSQLBuilder(BigQueryRelation.qualifyKeys(columns), BigQueryRelation.qualify(source),
+                                   BigQueryRelation.qualify(alias), filter);
+    return builder.getQuery();
+  }
+}
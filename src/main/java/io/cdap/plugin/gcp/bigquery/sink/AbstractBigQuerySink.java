@@ -84,8 +84,20 @@ public abstract class AbstractBigQuerySink extends BatchSink<StructuredRecord, S
     bigQuery = GCPUtils.getBigQuery(project, credentials);
     FailureCollector collector = context.getFailureCollector();
     CryptoKeyName cmekKeyName = CmekUtils.getCmekKey(config.cmekKey, context.getArguments().asMap(), collector);
+    // Number of load jobs submitted concurrently when the output has to be loaded in several batches
+    Integer loadJobParallelism = BigQueryUtil.getPositiveIntArgument(
+      context.getArguments().asMap(), BigQueryConstants.CONFIG_LOAD_JOB_PARALLELISM, collector);
+    // Number of tables committed concurrently by sinks that write to several tables
+    Integer tableCommitParallelism = BigQueryUtil.getPositiveIntArgument(
+      context.getArguments().asMap(), BigQueryConstants.CONFIG_TABLE_COMMIT_PARALLELISM, collector);
     collector.getOrThrowException();
     baseConfiguration = getBaseConfiguration(cmekKeyName);
+    if (loadJobParallelism != null) {
+      baseConfiguration.setInt(BigQueryConstants.CONFIG_LOAD_JOB_PARALLELISM, loadJobParallelism);
+    }
+    if (tableCommitParallelism != null) {
+      baseConfiguration.setInt(BigQueryConstants.CONFIG_TABLE_COMMIT_PARALLELISM, tableCommitParallelism);
+    }
     String bucket = BigQuerySinkUtils.configureBucket(baseConfiguration, config.getBucket(), runUUID.toString());
     if (!context.isPreviewEnabled()) {
       BigQuerySinkUtils.createResources(bigQuery, GCPUtils.getStorage(project, credentials),
@@ -117,6 +129,26 @@ public abstract class AbstractBigQuerySink extends BatchSink<StructuredRecord, S
     emitter.emit(new KeyValue<>(input, NullWritable.get()));
   }
 
+  /**
+   * Returns the path of the file in the temporary directory of the run which stores the metrics of writing into the
+   * given table. The directory is deleted in {@link #onRunFinish(boolean, BatchSinkContext)}.
+   *
+   * @param bucket bucket name
+   * @param tableName table name
+   */
+  protected String getMetricsPath(String bucket, String tableName) {
+    return getMetricsDirectory(bucket) + "/" + tableName + ".json";
+  }
+
+  /**
+   * Returns the directory in the temporary directory of the run which stores the metrics of the sink.
+   *
+   * @param bucket bucket name
+   */
+  protected String getMetricsDirectory(String bucket) {
+    return String.format(gcsPathFormat, bucket, runUUID.toString()) + "/metrics";
+  }
+
   /**
    * Initializes output along with lineage recording for given table and its schema.
    *
@@ -214,6 +246,13 @@ public abstract class AbstractBigQuerySink extends BatchSink<StructuredRecord, S
       gcsChunkSize = config.getGcsChunkSize();
     }
     baseConfiguration.set("fs.gs.outputstream.upload.chunk.size", gcsChunkSize);
+    Integer stagingFileSize = config.getStagingFileSize();
+    if (stagingFileSize != null) {
+      baseConfiguration.setLong(BigQueryConstants.CONFIG_STAGING_FILE_SIZE, stagingFileSize * 1024L * 1024L);
+    }
+    baseConfiguration.setEnum(BigQueryConstants.CONFIG_STAGING_FILE_FORMAT, config.getStagingFileFormat());
+    BigQuerySinkUtils.configureAvroStaging(baseConfiguration, config.getStagingFileCodec(),
+                                           config.getStagingFileBlockSize());
     return baseConfiguration;
   }
 
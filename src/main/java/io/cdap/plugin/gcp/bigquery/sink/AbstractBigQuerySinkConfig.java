@@ -16,6 +16,7 @@
 package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.cloud.bigquery.JobInfo;
+import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
 import com.google.cloud.kms.v1.CryptoKeyName;
 import com.google.common.collect.ImmutableSet;
 import io.cdap.cdap.api.annotation.Description;
@@ -47,6 +48,10 @@ public abstract class AbstractBigQuerySinkConfig extends BigQueryBaseConfig {
   public static final String NAME_TRUNCATE_TABLE = "truncateTable";
   public static final String NAME_LOCATION = "location";
   private static final String NAME_GCS_CHUNK_SIZE = "gcsChunkSize";
+  private static final String NAME_STAGING_FILE_SIZE = "stagingFileSize";
+  private static final String NAME_STAGING_FILE_FORMAT = "stagingFileFormat";
+  private static final String NAME_STAGING_FILE_CODEC = "stagingFileCodec";
+  private static final String NAME_STAGING_FILE_BLOCK_SIZE = "stagingFileBlockSize";
   protected static final String NAME_UPDATE_SCHEMA = "allowSchemaRelaxation";
   private static final String SCHEME = "gs://";
 
@@ -61,6 +66,37 @@ public abstract class AbstractBigQuerySinkConfig extends BigQueryBaseConfig {
     "number of bytes. By default, 8388608 bytes (8MB) will be used as upload request chunk size.")
   protected String gcsChunkSize;
 
+  @Name(NAME_STAGING_FILE_SIZE)
+  @Macro
+  @Nullable
+  @Description("Optional target size in megabytes of the files each task writes to the temporary bucket. Once a " +
+    "file reaches this size, the task continues in a new file, so that skewed tasks produce several files that " +
+    "BigQuery can load in parallel. By default, each task writes a single file.")
+  protected Integer stagingFileSize;
+
+  @Name(NAME_STAGING_FILE_FORMAT)
+  @Macro
+  @Nullable
+  @Description("Format of the files written to the temporary bucket. Supported values are 'avro' and 'json'. Avro " +
+    "files are smaller and load faster, newline delimited JSON files are easier to inspect. Defaults to 'avro'.")
+  protected String stagingFileFormat;
+
+  @Name(NAME_STAGING_FILE_CODEC)
+  @Macro
+  @Nullable
+  @Description("Compression codec of the Avro files written to the temporary bucket. Compression reduces the " +
+    "amount of data uploaded to GCS at the cost of CPU on the executors. Supported values are 'none', 'deflate' " +
+    "and 'snappy'. Defaults to 'none'.")
+  protected String stagingFileCodec;
+
+  @Name(NAME_STAGING_FILE_BLOCK_SIZE)
+  @Macro
+  @Nullable
+  @Description("Approximate uncompressed size in kilobytes of the blocks of the Avro files written to the " +
+    "temporary bucket. Blocks are compressed as a whole, so larger blocks compress better but need more memory. " +
+    "Defaults to 64 KB.")
+  protected Integer stagingFileBlockSize;
+
   @Name(NAME_UPDATE_SCHEMA)
   @Macro
   @Nullable
@@ -104,6 +140,24 @@ public abstract class AbstractBigQuerySinkConfig extends BigQueryBaseConfig {
     return gcsChunkSize;
   }
 
+  @Nullable
+  public Integer getStagingFileSize() {
+    return stagingFileSize;
+  }
+
+  public BigQueryFileFormat getStagingFileFormat() {
+    return BigQuerySinkUtils.getStagingFileFormat(stagingFileFormat);
+  }
+
+  public AvroCodec getStagingFileCodec() {
+    return BigQuerySinkUtils.getAvroCodec(stagingFileCodec);
+  }
+
+  @Nullable
+  public Integer getStagingFileBlockSize() {
+    return stagingFileBlockSize;
+  }
+
   public boolean isAllowSchemaRelaxation() {
     return allowSchemaRelaxation == null ? false : allowSchemaRelaxation;
   }
@@ -131,6 +185,18 @@ public abstract class AbstractBigQuerySinkConfig extends BigQueryBaseConfig {
     if (!containsMacro(NAME_GCS_CHUNK_SIZE)) {
       BigQueryUtil.validateGCSChunkSize(gcsChunkSize, NAME_GCS_CHUNK_SIZE, collector);
     }
+    if (!containsMacro(NAME_STAGING_FILE_SIZE) && stagingFileSize != null && stagingFileSize <= 0) {
+      collector.addFailure("Staging file size must be greater than 0.", null)
+        .withConfigProperty(NAME_STAGING_FILE_SIZE);
+    }
+    BigQuerySinkUtils.validateAvroStaging(containsMacro(NAME_STAGING_FILE_CODEC) ? null : stagingFileCodec,
+                                          NAME_STAGING_FILE_CODEC,
+                                          containsMacro(NAME_STAGING_FILE_BLOCK_SIZE) ? null : stagingFileBlockSize,
+                                          NAME_STAGING_FILE_BLOCK_SIZE, collector);
+    if (!containsMacro(NAME_STAGING_FILE_FORMAT) && !containsMacro(NAME_STAGING_FILE_CODEC)) {
+      BigQuerySinkUtils.validateStagingFileFormat(stagingFileFormat, NAME_STAGING_FILE_FORMAT,
+                                                  stagingFileCodec, NAME_STAGING_FILE_CODEC, collector);
+    }
     if (!containsMacro(NAME_DATASET)) {
       BigQueryUtil.validateDataset(dataset, NAME_DATASET, collector);
     }
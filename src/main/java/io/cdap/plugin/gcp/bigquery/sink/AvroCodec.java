@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import org.apache.avro.file.DataFileConstants;
+
+/**
+ * Compression codecs for the Avro files staged in GCS that BigQuery load jobs can read.
+ */
+public enum AvroCodec {
+  /**
+   * Blocks are not compressed.
+   */
+  NONE(DataFileConstants.NULL_CODEC),
+  /**
+   * Blocks are compressed with deflate, which produces the smallest files at the highest CPU cost.
+   */
+  DEFLATE(DataFileConstants.DEFLATE_CODEC),
+  /**
+   * Blocks are compressed with snappy, which is fast but compresses less than deflate.
+   */
+  SNAPPY(DataFileConstants.SNAPPY_CODEC);
+
+  private final String avroName;
+
+  AvroCodec(String avroName) {
+    this.avroName = avroName;
+  }
+
+  /**
+   * @return the name of the codec in Avro files
+   */
+  public String getAvroName() {
+    return avroName;
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.cdap.plugin.gcp.bigquery.sink;
 
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import org.apache.avro.Schema;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.generic.GenericData;
@@ -25,9 +26,11 @@ import org.apache.avro.mapred.AvroKey;
 import org.apache.avro.mapreduce.AvroJob;
 import org.apache.avro.mapreduce.AvroKeyOutputFormat;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -36,6 +39,10 @@ import java.io.OutputStream;
  * avro output format.
  */
 public class AvroOutputFormat extends AvroKeyOutputFormat<GenericRecord> {
+  // Configuration key Avro uses as the base name of the files written by a task
+  static final String NAMED_OUTPUT = "avro.mo.config.namedOutput";
+  private static final String DEFAULT_NAMED_OUTPUT = "part";
+
   public AvroOutputFormat() {
     super();
   }
@@ -65,8 +72,25 @@ public class AvroOutputFormat extends AvroKeyOutputFormat<GenericRecord> {
     }
 
     GenericData dataModel = AvroSerialization.createDataModel(conf);
-    return create(writerSchema, dataModel, getCompressionCodec(context),
-                  getAvroFileOutputStream(context), getSyncInterval(context));
+    // The codec and sync interval configured for BigQuery take precedence over the generic Avro settings
+    String codec = conf.get(BigQueryConstants.CONFIG_AVRO_CODEC);
+    CodecFactory codecFactory = codec == null ? getCompressionCodec(context) : CodecFactory.fromString(codec);
+    int syncInterval = conf.getInt(BigQueryConstants.CONFIG_AVRO_SYNC_INTERVAL, getSyncInterval(context));
+    long targetFileSize = conf.getLong(BigQueryConstants.CONFIG_STAGING_FILE_SIZE, 0);
+    // The name is resolved now, as the configuration may be changed for other writers before the next part is opened
+    String outputName = conf.get(NAMED_OUTPUT, DEFAULT_NAMED_OUTPUT);
+    return create(writerSchema, dataModel, codecFactory, getAvroFileOutputStream(context), syncInterval,
+                  targetFileSize, part -> openPartFile(context, outputName, part));
+  }
+
+  /**
+   * Opens an additional part file of the task, named after the first file of the writer followed by the part number.
+   */
+  private OutputStream openPartFile(TaskAttemptContext context, String outputName, int part) throws IOException {
+    Path workPath = ((FileOutputCommitter) getOutputCommitter(context)).getWorkPath();
+    Path path = new Path(workPath, getUniqueFile(context, outputName, String.format(
+      "-%05d%s", part, org.apache.avro.mapred.AvroOutputFormat.EXT)));
+    return path.getFileSystem(context.getConfiguration()).create(path);
   }
 
   /**
@@ -76,10 +100,14 @@ public class AvroOutputFormat extends AvroKeyOutputFormat<GenericRecord> {
    * @param compressionCodec The compression type for the writer file.
    * @param outputStream The target output stream for the records.
    * @param syncInterval The sync interval for the writer file.
+   * @param targetFileSize The size in bytes after which a new part file is started, 0 to disable.
+   * @param partFileOpener Opens the additional part files.
    */
   private RecordWriter<AvroKey<GenericRecord>, NullWritable> create(
     Schema writerSchema, GenericData dataModel, CodecFactory compressionCodec,
-    OutputStream outputStream, int syncInterval) throws IOException {
-    return new AvroRecordWriter(writerSchema, dataModel, compressionCodec, outputStream, syncInterval);
+    OutputStream outputStream, int syncInterval, long targetFileSize,
+    AvroRecordWriter.PartFileOpener partFileOpener) throws IOException {
+    return new AvroRecordWriter(writerSchema, dataModel, compressionCodec, outputStream, syncInterval,
+                                targetFileSize, partFileOpener);
   }
 }
@@ -16,6 +16,7 @@
 
 package io.cdap.plugin.gcp.bigquery.sink;
 
+import com.google.common.io.CountingOutputStream;
 import org.apache.avro.Schema;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileConstants;
@@ -28,11 +29,14 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import javax.annotation.Nullable;
 
 /**
- * avro record writer
+ * avro record writer. If a target file size is given, the writer rolls over to a new part file once the current file
+ * reaches that size.
  */
 public class AvroRecordWriter extends RecordWriter<AvroKey<GenericRecord>, NullWritable> implements Syncable {
   /** A writer for the Avro container file. */
@@ -41,7 +45,20 @@ public class AvroRecordWriter extends RecordWriter<AvroKey<GenericRecord>, NullW
   private GenericData dataModel;
   private CodecFactory compressionCodec;
   private OutputStream outputStream;
+  private CountingOutputStream countingStream;
   private int syncInterval;
+  private final long targetFileSize;
+  private final PartFileOpener partFileOpener;
+  private int part;
+  // Time spent writing to the output streams, which is mostly spent waiting for the upload of the staged files
+  private long uploadNanos;
+
+  /**
+   * Opens the output stream of an additional part file.
+   */
+  public interface PartFileOpener {
+    OutputStream open(int part) throws IOException;
+  }
 
   /**
    * Constructor.
@@ -54,10 +71,32 @@ public class AvroRecordWriter extends RecordWriter<AvroKey<GenericRecord>, NullW
    */
   public AvroRecordWriter(Schema writerSchema, GenericData dataModel, CodecFactory compressionCodec,
                           OutputStream outputStream, int syncInterval) throws IOException {
+    this(writerSchema, dataModel, compressionCodec, outputStream, syncInterval, 0, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param writerSchema The writer schema for the records in the Avro container file.
+   * @param compressionCodec A compression codec factory for the Avro container file.
+   * @param outputStream The output stream to write the first Avro container file to.
+   * @param syncInterval The sync interval for the Avro container file.
+   * @param targetFileSize The size in bytes after which the writer continues in a new part file, 0 to disable.
+   * @param partFileOpener Opens the additional part files, required if a target file size is given.
+   * @throws IOException If the record writer cannot be opened.
+   */
+  public AvroRecordWriter(Schema writerSchema, GenericData dataModel, CodecFactory compressionCodec,
+                          OutputStream outputStream, int syncInterval, long targetFileSize,
+                          @Nullable PartFileOpener partFileOpener) throws IOException {
+    if (targetFileSize > 0 && partFileOpener == null) {
+      throw new IllegalArgumentException("A part file opener is required if a target file size is set.");
+    }
     this.dataModel = dataModel;
     this.compressionCodec = compressionCodec;
     this.outputStream = outputStream;
     this.syncInterval = syncInterval;
+    this.targetFileSize = targetFileSize;
+    this.partFileOpener = partFileOpener;
   }
   /**
    * Constructor.
@@ -88,13 +127,26 @@ public class AvroRecordWriter extends RecordWriter<AvroKey<GenericRecord>, NullW
       createFileWriter(writerSchema);
     }
     mAvroFileWriter.append(record.datum());
+
+    // Blocks are only written to the stream once they reach the sync interval, so a part file exceeds the target
+    // size by at most one block.
+    if (targetFileSize > 0 && countingStream.getCount() >= targetFileSize) {
+      mAvroFileWriter.close();
+      mAvroFileWriter = null;
+      // The next part file is only opened if there are more records
+      outputStream = null;
+    }
   }
 
   private void createFileWriter(Schema writerSchema) throws IOException {
+    if (outputStream == null) {
+      outputStream = partFileOpener.open(++part);
+    }
+    countingStream = new CountingOutputStream(new TimedOutputStream(outputStream));
     mAvroFileWriter = new DataFileWriter<GenericRecord>(dataModel.createDatumWriter(writerSchema));
     mAvroFileWriter.setCodec(compressionCodec);
     mAvroFileWriter.setSyncInterval(syncInterval);
-    mAvroFileWriter.create(writerSchema, outputStream);
+    mAvroFileWriter.create(writerSchema, countingStream);
     prevSchema = writerSchema;
   }
 
@@ -114,4 +166,49 @@ public class AvroRecordWriter extends RecordWriter<AvroKey<GenericRecord>, NullW
     }
     return 0;
   }
+
+  /**
+   * Returns the time in nanoseconds spent writing to the output streams so far.
+   */
+  public long getUploadNanos() {
+    return uploadNanos;
+  }
+
+  /**
+   * Measures the time spent in the methods of the output stream.
+   */
+  private final class TimedOutputStream extends FilterOutputStream {
+
+    private TimedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      long start = System.nanoTime();
+      out.write(b);
+      uploadNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      out.write(b, off, len);
+      uploadNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      long start = System.nanoTime();
+      out.flush();
+      uploadNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      out.close();
+      uploadNanos += System.nanoTime() - start;
+    }
+  }
 }
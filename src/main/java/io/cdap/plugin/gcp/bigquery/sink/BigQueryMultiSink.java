@@ -36,6 +36,9 @@ import io.cdap.plugin.gcp.bigquery.connector.BigQueryConnector;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -56,7 +59,10 @@ public class BigQueryMultiSink extends AbstractBigQuerySink {
   public static final String NAME = "BigQueryMultiTable";
   private static final String TABLE_PREFIX = "multisink.";
   private static final String OUTPUT_PATTERN = "[A-Za-z0-9_-]+";
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryMultiSink.class);
   private final BigQueryMultiSinkConfig config;
+  // Directory which stores the metrics of the record writers, set if the tables are not defined by arguments
+  private String writerMetricsDirectory;
 
   public BigQueryMultiSink(BigQueryMultiSinkConfig config) {
     this.config = config;
@@ -144,12 +150,37 @@ public class BigQueryMultiSink extends AbstractBigQuerySink {
   protected void configureSchemalessOutput(BatchSinkContext context,
                                            String bucket) throws IOException {
     Configuration conf = getOutputConfiguration();
+    writerMetricsDirectory = getMetricsDirectory(bucket) + "/writers";
     String splitField = config.getSplitField();
     String projectName = config.getDatasetProject();
     String datasetName = config.getDataset();
     context.addOutput(Output.of(config.getReferenceName(),
                                 new DelegatingMultiSinkOutputFormatProvider(conf, splitField, bucket,
-                                                                            projectName, datasetName)));
+                                                                            projectName, datasetName,
+                                                                            config.getMaxOpenWriters(),
+                                                                            writerMetricsDirectory)));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSinkContext context) {
+    // The metrics are stored in the temporary directory, which is deleted by the parent class
+    emitWriterMetrics(succeeded, context);
+    super.onRunFinish(succeeded, context);
+  }
+
+  /**
+   * Emits the metrics of the record writers of the tasks, which were stored when the record writers were closed.
+   */
+  private void emitWriterMetrics(boolean succeeded, BatchSinkContext context) {
+    if (!succeeded || writerMetricsDirectory == null) {
+      return;
+    }
+    try {
+      BigQuerySinkMetrics.readAll(baseConfiguration, new Path(writerMetricsDirectory))
+        .emitWriters(context.getMetrics());
+    } catch (Exception e) {
+      LOG.warn("Exception while trying to emit the metrics of the record writers of the BigQuery sink.", e);
+    }
   }
 
   /**
@@ -19,8 +19,10 @@ import com.google.common.base.Strings;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Macro;
 import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.plugin.gcp.bigquery.connector.BigQueryConnectorConfig;
 
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -30,6 +32,7 @@ public class BigQueryMultiSinkConfig extends AbstractBigQuerySinkConfig {
 
   private static final String SPLIT_FIELD_DEFAULT = "tablename";
   private static final String NAME_ALLOW_FLEXIBLE_SCHEMA = "allowFlexibleSchema";
+  private static final String NAME_MAX_OPEN_WRITERS = "maxOpenWriters";
 
   @Macro
   @Nullable
@@ -43,6 +46,14 @@ public class BigQueryMultiSinkConfig extends AbstractBigQuerySinkConfig {
     "arguments will be processed. If enabled, all records will be written as-is.")
   private Boolean allowFlexibleSchema;
 
+  @Name(NAME_MAX_OPEN_WRITERS)
+  @Macro
+  @Nullable
+  @Description("Maximum number of tables each task keeps a temporary file open for when flexible schemas are " +
+    "allowed. Once the limit is reached, the file of the least recently written table is closed, and a new file is " +
+    "started if more records for that table arrive. If not set, a file stays open for every table the task writes to.")
+  private Integer maxOpenWriters;
+
   private BigQueryMultiSinkConfig(BigQueryConnectorConfig connection, String dataset, String cmekKey, String bucket) {
     super(connection, dataset, cmekKey, bucket);
   }
@@ -59,6 +70,21 @@ public class BigQueryMultiSinkConfig extends AbstractBigQuerySinkConfig {
     return allowFlexibleSchema != null ? allowFlexibleSchema : false;
   }
 
+  @Nullable
+  public Integer getMaxOpenWriters() {
+    return maxOpenWriters;
+  }
+
+  @Override
+  public void validate(FailureCollector collector, Map<String, String> arguments) {
+    super.validate(collector, arguments);
+
+    if (!containsMacro(NAME_MAX_OPEN_WRITERS) && maxOpenWriters != null && maxOpenWriters <= 0) {
+      collector.addFailure("Maximum open writers must be greater than 0.", null)
+        .withConfigProperty(NAME_MAX_OPEN_WRITERS);
+    }
+  }
+
   /**
    * BigQuery MultiSink configuration builder.
    */
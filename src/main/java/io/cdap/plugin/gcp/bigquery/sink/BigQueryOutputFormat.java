@@ -18,14 +18,9 @@ package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.api.client.json.JsonParser;
 import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.client.util.BackOff;
-import com.google.api.client.util.ExponentialBackOff;
-import com.google.api.client.util.Sleeper;
-import com.google.api.services.bigquery.Bigquery;
 import com.google.api.services.bigquery.model.Clustering;
 import com.google.api.services.bigquery.model.Dataset;
 import com.google.api.services.bigquery.model.EncryptionConfiguration;
-import com.google.api.services.bigquery.model.ErrorProto;
 import com.google.api.services.bigquery.model.Job;
 import com.google.api.services.bigquery.model.JobConfiguration;
 import com.google.api.services.bigquery.model.JobConfigurationLoad;
@@ -41,12 +36,17 @@ import com.google.api.services.bigquery.model.TableSchema;
 import com.google.api.services.bigquery.model.TimePartitioning;
 import com.google.auth.Credentials;
 import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.BigQueryOptions;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.FieldList;
 import com.google.cloud.bigquery.JobId;
 import com.google.cloud.bigquery.JobInfo;
 import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsRequest;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsResponse;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
 import com.google.cloud.hadoop.io.bigquery.BigQueryConfiguration;
 import com.google.cloud.hadoop.io.bigquery.BigQueryFactory;
 import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
@@ -57,21 +57,24 @@ import com.google.cloud.hadoop.io.bigquery.output.BigQueryOutputConfiguration;
 import com.google.cloud.hadoop.io.bigquery.output.ForwardingBigQueryFileOutputCommitter;
 import com.google.cloud.hadoop.io.bigquery.output.ForwardingBigQueryFileOutputFormat;
 import com.google.cloud.hadoop.util.ConfigurationUtil;
-import com.google.cloud.hadoop.util.ResilientOperation;
-import com.google.cloud.hadoop.util.RetryDeterminer;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
 import io.cdap.plugin.gcp.common.GCPUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.JobStatus;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,13 +82,21 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 /**
@@ -115,9 +126,119 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
                                                                       io.cdap.cdap.api.data.schema.Schema schema)
     throws IOException, InterruptedException {
     Configuration configuration = taskAttemptContext.getConfiguration();
-    return new BigQueryRecordWriter(getDelegate(configuration).getRecordWriter(taskAttemptContext),
-                                    BigQueryOutputConfiguration.getFileFormat(configuration),
-                                    schema);
+    RecordWriter<StructuredRecord, NullWritable> recordWriter;
+    if (BigQueryStorageWriteUtils.getWriteMethod(configuration) == WriteMethod.STORAGE_WRITE_API) {
+      TableReference tableRef = BigQueryStorageWriteUtils.getStreamTableReference(
+        configuration, BigQueryOutputCommitter.getTableReference(configuration));
+      Path manifest = getDelegate(configuration)
+        .getDefaultWorkFile(taskAttemptContext, BigQueryStorageWriteUtils.STREAM_MANIFEST_EXTENSION);
+      recordWriter = new BigQueryStorageWriteRecordWriter(taskAttemptContext, tableRef, manifest, schema);
+    } else if (configuration.get(BigQueryConstants.CONFIG_METRICS_PATH) == null) {
+      recordWriter = createGcsRecordWriter(taskAttemptContext, schema, null);
+    } else {
+      BigQuerySinkMetrics metrics = new BigQuerySinkMetrics();
+      recordWriter = new TaskMetricsRecordWriter(createGcsRecordWriter(taskAttemptContext, schema, metrics),
+                                                 getTaskMetricsPath(taskAttemptContext), metrics);
+    }
+    return withDeduplication(configuration, recordWriter);
+  }
+
+  /**
+   * Returns the path of the file which stores the metrics of the record writers of the task. The file is committed
+   * along with the staged files of the task.
+   */
+  private Path getTaskMetricsPath(TaskAttemptContext taskAttemptContext) throws IOException {
+    FileOutputFormat<?, ?> delegate = getDelegate(taskAttemptContext.getConfiguration());
+    Path workPath = ((FileOutputCommitter) delegate.getOutputCommitter(taskAttemptContext)).getWorkPath();
+    return new Path(new Path(workPath, BigQuerySinkMetrics.TASK_METRICS_DIRECTORY),
+                    FileOutputFormat.getUniqueFile(taskAttemptContext, "metrics", ".json"));
+  }
+
+  /**
+   * Creates the record writer which stages records in GCS. If records should be staged by partition, the records of
+   * each partition are written to separate files.
+   */
+  private RecordWriter<StructuredRecord, NullWritable> createGcsRecordWriter(
+    TaskAttemptContext taskAttemptContext, @Nullable io.cdap.cdap.api.data.schema.Schema schema,
+    @Nullable BigQuerySinkMetrics metrics) throws IOException, InterruptedException {
+    Configuration configuration = taskAttemptContext.getConfiguration();
+    BigQueryFileFormat fileFormat = BigQueryOutputConfiguration.getFileFormat(configuration);
+    io.cdap.cdap.api.data.schema.Schema.LogicalType partitionType = getStagingPartitionType(configuration, schema);
+    if (partitionType == null) {
+      return new BigQueryRecordWriter(getDelegate(configuration).getRecordWriter(taskAttemptContext), fileFormat,
+                                      schema, metrics);
+    }
+    return new PartitionedRecordWriter(
+      taskAttemptContext, configuration.get(BigQueryConstants.CONFIG_PARTITION_BY_FIELD), partitionType,
+      outputName -> {
+        BigQuerySinkUtils.setOutputName(configuration, outputName);
+        return new BigQueryRecordWriter(getDelegate(configuration).getRecordWriter(taskAttemptContext), fileFormat,
+                                        schema, metrics);
+      }, PartitionedRecordWriter.DEFAULT_MAX_OPEN_WRITERS);
+  }
+
+  /**
+   * Returns the logical type of the partition field if records should be staged by partition, or null otherwise.
+   */
+  @Nullable
+  private static io.cdap.cdap.api.data.schema.Schema.LogicalType getStagingPartitionType(
+    Configuration configuration, @Nullable io.cdap.cdap.api.data.schema.Schema schema) {
+    String partitionByField = configuration.get(BigQueryConstants.CONFIG_PARTITION_BY_FIELD);
+    if (!configuration.getBoolean(BigQueryConstants.CONFIG_STAGE_BY_PARTITION, false) || partitionByField == null
+      || schema == null || schema.getField(partitionByField) == null
+      || configuration.getEnum(BigQueryConstants.CONFIG_PARTITION_TYPE, PartitionType.NONE) != PartitionType.TIME) {
+      return null;
+    }
+    io.cdap.cdap.api.data.schema.Schema fieldSchema = schema.getField(partitionByField).getSchema();
+    io.cdap.cdap.api.data.schema.Schema.LogicalType logicalType =
+      (fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema).getLogicalType();
+    return PartitionedRecordWriter.isSupportedType(logicalType) ? logicalType : null;
+  }
+
+  /**
+   * Wraps the record writer in a {@link DeduplicatingRecordWriter} if records of an Update or Upsert operation should
+   * be deduplicated before they are staged.
+   */
+  private static RecordWriter<StructuredRecord, NullWritable> withDeduplication(
+    Configuration configuration, RecordWriter<StructuredRecord, NullWritable> recordWriter) {
+    int dedupeBufferSize = configuration.getInt(BigQueryConstants.CONFIG_DEDUPE_BUFFER_SIZE, 0);
+    String operation = configuration.get(BigQueryConstants.CONFIG_OPERATION);
+    String tableKey = configuration.get(BigQueryConstants.CONFIG_TABLE_KEY);
+    if (dedupeBufferSize <= 0 || tableKey == null || operation == null
+      || Operation.valueOf(operation) == Operation.INSERT) {
+      return recordWriter;
+    }
+    List<String> keyFields = Arrays.stream(tableKey.split(",")).map(String::trim).collect(Collectors.toList());
+    String dedupeBy = configuration.get(BigQueryConstants.CONFIG_DEDUPE_BY);
+    List<String> orderedByList = dedupeBy == null ? Collections.emptyList() : Arrays.asList(dedupeBy.split(","));
+    return new DeduplicatingRecordWriter(recordWriter, keyFields, orderedByList, dedupeBufferSize);
+  }
+
+  /**
+   * Writes the metrics of the record writers of the task once they are closed.
+   */
+  private static class TaskMetricsRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+    private final RecordWriter<StructuredRecord, NullWritable> delegate;
+    private final Path metricsPath;
+    private final BigQuerySinkMetrics metrics;
+
+    private TaskMetricsRecordWriter(RecordWriter<StructuredRecord, NullWritable> delegate, Path metricsPath,
+                                    BigQuerySinkMetrics metrics) {
+      this.delegate = delegate;
+      this.metricsPath = metricsPath;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void write(StructuredRecord record, NullWritable value) throws IOException, InterruptedException {
+      delegate.write(record, value);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      delegate.close(context);
+      metrics.write(context.getConfiguration(), metricsPath);
+    }
   }
 
   private io.cdap.cdap.api.data.schema.Schema getOutputSchema(Configuration configuration) throws IOException {
@@ -140,6 +261,9 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
    */
   public static class BigQueryOutputCommitter extends ForwardingBigQueryFileOutputCommitter {
     private BigQueryHelper bigQueryHelper;
+    private final Configuration configuration;
+    private BigQueryJobWaiter jobWaiter;
+    private final BigQuerySinkMetrics metrics = new BigQuerySinkMetrics();
 
     private Operation operation;
     private TableReference temporaryTableReference;
@@ -147,14 +271,18 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
     private List<String> orderedByList;
     private List<String> tableFieldsList;
     private String partitionFilter;
+    // Limits the Update or Upsert query to the partitions that receive records
+    private String partitionCondition;
 
     private boolean allowSchemaRelaxation;
     private boolean allowSchemaRelaxationOnEmptyOutput;
+    private int loadJobParallelism;
 
     private static final int BQ_IMPORT_MAX_BATCH_SIZE = 10000;
 
     BigQueryOutputCommitter(TaskAttemptContext context, OutputCommitter delegate) throws IOException {
       super(context, delegate);
+      this.configuration = context.getConfiguration();
       try {
         BigQueryFactory bigQueryFactory = new BigQueryFactory();
         this.bigQueryHelper = bigQueryFactory.getBigQueryHelper(context.getConfiguration());
@@ -163,10 +291,20 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       }
     }
 
+    @Override
+    public void setupJob(JobContext jobContext) throws IOException {
+      super.setupJob(jobContext);
+      Configuration conf = jobContext.getConfiguration();
+      if (BigQueryStorageWriteUtils.getWriteMethod(conf) == WriteMethod.STORAGE_WRITE_API) {
+        createStreamTable(conf);
+      }
+    }
+
     @Override
     public void commitJob(JobContext jobContext) throws IOException {
       // CDAP-15289 - add specific error message in case of exception. This method is copied from
       // IndirectBigQueryOutputCommitter#commitJob.
+      long commitStartMillis = System.currentTimeMillis();
       super.commitJob(jobContext);
 
       // Get the destination configuration information.
@@ -183,6 +321,9 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       allowSchemaRelaxationOnEmptyOutput =
         conf.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION_ON_EMPTY_OUTPUT, false);
       LOG.debug("Allow schema relaxation: '{}'", allowSchemaRelaxation);
+      loadJobParallelism = Math.max(1, conf.getInt(BigQueryConstants.CONFIG_LOAD_JOB_PARALLELISM,
+                                                   BigQueryConstants.DEFAULT_LOAD_JOB_PARALLELISM));
+      LOG.debug("Load job parallelism: '{}'", loadJobParallelism);
       PartitionType partitionType = conf.getEnum(BigQueryConstants.CONFIG_PARTITION_TYPE, PartitionType.NONE);
       LOG.debug("Create Partitioned Table type: '{}'", partitionType);
       Range range = partitionType == PartitionType.INTEGER ? createRangeForIntegerPartitioning(conf) : null;
@@ -208,6 +349,19 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       LOG.debug("Partition filter: '{}'", partitionFilter);
       boolean tableExists = conf.getBoolean(BigQueryConstants.CONFIG_DESTINATION_TABLE_EXISTS, false);
 
+      if (BigQueryStorageWriteUtils.getWriteMethod(conf) == WriteMethod.STORAGE_WRITE_API) {
+        try {
+          commitWriteStreams(destProjectId, destTable, kmsKeyName, writeDisposition, sourceUris, tableExists, conf);
+        } catch (Exception e) {
+          throw new IOException("Failed to commit write streams into BigQuery. ", e);
+        }
+        cleanupAndStoreMetrics(jobContext, commitStartMillis);
+        return;
+      }
+
+      if (conf.get(BigQueryConstants.CONFIG_METRICS_PATH) != null) {
+        addStagedFiles(conf);
+      }
       try {
         importFromGcs(destProjectId, destTable, destSchema.orElse(null), kmsKeyName, outputFileFormat,
                       writeDisposition, sourceUris, partitionType, range, partitionByField,
@@ -216,7 +370,54 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
         throw new IOException("Failed to import GCS into BigQuery. ", e);
       }
 
+      cleanupAndStoreMetrics(jobContext, commitStartMillis);
+    }
+
+    /**
+     * Cleans up after the job. If metrics are collected, the metrics of the tasks are added to the metrics of the
+     * commit, and the result is stored for the sink, which emits them once the run has finished.
+     */
+    private void cleanupAndStoreMetrics(JobContext jobContext, long commitStartMillis) throws IOException {
+      Configuration conf = jobContext.getConfiguration();
+      String metricsPath = conf.get(BigQueryConstants.CONFIG_METRICS_PATH);
+      if (metricsPath == null) {
+        cleanup(jobContext);
+        return;
+      }
+      try {
+        // The metrics of the tasks are stored next to the staged files, which are removed during cleanup
+        Path outputPath = BigQueryOutputConfiguration.getGcsOutputPath(conf);
+        metrics.add(BigQuerySinkMetrics.readAll(
+          conf, new Path(outputPath, BigQuerySinkMetrics.TASK_METRICS_DIRECTORY)));
+      } catch (IOException e) {
+        LOG.warn("Failed to read the metrics of the tasks: {}", e.getMessage());
+      }
+      long cleanupStartMillis = System.currentTimeMillis();
       cleanup(jobContext);
+      metrics.setCleanupMillis(System.currentTimeMillis() - cleanupStartMillis);
+      metrics.setCommitMillis(System.currentTimeMillis() - commitStartMillis);
+      try {
+        metrics.write(conf, new Path(metricsPath));
+      } catch (IOException e) {
+        LOG.warn("Failed to store the metrics of the BigQuery sink at '{}': {}", metricsPath, e.getMessage());
+      }
+    }
+
+    /**
+     * Adds the number and size of the files staged by the tasks to the metrics.
+     */
+    private void addStagedFiles(Configuration conf) {
+      try {
+        Path outputPath = BigQueryOutputConfiguration.getGcsOutputPath(conf);
+        for (FileStatus file : outputPath.getFileSystem(conf).listStatus(outputPath)) {
+          // Same as the files loaded into BigQuery, see ForwardingBigQueryFileOutputCommitter#getOutputFileURIs
+          if (!file.isDirectory() && !FileOutputCommitter.SUCCEEDED_FILE_NAME.equals(file.getPath().getName())) {
+            metrics.addStagedFile(file.getLen());
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to get the size of the staged files: {}", e.getMessage());
+      }
     }
 
     private String getJobIdForImportGCS(Configuration conf) {
@@ -246,6 +447,12 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
     public void abortJob(JobContext context, JobStatus.State state) throws IOException {
       //This method is copied from IndirectBigQueryOutputCommitter#abortJob.
       super.abortJob(context, state);
+      Configuration conf = context.getConfiguration();
+      if (BigQueryStorageWriteUtils.getWriteMethod(conf) == WriteMethod.STORAGE_WRITE_API
+        && BigQueryStorageWriteUtils.useStagingTable(conf)) {
+        // Remove the staging table created in setupJob. Uncommitted write streams are discarded by BigQuery.
+        temporaryTableReference = BigQueryStorageWriteUtils.getStagingTableReference(conf, getTableReference(conf));
+      }
       cleanup(context);
     }
 
@@ -294,21 +501,7 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
         loadConfig.setSchema(schema);
       }
 
-      Map<String, String> fieldDescriptions = new HashMap<>();
-      if (JobInfo.WriteDisposition.WRITE_TRUNCATE
-        .equals(JobInfo.WriteDisposition.valueOf(writeDisposition)) && tableExists) {
-          List<TableFieldSchema> tableFieldSchemas = Optional.ofNullable(bigQueryHelper.getTable(tableRef))
-            .map(it -> it.getSchema())
-            .map(it -> it.getFields())
-            .orElse(Collections.emptyList());
-
-          tableFieldSchemas
-            .forEach(it -> {
-              if (!Strings.isNullOrEmpty(it.getDescription())) {
-                fieldDescriptions.put(it.getName(), it.getDescription());
-              }
-            });
-      }
+      Map<String, String> fieldDescriptions = getFieldDescriptions(writeDisposition, tableRef, tableExists);
 
       if (!tableExists) {
         switch (partitionType) {
@@ -369,7 +562,13 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
 
       //Depending on Operation type and no of gcs paths present , trigger suitable BQ job.
       temporaryTableReference = null;
-      if (operation.equals(Operation.INSERT) &&  gcsPaths.size() <= BQ_IMPORT_MAX_BATCH_SIZE) {
+      Map<String, List<String>> partitionPaths =
+        groupPathsByPartition(tableRef, gcsPaths, partitionType, partitionByField, tableExists, conf);
+      if (operation.equals(Operation.INSERT) && partitionPaths != null
+        && canLoadPartitions(partitionPaths, loadConfig, writeDisposition, tableExists)) {
+        // Load the files of each partition directly into the partition
+        loadPartitions(tableRef, loadConfig, partitionPaths, writeDisposition, projectId, jobId, dataset, conf);
+      } else if (operation.equals(Operation.INSERT) &&  gcsPaths.size() <= BQ_IMPORT_MAX_BATCH_SIZE) {
         // Directly load data into destination table when total no of input paths is loadable into BQ
         loadConfig.setSourceUris(gcsPaths);
         loadConfig.setWriteDisposition(writeDisposition);
@@ -386,6 +585,9 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
           handleInsertOperation(tableRef, writeDisposition, loadConfig.getDestinationEncryptionConfiguration(),
                                 projectId, jobId, dataset, tableExists);
         } else {
+          // Only merge into the partitions that receive records
+          partitionCondition = partitionPaths != null && tableExists ?
+            getPartitionCondition(tableRef, partitionByField, partitionPaths.keySet()) : null;
           handleUpdateUpsertOperation(tableRef, tableExists, kmsKeyName, getJobIdForUpdateUpsert(conf),
                                       projectId, dataset);
         }
@@ -398,6 +600,272 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
                BigQueryStrings.toString(tableRef), gcsPaths.size(), gcsPaths.isEmpty() ? "(empty)" : gcsPaths.get(0));
     }
 
+    /**
+     * Groups the staged files by the id of the daily partition whose records they contain. Returns null if the files
+     * were not staged by partition, or if the destination table is not partitioned by day on the partition field.
+     */
+    @Nullable
+    private Map<String, List<String>> groupPathsByPartition(TableReference tableRef, List<String> gcsPaths,
+                                                            PartitionType partitionType,
+                                                            @Nullable String partitionByField, boolean tableExists,
+                                                            Configuration conf) throws IOException {
+      if (!conf.getBoolean(BigQueryConstants.CONFIG_STAGE_BY_PARTITION, false)
+        || partitionType != PartitionType.TIME || partitionByField == null) {
+        return null;
+      }
+      Map<String, List<String>> partitionPaths = new TreeMap<>();
+      for (String path : gcsPaths) {
+        String partitionId = PartitionedRecordWriter.getPartitionIdOfFile(path);
+        if (partitionId == null) {
+          LOG.warn("File '{}' was not staged by partition. The files of all partitions are loaded together.", path);
+          return null;
+        }
+        partitionPaths.computeIfAbsent(partitionId, id -> new ArrayList<>()).add(path);
+      }
+      if (tableExists) {
+        TimePartitioning timePartitioning = bigQueryHelper.getTable(tableRef).getTimePartitioning();
+        if (timePartitioning == null || !"DAY".equals(timePartitioning.getType())
+          || !partitionByField.equals(timePartitioning.getField())) {
+          LOG.warn("Table '{}' is not partitioned by day on field '{}'. The files of all partitions are loaded " +
+                     "together.", BigQueryStrings.toString(tableRef), partitionByField);
+          return null;
+        }
+      }
+      return partitionPaths;
+    }
+
+    /**
+     * Returns whether the files of each partition can be loaded directly into the partition.
+     */
+    private boolean canLoadPartitions(Map<String, List<String>> partitionPaths, JobConfigurationLoad loadConfig,
+                                      String writeDisposition, boolean tableExists) {
+      if (partitionPaths.values().stream().anyMatch(paths -> paths.size() > BQ_IMPORT_MAX_BATCH_SIZE)) {
+        LOG.info("A partition has more than {} files. The files of all partitions are loaded together.",
+                 BQ_IMPORT_MAX_BATCH_SIZE);
+        return false;
+      }
+      // The table is created before the partitions are loaded, which requires the schema
+      if (!tableExists && loadConfig.getSchema() == null) {
+        return false;
+      }
+      // Records of these partitions cannot be loaded through a partition decorator, so they can only be appended
+      boolean truncate = JobInfo.WriteDisposition.WRITE_TRUNCATE
+        .equals(JobInfo.WriteDisposition.valueOf(writeDisposition));
+      if (truncate && (partitionPaths.containsKey(PartitionedRecordWriter.NULL_PARTITION)
+        || partitionPaths.containsKey(PartitionedRecordWriter.UNPARTITIONED))) {
+        LOG.info("Records with a null or out of range partition value are truncated with the whole table. The files " +
+                   "of all partitions are loaded together.");
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Loads the files of each partition into the partition with a separate load job, so that WRITE_TRUNCATE only
+     * replaces the partitions that receive records. Job ids only depend on the partition, so a retried commit fetches
+     * the jobs that were already inserted instead of loading the same files twice.
+     */
+    private void loadPartitions(TableReference tableRef, JobConfigurationLoad loadConfig,
+                                Map<String, List<String>> partitionPaths, String writeDisposition, String projectId,
+                                String jobId, Dataset dataset, Configuration conf)
+      throws IOException, InterruptedException {
+      LOG.info("Loading {} partitions into table '{}' separately", partitionPaths.size(),
+               BigQueryStrings.toString(tableRef));
+      if (!bigQueryHelper.tableExists(tableRef)) {
+        // Partition decorators can only be used with existing tables
+        Table table = new Table().setTableReference(tableRef).setSchema(loadConfig.getSchema());
+        setPartitioning(table, conf);
+        table.setEncryptionConfiguration(loadConfig.getDestinationEncryptionConfiguration());
+        bigQueryHelper.getRawBigquery().tables().insert(tableRef.getProjectId(), tableRef.getDatasetId(), table)
+          .execute();
+      }
+      loadConfig.setTimePartitioning(null);
+      loadConfig.setRangePartitioning(null);
+      loadConfig.setClustering(null);
+      if (allowSchemaRelaxation) {
+        // Schema update options can also be used with WRITE_TRUNCATE on a table partition
+        loadConfig.setSchemaUpdateOptions(Arrays.asList(
+          JobInfo.SchemaUpdateOption.ALLOW_FIELD_ADDITION.name(),
+          JobInfo.SchemaUpdateOption.ALLOW_FIELD_RELAXATION.name()));
+      }
+
+      List<Map.Entry<String, List<String>>> partitions = new ArrayList<>(partitionPaths.entrySet());
+      int firstConcurrentPartition = 0;
+      if (allowSchemaRelaxation) {
+        // The first partition is loaded on its own, so that a schema change is applied by a single job.
+        loadPartition(tableRef, loadConfig, partitions.get(0), writeDisposition, projectId, jobId, dataset);
+        firstConcurrentPartition = 1;
+      }
+      if (firstConcurrentPartition == partitions.size()) {
+        return;
+      }
+
+      int parallelism = Math.min(loadJobParallelism, partitions.size() - firstConcurrentPartition);
+      ExecutorService executor = Executors.newFixedThreadPool(
+        parallelism, new ThreadFactoryBuilder().setNameFormat("bigquery-load-job-%d").setDaemon(true).build());
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, List<String>> partition : partitions.subList(firstConcurrentPartition,
+                                                                            partitions.size())) {
+          futures.add(executor.submit(() -> {
+            loadPartition(tableRef, loadConfig, partition, writeDisposition, projectId, jobId, dataset);
+            return null;
+          }));
+        }
+        waitForBatches(futures);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    private void loadPartition(TableReference tableRef, JobConfigurationLoad loadConfig,
+                               Map.Entry<String, List<String>> partition, String writeDisposition, String projectId,
+                               String jobId, Dataset dataset) throws IOException, InterruptedException {
+      String partitionId = partition.getKey();
+      JobConfiguration config = createLoadJobConfiguration(loadConfig, partition.getValue());
+      if (PartitionedRecordWriter.NULL_PARTITION.equals(partitionId)
+        || PartitionedRecordWriter.UNPARTITIONED.equals(partitionId)) {
+        config.getLoad().setDestinationTable(tableRef)
+          .setWriteDisposition(JobInfo.WriteDisposition.WRITE_APPEND.toString());
+      } else {
+        config.getLoad().setDestinationTable(tableRef.clone().setTableId(tableRef.getTableId() + "$" + partitionId))
+          .setWriteDisposition(writeDisposition);
+      }
+      LOG.debug("Loading partition '{}' from {} paths", partitionId, partition.getValue().size());
+      triggerBigqueryJob(projectId, jobId + "_" + partitionId, dataset, config, tableRef);
+    }
+
+    /**
+     * Returns the condition that limits the rows of the destination table to the given partitions, or null if the
+     * rows cannot be limited.
+     */
+    @Nullable
+    private String getPartitionCondition(TableReference tableRef, String partitionByField,
+                                         Collection<String> partitionIds) throws IOException {
+      Table table = bigQueryHelper.getTable(tableRef);
+      if (table == null || table.getSchema() == null) {
+        return null;
+      }
+      return table.getSchema().getFields().stream()
+        .filter(field -> partitionByField.equals(field.getName()))
+        .findFirst()
+        .map(field -> BigQuerySinkUtils.generatePartitionCondition(partitionByField, field.getType(), partitionIds))
+        .orElse(null);
+    }
+
+    /**
+     * Commits the write streams created by the tasks. If the streams were written to a staging table, the records are
+     * then copied or merged into the destination table in the same way as records loaded from GCS.
+     */
+    private void commitWriteStreams(String projectId, TableReference tableRef, @Nullable String kmsKeyName,
+                                    String writeDisposition, List<String> manifestUris, boolean tableExists,
+                                    Configuration conf) throws IOException, InterruptedException {
+      List<String> streamNames = BigQueryStorageWriteUtils.readStreamManifests(conf, manifestUris);
+      boolean useStagingTable = BigQueryStorageWriteUtils.useStagingTable(conf);
+      TableReference streamTableRef = BigQueryStorageWriteUtils.getStreamTableReference(conf, tableRef);
+      // The staging table is created in setupJob, it is removed during cleanup
+      temporaryTableReference = useStagingTable ? streamTableRef : null;
+
+      LOG.info("Committing {} write streams into table '{}'",
+               streamNames.size(), BigQueryStrings.toString(streamTableRef));
+      if (streamNames.isEmpty()) {
+        return;
+      }
+
+      try (BigQueryWriteClient client = BigQueryStorageWriteUtils.getWriteClient(conf)) {
+        BatchCommitWriteStreamsResponse response = client.batchCommitWriteStreams(
+          BatchCommitWriteStreamsRequest.newBuilder()
+            .setParent(BigQueryStorageWriteUtils.getTableName(streamTableRef))
+            .addAllWriteStreams(streamNames)
+            .build());
+        // Streams are committed atomically, the commit time is only set if all of them were committed
+        if (!response.hasCommitTime()) {
+          String errors = response.getStreamErrorsList().stream()
+            .map(error -> String.format("%s: %s", error.getEntity(), error.getErrorMessage()))
+            .collect(Collectors.joining(", "));
+          throw new IOException(String.format("Failed to commit %s write streams into table '%s': %s",
+                                              streamNames.size(), BigQueryStrings.toString(streamTableRef), errors));
+        }
+      }
+
+      if (!useStagingTable) {
+        return;
+      }
+
+      Map<String, String> fieldDescriptions = getFieldDescriptions(writeDisposition, tableRef, tableExists);
+      Dataset dataset =
+        bigQueryHelper.getRawBigquery().datasets().get(tableRef.getProjectId(), tableRef.getDatasetId()).execute();
+      if (Operation.INSERT.equals(operation)) {
+        EncryptionConfiguration encryptionConfiguration = Strings.isNullOrEmpty(kmsKeyName) ? null :
+          new EncryptionConfiguration().setKmsKeyName(kmsKeyName);
+        handleInsertOperation(tableRef, writeDisposition, encryptionConfiguration, projectId,
+                              getJobIdForImportGCS(conf), dataset, tableExists);
+      } else {
+        handleUpdateUpsertOperation(tableRef, tableExists, kmsKeyName, getJobIdForUpdateUpsert(conf),
+                                    projectId, dataset);
+      }
+      updateFieldDescriptions(writeDisposition, tableRef, fieldDescriptions);
+    }
+
+    /**
+     * Creates the table the write streams append to. Write streams can only be created on existing tables, so this
+     * has to happen before any task starts.
+     */
+    private void createStreamTable(Configuration conf) throws IOException {
+      TableReference destTable = getTableReference(conf);
+      TableSchema schema = getTableSchema(conf).orElseThrow(
+        () -> new IOException("An output schema is required to write records using the Storage Write API."));
+      boolean tableExists = conf.getBoolean(BigQueryConstants.CONFIG_DESTINATION_TABLE_EXISTS, false);
+
+      Table table = new Table();
+      if (BigQueryStorageWriteUtils.useStagingTable(conf)) {
+        // Same as for load jobs, use the destination table schema if schema changes are not allowed. See PLUGIN-395
+        if (tableExists && !conf.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, false)) {
+          schema = bigQueryHelper.getTable(destTable).getSchema();
+        }
+        table.setTableReference(BigQueryStorageWriteUtils.getStagingTableReference(conf, destTable))
+          .setExpirationTime(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+      } else if (!bigQueryHelper.tableExists(destTable)) {
+        table.setTableReference(destTable);
+        setPartitioning(table, conf);
+      } else {
+        return;
+      }
+      table.setSchema(schema);
+
+      String kmsKeyName = BigQueryOutputConfiguration.getKmsKeyName(conf);
+      if (!Strings.isNullOrEmpty(kmsKeyName)) {
+        table.setEncryptionConfiguration(new EncryptionConfiguration().setKmsKeyName(kmsKeyName));
+      }
+      TableReference tableRef = table.getTableReference();
+      LOG.info("Creating table '{}' for the write streams.", BigQueryStrings.toString(tableRef));
+      bigQueryHelper.getRawBigquery().tables().insert(tableRef.getProjectId(), tableRef.getDatasetId(), table)
+        .execute();
+    }
+
+    private void setPartitioning(Table table, Configuration conf) {
+      PartitionType partitionType = conf.getEnum(BigQueryConstants.CONFIG_PARTITION_TYPE, PartitionType.NONE);
+      String partitionByField = conf.get(BigQueryConstants.CONFIG_PARTITION_BY_FIELD, null);
+      boolean requirePartitionFilter = conf.getBoolean(BigQueryConstants.CONFIG_REQUIRE_PARTITION_FILTER, false);
+      switch (partitionType) {
+        case TIME:
+          table.setTimePartitioning(createTimePartitioning(partitionByField, requirePartitionFilter));
+          break;
+        case INTEGER:
+          table.setRangePartitioning(createRangePartitioning(partitionByField,
+                                                             createRangeForIntegerPartitioning(conf)));
+          table.setRequirePartitionFilter(requirePartitionFilter);
+          break;
+        case NONE:
+          return;
+      }
+      String clusteringOrder = conf.get(BigQueryConstants.CONFIG_CLUSTERING_ORDER, null);
+      if (!Strings.isNullOrEmpty(clusteringOrder)) {
+        table.setClustering(new Clustering().setFields(
+          Arrays.stream(clusteringOrder.split(",")).map(String::trim).collect(Collectors.toList())));
+      }
+    }
+
     private void triggerBigqueryJob(String projectId, String jobId, Dataset dataset, JobConfiguration jobConfiguration,
                                     TableReference tableRef) throws IOException, InterruptedException {
 
@@ -412,7 +880,7 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       // Insert and run job.
       bigQueryHelper.insertJobOrFetchDuplicate(projectId, job);
       // Poll until job is complete.
-      waitForJobCompletion(bigQueryHelper, projectId, jobReference, tableRef, operation);
+      waitForJobCompletion(projectId, jobReference, tableRef, operation);
     }
 
     private void loadInBatchesInTempTable(TableReference tableRef, JobConfigurationLoad loadConfig,
@@ -421,8 +889,9 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
 
       LOG.info(" Importing into a temporary table first in batches of 10000");
 
-      String temporaryTableName = tableRef.getTableId() + "_"
-        + UUID.randomUUID().toString().replaceAll("-", "_");
+      // The temporary table is named after the job id, like the load jobs below, so a retried commit appends to the
+      // same table as the jobs it fetches instead of to a new, empty one.
+      String temporaryTableName = tableRef.getTableId() + "_" + jobId.replace('-', '_');
       temporaryTableReference = new TableReference()
         .setDatasetId(tableRef.getDatasetId())
         .setProjectId(tableRef.getProjectId())
@@ -434,15 +903,68 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       // Split the list of files in batches 10000 (current bq load job limit) and import /append onto a temp table
       List<List<String>> gcsPathsInBatches = Lists.partition(gcsPaths, BQ_IMPORT_MAX_BATCH_SIZE);
 
-      int jobcount = 1;
-      for (List<String> gcsPathBatch :  gcsPathsInBatches) {
-        LOG.debug(" Running for Batch {} with number of gcs paths : {}", jobcount, gcsPathBatch.size());
-        loadConfig.setSourceUris(gcsPathBatch);
-        JobConfiguration config = new JobConfiguration();
-        config.setLoad(loadConfig);
+      // The first batch creates the temporary table, so it is loaded on its own to avoid concurrent table creation.
+      LOG.debug(" Running for Batch 1 with number of gcs paths : {}", gcsPathsInBatches.get(0).size());
+      triggerBigqueryJob(projectId, jobId + "_1", dataset,
+                         createLoadJobConfiguration(loadConfig, gcsPathsInBatches.get(0)), tableRef);
+      if (gcsPathsInBatches.size() == 1) {
+        return;
+      }
 
-        triggerBigqueryJob(projectId, jobId + "_" + jobcount, dataset, config, tableRef);
-        jobcount++;
+      // Append the remaining batches concurrently. Job ids only depend on the batch number, so a retried commit
+      // fetches the jobs that were already inserted into the temporary table instead of loading the same files twice.
+      int parallelism = Math.min(loadJobParallelism, gcsPathsInBatches.size() - 1);
+      ExecutorService executor = Executors.newFixedThreadPool(
+        parallelism, new ThreadFactoryBuilder().setNameFormat("bigquery-load-job-%d").setDaemon(true).build());
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int jobcount = 2; jobcount <= gcsPathsInBatches.size(); jobcount++) {
+          List<String> gcsPathBatch = gcsPathsInBatches.get(jobcount - 1);
+          String batchJobId = jobId + "_" + jobcount;
+          LOG.debug(" Running for Batch {} with number of gcs paths : {}", jobcount, gcsPathBatch.size());
+          JobConfiguration config = createLoadJobConfiguration(loadConfig, gcsPathBatch);
+          futures.add(executor.submit(() -> {
+            triggerBigqueryJob(projectId, batchJobId, dataset, config, tableRef);
+            return null;
+          }));
+        }
+        waitForBatches(futures);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    private JobConfiguration createLoadJobConfiguration(JobConfigurationLoad loadConfig, List<String> gcsPaths) {
+      JobConfigurationLoad batchLoadConfig = loadConfig.clone();
+      batchLoadConfig.setSourceUris(gcsPaths);
+      JobConfiguration config = new JobConfiguration();
+      config.setLoad(batchLoadConfig);
+      return config;
+    }
+
+    /**
+     * Waits for all batch load jobs to finish. If any of them fails, the jobs that are still running are cancelled
+     * and the failures are reported together.
+     */
+    private static void waitForBatches(List<Future<?>> futures) throws IOException, InterruptedException {
+      IOException failure = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (failure == null) {
+            failure = cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+            futures.forEach(f -> f.cancel(true));
+          } else if (!(cause instanceof InterruptedException)) {
+            failure.addSuppressed(cause);
+          }
+        } catch (CancellationException e) {
+          // Cancelled because of an earlier failure
+        }
+      }
+      if (failure != null) {
+        throw failure;
       }
     }
 
@@ -457,84 +979,69 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
     }
 
     /**
-     * This method is copied from BigQueryUtils#waitForJobCompletion for getting useful error message.
+     * Waits for the job through the shared {@link BigQueryJobWaiter}, so that concurrently running load jobs are polled
+     * together. The error handling is copied from BigQueryUtils#waitForJobCompletion to get useful error messages.
      */
-    private static void waitForJobCompletion(BigQueryHelper bigQueryHelper, String projectId,
-                                             JobReference jobReference, TableReference tableRef,
-                                             @Nullable Operation operation) throws IOException, InterruptedException {
-
-      Bigquery bigquery = bigQueryHelper.getRawBigquery();
-      Sleeper sleeper = Sleeper.DEFAULT;
-      BackOff pollBackOff =
-        new ExponentialBackOff.Builder()
-          .setMaxIntervalMillis(BigQueryUtils.POLL_WAIT_INTERVAL_MAX_MILLIS)
-          .setInitialIntervalMillis(BigQueryUtils.POLL_WAIT_INITIAL_MILLIS)
-          .setMaxElapsedTimeMillis(BigQueryUtils.POLL_WAIT_MAX_ELAPSED_MILLIS)
-          .build();
-
-      // Get starting time.
+    private void waitForJobCompletion(String projectId, JobReference jobReference, TableReference tableRef,
+                                      @Nullable Operation operation) throws IOException, InterruptedException {
+      JobId jobId = JobId.newBuilder()
+        .setProject(projectId)
+        .setJob(jobReference.getJobId())
+        .setLocation(jobReference.getLocation())
+        .build();
       long startTime = System.currentTimeMillis();
-      long elapsedTime;
-      boolean notDone = true;
-
-      // While job is incomplete continue to poll.
-      while (notDone) {
-        BackOff operationBackOff = new ExponentialBackOff.Builder().build();
-        Bigquery.Jobs.Get get = bigquery.jobs().get(projectId, jobReference.getJobId())
-          .setLocation(jobReference.getLocation());
-
-        Job pollJob = ResilientOperation.retry(
-          ResilientOperation.getGoogleRequestCallable(get),
-          operationBackOff,
-          RetryDeterminer.RATE_LIMIT_ERRORS,
-          IOException.class,
-          sleeper);
-
-        elapsedTime = System.currentTimeMillis() - startTime;
-        LOG.debug("Job status ({} ms) {}: {}", elapsedTime, jobReference.getJobId(),
-                  pollJob.getStatus().getState());
-        if (pollJob.getStatus().getState().equals("DONE")) {
-          notDone = false;
-          if (pollJob.getStatus().getErrorResult() != null) {
-            if (Operation.UPDATE.equals(operation) && !bigQueryHelper.tableExists(tableRef)) {
-              // ignore the failure. This is because we do not want to fail the pipeline as per below discussion
-              // https://github.com/data-integrations/google-cloud/pull/290#discussion_r472405882
-              LOG.warn("BigQuery Table {} does not exist. The operation update will not write any records to the table."
-                , String.format("%s.%s.%s", tableRef.getProjectId(), tableRef.getDatasetId(), tableRef.getTableId()));
-              return;
-            }
-            List<ErrorProto> errors = pollJob.getStatus().getErrors();
-            int numOfErrors;
-            String errorMessage;
-            if (errors == null || errors.isEmpty()) {
-              errorMessage = pollJob.getStatus().getErrorResult().getMessage();
-              numOfErrors = 1;
-            } else {
-              errorMessage = errors.get(errors.size() - 1).getMessage();
-              numOfErrors = errors.size();
-            }
-            // Only add first error message in the exception. For other errors user should look at BigQuery job logs.
-            throw new IOException(String.format("Error occurred while importing data to BigQuery '%s'." +
-                                                  " There are total %s error(s) for BigQuery job %s. Please look at " +
-                                                  "BigQuery job logs for more information.",
-                                                errorMessage, numOfErrors, jobReference.getJobId()));
-          }
+      com.google.cloud.bigquery.Job pollJob;
+      try {
+        pollJob = getJobWaiter().await(jobId, BigQueryUtils.POLL_WAIT_MAX_ELAPSED_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new IOException(
+          String.format(
+            "Job %s failed to complete after %s millis.",
+            jobReference.getJobId(),
+            System.currentTimeMillis() - startTime));
+      } catch (BigQueryException e) {
+        throw new IOException(String.format("Failed to get status of BigQuery job %s: %s",
+                                            jobReference.getJobId(), e.getMessage()), e);
+      }
+      if (pollJob == null) {
+        throw new IOException(String.format("BigQuery job %s not found.", jobReference.getJobId()));
+      }
+      metrics.addJob(pollJob);
+
+      LOG.debug("Job status ({} ms) {}: {}", System.currentTimeMillis() - startTime, jobReference.getJobId(),
+                pollJob.getStatus().getState());
+      BigQueryError error = pollJob.getStatus().getError();
+      if (error != null) {
+        if (Operation.UPDATE.equals(operation) && !bigQueryHelper.tableExists(tableRef)) {
+          // ignore the failure. This is because we do not want to fail the pipeline as per below discussion
+          // https://github.com/data-integrations/google-cloud/pull/290#discussion_r472405882
+          LOG.warn("BigQuery Table {} does not exist. The operation update will not write any records to the table."
+            , String.format("%s.%s.%s", tableRef.getProjectId(), tableRef.getDatasetId(), tableRef.getTableId()));
+          return;
+        }
+        List<BigQueryError> errors = pollJob.getStatus().getExecutionErrors();
+        int numOfErrors;
+        String errorMessage;
+        if (errors == null || errors.isEmpty()) {
+          errorMessage = error.getMessage();
+          numOfErrors = 1;
         } else {
-          long millisToWait = pollBackOff.nextBackOffMillis();
-          if (millisToWait == BackOff.STOP) {
-            throw new IOException(
-              String.format(
-                "Job %s failed to complete after %s millis.",
-                jobReference.getJobId(),
-                elapsedTime));
-          }
-          // Pause execution for the configured duration before polling job status again.
-          Thread.sleep(millisToWait);
-          // Call progress to ensure task doesn't time out.
-          Progressable progressable = () -> { };
-          progressable.progress();
+          errorMessage = errors.get(errors.size() - 1).getMessage();
+          numOfErrors = errors.size();
         }
+        // Only add first error message in the exception. For other errors user should look at BigQuery job logs.
+        throw new IOException(String.format("Error occurred while importing data to BigQuery '%s'." +
+                                              " There are total %s error(s) for BigQuery job %s. Please look at " +
+                                              "BigQuery job logs for more information.",
+                                            errorMessage, numOfErrors, jobReference.getJobId()));
+      }
+    }
+
+    private synchronized BigQueryJobWaiter getJobWaiter() throws IOException {
+      if (jobWaiter == null) {
+        jobWaiter = new BigQueryJobWaiter(getBigQuery(configuration));
       }
+      return jobWaiter;
     }
 
     /**
@@ -607,7 +1114,8 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
                                                                  tableFieldsList,
                                                                  tableKeyList,
                                                                  orderedByList,
-                                                                 partitionFilter);
+                                                                 partitionFilter,
+                                                                 partitionCondition);
       LOG.info("Update/Upsert query: " + query);
 
       JobConfiguration jobConfiguration = new JobConfiguration();
@@ -652,6 +1160,26 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
       return new TableSchema().setFields(fields);
     }
 
+    private Map<String, String> getFieldDescriptions(String writeDisposition, TableReference tableRef,
+                                                     boolean tableExists) throws IOException {
+      Map<String, String> fieldDescriptions = new HashMap<>();
+      if (JobInfo.WriteDisposition.WRITE_TRUNCATE
+        .equals(JobInfo.WriteDisposition.valueOf(writeDisposition)) && tableExists) {
+          List<TableFieldSchema> tableFieldSchemas = Optional.ofNullable(bigQueryHelper.getTable(tableRef))
+            .map(it -> it.getSchema())
+            .map(it -> it.getFields())
+            .orElse(Collections.emptyList());
+
+          tableFieldSchemas
+            .forEach(it -> {
+              if (!Strings.isNullOrEmpty(it.getDescription())) {
+                fieldDescriptions.put(it.getName(), it.getDescription());
+              }
+            });
+      }
+      return fieldDescriptions;
+    }
+
     private void updateFieldDescriptions(String writeDisposition, TableReference tableRef,
                                          Map<String, String> fieldDescriptions) throws IOException {
       if (JobInfo.WriteDisposition.WRITE_TRUNCATE
@@ -682,6 +1210,12 @@ public class BigQueryOutputFormat extends ForwardingBigQueryFileOutputFormat<Str
     @Override
     protected void cleanup(JobContext context) throws IOException {
       super.cleanup(context);
+      synchronized (this) {
+        if (jobWaiter != null) {
+          jobWaiter.close();
+          jobWaiter = null;
+        }
+      }
       if (temporaryTableReference != null && bigQueryHelper.tableExists(temporaryTableReference)) {
         bigQueryHelper.getRawBigquery().tables()
           .delete(temporaryTableReference.getProjectId(),
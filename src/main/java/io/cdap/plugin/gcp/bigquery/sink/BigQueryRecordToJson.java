@@ -269,7 +269,7 @@ public final class BigQueryRecordToJson {
     return ZonedDateTime.ofInstant(instant, ZoneId.ofOffset("UTC", ZoneOffset.UTC));
   }
 
-  private static BigDecimal getDecimal(String name, byte[] value, Schema schema) {
+  static BigDecimal getDecimal(String name, byte[] value, Schema schema) {
     int scale = schema.getScale();
     // Checks from https://cloud.google.com/bigquery/docs/reference/standard-sql/data-types#numeric_types
     BigDecimal decimal = new BigDecimal(new BigInteger(value), scale);
@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
+
+import java.nio.ByteBuffer;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Util class to convert structured records into protocol buffer messages accepted by the BigQuery Storage Write API.
+ *
+ * The message descriptor is derived from the CDAP schema. Types are mapped to the wire types BigQuery accepts for the
+ * corresponding column type: DATE as days since epoch, TIMESTAMP as microseconds since epoch, and TIME, DATETIME and
+ * NUMERIC/BIGNUMERIC in their canonical string form.
+ */
+public final class BigQueryRecordToProto {
+  private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSSSSS");
+  private static final String ROW_MESSAGE_NAME = "Row";
+  private static final String NESTED_MESSAGE_PREFIX = "Struct_";
+
+  /**
+   * Builds a self-contained descriptor proto for the given record schema. Nested records are declared as nested types,
+   * so the result can be used directly as the writer schema of a write stream.
+   *
+   * @param schema record schema
+   * @return descriptor proto for the schema
+   */
+  public static DescriptorProto getDescriptorProto(Schema schema) {
+    return getDescriptorProto(ROW_MESSAGE_NAME, schema);
+  }
+
+  /**
+   * Builds a descriptor for the given record schema, which is used to build messages with {@link #convert}.
+   *
+   * @param schema record schema
+   * @return message descriptor for the schema
+   */
+  public static Descriptors.Descriptor getDescriptor(Schema schema) {
+    FileDescriptorProto fileDescriptorProto = FileDescriptorProto.newBuilder()
+      .addMessageType(getDescriptorProto(schema))
+      .build();
+    try {
+      return Descriptors.FileDescriptor.buildFrom(fileDescriptorProto, new Descriptors.FileDescriptor[0])
+        .findMessageTypeByName(ROW_MESSAGE_NAME);
+    } catch (Descriptors.DescriptorValidationException e) {
+      throw new IllegalArgumentException(
+        String.format("Unable to build a protocol buffer descriptor for schema '%s': %s", schema, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Converts a structured record into a message of the given descriptor.
+   *
+   * @param record record to convert
+   * @param descriptor descriptor built with {@link #getDescriptor} from the record schema
+   * @return protocol buffer message containing the record values
+   */
+  public static DynamicMessage convert(StructuredRecord record, Descriptors.Descriptor descriptor) {
+    DynamicMessage.Builder builder = DynamicMessage.newBuilder(descriptor);
+    for (Descriptors.FieldDescriptor fieldDescriptor : descriptor.getFields()) {
+      String name = fieldDescriptor.getName();
+      Schema.Field field = record.getSchema().getField(name);
+      if (field == null) {
+        continue;
+      }
+      Object value = record.get(name);
+      Schema fieldSchema = BigQueryUtil.getNonNullableSchema(field.getSchema());
+      if (fieldSchema.getType() == Schema.Type.ARRAY) {
+        addArray(builder, fieldDescriptor, name, value, fieldSchema);
+      } else if (value != null) {
+        builder.setField(fieldDescriptor, convertValue(fieldDescriptor, name, value, fieldSchema));
+      }
+    }
+    return builder.build();
+  }
+
+  private static DescriptorProto getDescriptorProto(String messageName, Schema schema) {
+    DescriptorProto.Builder builder = DescriptorProto.newBuilder().setName(messageName);
+    int number = 1;
+    for (Schema.Field field : Objects.requireNonNull(schema.getFields(), "Schema must have fields")) {
+      Schema fieldSchema = BigQueryUtil.getNonNullableSchema(field.getSchema());
+      FieldDescriptorProto.Label label = FieldDescriptorProto.Label.LABEL_OPTIONAL;
+      if (fieldSchema.getType() == Schema.Type.ARRAY) {
+        label = FieldDescriptorProto.Label.LABEL_REPEATED;
+        fieldSchema = BigQueryUtil.getNonNullableSchema(Objects.requireNonNull(fieldSchema.getComponentSchema()));
+      }
+
+      FieldDescriptorProto.Builder fieldBuilder = FieldDescriptorProto.newBuilder()
+        .setName(field.getName())
+        .setNumber(number++)
+        .setLabel(label);
+      if (fieldSchema.getType() == Schema.Type.RECORD) {
+        String nestedName = NESTED_MESSAGE_PREFIX + field.getName();
+        builder.addNestedType(getDescriptorProto(nestedName, fieldSchema));
+        fieldBuilder.setType(FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName(nestedName);
+      } else {
+        fieldBuilder.setType(getFieldType(field.getName(), fieldSchema));
+      }
+      builder.addField(fieldBuilder);
+    }
+    return builder.build();
+  }
+
+  private static FieldDescriptorProto.Type getFieldType(String name, Schema schema) {
+    Schema.LogicalType logicalType = schema.getLogicalType();
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          return FieldDescriptorProto.Type.TYPE_INT32;
+        case TIMESTAMP_MILLIS:
+        case TIMESTAMP_MICROS:
+          return FieldDescriptorProto.Type.TYPE_INT64;
+        case TIME_MILLIS:
+        case TIME_MICROS:
+        case DATETIME:
+        case DECIMAL:
+          return FieldDescriptorProto.Type.TYPE_STRING;
+        default:
+          throw new IllegalStateException(
+            String.format("Field '%s' is of unsupported type '%s'", name, logicalType.getToken()));
+      }
+    }
+
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+        return FieldDescriptorProto.Type.TYPE_INT64;
+      case FLOAT:
+      case DOUBLE:
+        return FieldDescriptorProto.Type.TYPE_DOUBLE;
+      case BOOLEAN:
+        return FieldDescriptorProto.Type.TYPE_BOOL;
+      case STRING:
+        return FieldDescriptorProto.Type.TYPE_STRING;
+      case BYTES:
+        return FieldDescriptorProto.Type.TYPE_BYTES;
+      default:
+        throw new IllegalStateException(String.format("Field '%s' is of unsupported type '%s'",
+                                                      name, schema.getType()));
+    }
+  }
+
+  private static void addArray(DynamicMessage.Builder builder, Descriptors.FieldDescriptor fieldDescriptor,
+                               String name, @Nullable Object value, Schema fieldSchema) {
+    // If it's a null array, handle it as an empty array
+    if (value == null) {
+      return;
+    }
+
+    Collection collection;
+    if (value instanceof Collection) {
+      collection = (Collection) value;
+    } else if (value instanceof Object[]) {
+      collection = Arrays.asList((Object[]) value);
+    } else {
+      throw new IllegalArgumentException(String.format(
+        "A value for the field '%s' is of type '%s' when it is expected to be a Collection or array.",
+        name, value.getClass().getSimpleName()));
+    }
+
+    Schema componentSchema = BigQueryUtil.getNonNullableSchema(
+      Objects.requireNonNull(fieldSchema.getComponentSchema()));
+    for (Object element : collection) {
+      // BigQuery does not allow null values in array items
+      if (element == null) {
+        throw new IllegalArgumentException(String.format("Field '%s' contains null values in its array, " +
+                                                           "which is not allowed by BigQuery.", name));
+      }
+      builder.addRepeatedField(fieldDescriptor, convertValue(fieldDescriptor, name, element, componentSchema));
+    }
+  }
+
+  private static Object convertValue(Descriptors.FieldDescriptor fieldDescriptor, String name, Object value,
+                                     Schema schema) {
+    Schema.LogicalType logicalType = schema.getLogicalType();
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          return value;
+        case TIME_MILLIS:
+          return TIME_FORMATTER.format(LocalTime.ofNanoOfDay(TimeUnit.MILLISECONDS.toNanos((Integer) value)));
+        case TIME_MICROS:
+          return TIME_FORMATTER.format(LocalTime.ofNanoOfDay(TimeUnit.MICROSECONDS.toNanos((Long) value)));
+        case TIMESTAMP_MILLIS:
+          return TimeUnit.MILLISECONDS.toMicros((Long) value);
+        case TIMESTAMP_MICROS:
+          return value;
+        case DECIMAL:
+          return BigQueryRecordToJson.getDecimal(name, (byte[]) value, schema).toPlainString();
+        case DATETIME:
+          //datetime should be already an ISO-8601 string
+          return value.toString();
+        default:
+          throw new IllegalStateException(
+            String.format("Field '%s' is of unsupported type '%s'", name, logicalType.getToken()));
+      }
+    }
+
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+        return ((Number) value).longValue();
+      case FLOAT:
+      case DOUBLE:
+        return ((Number) value).doubleValue();
+      case BOOLEAN:
+      case STRING:
+        return value instanceof CharSequence ? value.toString() : value;
+      case BYTES:
+        if (value instanceof byte[]) {
+          return ByteString.copyFrom((byte[]) value);
+        } else if (value instanceof ByteBuffer) {
+          return ByteString.copyFrom(Bytes.toBytes((ByteBuffer) value));
+        }
+        throw new IllegalStateException(String.format("Expected value of Field '%s' to be bytes but got '%s'",
+                                                      name, value.getClass().getSimpleName()));
+      case RECORD:
+        if (!(value instanceof StructuredRecord)) {
+          throw new IllegalStateException(
+            String.format("Value is of type '%s', expected type is '%s'",
+                          value.getClass().getSimpleName(), StructuredRecord.class.getSimpleName()));
+        }
+        return convert((StructuredRecord) value, fieldDescriptor.getMessageType());
+      default:
+        throw new IllegalStateException(String.format("Field '%s' is of unsupported type '%s'",
+                                                      name, schema.getType()));
+    }
+  }
+
+  private BigQueryRecordToProto() {
+    //no-op
+  }
+}
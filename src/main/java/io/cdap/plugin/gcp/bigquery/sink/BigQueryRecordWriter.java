@@ -34,32 +34,59 @@ public class BigQueryRecordWriter extends RecordWriter<StructuredRecord, NullWri
   private final RecordWriter delegate;
   private final BigQueryFileFormat fileFormat;
   private final Schema outputSchema;
+  private final BigQuerySinkMetrics metrics;
   private RecordConverter recordConverter;
 
   public BigQueryRecordWriter(RecordWriter delegate, BigQueryFileFormat fileFormat, @Nullable Schema outputSchema) {
+    this(delegate, fileFormat, outputSchema, null);
+  }
+
+  /**
+   * Creates a record writer which adds the time spent converting and writing records to the given metrics.
+   */
+  public BigQueryRecordWriter(RecordWriter delegate, BigQueryFileFormat fileFormat, @Nullable Schema outputSchema,
+                              @Nullable BigQuerySinkMetrics metrics) {
     this.delegate = delegate;
     this.fileFormat = fileFormat;
     this.outputSchema = outputSchema;
+    this.metrics = metrics;
     initRecordConverter();
   }
 
   private void initRecordConverter() {
     if (this.fileFormat == BigQueryFileFormat.NEWLINE_DELIMITED_JSON) {
-      recordConverter = new BigQueryJsonConverter();
+      recordConverter = new CompiledBigQueryJsonConverter();
       return;
     }
-    recordConverter = new BigQueryAvroConverter();
+    // The Avro writer serializes every record before the next one is converted, so the output record can be reused
+    recordConverter = new CompiledBigQueryAvroConverter(delegate instanceof AvroRecordWriter);
   }
 
   @Override
   @SuppressWarnings("unchecked")
   public void write(StructuredRecord structuredRecord, NullWritable nullWriter) throws IOException,
     InterruptedException {
-    delegate.write(recordConverter.transform(structuredRecord, outputSchema), nullWriter);
+    if (metrics == null) {
+      delegate.write(recordConverter.transform(structuredRecord, outputSchema), nullWriter);
+      return;
+    }
+    long start = System.nanoTime();
+    Object record = recordConverter.transform(structuredRecord, outputSchema);
+    long converted = System.nanoTime();
+    delegate.write(record, nullWriter);
+    metrics.addConvertNanos(converted - start);
+    metrics.addWriteNanos(System.nanoTime() - converted);
   }
 
   @Override
   public void close(TaskAttemptContext taskAttemptContext) throws IOException, InterruptedException {
+    long start = System.nanoTime();
     delegate.close(taskAttemptContext);
+    if (metrics != null) {
+      metrics.addWriteNanos(System.nanoTime() - start);
+      if (delegate instanceof AvroRecordWriter) {
+        metrics.addUploadNanos(((AvroRecordWriter) delegate).getUploadNanos());
+      }
+    }
   }
 }
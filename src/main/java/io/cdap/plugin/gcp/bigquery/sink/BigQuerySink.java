@@ -48,6 +48,7 @@ import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +83,8 @@ public final class BigQuerySink extends AbstractBigQuerySink {
   private final BigQuerySinkConfig config;
 
   private final String jobId = UUID.randomUUID().toString();
+  // Path of the file the output committer stores the metrics in, which is set when preparing the run
+  private String metricsPath;
 
   public BigQuerySink(BigQuerySinkConfig config) {
     this.config = config;
@@ -129,6 +132,8 @@ public final class BigQuerySink extends AbstractBigQuerySink {
 
     configureTable(outputSchema);
     configureBigQuerySink();
+    metricsPath = getMetricsPath(bucket, config.getTable());
+    baseConfiguration.set(BigQueryConstants.CONFIG_METRICS_PATH, metricsPath);
     initOutput(context, bigQuery, config.getReferenceName(), config.getTable(), outputSchema, bucket, collector);
     initSQLEngineOutput(context, bigQuery, config.getReferenceName(), context.getStageName(), config.getTable(),
                         outputSchema, collector);
@@ -136,6 +141,8 @@ public final class BigQuerySink extends AbstractBigQuerySink {
 
   @Override
   public void onRunFinish(boolean succeeded, BatchSinkContext context) {
+    // The metrics are stored in the temporary directory, which is deleted by the parent class
+    emitMetrics(succeeded, context);
     super.onRunFinish(succeeded, context);
 
     try {
@@ -192,6 +199,23 @@ public final class BigQuerySink extends AbstractBigQuerySink {
                                           arguments.build()));
   }
 
+  /**
+   * Emits the metrics of writing the records, which were stored by the output committer.
+   */
+  private void emitMetrics(boolean succeeded, BatchSinkContext context) {
+    if (!succeeded || metricsPath == null) {
+      return;
+    }
+    try {
+      BigQuerySinkMetrics metrics = BigQuerySinkMetrics.read(baseConfiguration, new Path(metricsPath));
+      if (metrics != null) {
+        metrics.emit(config.getTable(), context.getMetrics());
+      }
+    } catch (Exception e) {
+      LOG.warn("Exception while trying to emit the metrics of the BigQuery sink.", e);
+    }
+  }
+
   void recordMetric(boolean succeeded, BatchSinkContext context) {
     if (!succeeded) {
       return;
@@ -276,12 +300,17 @@ public final class BigQuerySink extends AbstractBigQuerySink {
       baseConfiguration.set(BigQueryConstants.CONFIG_CLUSTERING_ORDER, getConfig().getClusteringOrder());
     }
     baseConfiguration.set(BigQueryConstants.CONFIG_OPERATION, getConfig().getOperation().name());
+    baseConfiguration.setEnum(BigQueryConstants.CONFIG_WRITE_METHOD, getConfig().getWriteMethod());
     if (config.getRelationTableKey() != null) {
       baseConfiguration.set(BigQueryConstants.CONFIG_TABLE_KEY, getConfig().getRelationTableKey());
     }
     if (config.getDedupeBy() != null) {
       baseConfiguration.set(BigQueryConstants.CONFIG_DEDUPE_BY, getConfig().getDedupeBy());
     }
+    if (config.getDedupeBufferSize() != null) {
+      baseConfiguration.setInt(BigQueryConstants.CONFIG_DEDUPE_BUFFER_SIZE, getConfig().getDedupeBufferSize());
+    }
+    baseConfiguration.setBoolean(BigQueryConstants.CONFIG_STAGE_BY_PARTITION, getConfig().isStageByPartition());
     if (config.getPartitionFilter() != null) {
       baseConfiguration.set(BigQueryConstants.CONFIG_PARTITION_FILTER, getConfig().getPartitionFilter());
     }
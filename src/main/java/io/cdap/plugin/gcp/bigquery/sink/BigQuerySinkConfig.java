@@ -64,6 +64,7 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
   public static final String NAME_SCHEMA = "schema";
   public static final String NAME_TABLE_KEY = "relationTableKey";
   public static final String NAME_DEDUPE_BY = "dedupeBy";
+  public static final String NAME_DEDUPE_BUFFER_SIZE = "dedupeBufferSize";
   public static final String NAME_PARTITION_BY_FIELD = "partitionByField";
   public static final String NAME_CLUSTERING_ORDER = "clusteringOrder";
   public static final String NAME_OPERATION = "operation";
@@ -72,6 +73,8 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
   public static final String NAME_RANGE_START = "rangeStart";
   public static final String NAME_RANGE_END = "rangeEnd";
   public static final String NAME_RANGE_INTERVAL = "rangeInterval";
+  public static final String NAME_WRITE_METHOD = "writeMethod";
+  public static final String NAME_STAGE_BY_PARTITION = "stageByPartition";
 
   public static final int MAX_NUMBER_OF_COLUMNS = 4;
 
@@ -149,6 +152,14 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
     "multiple input records with the same key, the one with the largest value for 'updated_time' will be applied.")
   protected String dedupeBy;
 
+  @Name(NAME_DEDUPE_BUFFER_SIZE)
+  @Macro
+  @Nullable
+  @Description("Maximum number of keys each task keeps in memory to drop input records that are superseded by " +
+    "another input record with the same key before the records are staged for an Update or Upsert operation. The " +
+    "record that is kept is chosen in the same way as with Dedupe By. If not set, every input record is staged.")
+  protected Integer dedupeBufferSize;
+
   @Macro
   @Nullable
   @Description("Whether to create a table that requires a partition filter. This value is ignored if the table " +
@@ -170,6 +181,23 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
     "This value is ignored if operation is not UPDATE or UPSERT.")
   protected String partitionFilter;
 
+  @Name(NAME_WRITE_METHOD)
+  @Macro
+  @Nullable
+  @Description("Method used to write records to BigQuery. 'GCS' stages the records in the GCS bucket and loads " +
+    "them with load jobs. 'Storage Write API' streams the records directly into pending write streams, which are " +
+    "committed atomically when the pipeline run succeeds. Defaults to 'GCS'.")
+  protected String writeMethod;
+
+  @Name(NAME_STAGE_BY_PARTITION)
+  @Macro
+  @Nullable
+  @Description("Whether to stage the records of each daily partition in separate files when writing to a table " +
+    "that is time partitioned by a column. Records are then loaded into each partition with a separate load job, " +
+    "so that Truncate Table only replaces the partitions that receive records, and Update and Upsert operations " +
+    "only scan the partitions that receive records. Only used when records are staged in GCS.")
+  protected Boolean stageByPartition;
+
   @VisibleForTesting
   public BigQuerySinkConfig(String referenceName, String dataset, String table,
                             @Nullable String bucket, @Nullable String schema, @Nullable String partitioningType,
@@ -219,6 +247,10 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
     return Strings.isNullOrEmpty(clusteringOrder) ? null : clusteringOrder;
   }
 
+  public WriteMethod getWriteMethod() {
+    return Strings.isNullOrEmpty(writeMethod) ? WriteMethod.GCS : WriteMethod.valueOf(writeMethod.toUpperCase());
+  }
+
   public Operation getOperation() {
     return Strings.isNullOrEmpty(operation) ? Operation.INSERT : Operation.valueOf(operation.toUpperCase());
   }
@@ -233,6 +265,15 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
     return Strings.isNullOrEmpty(dedupeBy) ? null : dedupeBy;
   }
 
+  @Nullable
+  public Integer getDedupeBufferSize() {
+    return dedupeBufferSize;
+  }
+
+  public boolean isStageByPartition() {
+    return stageByPartition != null && stageByPartition;
+  }
+
   @Nullable
   public String getPartitionFilter() {
     if (Strings.isNullOrEmpty(partitionFilter)) {
@@ -294,12 +335,33 @@ public final class BigQuerySinkConfig extends AbstractBigQuerySinkConfig {
       BigQueryUtil.validateTable(table, NAME_TABLE, collector);
     }
 
+    if (!containsMacro(NAME_DEDUPE_BUFFER_SIZE) && dedupeBufferSize != null && dedupeBufferSize <= 0) {
+      collector.addFailure("Dedupe buffer size must be greater than 0.", null)
+        .withConfigProperty(NAME_DEDUPE_BUFFER_SIZE);
+    }
+
     if (getWriteDisposition().equals(JobInfo.WriteDisposition.WRITE_TRUNCATE)
       && !getOperation().equals(Operation.INSERT)) {
       collector.addFailure("Truncate must only be used with operation 'Insert'.",
                            "Set Truncate to false, or change the Operation to 'Insert'.")
         .withConfigProperty(NAME_TRUNCATE_TABLE).withConfigProperty(NAME_OPERATION);
     }
+
+    if (!containsMacro(NAME_WRITE_METHOD) && !Strings.isNullOrEmpty(writeMethod)
+      && Arrays.stream(WriteMethod.values()).noneMatch(method -> method.name().equalsIgnoreCase(writeMethod))) {
+      collector.addFailure(String.format("Write method has incorrect value '%s'.", writeMethod),
+                           String.format("Supported values are: %s.", Arrays.stream(WriteMethod.values())
+                             .map(method -> method.name().toLowerCase()).collect(Collectors.joining(", "))))
+        .withConfigProperty(NAME_WRITE_METHOD);
+    }
+
+    if (!containsMacro(NAME_STAGE_BY_PARTITION) && !containsMacro(NAME_PARTITIONING_TYPE)
+      && !containsMacro(NAME_PARTITION_BY_FIELD) && isStageByPartition()
+      && (getPartitioningType() != PartitionType.TIME || getPartitionByField() == null)) {
+      collector.addFailure("Records can only be staged by partition for tables that are time partitioned by a column.",
+                           "Set the partitioning type to 'Time' and set the partition field.")
+        .withConfigProperty(NAME_STAGE_BY_PARTITION).withConfigProperty(NAME_PARTITION_BY_FIELD);
+    }
   }
 
   /**
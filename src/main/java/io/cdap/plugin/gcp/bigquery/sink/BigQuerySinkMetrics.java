@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobConfiguration;
+import com.google.cloud.bigquery.JobStatistics;
+import com.google.gson.Gson;
+import io.cdap.cdap.api.metrics.Metrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Durations and sizes of the phases of writing records into BigQuery.
+ * <p>
+ * Record writers and the output committer do not have access to the metrics of the stage. Each task stores the
+ * metrics of its record writers next to the staged files, the output committer adds them up along with the
+ * statistics of the BigQuery jobs, and stores the result in the temporary directory of the run, from where the sink
+ * emits them once the run has finished.
+ */
+public class BigQuerySinkMetrics {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQuerySinkMetrics.class);
+  private static final Gson GSON = new Gson();
+
+  // Directory next to the staged files which contains the metrics of the tasks
+  static final String TASK_METRICS_DIRECTORY = "_metrics";
+
+  public static final String METRIC_CONVERT_MS = "bq.sink.convert.ms";
+  public static final String METRIC_WRITE_MS = "bq.sink.write.ms";
+  public static final String METRIC_UPLOAD_MS = "bq.sink.upload.ms";
+  public static final String METRIC_STAGED_BYTES = "bq.sink.staged.bytes";
+  public static final String METRIC_STAGED_FILES = "bq.sink.staged.files";
+  public static final String METRIC_LOAD_JOBS = "bq.sink.load.jobs";
+  public static final String METRIC_LOAD_MS = "bq.sink.load.ms";
+  public static final String METRIC_QUERY_JOBS = "bq.sink.query.jobs";
+  public static final String METRIC_QUERY_MS = "bq.sink.query.ms";
+  public static final String METRIC_JOB_PENDING_MS = "bq.sink.job.pending.ms";
+  public static final String METRIC_SLOT_MS = "bq.sink.slot.ms";
+  public static final String METRIC_BYTES_PROCESSED = "bq.sink.bytes.processed";
+  public static final String METRIC_BYTES_BILLED = "bq.sink.bytes.billed";
+  public static final String METRIC_COMMIT_MS = "bq.sink.commit.ms";
+  public static final String METRIC_CLEANUP_MS = "bq.sink.cleanup.ms";
+  public static final String METRIC_PEAK_OPEN_WRITERS = "bq.sink.writers.peak.open";
+  public static final String METRIC_EVICTED_WRITERS = "bq.sink.writers.evicted";
+
+  // Time spent converting records into Avro or JSON records
+  private long convertNanos;
+  // Time spent writing converted records to the staged files, which includes the upload time
+  private long writeNanos;
+  // Time spent waiting for the staged files to be written to GCS, if known
+  private long uploadNanos;
+  private long stagedBytes;
+  private long stagedFiles;
+  // Load and copy jobs
+  private long loadJobs;
+  private long loadMillis;
+  // Query jobs, which are used for Update and Upsert operations
+  private long queryJobs;
+  private long queryMillis;
+  // Time jobs spent in the queue before they started running
+  private long jobPendingMillis;
+  private long slotMillis;
+  private long bytesProcessed;
+  private long bytesBilled;
+  private long commitMillis;
+  private long cleanupMillis;
+  // Highest number of record writers a task of a multi table sink kept open at the same time
+  private long peakOpenWriters;
+  // Record writers closed by multi table sinks to stay within the maximum number of open writers
+  private long evictedWriters;
+
+  public void addConvertNanos(long nanos) {
+    convertNanos += nanos;
+  }
+
+  public void addWriteNanos(long nanos) {
+    writeNanos += nanos;
+  }
+
+  public void addUploadNanos(long nanos) {
+    uploadNanos += nanos;
+  }
+
+  public void addStagedFile(long bytes) {
+    stagedFiles++;
+    stagedBytes += bytes;
+  }
+
+  public void setCommitMillis(long commitMillis) {
+    this.commitMillis = commitMillis;
+  }
+
+  public void setCleanupMillis(long cleanupMillis) {
+    this.cleanupMillis = cleanupMillis;
+  }
+
+  public void updatePeakOpenWriters(long openWriters) {
+    peakOpenWriters = Math.max(peakOpenWriters, openWriters);
+  }
+
+  public void addEvictedWriter() {
+    evictedWriters++;
+  }
+
+  public long getPeakOpenWriters() {
+    return peakOpenWriters;
+  }
+
+  public long getEvictedWriters() {
+    return evictedWriters;
+  }
+
+  public long getStagedBytes() {
+    return stagedBytes;
+  }
+
+  public long getLoadJobs() {
+    return loadJobs;
+  }
+
+  public long getQueryJobs() {
+    return queryJobs;
+  }
+
+  public long getSlotMillis() {
+    return slotMillis;
+  }
+
+  /**
+   * Adds the statistics of a completed BigQuery job. Jobs may complete concurrently, so this method is synchronized.
+   */
+  public synchronized void addJob(Job job) {
+    JobStatistics statistics = job.getStatistics();
+    if (statistics == null) {
+      return;
+    }
+    long runningMillis = getDuration(statistics.getStartTime(), statistics.getEndTime());
+    jobPendingMillis += getDuration(statistics.getCreationTime(), statistics.getStartTime());
+    if (job.getConfiguration() != null && job.getConfiguration().getType() == JobConfiguration.Type.QUERY) {
+      queryJobs++;
+      queryMillis += runningMillis;
+    } else {
+      loadJobs++;
+      loadMillis += runningMillis;
+    }
+    if (statistics instanceof JobStatistics.QueryStatistics) {
+      JobStatistics.QueryStatistics queryStatistics = (JobStatistics.QueryStatistics) statistics;
+      slotMillis += orZero(queryStatistics.getTotalSlotMs());
+      bytesProcessed += orZero(queryStatistics.getTotalBytesProcessed());
+      bytesBilled += orZero(queryStatistics.getTotalBytesBilled());
+    }
+  }
+
+  /**
+   * Adds the metrics of the given instance to this instance.
+   */
+  public synchronized void add(BigQuerySinkMetrics other) {
+    convertNanos += other.convertNanos;
+    writeNanos += other.writeNanos;
+    uploadNanos += other.uploadNanos;
+    stagedBytes += other.stagedBytes;
+    stagedFiles += other.stagedFiles;
+    loadJobs += other.loadJobs;
+    loadMillis += other.loadMillis;
+    queryJobs += other.queryJobs;
+    queryMillis += other.queryMillis;
+    jobPendingMillis += other.jobPendingMillis;
+    slotMillis += other.slotMillis;
+    bytesProcessed += other.bytesProcessed;
+    bytesBilled += other.bytesBilled;
+    commitMillis += other.commitMillis;
+    cleanupMillis += other.cleanupMillis;
+    peakOpenWriters = Math.max(peakOpenWriters, other.peakOpenWriters);
+    evictedWriters += other.evictedWriters;
+  }
+
+  /**
+   * Logs the metrics and emits them through the given stage metrics.
+   *
+   * @param tableName name of the table the metrics belong to
+   * @param metrics stage metrics
+   */
+  public void emit(String tableName, Metrics metrics) {
+    LOG.info("Metrics for writing into table {}:\n" +
+               " Convert time: {} ms ,\n" +
+               " Write time: {} ms ,\n" +
+               " Upload time: {} ms ,\n" +
+               " Staged files: {} ,\n" +
+               " Staged bytes: {} ,\n" +
+               " Load jobs: {} ,\n" +
+               " Load time: {} ms ,\n" +
+               " Query jobs: {} ,\n" +
+               " Query time: {} ms ,\n" +
+               " Job pending time: {} ms ,\n" +
+               " Total Slot ms: {} ,\n" +
+               " Processed Bytes: {} ,\n" +
+               " Billed Bytes: {} ,\n" +
+               " Commit time: {} ms ,\n" +
+               " Cleanup time: {} ms",
+             tableName, TimeUnit.NANOSECONDS.toMillis(convertNanos), TimeUnit.NANOSECONDS.toMillis(writeNanos),
+             TimeUnit.NANOSECONDS.toMillis(uploadNanos), stagedFiles, stagedBytes, loadJobs, loadMillis, queryJobs,
+             queryMillis, jobPendingMillis, slotMillis, bytesProcessed, bytesBilled, commitMillis, cleanupMillis);
+
+    metrics.countLong(METRIC_CONVERT_MS, TimeUnit.NANOSECONDS.toMillis(convertNanos));
+    metrics.countLong(METRIC_WRITE_MS, TimeUnit.NANOSECONDS.toMillis(writeNanos));
+    metrics.countLong(METRIC_UPLOAD_MS, TimeUnit.NANOSECONDS.toMillis(uploadNanos));
+    metrics.countLong(METRIC_STAGED_FILES, stagedFiles);
+    metrics.countLong(METRIC_STAGED_BYTES, stagedBytes);
+    metrics.countLong(METRIC_LOAD_JOBS, loadJobs);
+    metrics.countLong(METRIC_LOAD_MS, loadMillis);
+    metrics.countLong(METRIC_QUERY_JOBS, queryJobs);
+    metrics.countLong(METRIC_QUERY_MS, queryMillis);
+    metrics.countLong(METRIC_JOB_PENDING_MS, jobPendingMillis);
+    metrics.countLong(METRIC_SLOT_MS, slotMillis);
+    metrics.countLong(METRIC_BYTES_PROCESSED, bytesProcessed);
+    metrics.countLong(METRIC_BYTES_BILLED, bytesBilled);
+    metrics.countLong(METRIC_COMMIT_MS, commitMillis);
+    metrics.countLong(METRIC_CLEANUP_MS, cleanupMillis);
+  }
+
+  /**
+   * Logs the metrics of the record writers of a multi table sink and emits them through the given stage metrics.
+   *
+   * @param metrics stage metrics
+   */
+  public void emitWriters(Metrics metrics) {
+    LOG.info("Metrics for the record writers of the multi table sink:\n" +
+               " Peak open writers: {} ,\n" +
+               " Evicted writers: {}",
+             peakOpenWriters, evictedWriters);
+
+    metrics.gauge(METRIC_PEAK_OPEN_WRITERS, peakOpenWriters);
+    metrics.countLong(METRIC_EVICTED_WRITERS, evictedWriters);
+  }
+
+  /**
+   * Writes the metrics to the given file, replacing the file if it exists.
+   */
+  public void write(Configuration conf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    try (FSDataOutputStream out = fs.create(path, true);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      GSON.toJson(this, writer);
+    }
+  }
+
+  /**
+   * Reads the metrics from the given file.
+   *
+   * @return the metrics, or null if the file does not exist
+   */
+  @Nullable
+  public static BigQuerySinkMetrics read(Configuration conf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    try (FSDataInputStream in = fs.open(path);
+         Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, BigQuerySinkMetrics.class);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds up the metrics of all files in the given directory.
+   *
+   * @return the sum of the metrics, which is empty if the directory does not exist
+   */
+  public static BigQuerySinkMetrics readAll(Configuration conf, Path directory) throws IOException {
+    BigQuerySinkMetrics metrics = new BigQuerySinkMetrics();
+    FileStatus[] files;
+    try {
+      files = directory.getFileSystem(conf).listStatus(directory);
+    } catch (FileNotFoundException e) {
+      return metrics;
+    }
+    for (FileStatus file : files) {
+      BigQuerySinkMetrics fileMetrics = read(conf, file.getPath());
+      if (fileMetrics != null) {
+        metrics.add(fileMetrics);
+      }
+    }
+    return metrics;
+  }
+
+  private static long getDuration(@Nullable Long startMillis, @Nullable Long endMillis) {
+    return startMillis == null || endMillis == null ? 0 : Math.max(0, endMillis - startMillis);
+  }
+
+  private static long orZero(@Nullable Long value) {
+    return value == null ? 0 : value;
+  }
+}
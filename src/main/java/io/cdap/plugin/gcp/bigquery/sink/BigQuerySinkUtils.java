@@ -35,6 +35,7 @@ import com.google.cloud.kms.v1.CryptoKeyName;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
+import com.google.common.base.Strings;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import io.cdap.cdap.api.data.schema.Schema;
@@ -49,12 +50,14 @@ import io.cdap.plugin.gcp.common.GCPUtils;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -76,9 +79,13 @@ public final class BigQuerySinkUtils {
 
   public static final String GS_PATH_FORMAT = "gs://%s/%s";
   private static final String TEMPORARY_BUCKET_FORMAT = GS_PATH_FORMAT + "/input/%s-%s";
-  private static final String DATETIME = "DATETIME";
-  private static final String RECORD = "RECORD";
+  private static final String STAGING_FORMAT_AVRO = "avro";
+  private static final String STAGING_FORMAT_JSON = "json";
+  // Configuration key of the base name of files created through FileOutputFormat#getDefaultWorkFile
+  private static final String BASE_OUTPUT_NAME = "mapreduce.output.basename";
   private static final Gson GSON = new Gson();
+  // Avro does not accept sync intervals of more than 1 GB
+  private static final int MAX_AVRO_BLOCK_SIZE_KB = 1024 * 1024;
   private static final Type LIST_OF_FIELD_TYPE = new TypeToken<ArrayList<Field>>() { }.getType();
 
   // Fields used to build update/upsert queries
@@ -271,7 +278,10 @@ public final class BigQuerySinkUtils {
       outputTableSchema.setFields(fields);
     }
 
-    BigQueryFileFormat fileFormat = getFileFormat(fields);
+    // Avro is used unless JSON is configured. DATETIME fields are staged as Avro strings annotated with the datetime
+    // logical type, which the load job maps to DATETIME columns since it uses Avro logical types.
+    BigQueryFileFormat fileFormat = configuration.getEnum(BigQueryConstants.CONFIG_STAGING_FILE_FORMAT,
+                                                          BigQueryFileFormat.AVRO);
     BigQueryOutputConfiguration.configure(
       configuration,
       String.format("%s:%s.%s", datasetId.getProject(), datasetId.getDataset(), tableName),
@@ -306,6 +316,102 @@ public final class BigQuerySinkUtils {
     configuration.set(BigQueryConstants.CONFIG_OPERATION, Operation.INSERT.name());
   }
 
+  /**
+   * Sets the base name of the files staged by the record writers created after this call.
+   *
+   * @param configuration Hadoop configuration instance
+   * @param outputName base name of the staged files
+   */
+  public static void setOutputName(Configuration configuration, String outputName) {
+    configuration.set(BASE_OUTPUT_NAME, outputName);
+    configuration.set(AvroOutputFormat.NAMED_OUTPUT, outputName);
+  }
+
+  /**
+   * Configures the compression codec and block size of the Avro files staged in GCS.
+   *
+   * @param configuration Hadoop configuration instance
+   * @param codec compression codec of the Avro blocks
+   * @param blockSizeKB uncompressed size of the Avro blocks in kilobytes, or null to use the Avro default
+   */
+  public static void configureAvroStaging(Configuration configuration, AvroCodec codec,
+                                          @Nullable Integer blockSizeKB) {
+    configuration.set(BigQueryConstants.CONFIG_AVRO_CODEC, codec.getAvroName());
+    if (blockSizeKB != null) {
+      configuration.setInt(BigQueryConstants.CONFIG_AVRO_SYNC_INTERVAL, blockSizeKB * 1024);
+    }
+  }
+
+  /**
+   * Returns the Avro codec with the given name, or {@link AvroCodec#NONE} if no codec is set.
+   */
+  public static AvroCodec getAvroCodec(@Nullable String codec) {
+    return Strings.isNullOrEmpty(codec) ? AvroCodec.NONE : AvroCodec.valueOf(codec.toUpperCase());
+  }
+
+  /**
+   * Validates the Avro staging codec and block size.
+   *
+   * @param codec name of the codec
+   * @param codecPropertyName name of the codec property
+   * @param blockSizeKB block size in kilobytes
+   * @param blockSizePropertyName name of the block size property
+   * @param collector failure collector
+   */
+  public static void validateAvroStaging(@Nullable String codec, String codecPropertyName,
+                                         @Nullable Integer blockSizeKB, String blockSizePropertyName,
+                                         FailureCollector collector) {
+    if (!Strings.isNullOrEmpty(codec)
+      && Arrays.stream(AvroCodec.values()).noneMatch(value -> value.name().equalsIgnoreCase(codec))) {
+      collector.addFailure(String.format("Compression codec has incorrect value '%s'.", codec),
+                           String.format("Supported values are %s.", Arrays.stream(AvroCodec.values())
+                             .map(value -> value.name().toLowerCase()).collect(Collectors.joining(", "))))
+        .withConfigProperty(codecPropertyName);
+    }
+    if (blockSizeKB != null && (blockSizeKB < 1 || blockSizeKB > MAX_AVRO_BLOCK_SIZE_KB)) {
+      collector.addFailure(String.format("Block size must be between 1 and %d KB.", MAX_AVRO_BLOCK_SIZE_KB), null)
+        .withConfigProperty(blockSizePropertyName);
+    }
+  }
+
+  /**
+   * Returns the format of the files staged in the temporary bucket.
+   *
+   * @param format name of the format, either 'avro' or 'json'
+   * @return the file format, Avro if no format is given
+   */
+  public static BigQueryFileFormat getStagingFileFormat(@Nullable String format) {
+    return STAGING_FORMAT_JSON.equalsIgnoreCase(format) ?
+      BigQueryFileFormat.NEWLINE_DELIMITED_JSON : BigQueryFileFormat.AVRO;
+  }
+
+  /**
+   * Validates the format of the staging files. Compression only applies to Avro staging files.
+   *
+   * @param format name of the format
+   * @param formatPropertyName name of the format property
+   * @param codec name of the Avro codec
+   * @param codecPropertyName name of the codec property
+   * @param collector failure collector
+   */
+  public static void validateStagingFileFormat(@Nullable String format, String formatPropertyName,
+                                               @Nullable String codec, String codecPropertyName,
+                                               FailureCollector collector) {
+    if (Strings.isNullOrEmpty(format)) {
+      return;
+    }
+    if (!STAGING_FORMAT_AVRO.equalsIgnoreCase(format) && !STAGING_FORMAT_JSON.equalsIgnoreCase(format)) {
+      collector.addFailure(String.format("Staging file format has incorrect value '%s'.", format),
+                           String.format("Supported values are %s and %s.", STAGING_FORMAT_AVRO, STAGING_FORMAT_JSON))
+        .withConfigProperty(formatPropertyName);
+    } else if (getStagingFileFormat(format) == BigQueryFileFormat.NEWLINE_DELIMITED_JSON
+      && getAvroCodec(codec) != AvroCodec.NONE) {
+      collector.addFailure("Compression is only supported for Avro staging files.",
+                           "Set the compression to 'none' or use the Avro staging file format.")
+        .withConfigProperty(codecPropertyName);
+    }
+  }
+
   public static String getTemporaryGcsPath(String bucket, String pathPrefix, String tableName) {
     return String.format(TEMPORARY_BUCKET_FORMAT, bucket, pathPrefix, tableName, pathPrefix);
   }
@@ -540,24 +646,9 @@ public final class BigQuerySinkUtils {
     }
   }
 
-  private static BigQueryFileFormat getFileFormat(List<BigQueryTableFieldSchema> fields) {
-    for (BigQueryTableFieldSchema field : fields) {
-      if (DATETIME.equals(field.getType())) {
-        return BigQueryFileFormat.NEWLINE_DELIMITED_JSON;
-      }
-      // If the field is a record we have to check its subfields.
-      if (RECORD.equals(field.getType())) {
-        if (getFileFormat(field.getFields()) == BigQueryFileFormat.NEWLINE_DELIMITED_JSON) {
-          return BigQueryFileFormat.NEWLINE_DELIMITED_JSON;
-        }
-      }
-    }
-    return BigQueryFileFormat.AVRO;
-  }
-
   private static Class<? extends FileOutputFormat> getOutputFormat(BigQueryFileFormat fileFormat) {
     if (fileFormat == BigQueryFileFormat.NEWLINE_DELIMITED_JSON) {
-      return TextOutputFormat.class;
+      return JsonOutputFormat.class;
     }
     return AvroOutputFormat.class;
   }
@@ -569,6 +660,24 @@ public final class BigQuerySinkUtils {
                                                  List<String> tableKeyList,
                                                  List<String> orderedByList,
                                                  String partitionFilter) {
+    return generateUpdateUpsertQuery(operation, sourceTableId, destinationTableId, tableFieldsList, tableKeyList,
+                                     orderedByList, partitionFilter, null);
+  }
+
+  /**
+   * Generates the Update or Upsert query.
+   *
+   * @param partitionCondition condition on the rows of the destination table, referenced as 'T', which limits the
+   *                           query to the partitions that receive records
+   */
+  public static String generateUpdateUpsertQuery(Operation operation,
+                                                 TableId sourceTableId,
+                                                 TableId destinationTableId,
+                                                 List<String> tableFieldsList,
+                                                 List<String> tableKeyList,
+                                                 List<String> orderedByList,
+                                                 @Nullable String partitionFilter,
+                                                 @Nullable String partitionCondition) {
 
     String source = String.format("`%s.%s.%s`",
                                   sourceTableId.getProject(),
@@ -583,6 +692,7 @@ public final class BigQuerySinkUtils {
       .collect(Collectors.joining(" AND "));
     criteria = partitionFilter != null ? String.format("(%s) AND %s",
                                                        formatPartitionFilter(partitionFilter), criteria) : criteria;
+    criteria = partitionCondition != null ? String.format("%s AND %s", partitionCondition, criteria) : criteria;
     String fieldsForUpdate = tableFieldsList.stream().filter(s -> !tableKeyList.contains(s))
       .map(s -> String.format(CRITERIA_TEMPLATE, s, s)).collect(Collectors.joining(", "));
 
@@ -605,6 +715,52 @@ public final class BigQuerySinkUtils {
     }
   }
 
+  /**
+   * Generates the condition which limits the rows of the destination table, referenced as 'T', to the given daily
+   * partitions.
+   *
+   * @param partitionField field the table is partitioned by
+   * @param fieldType BigQuery type of the partition field
+   * @param partitionIds ids of the partitions, as returned by {@link PartitionedRecordWriter#getPartitionId}
+   * @return the condition, or null if rows of the partitions cannot be selected by their partition field
+   */
+  @Nullable
+  public static String generatePartitionCondition(String partitionField, String fieldType,
+                                                  Collection<String> partitionIds) {
+    if (partitionIds.isEmpty() || partitionIds.contains(PartitionedRecordWriter.UNPARTITIONED)) {
+      return null;
+    }
+    String field = String.format("T.`%s`", partitionField);
+    List<LocalDate> dates = partitionIds.stream()
+      .filter(id -> !PartitionedRecordWriter.NULL_PARTITION.equals(id))
+      .map(id -> LocalDate.parse(id, DateTimeFormatter.BASIC_ISO_DATE))
+      .sorted()
+      .collect(Collectors.toList());
+    List<String> conditions = new ArrayList<>();
+    switch (fieldType) {
+      case "DATE":
+        if (!dates.isEmpty()) {
+          conditions.add(dates.stream().map(date -> String.format("DATE '%s'", date))
+                           .collect(Collectors.joining(", ", field + " IN (", ")")));
+        }
+        break;
+      case "TIMESTAMP":
+      case "DATETIME":
+        // Ranges allow BigQuery to prune the partitions of timestamp columns
+        for (LocalDate date : dates) {
+          conditions.add(String.format("(%s >= %s '%s' AND %s < %s '%s')",
+                                       field, fieldType, date, field, fieldType, date.plusDays(1)));
+        }
+        break;
+      default:
+        return null;
+    }
+    if (partitionIds.contains(PartitionedRecordWriter.NULL_PARTITION)) {
+      conditions.add(field + " IS NULL");
+    }
+    return String.format("(%s)", String.join(" OR ", conditions));
+  }
+
   private static String formatPartitionFilter(String partitionFilter) {
     String[] queryWords = partitionFilter.split(" ");
     int index = 0;
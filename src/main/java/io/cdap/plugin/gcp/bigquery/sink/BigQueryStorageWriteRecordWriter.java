@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.services.bigquery.model.TableReference;
+import com.google.cloud.bigquery.storage.v1.AppendRowsResponse;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
+import com.google.cloud.bigquery.storage.v1.CreateWriteStreamRequest;
+import com.google.cloud.bigquery.storage.v1.ProtoRows;
+import com.google.cloud.bigquery.storage.v1.ProtoSchema;
+import com.google.cloud.bigquery.storage.v1.StreamWriter;
+import com.google.cloud.bigquery.storage.v1.WriteStream;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+
+/**
+ * Record writer that appends records to a pending BigQuery write stream.
+ *
+ * Records are only visible in the table once the stream is committed by
+ * {@link BigQueryOutputFormat.BigQueryOutputCommitter}. When the writer is closed the stream is finalized and its name
+ * is written to a manifest file in the task work directory, so it only becomes part of the job output if the task
+ * attempt is committed.
+ */
+public class BigQueryStorageWriteRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryStorageWriteRecordWriter.class);
+  // Append requests are limited to 10MB, keep well below it to leave room for the request overhead
+  static final long MAX_BATCH_BYTES = 5L * 1024 * 1024;
+
+  private final Configuration configuration;
+  private final TableReference tableReference;
+  private final Path manifest;
+  private final Schema schema;
+  private final Deque<ApiFuture<AppendRowsResponse>> pendingAppends;
+
+  private BigQueryWriteClient client;
+  private StreamWriter streamWriter;
+  private String streamName;
+  private Descriptors.Descriptor descriptor;
+  private ProtoRows.Builder rows;
+  private long batchBytes;
+  private long offset;
+
+  BigQueryStorageWriteRecordWriter(TaskAttemptContext context, TableReference tableReference, Path manifest,
+                                   @Nullable Schema schema) {
+    this.configuration = context.getConfiguration();
+    this.tableReference = tableReference;
+    this.manifest = manifest;
+    this.schema = schema;
+    this.pendingAppends = new ArrayDeque<>();
+    this.rows = ProtoRows.newBuilder();
+  }
+
+  @Override
+  public void write(StructuredRecord record, NullWritable value) throws IOException {
+    if (streamWriter == null) {
+      // Create the stream lazily, so that tasks without records don't create empty streams
+      open(schema == null ? record.getSchema() : schema);
+    }
+    ByteString row = BigQueryRecordToProto.convert(record, descriptor).toByteString();
+    if (batchBytes + row.size() > MAX_BATCH_BYTES) {
+      flush();
+    }
+    rows.addSerializedRows(row);
+    batchBytes += row.size();
+  }
+
+  @Override
+  public void close(TaskAttemptContext context) throws IOException {
+    if (streamWriter == null) {
+      return;
+    }
+    try {
+      try {
+        flush();
+        while (!pendingAppends.isEmpty()) {
+          checkAppend(pendingAppends.poll());
+        }
+      } finally {
+        // Closing the writer waits for the appends which are still in flight when one of them failed
+        streamWriter.close();
+      }
+      long rowCount = client.finalizeWriteStream(streamName).getRowCount();
+      LOG.debug("Finalized write stream '{}' with {} rows.", streamName, rowCount);
+      BigQueryStorageWriteUtils.writeStreamManifest(configuration, manifest, streamName);
+    } finally {
+      client.close();
+    }
+  }
+
+  private void open(Schema recordSchema) throws IOException {
+    descriptor = BigQueryRecordToProto.getDescriptor(recordSchema);
+    client = BigQueryStorageWriteUtils.getWriteClient(configuration);
+    WriteStream writeStream = client.createWriteStream(
+      CreateWriteStreamRequest.newBuilder()
+        .setParent(BigQueryStorageWriteUtils.getTableName(tableReference))
+        .setWriteStream(WriteStream.newBuilder().setType(WriteStream.Type.PENDING).build())
+        .build());
+    streamName = writeStream.getName();
+    ProtoSchema protoSchema = ProtoSchema.newBuilder()
+      .setProtoDescriptor(BigQueryRecordToProto.getDescriptorProto(recordSchema))
+      .build();
+    streamWriter = StreamWriter.newBuilder(streamName, client).setWriterSchema(protoSchema).build();
+    LOG.debug("Created pending write stream '{}'.", streamName);
+  }
+
+  private void flush() throws IOException {
+    if (rows.getSerializedRowsCount() == 0) {
+      return;
+    }
+    int rowCount = rows.getSerializedRowsCount();
+    // Explicit offsets make retried appends idempotent
+    pendingAppends.add(streamWriter.append(rows.build(), offset));
+    offset += rowCount;
+    rows = ProtoRows.newBuilder();
+    batchBytes = 0;
+
+    // Surface failures early and release responses of appends that already completed
+    while (!pendingAppends.isEmpty() && pendingAppends.peek().isDone()) {
+      checkAppend(pendingAppends.poll());
+    }
+  }
+
+  private void checkAppend(ApiFuture<AppendRowsResponse> append) throws IOException {
+    AppendRowsResponse response;
+    try {
+      response = append.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(String.format("Interrupted while appending rows to write stream '%s'.", streamName), e);
+    } catch (ExecutionException e) {
+      throw new IOException(String.format("Failed to append rows to write stream '%s': %s",
+                                          streamName, e.getCause().getMessage()), e.getCause());
+    }
+    if (response.hasError()) {
+      throw new IOException(String.format("Failed to append rows to write stream '%s': %s",
+                                          streamName, response.getError().getMessage()));
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.services.bigquery.model.TableReference;
+import com.google.cloud.bigquery.JobInfo;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteSettings;
+import com.google.cloud.bigquery.storage.v1.TableName;
+import com.google.cloud.hadoop.io.bigquery.output.BigQueryOutputConfiguration;
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import io.cdap.plugin.gcp.common.GCPUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods shared by the Storage Write API record writer and the {@link BigQueryOutputFormat} committer.
+ *
+ * Each task appends its records to a pending write stream. When the task finishes, the name of the finalized stream is
+ * written to a small manifest file in the task output directory, so the regular task commit protocol decides which
+ * streams are part of the job output. The committer then reads all manifests and commits the streams atomically.
+ */
+public final class BigQueryStorageWriteUtils {
+  public static final String STREAM_MANIFEST_EXTENSION = ".stream";
+  private static final String STAGING_TABLE_FORMAT = "%s_%s";
+
+  // Creates the Storage Write API clients, tests replace it to connect to a stand-in of the API
+  @VisibleForTesting
+  static WriteClientFactory writeClientFactory =
+    conf -> BigQueryWriteClient.create(
+      BigQueryWriteSettings.newBuilder()
+        .setCredentialsProvider(FixedCredentialsProvider.create(GCPUtils.loadCredentialsFromConf(conf)))
+        .build());
+
+  /**
+   * Creates the Storage Write API clients of the record writers and of the committer.
+   */
+  interface WriteClientFactory {
+
+    /**
+     * Creates a client. Closing the client releases the channel it uses.
+     */
+    BigQueryWriteClient create(Configuration conf) throws IOException;
+  }
+
+  /**
+   * @return write method configured for the output
+   */
+  public static WriteMethod getWriteMethod(Configuration conf) {
+    return conf.getEnum(BigQueryConstants.CONFIG_WRITE_METHOD, WriteMethod.GCS);
+  }
+
+  /**
+   * Returns true if the write streams must target a staging table instead of the destination table. This is the case
+   * whenever records need to be processed by a copy or a query job after they are committed: update and upsert
+   * operations, truncating an existing table, or relaxing the schema of an existing table.
+   */
+  public static boolean useStagingTable(Configuration conf) {
+    Operation operation = Operation.valueOf(conf.get(BigQueryConstants.CONFIG_OPERATION, Operation.INSERT.name()));
+    boolean tableExists = conf.getBoolean(BigQueryConstants.CONFIG_DESTINATION_TABLE_EXISTS, false);
+    if (Operation.UPDATE.equals(operation) || (Operation.UPSERT.equals(operation) && tableExists)) {
+      return true;
+    }
+    boolean truncate = JobInfo.WriteDisposition.WRITE_TRUNCATE.name()
+      .equals(BigQueryOutputConfiguration.getWriteDisposition(conf));
+    boolean allowSchemaRelaxation = conf.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, false);
+    return tableExists && (truncate || allowSchemaRelaxation);
+  }
+
+  /**
+   * Returns the staging table used by the write streams. The name is derived from the job id of the sink, so it can be
+   * computed independently by the driver and by every task.
+   */
+  public static TableReference getStagingTableReference(Configuration conf, TableReference destinationTable) {
+    String jobId = conf.get(BigQueryConstants.CONFIG_JOB_ID, "");
+    return new TableReference()
+      .setProjectId(destinationTable.getProjectId())
+      .setDatasetId(destinationTable.getDatasetId())
+      .setTableId(String.format(STAGING_TABLE_FORMAT, destinationTable.getTableId(), jobId.replace('-', '_')));
+  }
+
+  /**
+   * @return table the write streams of the given output append to
+   */
+  public static TableReference getStreamTableReference(Configuration conf,
+                                                       TableReference destinationTable) {
+    return useStagingTable(conf) ? getStagingTableReference(conf, destinationTable) : destinationTable;
+  }
+
+  /**
+   * @return Storage Write API resource name of the table
+   */
+  public static String getTableName(TableReference tableReference) {
+    return TableName.of(tableReference.getProjectId(), tableReference.getDatasetId(), tableReference.getTableId())
+      .toString();
+  }
+
+  /**
+   * Creates a Storage Write API client with the credentials of the output.
+   */
+  public static BigQueryWriteClient getWriteClient(Configuration conf) throws IOException {
+    return writeClientFactory.create(conf);
+  }
+
+  /**
+   * Writes the name of a finalized write stream into a manifest file.
+   */
+  public static void writeStreamManifest(Configuration conf, Path manifest, String streamName) throws IOException {
+    FileSystem fs = manifest.getFileSystem(conf);
+    try (FSDataOutputStream outputStream = fs.create(manifest, false)) {
+      outputStream.write(streamName.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Reads the names of the write streams contained in the given manifest files. Files with other extensions are
+   * ignored.
+   */
+  public static List<String> readStreamManifests(Configuration conf, List<String> uris) throws IOException {
+    List<String> streamNames = new ArrayList<>();
+    for (String uri : uris) {
+      if (!uri.endsWith(STREAM_MANIFEST_EXTENSION)) {
+        continue;
+      }
+      Path manifest = new Path(uri);
+      FileSystem fs = manifest.getFileSystem(conf);
+      try (FSDataInputStream inputStream = fs.open(manifest);
+           BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.trim().isEmpty()) {
+            streamNames.add(line.trim());
+          }
+        }
+      }
+    }
+    return streamNames;
+  }
+
+  private BigQueryStorageWriteUtils() {
+    //no-op
+  }
+}
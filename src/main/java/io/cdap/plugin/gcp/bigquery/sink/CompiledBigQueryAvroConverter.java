@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.common.RecordConverter;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.AvroKey;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Converts a {@link StructuredRecord} to {@link AvroKey<GenericRecord>} with the same semantics as
+ * {@link BigQueryAvroConverter}, but without walking the schema for every record.
+ *
+ * The first record of each input schema compiles the output schema into a flat array of field converters indexed by
+ * the position of the field in the Avro record. Subsequent records with the same schema only look up their values and
+ * apply the converters. If the records are serialized before the next call, the output record is reused as well.
+ */
+public class CompiledBigQueryAvroConverter extends RecordConverter<StructuredRecord, AvroKey<GenericRecord>> {
+
+  private final boolean reuseRecord;
+  private final Map<Schema, RecordType> recordTypes;
+  private final AvroKey<GenericRecord> avroKey;
+  private Schema lastSchema;
+  private RecordType lastRecordType;
+
+  /**
+   * @param reuseRecord whether the returned key and record may be reused by the next call. This is only safe if the
+   *                    caller is done with the record before converting the next one.
+   */
+  CompiledBigQueryAvroConverter(boolean reuseRecord) {
+    this.reuseRecord = reuseRecord;
+    this.recordTypes = new HashMap<>();
+    this.avroKey = new AvroKey<>();
+  }
+
+  @Override
+  public AvroKey<GenericRecord> transform(StructuredRecord record, @Nullable Schema schema) {
+    Schema outputSchema = schema == null ? record.getSchema() : schema;
+    RecordType recordType = getRecordType(outputSchema);
+    if (!reuseRecord) {
+      return new AvroKey<>(recordType.convert(record, null));
+    }
+    avroKey.datum(recordType.convert(record, avroKey.datum()));
+    return avroKey;
+  }
+
+  private RecordType getRecordType(Schema outputSchema) {
+    // The output schema is usually the same instance for every record
+    if (outputSchema != lastSchema) {
+      lastRecordType = recordTypes.computeIfAbsent(outputSchema, RecordType::new);
+      lastSchema = outputSchema;
+    }
+    return lastRecordType;
+  }
+
+  /**
+   * Converts a value of a single schema type into its Avro representation.
+   */
+  private interface ValueConverter {
+    Object convert(Object value);
+  }
+
+  /**
+   * Compiles the converter for values of the given schema. The compiled converters follow
+   * {@link RecordConverter#convertField(Object, Schema)}.
+   */
+  private static ValueConverter compile(Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        return value -> null;
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return nonNull(value -> value);
+      case STRING:
+        return nonNull(Object::toString);
+      case BYTES:
+        return nonNull(value -> value instanceof ByteBuffer ? value : ByteBuffer.wrap((byte[]) value));
+      case RECORD:
+        RecordType recordType = new RecordType(schema);
+        return nonNull(value -> recordType.convert((StructuredRecord) value, null));
+      case ARRAY:
+        return nonNull(compileArray(compile(schema.getComponentSchema())));
+      case MAP:
+        Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+        return nonNull(compileMap(compile(mapSchema.getKey()), compile(mapSchema.getValue())));
+      case UNION:
+        return compileUnion(schema.getUnionSchemas());
+      default:
+        Schema.Type type = schema.getType();
+        return nonNull(value -> {
+          throw new UnexpectedFormatException("field type " + type + " is not supported.");
+        });
+    }
+  }
+
+  private static ValueConverter nonNull(ValueConverter converter) {
+    return value -> {
+      if (value == null) {
+        throw new NullPointerException("Found a null value for a non-nullable field.");
+      }
+      return converter.convert(value);
+    };
+  }
+
+  private static ValueConverter compileArray(ValueConverter componentConverter) {
+    return value -> {
+      if (value instanceof Collection) {
+        Collection<?> collection = (Collection<?>) value;
+        List<Object> result = new ArrayList<>(collection.size());
+        for (Object element : collection) {
+          result.add(componentConverter.convert(element));
+        }
+        return result;
+      }
+      int length = Array.getLength(value);
+      List<Object> result = new ArrayList<>(length);
+      for (int i = 0; i < length; i++) {
+        result.add(componentConverter.convert(Array.get(value, i)));
+      }
+      return result;
+    };
+  }
+
+  private static ValueConverter compileMap(ValueConverter keyConverter, ValueConverter valueConverter) {
+    return value -> {
+      Map<Object, Object> result = new HashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        result.put(keyConverter.convert(entry.getKey()), valueConverter.convert(entry.getValue()));
+      }
+      return result;
+    };
+  }
+
+  /**
+   * Unions are resolved the same way as in {@link RecordConverter}: null values match the null branch, other values
+   * are converted with the first branch that accepts them. If no branch accepts a value of a nullable union, the
+   * value is converted to null.
+   */
+  private static ValueConverter compileUnion(List<Schema> unionSchemas) {
+    boolean nullable = false;
+    List<ValueConverter> branches = new ArrayList<>();
+    for (Schema unionSchema : unionSchemas) {
+      if (unionSchema.getType() == Schema.Type.NULL) {
+        nullable = true;
+      } else {
+        branches.add(compile(unionSchema));
+      }
+    }
+    boolean acceptsNull = nullable;
+    ValueConverter[] converters = branches.toArray(new ValueConverter[0]);
+    return value -> {
+      if (value == null && acceptsNull) {
+        return null;
+      }
+      for (ValueConverter converter : converters) {
+        try {
+          return converter.convert(value);
+        } catch (Exception e) {
+          // try the next branch
+        }
+      }
+      if (acceptsNull) {
+        return null;
+      }
+      throw new UnexpectedFormatException("unable to determine union type.");
+    };
+  }
+
+  /**
+   * Converter for records of a given output schema. The Avro schema is derived from the output schema, while values
+   * are converted based on the schema of the input record, so a plan is compiled for every input schema.
+   */
+  private static final class RecordType {
+    private final org.apache.avro.Schema avroSchema;
+    private final Map<Schema, RecordPlan> plans;
+    private Schema lastInputSchema;
+    private RecordPlan lastPlan;
+
+    private RecordType(Schema outputSchema) {
+      this.avroSchema = new org.apache.avro.Schema.Parser().parse(outputSchema.toString());
+      this.plans = new HashMap<>();
+    }
+
+    /**
+     * Converts the record, reusing the given record if it has the expected schema.
+     */
+    private GenericRecord convert(StructuredRecord record, @Nullable GenericRecord reuse) {
+      Schema inputSchema = record.getSchema();
+      if (inputSchema != lastInputSchema) {
+        lastPlan = plans.computeIfAbsent(inputSchema, this::compilePlan);
+        lastInputSchema = inputSchema;
+      }
+      GenericData.Record result = reuse instanceof GenericData.Record && reuse.getSchema() == avroSchema ?
+        (GenericData.Record) reuse : new GenericData.Record(avroSchema);
+      lastPlan.write(record, result);
+      return result;
+    }
+
+    private RecordPlan compilePlan(Schema inputSchema) {
+      List<org.apache.avro.Schema.Field> avroFields = avroSchema.getFields();
+      int size = avroFields.size();
+      String[] names = new String[size];
+      ValueConverter[] converters = new ValueConverter[size];
+      boolean[] acceptsNull = new boolean[size];
+      org.apache.avro.Schema.Field[] fields = new org.apache.avro.Schema.Field[size];
+      for (org.apache.avro.Schema.Field avroField : avroFields) {
+        String name = avroField.name();
+        Schema.Field inputField = inputSchema.getField(name);
+        if (inputField == null) {
+          throw new IllegalArgumentException("Input record does not contain the " + name + " field.");
+        }
+        int pos = avroField.pos();
+        names[pos] = name;
+        converters[pos] = compile(inputField.getSchema());
+        acceptsNull[pos] = acceptsNull(avroField);
+        fields[pos] = avroField;
+      }
+      return new RecordPlan(names, converters, acceptsNull, fields);
+    }
+
+    /**
+     * Follows the validation of {@link org.apache.avro.generic.GenericRecordBuilder}.
+     */
+    private static boolean acceptsNull(org.apache.avro.Schema.Field field) {
+      org.apache.avro.Schema schema = field.schema();
+      if (schema.getType() == org.apache.avro.Schema.Type.NULL) {
+        return true;
+      }
+      if (schema.getType() == org.apache.avro.Schema.Type.UNION) {
+        for (org.apache.avro.Schema unionSchema : schema.getTypes()) {
+          if (unionSchema.getType() == org.apache.avro.Schema.Type.NULL) {
+            return true;
+          }
+        }
+      }
+      return field.defaultVal() != null;
+    }
+  }
+
+  /**
+   * Field converters of an output record type for a given input schema, indexed by Avro field position.
+   */
+  private static final class RecordPlan {
+    private final String[] names;
+    private final ValueConverter[] converters;
+    private final boolean[] acceptsNull;
+    private final org.apache.avro.Schema.Field[] fields;
+
+    private RecordPlan(String[] names, ValueConverter[] converters, boolean[] acceptsNull,
+                       org.apache.avro.Schema.Field[] fields) {
+      this.names = names;
+      this.converters = converters;
+      this.acceptsNull = acceptsNull;
+      this.fields = fields;
+    }
+
+    private void write(StructuredRecord record, GenericData.Record result) {
+      for (int pos = 0; pos < names.length; pos++) {
+        Object value;
+        try {
+          value = converters[pos].convert(record.get(names[pos]));
+        } catch (Exception e) {
+          throw new IllegalArgumentException(
+            String.format("Error converting field '%s': %s", names[pos], e.getMessage()), e);
+        }
+        if (value == null && !acceptsNull[pos]) {
+          throw new AvroRuntimeException("Field " + fields[pos] + " does not accept null values");
+        }
+        result.put(pos, value);
+      }
+    }
+  }
+}
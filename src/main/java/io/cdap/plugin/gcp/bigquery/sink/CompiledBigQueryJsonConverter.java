@@ -0,0 +1,653 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.common.RecordConverter;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryTypeSize;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
+import org.apache.hadoop.io.Text;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Converts a {@link StructuredRecord} into a line of newline delimited JSON, producing the same output as
+ * {@link BigQueryJsonConverter} followed by {@code JsonObject#toString()}.
+ *
+ * The schema is compiled once into a tree of encoders that write UTF-8 directly into a reusable buffer, so no
+ * intermediate JSON tree or strings are created. Dates, times and timestamps in the range supported by BigQuery are
+ * formatted arithmetically, other values fall back to java.time to keep the same output and errors. The returned
+ * {@link Text} is reused by the next call, following the Hadoop convention that record writers do not retain the
+ * writables passed to them.
+ */
+public class CompiledBigQueryJsonConverter extends RecordConverter<StructuredRecord, Text> {
+  private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+  private static final long MICROS_PER_SECOND = 1_000_000L;
+  private static final long MICROS_PER_DAY = 86_400L * MICROS_PER_SECOND;
+  private static final long SECONDS_PER_DAY = 86_400L;
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+  private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+  private final JsonBuffer buffer;
+  private final Text text;
+  private final Map<Schema, Map<Schema, RecordEncoder>> recordEncoders;
+  private Schema lastInputSchema;
+  private Schema lastOutputSchema;
+  private RecordEncoder lastEncoder;
+
+  CompiledBigQueryJsonConverter() {
+    this.buffer = new JsonBuffer();
+    this.text = new Text();
+    this.recordEncoders = new HashMap<>();
+  }
+
+  @Override
+  public Text transform(StructuredRecord input, @Nullable Schema schema) {
+    Schema inputSchema = input.getSchema();
+    if (inputSchema != lastInputSchema || schema != lastOutputSchema) {
+      // A missing output schema is keyed by the input schema, as all fields are written in that case
+      lastEncoder = recordEncoders.computeIfAbsent(inputSchema, s -> new HashMap<>())
+        .computeIfAbsent(schema == null ? inputSchema : schema,
+                         s -> compileRecord(Objects.requireNonNull(inputSchema.getFields()), schema));
+      lastInputSchema = inputSchema;
+      lastOutputSchema = schema;
+    }
+    buffer.length = 0;
+    lastEncoder.write(buffer, input);
+    text.set(buffer.bytes, 0, buffer.length);
+    return text;
+  }
+
+  /**
+   * Writes a single value.
+   */
+  private interface ValueEncoder {
+    void write(JsonBuffer buffer, @Nullable Object value);
+  }
+
+  /**
+   * Compiles the fields of a record, skipping fields that are not part of the output schema if one is given.
+   */
+  private static RecordEncoder compileRecord(List<Schema.Field> fields, @Nullable Schema outputSchema) {
+    List<Schema.Field> included = new ArrayList<>();
+    for (Schema.Field field : fields) {
+      // From all the fields in input record, write only those fields that are present in output schema
+      if (outputSchema == null || outputSchema.getField(field.getName()) != null) {
+        included.add(field);
+      }
+    }
+    return new RecordEncoder(included);
+  }
+
+  /**
+   * Compiles the encoder of a field. This follows BigQueryRecordToJson#write, the encoder of a field throws the
+   * same exceptions when it is called with a value it cannot write.
+   */
+  private static ValueEncoder compile(String name, Schema fieldSchema) {
+    Schema schema = BigQueryUtil.getNonNullableSchema(fieldSchema);
+    switch (schema.getType()) {
+      case NULL:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+      case STRING:
+      case BYTES:
+        ValueEncoder encoder = compileSimpleType(name, schema);
+        return (buffer, value) -> {
+          if (value == null) {
+            buffer.writeAscii("null");
+          } else {
+            encoder.write(buffer, value);
+          }
+        };
+      case ARRAY:
+        return compileArray(name, schema);
+      case RECORD:
+        return compileNestedRecord(schema);
+      default:
+        return (buffer, value) -> {
+          throw new IllegalStateException(
+            String.format("Field '%s' is of unsupported type '%s'", name, fieldSchema.getType()));
+        };
+    }
+  }
+
+  /**
+   * Compiles the encoder of non-null simple values, following BigQueryRecordToJson#writeSimpleTypes.
+   */
+  private static ValueEncoder compileSimpleType(String name, Schema schema) {
+    Schema.LogicalType logicalType = schema.getLogicalType();
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          return (buffer, value) -> buffer.writeDate((Integer) value);
+        case TIME_MILLIS:
+          return (buffer, value) -> buffer.writeTime(((Integer) value) * 1000L);
+        case TIME_MICROS:
+          return (buffer, value) -> buffer.writeTime((Long) value);
+        case TIMESTAMP_MILLIS:
+          return (buffer, value) -> buffer.writeTimestamp((long) value, 1000L);
+        case TIMESTAMP_MICROS:
+          return (buffer, value) -> buffer.writeTimestamp((long) value, MICROS_PER_SECOND);
+        case DECIMAL:
+          return (buffer, value) -> buffer.writeDecimal(name, (byte[]) value, schema);
+        case DATETIME:
+          //datetime should be already an ISO-8601 string
+          return (buffer, value) -> buffer.writeString(value.toString());
+        default:
+          return (buffer, value) -> {
+            throw new IllegalStateException(
+              String.format("Field '%s' is of unsupported type '%s'", name, logicalType.getToken()));
+          };
+      }
+    }
+
+    switch (schema.getType()) {
+      case NULL:
+        return (buffer, value) -> buffer.writeAscii("null");
+      case INT:
+      case LONG:
+        return (buffer, value) -> {
+          if (value instanceof Integer || value instanceof Long) {
+            buffer.writeLong(((Number) value).longValue());
+          } else {
+            buffer.writeNumber((Number) value);
+          }
+        };
+      case FLOAT:
+      case DOUBLE:
+        return (buffer, value) -> buffer.writeNumber((Number) value);
+      case BOOLEAN:
+        return (buffer, value) -> buffer.writeAscii((Boolean) value ? "true" : "false");
+      case STRING:
+        return (buffer, value) -> buffer.writeString(value.toString());
+      default:
+        return (buffer, value) -> {
+          if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            buffer.writeBase64(bytes, 0, bytes.length);
+          } else if (value instanceof ByteBuffer) {
+            ByteBuffer byteBuffer = (ByteBuffer) value;
+            if (byteBuffer.hasArray()) {
+              buffer.writeBase64(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(),
+                                 byteBuffer.remaining());
+            } else {
+              byte[] bytes = new byte[byteBuffer.remaining()];
+              byteBuffer.duplicate().get(bytes);
+              buffer.writeBase64(bytes, 0, bytes.length);
+            }
+          } else {
+            throw new IllegalStateException(String.format("Expected value of Field '%s' to be bytes but got '%s'",
+                                                          name, value.getClass().getSimpleName()));
+          }
+        };
+    }
+  }
+
+  /**
+   * Compiles an array encoder, following BigQueryRecordToJson#writeArray. Records in the array are written with the
+   * fields of their own schema.
+   */
+  private static ValueEncoder compileArray(String name, Schema fieldSchema) {
+    Schema componentSchema = BigQueryUtil.getNonNullableSchema(
+      Objects.requireNonNull(fieldSchema.getComponentSchema()));
+    boolean supported = !BigQueryUtil.UNSUPPORTED_ARRAY_TYPES.contains(componentSchema.getType());
+    ValueEncoder elementEncoder = supported ? compile(name, componentSchema) : null;
+    Map<Schema, RecordEncoder> recordEncoders = new HashMap<>();
+
+    return (buffer, value) -> {
+      buffer.writeByte('[');
+      // If it's a null array, handle it as an empty array
+      if (value != null) {
+        Iterable<?> elements;
+        if (value instanceof Collection) {
+          elements = (Collection<?>) value;
+        } else if (value instanceof Object[]) {
+          elements = Arrays.asList((Object[]) value);
+        } else {
+          throw new IllegalArgumentException(String.format(
+            "A value for the field '%s' is of type '%s' when it is expected to be a Collection or array.",
+            name, value.getClass().getSimpleName()));
+        }
+        if (!supported) {
+          throw new IllegalArgumentException(String.format("Field '%s' is an array of '%s', " +
+                                                             "which is not a valid BigQuery type.",
+                                                           name, componentSchema));
+        }
+
+        boolean first = true;
+        for (Object element : elements) {
+          // BigQuery does not allow null values in array items
+          if (element == null) {
+            throw new IllegalArgumentException(String.format("Field '%s' contains null values in its array, " +
+                                                               "which is not allowed by BigQuery.", name));
+          }
+          if (!first) {
+            buffer.writeByte(',');
+          }
+          first = false;
+          if (element instanceof StructuredRecord) {
+            StructuredRecord record = (StructuredRecord) element;
+            recordEncoders.computeIfAbsent(record.getSchema(),
+                                           s -> new RecordEncoder(Objects.requireNonNull(s.getFields())))
+              .write(buffer, record);
+          } else {
+            elementEncoder.write(buffer, element);
+          }
+        }
+      }
+      buffer.writeByte(']');
+    };
+  }
+
+  /**
+   * Compiles the encoder of a record field, following BigQueryRecordToJson#writeRecord. The fields are compiled when
+   * the first record is written, which also supports recursive schemas.
+   */
+  private static ValueEncoder compileNestedRecord(Schema schema) {
+    RecordEncoder[] encoder = new RecordEncoder[1];
+    return (buffer, value) -> {
+      if (value == null) {
+        buffer.writeAscii("null");
+        return;
+      }
+      if (!(value instanceof StructuredRecord)) {
+        throw new IllegalStateException(
+          String.format("Value is of type '%s', expected type is '%s'",
+                        value.getClass().getSimpleName(), StructuredRecord.class.getSimpleName()));
+      }
+      if (encoder[0] == null) {
+        encoder[0] = new RecordEncoder(Objects.requireNonNull(schema.getFields()));
+      }
+      encoder[0].write(buffer, (StructuredRecord) value);
+    };
+  }
+
+  /**
+   * Writes the given fields of a record as a JSON object.
+   */
+  private static final class RecordEncoder {
+    private final String[] names;
+    private final byte[][] prefixes;
+    private final ValueEncoder[] encoders;
+
+    private RecordEncoder(List<Schema.Field> fields) {
+      int size = fields.size();
+      this.names = new String[size];
+      this.prefixes = new byte[size][];
+      this.encoders = new ValueEncoder[size];
+      JsonBuffer prefix = new JsonBuffer();
+      for (int i = 0; i < size; i++) {
+        Schema.Field field = fields.get(i);
+        names[i] = field.getName();
+        // The separator, the quoted name and the colon are written at once
+        prefix.length = 0;
+        if (i > 0) {
+          prefix.writeByte(',');
+        }
+        prefix.writeString(field.getName());
+        prefix.writeByte(':');
+        prefixes[i] = Arrays.copyOf(prefix.bytes, prefix.length);
+        encoders[i] = compile(field.getName(), field.getSchema());
+      }
+    }
+
+    private void write(JsonBuffer buffer, StructuredRecord record) {
+      buffer.writeByte('{');
+      for (int i = 0; i < names.length; i++) {
+        buffer.writeBytes(prefixes[i]);
+        encoders[i].write(buffer, record.get(names[i]));
+      }
+      buffer.writeByte('}');
+    }
+  }
+
+  /**
+   * Growable UTF-8 output buffer with the JSON formatting routines.
+   */
+  private static final class JsonBuffer {
+    private byte[] bytes = new byte[1024];
+    private int length;
+
+    private void ensureCapacity(int extra) {
+      int required = length + extra;
+      if (required > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+      }
+    }
+
+    private void writeByte(int b) {
+      ensureCapacity(1);
+      bytes[length++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] value) {
+      ensureCapacity(value.length);
+      System.arraycopy(value, 0, bytes, length, value.length);
+      length += value.length;
+    }
+
+    /**
+     * Writes a string that only contains ASCII characters that do not need escaping.
+     */
+    private void writeAscii(String value) {
+      int size = value.length();
+      ensureCapacity(size);
+      for (int i = 0; i < size; i++) {
+        bytes[length++] = (byte) value.charAt(i);
+      }
+    }
+
+    /**
+     * Writes a quoted string with the escaping of Gson's JsonWriter, encoding it as UTF-8. Unpaired surrogates are
+     * replaced with '?' like {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    private void writeString(String value) {
+      int size = value.length();
+      // Worst case is 6 bytes per character for escaped control characters
+      ensureCapacity(size * 6 + 2);
+      byte[] out = bytes;
+      int pos = length;
+      out[pos++] = '"';
+      for (int i = 0; i < size; i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          if (c >= 0x20 && c != '"' && c != '\\') {
+            out[pos++] = (byte) c;
+            continue;
+          }
+          out[pos++] = '\\';
+          switch (c) {
+            case '"':
+              out[pos++] = '"';
+              break;
+            case '\\':
+              out[pos++] = '\\';
+              break;
+            case '\t':
+              out[pos++] = 't';
+              break;
+            case '\b':
+              out[pos++] = 'b';
+              break;
+            case '\n':
+              out[pos++] = 'n';
+              break;
+            case '\r':
+              out[pos++] = 'r';
+              break;
+            case '\f':
+              out[pos++] = 'f';
+              break;
+            default:
+              pos = writeUnicodeEscape(out, pos, c);
+          }
+        } else if (c < 0x800) {
+          out[pos++] = (byte) (0xc0 | (c >> 6));
+          out[pos++] = (byte) (0x80 | (c & 0x3f));
+        } else if (c == '\u2028' || c == '\u2029') {
+          out[pos++] = '\\';
+          pos = writeUnicodeEscape(out, pos, c);
+        } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+          out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+          out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+          out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+          out[pos++] = '?';
+        } else {
+          out[pos++] = (byte) (0xe0 | (c >> 12));
+          out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+          out[pos++] = (byte) (0x80 | (c & 0x3f));
+        }
+      }
+      out[pos++] = '"';
+      length = pos;
+    }
+
+    private static int writeUnicodeEscape(byte[] out, int pos, char c) {
+      out[pos++] = 'u';
+      out[pos++] = HEX[(c >> 12) & 0xf];
+      out[pos++] = HEX[(c >> 8) & 0xf];
+      out[pos++] = HEX[(c >> 4) & 0xf];
+      out[pos++] = HEX[c & 0xf];
+      return pos;
+    }
+
+    private void writeLong(long value) {
+      if (value == Long.MIN_VALUE) {
+        writeAscii(Long.toString(value));
+        return;
+      }
+      ensureCapacity(20);
+      if (value < 0) {
+        bytes[length++] = '-';
+        value = -value;
+      }
+      int digits = countDigits(value);
+      int pos = length + digits;
+      length = pos;
+      do {
+        bytes[--pos] = (byte) ('0' + value % 10);
+        value /= 10;
+      } while (value > 0);
+    }
+
+    private static int countDigits(long value) {
+      int digits = 1;
+      while (value >= 10) {
+        value /= 10;
+        digits++;
+      }
+      return digits;
+    }
+
+    private void writeNumber(Number value) {
+      double d = value.doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        throw new IllegalArgumentException("JSON forbids NaN and infinities: " + value);
+      }
+      writeAscii(value.toString());
+    }
+
+    /**
+     * Writes a non-negative number padded with zeros to the given width.
+     */
+    private void writePadded(long value, int width) {
+      int pos = length + width;
+      length = pos;
+      for (int i = 0; i < width; i++) {
+        bytes[--pos] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+    }
+
+    /**
+     * Writes yyyy-MM-dd of the given day since epoch, returning false if the year is outside of 1 to 9999.
+     */
+    private boolean writeCivilDate(long epochDay) {
+      // Days to civil date conversion from http://howardhinnant.github.io/date_algorithms.html
+      long z = epochDay + 719468;
+      long era = Math.floorDiv(z, 146097);
+      long doe = z - era * 146097;
+      long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+      long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+      long mp = (5 * doy + 2) / 153;
+      long day = doy - (153 * mp + 2) / 5 + 1;
+      long month = mp < 10 ? mp + 3 : mp - 9;
+      long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+      if (year < 1 || year > 9999) {
+        return false;
+      }
+      ensureCapacity(10);
+      writePadded(year, 4);
+      bytes[length++] = '-';
+      writePadded(month, 2);
+      bytes[length++] = '-';
+      writePadded(day, 2);
+      return true;
+    }
+
+    private void writeClock(long microOfDay) {
+      ensureCapacity(15);
+      long seconds = microOfDay / MICROS_PER_SECOND;
+      writePadded(seconds / 3600, 2);
+      bytes[length++] = ':';
+      writePadded((seconds / 60) % 60, 2);
+      bytes[length++] = ':';
+      writePadded(seconds % 60, 2);
+      bytes[length++] = '.';
+      writePadded(microOfDay % MICROS_PER_SECOND, 6);
+    }
+
+    private void writeDate(int epochDay) {
+      writeByte('"');
+      if (!writeCivilDate(epochDay)) {
+        length--;
+        writeString(LocalDate.ofEpochDay(epochDay).toString());
+        return;
+      }
+      writeByte('"');
+    }
+
+    private void writeTime(long microOfDay) {
+      if (microOfDay < 0 || microOfDay >= MICROS_PER_DAY) {
+        // Out of range, LocalTime throws the same exception as the previous encoder
+        LocalTime.ofNanoOfDay(TimeUnit.MICROSECONDS.toNanos(microOfDay));
+      }
+      writeByte('"');
+      writeClock(microOfDay);
+      writeByte('"');
+    }
+
+    /**
+     * Writes a timestamp given in units of which there are {@code unitsPerSecond} in a second.
+     */
+    private void writeTimestamp(long value, long unitsPerSecond) {
+      long epochSecond = Math.floorDiv(value, unitsPerSecond);
+      long microOfSecond = Math.floorMod(value, unitsPerSecond) * (MICROS_PER_SECOND / unitsPerSecond);
+      long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+      long microOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY) * MICROS_PER_SECOND + microOfSecond;
+      writeByte('"');
+      if (!writeCivilDate(epochDay)) {
+        length--;
+        Instant instant = Instant.ofEpochSecond(epochSecond, microOfSecond * 1000L);
+        writeString(DATETIME_FORMATTER.format(instant.atZone(ZoneOffset.UTC)));
+        return;
+      }
+      writeByte(' ');
+      writeClock(microOfDay);
+      writeByte('"');
+    }
+
+    /**
+     * Writes the plain string of a decimal. Unscaled values that fit in a long are formatted without creating a
+     * {@link java.math.BigDecimal}.
+     */
+    private void writeDecimal(String name, byte[] value, Schema schema) {
+      int scale = schema.getScale();
+      if (value.length == 0 || value.length > 8 || scale < 0 || scale > BigQueryTypeSize.BigNumeric.SCALE) {
+        writeString(BigQueryRecordToJson.getDecimal(name, value, schema).toPlainString());
+        return;
+      }
+      // Big endian two's complement, sign extended from the first byte
+      long unscaled = value[0];
+      for (int i = 1; i < value.length; i++) {
+        unscaled = (unscaled << 8) | (value[i] & 0xff);
+      }
+      if (unscaled == Long.MIN_VALUE) {
+        writeString(BigQueryRecordToJson.getDecimal(name, value, schema).toPlainString());
+        return;
+      }
+
+      ensureCapacity(scale + 24);
+      bytes[length++] = '"';
+      if (unscaled < 0) {
+        bytes[length++] = '-';
+        unscaled = -unscaled;
+      }
+      int digits = countDigits(unscaled);
+      if (scale == 0) {
+        writePadded(unscaled, digits);
+      } else if (digits > scale) {
+        long divisor = pow10(scale);
+        writePadded(unscaled / divisor, digits - scale);
+        bytes[length++] = '.';
+        writePadded(unscaled % divisor, scale);
+      } else {
+        bytes[length++] = '0';
+        bytes[length++] = '.';
+        // Leading zeros of the fraction are produced by the padding
+        writePadded(unscaled, scale);
+      }
+      bytes[length++] = '"';
+    }
+
+    private static long pow10(int exponent) {
+      long result = 1;
+      for (int i = 0; i < exponent; i++) {
+        result *= 10;
+      }
+      return result;
+    }
+
+    /**
+     * Writes a quoted base64 string using the standard alphabet with padding.
+     */
+    private void writeBase64(byte[] value, int offset, int size) {
+      ensureCapacity((size + 2) / 3 * 4 + 2);
+      byte[] out = bytes;
+      int pos = length;
+      out[pos++] = '"';
+      int end = offset + size - size % 3;
+      for (int i = offset; i < end; i += 3) {
+        int bits = (value[i] & 0xff) << 16 | (value[i + 1] & 0xff) << 8 | (value[i + 2] & 0xff);
+        out[pos++] = BASE64[(bits >>> 18) & 0x3f];
+        out[pos++] = BASE64[(bits >>> 12) & 0x3f];
+        out[pos++] = BASE64[(bits >>> 6) & 0x3f];
+        out[pos++] = BASE64[bits & 0x3f];
+      }
+      int remaining = size % 3;
+      if (remaining > 0) {
+        int bits = (value[end] & 0xff) << 16 | (remaining == 2 ? (value[end + 1] & 0xff) << 8 : 0);
+        out[pos++] = BASE64[(bits >>> 18) & 0x3f];
+        out[pos++] = BASE64[(bits >>> 12) & 0x3f];
+        out[pos++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte) '=';
+        out[pos++] = '=';
+      }
+      out[pos++] = '"';
+      length = pos;
+    }
+  }
+}
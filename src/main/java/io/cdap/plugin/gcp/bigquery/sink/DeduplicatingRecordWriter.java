@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Record writer which drops records that are superseded by another record with the same table key before they are
+ * staged for an Update or Upsert operation.
+ * <p>
+ * For every key, the record that comes first in the dedupe by order is kept, which is the record the MERGE query
+ * would choose among the records of the task. At most the configured number of keys are buffered. Once the limit is
+ * reached, the record of the least recently written key is passed on to make room. The MERGE query still removes
+ * duplicates across tasks and those not caught by the buffer.
+ */
+public class DeduplicatingRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+  private static final Logger LOG = LoggerFactory.getLogger(DeduplicatingRecordWriter.class);
+
+  private final RecordWriter<StructuredRecord, NullWritable> delegate;
+  private final List<String> keyFields;
+  private final List<String> orderedByFields;
+  private final List<Boolean> descending;
+  private final int maxBufferedKeys;
+  // Access order makes the first entry the least recently written key
+  private final Map<List<Object>, StructuredRecord> buffer;
+  private long receivedRecords;
+  private long writtenRecords;
+
+  /**
+   * Creates a writer which deduplicates the records before writing them to the delegate.
+   *
+   * @param delegate writer for the deduplicated records
+   * @param keyFields fields of the table key
+   * @param orderedByList dedupe by fields, each optionally followed by its sort order, 'asc' or 'desc'
+   * @param maxBufferedKeys maximum number of keys buffered at the same time
+   */
+  public DeduplicatingRecordWriter(RecordWriter<StructuredRecord, NullWritable> delegate, List<String> keyFields,
+                                   List<String> orderedByList, int maxBufferedKeys) {
+    this.delegate = delegate;
+    this.keyFields = keyFields;
+    this.orderedByFields = new ArrayList<>();
+    this.descending = new ArrayList<>();
+    for (String orderedBy : orderedByList) {
+      String[] parts = orderedBy.trim().split("\\s+");
+      orderedByFields.add(parts[0]);
+      descending.add(parts.length > 1 && "desc".equalsIgnoreCase(parts[1]));
+    }
+    this.maxBufferedKeys = maxBufferedKeys;
+    this.buffer = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  @Override
+  public void write(StructuredRecord record, NullWritable value) throws IOException, InterruptedException {
+    receivedRecords++;
+    List<Object> key = getKey(record);
+    StructuredRecord buffered = buffer.get(key);
+    if (buffered != null) {
+      // When the records are equal in the dedupe by order, the MERGE query may choose either of them
+      if (compare(buffered, record) >= 0) {
+        buffer.put(key, record);
+      }
+      return;
+    }
+
+    if (buffer.size() >= maxBufferedKeys) {
+      Iterator<StructuredRecord> iterator = buffer.values().iterator();
+      StructuredRecord eldest = iterator.next();
+      iterator.remove();
+      writeToDelegate(eldest);
+    }
+    buffer.put(key, record);
+  }
+
+  @Override
+  public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+    for (StructuredRecord record : buffer.values()) {
+      writeToDelegate(record);
+    }
+    buffer.clear();
+    LOG.debug("Staged {} out of {} records after removing records with duplicate keys.",
+              writtenRecords, receivedRecords);
+    delegate.close(context);
+  }
+
+  private void writeToDelegate(StructuredRecord record) throws IOException, InterruptedException {
+    delegate.write(record, NullWritable.get());
+    writtenRecords++;
+  }
+
+  private List<Object> getKey(StructuredRecord record) {
+    List<Object> key = new ArrayList<>(keyFields.size());
+    for (String field : keyFields) {
+      Object value = record.get(field);
+      // Byte arrays do not implement equals based on their contents
+      key.add(value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value);
+    }
+    return key;
+  }
+
+  /**
+   * Compares two records in the dedupe by order.
+   */
+  private int compare(StructuredRecord first, StructuredRecord second) {
+    for (int i = 0; i < orderedByFields.size(); i++) {
+      String field = orderedByFields.get(i);
+      Schema.Field schemaField = Objects.requireNonNull(first.getSchema().getField(field),
+                                                        String.format("Dedupe by field '%s' does not exist.", field));
+      int result = compareValues(field, schemaField.getSchema(), first.get(field), second.get(field));
+      if (result != 0) {
+        return descending.get(i) ? -result : result;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Compares two values in the order of BigQuery, where nulls come first, followed by NaN.
+   */
+  private static int compareValues(String field, Schema schema, @Nullable Object first, @Nullable Object second) {
+    if (first == null || second == null) {
+      return first == null ? (second == null ? 0 : -1) : 1;
+    }
+    Schema nonNullableSchema = schema.isNullable() ? schema.getNonNullable() : schema;
+    Schema.LogicalType logicalType = nonNullableSchema.getLogicalType();
+    if (logicalType == Schema.LogicalType.DECIMAL) {
+      return toDecimal(nonNullableSchema, first).compareTo(toDecimal(nonNullableSchema, second));
+    }
+    if (logicalType == Schema.LogicalType.DATETIME) {
+      return LocalDateTime.parse((String) first).compareTo(LocalDateTime.parse((String) second));
+    }
+    switch (nonNullableSchema.getType()) {
+      case INT:
+      case LONG:
+        return Long.compare(((Number) first).longValue(), ((Number) second).longValue());
+      case FLOAT:
+      case DOUBLE:
+        return compareDoubles(((Number) first).doubleValue(), ((Number) second).doubleValue());
+      case BOOLEAN:
+        return Boolean.compare((Boolean) first, (Boolean) second);
+      case STRING:
+      case ENUM:
+        return compareStrings(first.toString(), second.toString());
+      case BYTES:
+        return compareBytes(first, second);
+      default:
+        throw new IllegalArgumentException(
+          String.format("Dedupe by field '%s' of type '%s' cannot be ordered.", field, nonNullableSchema.getType()));
+    }
+  }
+
+  private static int compareDoubles(double first, double second) {
+    if (Double.isNaN(first) || Double.isNaN(second)) {
+      return Double.isNaN(first) ? (Double.isNaN(second) ? 0 : -1) : 1;
+    }
+    return Double.compare(first, second);
+  }
+
+  /**
+   * Compares strings by their code points, which differs from the order of their UTF-16 chars for characters outside
+   * the Basic Multilingual Plane.
+   */
+  private static int compareStrings(String first, String second) {
+    int length = Math.min(first.length(), second.length());
+    for (int i = 0; i < length; i++) {
+      char firstChar = first.charAt(i);
+      char secondChar = second.charAt(i);
+      if (firstChar != secondChar) {
+        boolean firstSurrogate = Character.isSurrogate(firstChar);
+        if (firstSurrogate != Character.isSurrogate(secondChar)) {
+          return firstSurrogate ? 1 : -1;
+        }
+        return firstChar - secondChar;
+      }
+    }
+    return first.length() - second.length();
+  }
+
+  /**
+   * Compares bytes as unsigned values.
+   */
+  private static int compareBytes(Object first, Object second) {
+    byte[] firstBytes = toBytes(first);
+    byte[] secondBytes = toBytes(second);
+    int length = Math.min(firstBytes.length, secondBytes.length);
+    for (int i = 0; i < length; i++) {
+      int result = Integer.compare(firstBytes[i] & 0xff, secondBytes[i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return firstBytes.length - secondBytes.length;
+  }
+
+  private static BigDecimal toDecimal(Schema schema, Object value) {
+    return new BigDecimal(new BigInteger(toBytes(value)), schema.getScale());
+  }
+
+  private static byte[] toBytes(Object value) {
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    }
+    ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
@@ -18,21 +18,33 @@ package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.hadoop.io.bigquery.output.BigQueryTableFieldSchema;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.JobStatus;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Output Committer which creates and delegates operations to other Bigquery Output Committer instances.
  * <p>
  * Delegated instances are supplied along with a schema, which is used to configure the commit operation.
+ * If the commit parallelism is greater than 1, the operations of the delegates run concurrently, each with its own
+ * copy of the context configured for its table.
  */
 public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
   private final Map<String, OutputCommitter> committerMap;
@@ -41,15 +53,25 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
   private final String datasetName;
   private final String bucketName;
   private final String bucketPathUniqueId;
+  private final int commitParallelism;
 
   public DelegatingMultiSinkOutputCommitter(String projectName,
                                             String datasetName,
                                             String bucketName,
                                             String bucketPathUniqueId) {
+    this(projectName, datasetName, bucketName, bucketPathUniqueId, 1);
+  }
+
+  public DelegatingMultiSinkOutputCommitter(String projectName,
+                                            String datasetName,
+                                            String bucketName,
+                                            String bucketPathUniqueId,
+                                            int commitParallelism) {
     this.projectName = projectName;
     this.datasetName = datasetName;
     this.bucketName = bucketName;
     this.bucketPathUniqueId = bucketPathUniqueId;
+    this.commitParallelism = commitParallelism;
     this.committerMap = new HashMap<>();
     this.schemaMap = new HashMap<>();
   }
@@ -98,6 +120,11 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
 
   @Override
   public void commitTask(TaskAttemptContext taskAttemptContext) throws IOException {
+    if (isParallel()) {
+      runForEachTable(taskAttemptContext, (committer, context) -> committer.commitTask((TaskAttemptContext) context));
+      return;
+    }
+
     for (String tableName : committerMap.keySet()) {
       configureContext(taskAttemptContext, tableName);
 
@@ -107,6 +134,11 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
 
   @Override
   public void commitJob(JobContext jobContext) throws IOException {
+    if (isParallel()) {
+      runForEachTable(jobContext, OutputCommitter::commitJob);
+      return;
+    }
+
     for (String tableName : committerMap.keySet()) {
       configureContext(jobContext, tableName);
 
@@ -116,6 +148,11 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
 
   @Override
   public void abortTask(TaskAttemptContext taskAttemptContext) throws IOException {
+    if (isParallel()) {
+      runForEachTable(taskAttemptContext, (committer, context) -> committer.abortTask((TaskAttemptContext) context));
+      return;
+    }
+
     IOException ioe = null;
 
     for (OutputCommitter committer : committerMap.values()) {
@@ -137,6 +174,11 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
 
   @Override
   public void abortJob(JobContext jobContext, JobStatus.State state) throws IOException {
+    if (isParallel()) {
+      runForEachTable(jobContext, (committer, context) -> committer.abortJob(context, state));
+      return;
+    }
+
     IOException ioe = null;
 
     for (OutputCommitter committer : committerMap.values()) {
@@ -156,6 +198,69 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
     }
   }
 
+  private boolean isParallel() {
+    return commitParallelism > 1 && committerMap.size() > 1;
+  }
+
+  /**
+   * Runs the operation for the committer of every table on a pool of at most commit parallelism threads. Every
+   * operation gets its own context, configured for its table. All operations run even if some of them fail, and the
+   * failures are reported together.
+   */
+  private void runForEachTable(JobContext jobContext, CommitterOperation operation) throws IOException {
+    // The contexts are created upfront, since configuring them modifies the configuration of the supplied context.
+    Map<String, JobContext> tableContexts = new HashMap<>();
+    for (String tableName : committerMap.keySet()) {
+      tableContexts.put(tableName, createTableContext(jobContext, tableName));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(commitParallelism, committerMap.size()),
+      new ThreadFactoryBuilder().setNameFormat("bigquery-table-commit-%d").setDaemon(true).build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Map.Entry<String, OutputCommitter> entry : committerMap.entrySet()) {
+        JobContext tableContext = tableContexts.get(entry.getKey());
+        futures.add(executor.submit(() -> {
+          operation.run(entry.getValue(), tableContext);
+          return null;
+        }));
+      }
+
+      IOException ioe = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (ioe == null) {
+            ioe = cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+          } else {
+            ioe.addSuppressed(cause);
+          }
+        }
+      }
+
+      if (ioe != null) {
+        throw ioe;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the table commits to finish.");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private JobContext createTableContext(JobContext context, String tableName) throws IOException {
+    Configuration conf = new Configuration(context.getConfiguration());
+    JobContext tableContext = context instanceof TaskAttemptContext ?
+      new TaskAttemptContextImpl(conf, ((TaskAttemptContext) context).getTaskAttemptID()) :
+      new JobContextImpl(conf, context.getJobID());
+    configureContext(tableContext, tableName);
+    return tableContext;
+  }
+
   public void configureContext(JobContext context, String tableName) throws IOException {
     Schema schema = schemaMap.get(tableName);
     List<BigQueryTableFieldSchema> fields = BigQuerySinkUtils.getBigQueryTableFieldsFromSchema(schema);
@@ -168,4 +273,11 @@ public class DelegatingMultiSinkOutputCommitter extends OutputCommitter {
                                                gcsPath,
                                                fields);
   }
+
+  /**
+   * Operation invoked on the committer of a table.
+   */
+  private interface CommitterOperation {
+    void run(OutputCommitter committer, JobContext context) throws IOException;
+  }
 }
@@ -18,7 +18,9 @@ package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.cloud.bigquery.DatasetId;
 import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.OutputCommitter;
@@ -28,6 +30,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import java.io.IOException;
 import java.util.UUID;
+import javax.annotation.Nullable;
 
 /**
  * Output Format used to handle the use case where the output schema is not set as a pipeline argument.
@@ -38,6 +41,8 @@ public class DelegatingMultiSinkOutputFormat extends OutputFormat<StructuredReco
   private static final String BUCKET_PATH_UNIQUE_ID = "bq.delegating.multi.bucket.path.uuid";
   private static final String PROJECT_NAME = "bq.delegating.multi.project";
   private static final String DATASET_NAME = "bq.delegating.multi.dataset";
+  private static final String MAX_OPEN_WRITERS = "bq.delegating.multi.max.open.writers";
+  private static final String METRICS_DIRECTORY = "bq.delegating.multi.metrics.directory";
 
   private DelegatingMultiSinkOutputCommitter delegatingMultiSinkOutputCommitter = null;
 
@@ -45,12 +50,20 @@ public class DelegatingMultiSinkOutputFormat extends OutputFormat<StructuredReco
                                String filterField,
                                String bucketName,
                                String projectName,
-                               String datasetName) {
+                               String datasetName,
+                               @Nullable Integer maxOpenWriters,
+                               @Nullable String metricsDirectory) {
     conf.set(TABLENAME_FIELD, filterField);
     conf.set(BUCKET_NAME, bucketName);
     conf.set(BUCKET_PATH_UNIQUE_ID, UUID.randomUUID().toString());
     conf.set(PROJECT_NAME, projectName);
     conf.set(DATASET_NAME, datasetName);
+    if (maxOpenWriters != null) {
+      conf.setInt(MAX_OPEN_WRITERS, maxOpenWriters);
+    }
+    if (metricsDirectory != null) {
+      conf.set(METRICS_DIRECTORY, metricsDirectory);
+    }
   }
 
   @Override
@@ -61,13 +74,17 @@ public class DelegatingMultiSinkOutputFormat extends OutputFormat<StructuredReco
     String bucketPathUniqueId = conf.get(BUCKET_PATH_UNIQUE_ID);
     String projectName = conf.get(PROJECT_NAME);
     String datasetName = conf.get(DATASET_NAME);
+    int maxOpenWriters = conf.getInt(MAX_OPEN_WRITERS, Integer.MAX_VALUE);
+    String metricsDirectory = conf.get(METRICS_DIRECTORY);
 
     return new DelegatingMultiSinkRecordWriter(taskAttemptContext,
                                                tableNameField,
                                                bucketName,
                                                bucketPathUniqueId,
                                                DatasetId.of(projectName, datasetName),
-                                               getOutputCommitterInstance(taskAttemptContext));
+                                               getOutputCommitterInstance(taskAttemptContext),
+                                               maxOpenWriters,
+                                               metricsDirectory == null ? null : new Path(metricsDirectory));
   }
 
   @Override
@@ -87,10 +104,13 @@ public class DelegatingMultiSinkOutputFormat extends OutputFormat<StructuredReco
       String datasetName = conf.get(DATASET_NAME);
       String bucketName = conf.get(BUCKET_NAME);
       String bucketPathUniqueId = conf.get(BUCKET_PATH_UNIQUE_ID);
+      int commitParallelism = conf.getInt(BigQueryConstants.CONFIG_TABLE_COMMIT_PARALLELISM,
+                                          BigQueryConstants.DEFAULT_TABLE_COMMIT_PARALLELISM);
       delegatingMultiSinkOutputCommitter = new DelegatingMultiSinkOutputCommitter(projectName,
                                                                                   datasetName,
                                                                                   bucketName,
-                                                                                  bucketPathUniqueId);
+                                                                                  bucketPathUniqueId,
+                                                                                  commitParallelism);
     }
 
     return delegatingMultiSinkOutputCommitter;
@@ -21,6 +21,7 @@ import org.apache.avro.mapred.AvroKey;
 import org.apache.hadoop.conf.Configuration;
 
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Provides {@link DelegatingMultiSinkOutputFormat} to output values for multiple tables when the table schema
@@ -34,9 +35,12 @@ public class DelegatingMultiSinkOutputFormatProvider implements OutputFormatProv
                                                  String filterField,
                                                  String bucketName,
                                                  String projectName,
-                                                 String datasetName) {
+                                                 String datasetName,
+                                                 @Nullable Integer maxOpenWriters,
+                                                 @Nullable String metricsDirectory) {
     this.config = config;
-    DelegatingMultiSinkOutputFormat.configure(config, filterField, bucketName, projectName, datasetName);
+    DelegatingMultiSinkOutputFormat.configure(config, filterField, bucketName, projectName, datasetName,
+                                              maxOpenWriters, metricsDirectory);
   }
 
   @Override
@@ -18,24 +18,37 @@ package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.hadoop.io.bigquery.output.BigQueryTableFieldSchema;
+import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Record Writer which delegates writes to other Record Writers based on the record's Table name.
  * <p>
- * This Record Writer will initialize record writes and Output Committers as needed.
+ * This Record Writer will initialize record writes and Output Committers as needed. At most the configured maximum
+ * number of delegates are kept open. When a new delegate is needed beyond that, the least recently used one is closed,
+ * and a new delegate writing to new files is created if the table receives more records. The number of open and
+ * evicted delegates is stored in the metrics directory, if one is configured, from where the sink emits it.
  */
 public class DelegatingMultiSinkRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+  private static final Logger LOG = LoggerFactory.getLogger(DelegatingMultiSinkRecordWriter.class);
+  private static final String OUTPUT_NAME = "part";
 
   private final TaskAttemptContext initialContext;
   private final String tableNameField;
@@ -43,32 +56,43 @@ public class DelegatingMultiSinkRecordWriter extends RecordWriter<StructuredReco
   private final String bucketPathUniqueId;
   private final DatasetId datasetId;
   private final Map<String, RecordWriter<StructuredRecord, NullWritable>> delegateMap;
+  // Number of delegates created so far for each table
+  private final Map<String, Integer> delegateCounts;
   private final DelegatingMultiSinkOutputCommitter delegatingOutputCommitter;
+  private final int maxOpenWriters;
+  // Directory which stores the metrics of the delegates of each task, if metrics are collected
+  private final Path metricsDirectory;
+  private final BigQuerySinkMetrics metrics;
 
   public DelegatingMultiSinkRecordWriter(TaskAttemptContext initialContext,
                                          String tableNameField,
                                          String bucketName,
                                          String bucketPathUniqueId,
                                          DatasetId datasetId,
-                                         DelegatingMultiSinkOutputCommitter delegatingMultiSinkOutputCommitter) {
+                                         DelegatingMultiSinkOutputCommitter delegatingMultiSinkOutputCommitter,
+                                         int maxOpenWriters,
+                                         @Nullable Path metricsDirectory) {
     this.initialContext = initialContext;
     this.tableNameField = tableNameField;
     this.bucketName = bucketName;
     this.bucketPathUniqueId = bucketPathUniqueId;
     this.datasetId = datasetId;
-    this.delegateMap = new HashMap<>();
+    // Access order makes the first entry the least recently used delegate
+    this.delegateMap = new LinkedHashMap<>(16, 0.75f, true);
+    this.delegateCounts = new HashMap<>();
     this.delegatingOutputCommitter = delegatingMultiSinkOutputCommitter;
+    this.maxOpenWriters = maxOpenWriters;
+    this.metricsDirectory = metricsDirectory;
+    this.metrics = new BigQuerySinkMetrics();
   }
 
   @Override
   public void write(StructuredRecord key, NullWritable value) throws IOException, InterruptedException {
     String tableName = key.get(tableNameField);
 
-    RecordWriter<StructuredRecord, NullWritable> delegate;
+    RecordWriter<StructuredRecord, NullWritable> delegate = delegateMap.get(tableName);
 
-    if (delegateMap.containsKey(tableName)) {
-      delegate = delegateMap.get(tableName);
-    } else {
+    if (delegate == null) {
       delegate = getRecordWriterDelegate(tableName, key.getSchema());
     }
 
@@ -81,6 +105,11 @@ public class DelegatingMultiSinkRecordWriter extends RecordWriter<StructuredReco
       delegate.close(context);
     }
 
+    if (metricsDirectory != null) {
+      metrics.write(initialContext.getConfiguration(),
+                    new Path(metricsDirectory, FileOutputFormat.getUniqueFile(initialContext, "writers", ".json")));
+    }
+
     // The task attempt context at this stage doesn't have all of the configuration properties we need to properly
     // execute the commit job step. For this reason, we use the original context instance that was used when
     // creating this record writer.
@@ -93,6 +122,33 @@ public class DelegatingMultiSinkRecordWriter extends RecordWriter<StructuredReco
    */
   public RecordWriter<StructuredRecord, NullWritable> getRecordWriterDelegate(String tableName, Schema schema)
     throws IOException, InterruptedException {
+    if (delegateMap.size() >= maxOpenWriters) {
+      closeLeastRecentlyUsedDelegate();
+    }
+
+    int delegateCount = delegateCounts.getOrDefault(tableName, 0);
+    RecordWriter<StructuredRecord, NullWritable> delegate = createRecordWriterDelegate(tableName, schema,
+                                                                                       delegateCount);
+    delegateCounts.put(tableName, delegateCount + 1);
+    delegateMap.put(tableName, delegate);
+
+    metrics.updatePeakOpenWriters(delegateMap.size());
+
+    return delegate;
+  }
+
+  /**
+   * Creates a Record Writer Delegate for the specified table. The first delegate of a table also sets up the Output
+   * Committer of the table, later ones write additional files that are committed along with the first one.
+   *
+   * @param tableName name of the table
+   * @param schema schema of the records
+   * @param delegateCount number of delegates previously created for the table
+   */
+  @VisibleForTesting
+  RecordWriter<StructuredRecord, NullWritable> createRecordWriterDelegate(String tableName, Schema schema,
+                                                                          int delegateCount)
+    throws IOException, InterruptedException {
     // Configure output.
     List<BigQueryTableFieldSchema> fields = BigQuerySinkUtils.getBigQueryTableFieldsFromSchema(schema);
 
@@ -104,16 +160,35 @@ public class DelegatingMultiSinkRecordWriter extends RecordWriter<StructuredReco
                                                gcsPath,
                                                fields);
 
+    // Files of a previously closed delegate must not be overwritten, so each delegate uses a different file name.
+    String outputName = delegateCount == 0 ? OUTPUT_NAME : String.format("%s-%d", OUTPUT_NAME, delegateCount);
+    BigQuerySinkUtils.setOutputName(initialContext.getConfiguration(), outputName);
+
     BigQueryOutputFormat bqOutputFormat = new BigQueryOutputFormat();
 
-    // Get output committer instance for the current table and add it to the delegating Output Committer.
-    OutputCommitter bqOutputCommitter = bqOutputFormat.getOutputCommitter(initialContext);
-    delegatingOutputCommitter.addCommitterAndSchema(bqOutputCommitter, tableName, schema, initialContext);
+    if (delegateCount == 0) {
+      // Get output committer instance for the current table and add it to the delegating Output Committer.
+      OutputCommitter bqOutputCommitter = bqOutputFormat.getOutputCommitter(initialContext);
+      delegatingOutputCommitter.addCommitterAndSchema(bqOutputCommitter, tableName, schema, initialContext);
+    }
 
-    // Get record writer instance and add it to the delegate map.
-    RecordWriter<StructuredRecord, NullWritable> delegate = bqOutputFormat.getRecordWriter(initialContext, schema);
-    delegateMap.put(tableName, delegate);
+    return bqOutputFormat.getRecordWriter(initialContext, schema);
+  }
 
-    return delegate;
+  private void closeLeastRecentlyUsedDelegate() throws IOException, InterruptedException {
+    Iterator<Map.Entry<String, RecordWriter<StructuredRecord, NullWritable>>> iterator =
+      delegateMap.entrySet().iterator();
+    Map.Entry<String, RecordWriter<StructuredRecord, NullWritable>> eldest = iterator.next();
+    iterator.remove();
+
+    LOG.debug("Closing the record writer for table '{}' to stay within {} open writers.",
+              eldest.getKey(), maxOpenWriters);
+    eldest.getValue().close(initialContext);
+    metrics.addEvictedWriter();
+  }
+
+  @VisibleForTesting
+  BigQuerySinkMetrics getMetrics() {
+    return metrics;
   }
 }
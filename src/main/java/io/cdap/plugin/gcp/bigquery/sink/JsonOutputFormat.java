@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output format for newline delimited JSON. Each line is written as is, and if a target staging file size is
+ * configured, the task rolls over to a new part file once the current file reaches that size.
+ */
+public class JsonOutputFormat extends TextOutputFormat<Text, NullWritable> {
+
+  @Override
+  public RecordWriter<Text, NullWritable> getRecordWriter(TaskAttemptContext context)
+    throws IOException, InterruptedException {
+    long targetFileSize = context.getConfiguration().getLong(BigQueryConstants.CONFIG_STAGING_FILE_SIZE, 0);
+    if (targetFileSize <= 0 || getCompressOutput(context)) {
+      return super.getRecordWriter(context);
+    }
+    return new RollingLineRecordWriter(context, targetFileSize);
+  }
+
+  private OutputStream openPartFile(TaskAttemptContext context, String outputName,
+                                    String extension) throws IOException {
+    Path workPath = ((FileOutputCommitter) getOutputCommitter(context)).getWorkPath();
+    Path path = new Path(workPath, getUniqueFile(context, outputName, extension));
+    return path.getFileSystem(context.getConfiguration()).create(path, false);
+  }
+
+  /**
+   * Writes one record per line, starting a new part file whenever the current one reaches the target size.
+   */
+  private final class RollingLineRecordWriter extends RecordWriter<Text, NullWritable> {
+    private final TaskAttemptContext context;
+    private final long targetFileSize;
+    private final String outputName;
+    private OutputStream out;
+    private long fileSize;
+    private int part;
+
+    private RollingLineRecordWriter(TaskAttemptContext context, long targetFileSize) throws IOException {
+      this.context = context;
+      this.targetFileSize = targetFileSize;
+      // The configuration may be changed for other writers before the next part is opened
+      this.outputName = getOutputName(context);
+      // The first file has the same name as without rolling and is created even if the task has no records
+      this.out = openPartFile(context, outputName, "");
+    }
+
+    @Override
+    public void write(Text key, NullWritable value) throws IOException {
+      if (out == null) {
+        out = openPartFile(context, outputName, String.format("-%05d", ++part));
+      }
+      out.write(key.getBytes(), 0, key.getLength());
+      out.write('\n');
+      fileSize += key.getLength() + 1;
+      if (fileSize >= targetFileSize) {
+        out.close();
+        out = null;
+        fileSize = 0;
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+}
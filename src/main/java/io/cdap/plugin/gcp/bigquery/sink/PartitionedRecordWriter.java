@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Record writer which stages the records of each daily partition of a time partitioned table in separate files.
+ * <p>
+ * The files of a partition are named after the partition id BigQuery uses in partition decorators, so that the
+ * committer can load each partition on its own. At most the configured number of partition files are kept open. When
+ * another partition receives records beyond that, the least recently used file is closed, and a new file is written if
+ * the closed partition receives more records.
+ */
+public class PartitionedRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedRecordWriter.class);
+
+  public static final String NULL_PARTITION = "__NULL__";
+  public static final String UNPARTITIONED = "__UNPARTITIONED__";
+  public static final int DEFAULT_MAX_OPEN_WRITERS = 32;
+  private static final String OUTPUT_NAME_PREFIX = "partition_";
+  // File names start with the output name, which may be followed by the number of the writer of the partition
+  private static final Pattern FILE_NAME_PATTERN =
+    Pattern.compile("^" + OUTPUT_NAME_PREFIX + "([0-9]{8}|" + NULL_PARTITION + "|" + UNPARTITIONED + ")-");
+  // Dates outside of this range are stored in the __UNPARTITIONED__ partition
+  private static final LocalDate MIN_PARTITION_DATE = LocalDate.of(1960, 1, 1);
+  private static final LocalDate MAX_PARTITION_DATE = LocalDate.of(2159, 12, 31);
+
+  private final TaskAttemptContext context;
+  private final String partitionField;
+  private final Schema.LogicalType partitionType;
+  private final WriterFactory writerFactory;
+  private final int maxOpenWriters;
+  // Access order makes the first entry the least recently used writer
+  private final Map<String, RecordWriter<StructuredRecord, NullWritable>> writers;
+  // Number of writers created so far for each partition
+  private final Map<String, Integer> writerCounts;
+
+  /**
+   * Creates the record writer of a single partition.
+   */
+  public interface WriterFactory {
+
+    /**
+     * Creates a record writer that stages files with the given base name.
+     */
+    RecordWriter<StructuredRecord, NullWritable> create(String outputName) throws IOException, InterruptedException;
+  }
+
+  /**
+   * Creates a writer which stages the records of each partition in separate files.
+   *
+   * @param context the task attempt context
+   * @param partitionField field the table is partitioned by
+   * @param partitionType logical type of the partition field, which must be a date or a timestamp
+   * @param writerFactory factory of the record writers of the partitions
+   * @param maxOpenWriters maximum number of partition writers open at the same time
+   */
+  public PartitionedRecordWriter(TaskAttemptContext context, String partitionField, Schema.LogicalType partitionType,
+                                 WriterFactory writerFactory, int maxOpenWriters) {
+    if (!isSupportedType(partitionType)) {
+      throw new IllegalArgumentException(
+        String.format("Partition field '%s' of type '%s' is not a date or timestamp.", partitionField, partitionType));
+    }
+    this.context = context;
+    this.partitionField = partitionField;
+    this.partitionType = partitionType;
+    this.writerFactory = writerFactory;
+    this.maxOpenWriters = maxOpenWriters;
+    this.writers = new LinkedHashMap<>(16, 0.75f, true);
+    this.writerCounts = new HashMap<>();
+  }
+
+  @Override
+  public void write(StructuredRecord record, NullWritable value) throws IOException, InterruptedException {
+    String partitionId = getPartitionId(partitionType, record.get(partitionField));
+    RecordWriter<StructuredRecord, NullWritable> writer = writers.get(partitionId);
+    if (writer == null) {
+      writer = createWriter(partitionId);
+    }
+    writer.write(record, value);
+  }
+
+  @Override
+  public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+    for (RecordWriter<StructuredRecord, NullWritable> writer : writers.values()) {
+      writer.close(context);
+    }
+    writers.clear();
+  }
+
+  private RecordWriter<StructuredRecord, NullWritable> createWriter(String partitionId)
+    throws IOException, InterruptedException {
+    if (writers.size() >= maxOpenWriters) {
+      Iterator<Map.Entry<String, RecordWriter<StructuredRecord, NullWritable>>> iterator =
+        writers.entrySet().iterator();
+      Map.Entry<String, RecordWriter<StructuredRecord, NullWritable>> eldest = iterator.next();
+      iterator.remove();
+      LOG.debug("Closing the record writer for partition '{}' to stay within {} open writers.",
+                eldest.getKey(), maxOpenWriters);
+      eldest.getValue().close(context);
+    }
+
+    // Files of a previously closed writer must not be overwritten, so each writer uses a different file name.
+    int writerCount = writerCounts.getOrDefault(partitionId, 0);
+    String outputName = OUTPUT_NAME_PREFIX + partitionId;
+    RecordWriter<StructuredRecord, NullWritable> writer =
+      writerFactory.create(writerCount == 0 ? outputName : String.format("%s-%d", outputName, writerCount));
+    writerCounts.put(partitionId, writerCount + 1);
+    writers.put(partitionId, writer);
+    return writer;
+  }
+
+  /**
+   * Returns whether records can be staged by partition for a partition field of the given type.
+   */
+  public static boolean isSupportedType(@Nullable Schema.LogicalType logicalType) {
+    return logicalType == Schema.LogicalType.DATE || logicalType == Schema.LogicalType.TIMESTAMP_MICROS
+      || logicalType == Schema.LogicalType.TIMESTAMP_MILLIS;
+  }
+
+  /**
+   * Returns the id of the daily partition of the given value, which is either the date in the format 'yyyyMMdd',
+   * {@link #NULL_PARTITION} or {@link #UNPARTITIONED}.
+   *
+   * @param logicalType logical type of the partition field
+   * @param value value of the partition field
+   */
+  public static String getPartitionId(Schema.LogicalType logicalType, @Nullable Object value) {
+    if (value == null) {
+      return NULL_PARTITION;
+    }
+    long epochDay;
+    switch (logicalType) {
+      case DATE:
+        epochDay = ((Number) value).longValue();
+        break;
+      case TIMESTAMP_MICROS:
+        epochDay = Math.floorDiv(((Number) value).longValue(), TimeUnit.DAYS.toMicros(1));
+        break;
+      case TIMESTAMP_MILLIS:
+        epochDay = Math.floorDiv(((Number) value).longValue(), TimeUnit.DAYS.toMillis(1));
+        break;
+      default:
+        throw new IllegalArgumentException(String.format("Type '%s' cannot be partitioned by day.", logicalType));
+    }
+    if (epochDay < MIN_PARTITION_DATE.toEpochDay() || epochDay > MAX_PARTITION_DATE.toEpochDay()) {
+      return UNPARTITIONED;
+    }
+    return LocalDate.ofEpochDay(epochDay).format(DateTimeFormatter.BASIC_ISO_DATE);
+  }
+
+  /**
+   * Returns the id of the partition whose records are staged in the given file, or null if the file was not staged by
+   * a {@link PartitionedRecordWriter}.
+   *
+   * @param path path or URI of the staged file
+   */
+  @Nullable
+  public static String getPartitionIdOfFile(String path) {
+    Matcher matcher = FILE_NAME_PATTERN.matcher(path.substring(path.lastIndexOf('/') + 1));
+    return matcher.find() ? matcher.group(1) : null;
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.cdap.plugin.gcp.bigquery.source;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.format.UnexpectedFormatException;
@@ -28,18 +29,37 @@ import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
  * Create StructuredRecords from GenericRecords. Contains custom logic for BigQuery date and time types.
+ *
+ * The first record of each output schema and Avro schema compiles the output schema into an array of field
+ * converters indexed by the position of the field in the output schema, along with the position of the field in the
+ * Avro record. Subsequent records with the same schemas only look up their values by position and apply the
+ * converters.
  */
 public class BigQueryAvroToStructuredTransformer extends RecordConverter<GenericRecord, StructuredRecord> {
 
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+  private static final long NANOS_PER_HOUR = TimeUnit.HOURS.toNanos(1);
+  // Marks dates that are not in the fixed format of BigQuery
+  private static final int INVALID_DATE = Integer.MIN_VALUE;
+
+  private final Map<Schema, RecordType> recordTypes = new HashMap<>();
   private Schema genericRecordSchema;
+  private Schema lastSchema;
+  private RecordType lastRecordType;
 
   public StructuredRecord transform(GenericRecord genericRecord) throws IOException {
     if (genericRecordSchema == null) {
@@ -50,13 +70,12 @@ public class BigQueryAvroToStructuredTransformer extends RecordConverter<Generic
 
   @Override
   public StructuredRecord transform(GenericRecord genericRecord, Schema structuredSchema) throws IOException {
-    StructuredRecord.Builder builder = StructuredRecord.builder(structuredSchema);
-    for (Schema.Field field : structuredSchema.getFields()) {
-      String fieldName = field.getName();
-      Object value = convertField(genericRecord.get(fieldName), field);
-      builder.set(fieldName, value);
+    // The output schema is usually the same instance for every record
+    if (structuredSchema != lastSchema) {
+      lastRecordType = recordTypes.computeIfAbsent(structuredSchema, RecordType::new);
+      lastSchema = structuredSchema;
     }
-    return builder.build();
+    return lastRecordType.convert(genericRecord);
   }
 
   @Override
@@ -65,68 +84,136 @@ public class BigQueryAvroToStructuredTransformer extends RecordConverter<Generic
     if (field == null) {
       return null;
     }
-
     // Union schema expected to be nullable schema. Underlying non-nullable type should always be a supported type
-    fieldSchema = fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema;
+    return compileField(fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema).convert(field);
+  }
+
+  /**
+   * Converts a non-null value of a single schema type into its {@link StructuredRecord} representation.
+   */
+  protected interface FieldConverter {
+    @Nullable
+    Object convert(Object value) throws IOException;
+  }
+
+  /**
+   * Compiles the converter for non-null values of the given schema, which is not nullable. Subclasses that convert
+   * some types differently override this method for those types.
+   */
+  protected FieldConverter compileField(Schema fieldSchema) {
     Schema.Type fieldType = fieldSchema.getType();
     Schema.LogicalType logicalType = fieldSchema.getLogicalType();
-
-    try {
-      if (logicalType != null) {
-        switch (logicalType) {
-          case DATE:
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          return value -> {
+            // The Storage Read API returns days since the epoch
+            if (value instanceof Integer) {
+              return value;
+            }
             // date will be in yyyy-mm-dd format
-            return Math.toIntExact(LocalDate.parse(field.toString()).toEpochDay());
-          case TIME_MILLIS:
-            // time will be in hh:mm:ss format
-            return Math.toIntExact(TimeUnit.NANOSECONDS.toMillis(LocalTime.parse(field.toString()).toNanoOfDay()));
-          case TIME_MICROS:
-            // time will be in hh:mm:ss format
-            return TimeUnit.NANOSECONDS.toMicros(LocalTime.parse(field.toString()).toNanoOfDay());
-          case TIMESTAMP_MILLIS:
-          case TIMESTAMP_MICROS:
-            return field;
-          case DATETIME:
             try {
-              LocalDateTime.parse(field.toString());
-            } catch (DateTimeParseException exception) {
-              throw new UnexpectedFormatException(
-                String.format("Datetime field with value '%s' is not in ISO-8601 format.",
-                              fieldSchema.getDisplayName(),
-                              field.toString()),
-                exception);
+              return parseDate(value.toString());
+            } catch (ArithmeticException e) {
+              throw new IOException(String.format("Field type %s has value that is too large.", fieldType));
+            }
+          };
+        case TIME_MILLIS:
+          return value -> {
+            // The Storage Read API returns microseconds since midnight
+            if (value instanceof Long) {
+              return (int) TimeUnit.MICROSECONDS.toMillis((Long) value);
+            }
+            // time will be in hh:mm:ss format
+            return (int) TimeUnit.NANOSECONDS.toMillis(parseNanoOfDay(value.toString()));
+          };
+        case TIME_MICROS:
+          return value -> value instanceof Long ? value :
+            TimeUnit.NANOSECONDS.toMicros(parseNanoOfDay(value.toString()));
+        case TIMESTAMP_MILLIS:
+        case TIMESTAMP_MICROS:
+          return value -> value;
+        case DATETIME:
+          return value -> {
+            String datetime = value.toString();
+            if (!isDateTime(datetime)) {
+              try {
+                LocalDateTime.parse(datetime);
+              } catch (DateTimeParseException exception) {
+                throw new UnexpectedFormatException(
+                  String.format("Datetime field '%s' with value '%s' is not in ISO-8601 format.",
+                                fieldSchema.getDisplayName(), datetime),
+                  exception);
+              }
             }
             //If properly formatted return the string
-            return field.toString();
-          case DECIMAL:
-            ByteBuffer value = (ByteBuffer) field;
-            byte[] bytes = new byte[value.remaining()];
-            int pos = value.position();
-            value.get(bytes);
-            value.position(pos);
+            return datetime;
+          };
+        case DECIMAL:
+          return value -> {
+            ByteBuffer buffer = (ByteBuffer) value;
+            byte[] bytes = new byte[buffer.remaining()];
+            int pos = buffer.position();
+            buffer.get(bytes);
+            buffer.position(pos);
             return bytes;
-          default:
+          };
+        default:
+          return value -> {
             throw new UnexpectedFormatException("Field type '" + fieldSchema.getDisplayName() + "' is not supported.");
-        }
+          };
       }
-    } catch (ArithmeticException e) {
-      throw new IOException("Field type %s has value that is too large." + fieldType);
     }
 
     // Complex types like maps and unions are not supported in BigQuery plugins.
     if (!BigQuerySourceConfig.SUPPORTED_TYPES.contains(fieldType)) {
-      throw new UnexpectedFormatException("Field type " + fieldType + " is not supported.");
+      return value -> {
+        throw new UnexpectedFormatException("Field type " + fieldType + " is not supported.");
+      };
     }
 
-    if (fieldSchema.getType() == Schema.Type.RECORD && field instanceof List) {
-      List<Object> valuesList = (List<Object>) field;
-      List<Object> resultList = new ArrayList<>(valuesList.size());
-      for (Object value : valuesList) {
-        resultList.add(super.convertField(value, fieldSchema));
-      }
-      return resultList;
+    switch (fieldType) {
+      case STRING:
+        return Object::toString;
+      case BYTES:
+        return this::convertBytes;
+      case RECORD:
+        RecordType recordType = new RecordType(fieldSchema);
+        return value -> {
+          if (!(value instanceof List)) {
+            return recordType.convert((GenericRecord) value);
+          }
+          List<?> valuesList = (List<?>) value;
+          List<Object> resultList = new ArrayList<>(valuesList.size());
+          for (Object element : valuesList) {
+            if (element == null) {
+              throw new NullPointerException("Found a null value for a non-nullable field.");
+            }
+            resultList.add(recordType.convert((GenericRecord) element));
+          }
+          return resultList;
+        };
+      case ARRAY:
+        FieldConverter componentConverter = compileNullable(fieldSchema.getComponentSchema());
+        return value -> {
+          if (!(value instanceof Collection)) {
+            return super.convertField(value, fieldSchema);
+          }
+          Collection<?> collection = (Collection<?>) value;
+          List<Object> result = new ArrayList<>(collection.size());
+          for (Object element : collection) {
+            result.add(componentConverter.convert(element));
+          }
+          return result;
+        };
+      default:
+        return value -> value;
     }
-    return super.convertField(field, fieldSchema);
+  }
+
+  private FieldConverter compileNullable(Schema schema) {
+    FieldConverter converter = compileField(schema.isNullable() ? schema.getNonNullable() : schema);
+    return value -> value == null ? null : converter.convert(value);
   }
 
   @Override
@@ -134,4 +221,182 @@ public class BigQueryAvroToStructuredTransformer extends RecordConverter<Generic
     return field instanceof ByteBuffer ? Bytes.toBytes((ByteBuffer) field) : field;
   }
 
+  /**
+   * Returns the days since the epoch of a date in the format 'yyyy-MM-dd' used by BigQuery. Other ISO-8601 dates
+   * are parsed with {@link LocalDate#parse(CharSequence)}.
+   */
+  @VisibleForTesting
+  static int parseDate(String value) {
+    if (value.length() == 10) {
+      int epochDay = parseFixedDate(value);
+      if (epochDay != INVALID_DATE) {
+        return epochDay;
+      }
+    }
+    // Falls back to the ISO parser, which also reports invalid values
+    return Math.toIntExact(LocalDate.parse(value).toEpochDay());
+  }
+
+  /**
+   * Returns the nanoseconds since midnight of a time in the format 'HH:mm:ss[.ffffff]' used by BigQuery. Other
+   * ISO-8601 times are parsed with {@link LocalTime#parse(CharSequence)}.
+   */
+  @VisibleForTesting
+  static long parseNanoOfDay(String value) {
+    long nanoOfDay = parseFixedTime(value, 0);
+    return nanoOfDay >= 0 ? nanoOfDay : LocalTime.parse(value).toNanoOfDay();
+  }
+
+  /**
+   * Returns whether the value is a datetime in the format 'yyyy-MM-ddTHH:mm:ss[.ffffff]' used by BigQuery.
+   */
+  @VisibleForTesting
+  static boolean isDateTime(String value) {
+    return value.length() >= 19 && value.charAt(10) == 'T' && parseFixedDate(value) != INVALID_DATE
+      && parseFixedTime(value, 11) >= 0;
+  }
+
+  /**
+   * Parses the date 'yyyy-MM-dd' at the start of the value, which must have at least 10 characters.
+   *
+   * @return the days since the epoch, or {@link #INVALID_DATE} if the value does not start with a valid date
+   */
+  private static int parseFixedDate(String value) {
+    if (value.charAt(4) != '-' || value.charAt(7) != '-') {
+      return INVALID_DATE;
+    }
+    int year = parseDigits(value, 0, 4);
+    int month = parseDigits(value, 5, 7);
+    int day = parseDigits(value, 8, 10);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+      return INVALID_DATE;
+    }
+    return (int) LocalDate.of(year, month, day).toEpochDay();
+  }
+
+  /**
+   * Parses the time 'HH:mm:ss' with an optional fraction of up to nine digits from the given index to the end of the
+   * value.
+   *
+   * @return the nanoseconds since midnight, or -1 if the value does not end with a valid time
+   */
+  private static long parseFixedTime(String value, int start) {
+    int length = value.length();
+    if (length < start + 8 || value.charAt(start + 2) != ':' || value.charAt(start + 5) != ':') {
+      return -1;
+    }
+    int hour = parseDigits(value, start, start + 2);
+    int minute = parseDigits(value, start + 3, start + 5);
+    int second = parseDigits(value, start + 6, start + 8);
+    if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return -1;
+    }
+    long nanos = hour * NANOS_PER_HOUR + minute * NANOS_PER_MINUTE + second * NANOS_PER_SECOND;
+    int fractionStart = start + 8;
+    if (length == fractionStart) {
+      return nanos;
+    }
+    int fractionDigits = length - fractionStart - 1;
+    if (value.charAt(fractionStart) != '.' || fractionDigits < 1 || fractionDigits > 9) {
+      return -1;
+    }
+    int fraction = parseDigits(value, fractionStart + 1, length);
+    if (fraction < 0) {
+      return -1;
+    }
+    for (int i = fractionDigits; i < 9; i++) {
+      fraction *= 10;
+    }
+    return nanos + fraction;
+  }
+
+  /**
+   * Returns the value of the decimal digits between the given indexes, or -1 if any character is not a digit.
+   */
+  private static int parseDigits(String value, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      int digit = value.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      result = result * 10 + digit;
+    }
+    return result;
+  }
+
+  /**
+   * Converter for records of a given output schema. Values are looked up by the position of the field in the Avro
+   * record, so a plan is compiled for every Avro schema.
+   */
+  private final class RecordType {
+    private final Schema schema;
+    private final Map<org.apache.avro.Schema, RecordPlan> plans;
+    private org.apache.avro.Schema lastAvroSchema;
+    private RecordPlan lastPlan;
+
+    private RecordType(Schema schema) {
+      this.schema = schema;
+      this.plans = new HashMap<>();
+    }
+
+    private StructuredRecord convert(GenericRecord genericRecord) throws IOException {
+      org.apache.avro.Schema avroSchema = genericRecord.getSchema();
+      if (avroSchema != lastAvroSchema) {
+        lastPlan = plans.computeIfAbsent(avroSchema, this::compilePlan);
+        lastAvroSchema = avroSchema;
+      }
+      return lastPlan.convert(genericRecord);
+    }
+
+    private RecordPlan compilePlan(org.apache.avro.Schema avroSchema) {
+      List<Schema.Field> fields = schema.getFields();
+      int size = fields.size();
+      String[] names = new String[size];
+      int[] positions = new int[size];
+      FieldConverter[] converters = new FieldConverter[size];
+      for (int i = 0; i < size; i++) {
+        Schema.Field field = fields.get(i);
+        names[i] = field.getName();
+        // Fields missing from the Avro record are null, as with GenericRecord#get(String)
+        org.apache.avro.Schema.Field avroField = avroSchema.getField(field.getName());
+        positions[i] = avroField == null ? -1 : avroField.pos();
+        converters[i] = compileNullable(field.getSchema());
+      }
+      return new RecordPlan(schema, names, positions, converters);
+    }
+  }
+
+  /**
+   * Field converters of an output record type for a given Avro schema, indexed by output field position.
+   */
+  private static final class RecordPlan {
+    private final Schema schema;
+    private final String[] names;
+    private final int[] positions;
+    private final FieldConverter[] converters;
+
+    private RecordPlan(Schema schema, String[] names, int[] positions, FieldConverter[] converters) {
+      this.schema = schema;
+      this.names = names;
+      this.positions = positions;
+      this.converters = converters;
+    }
+
+    private StructuredRecord convert(GenericRecord genericRecord) throws IOException {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (int i = 0; i < names.length; i++) {
+        Object value = positions[i] < 0 ? null : genericRecord.get(positions[i]);
+        try {
+          value = converters[i].convert(value);
+        } catch (UnexpectedFormatException e) {
+          // Name the field in the message, other failures propagate unchanged
+          throw new UnexpectedFormatException(
+            String.format("Error converting field '%s': %s", names[i], e.getMessage()), e);
+        }
+        builder.set(names[i], value);
+      }
+      return builder.build();
+    }
+  }
 }
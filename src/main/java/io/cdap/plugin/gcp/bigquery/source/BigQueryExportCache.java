@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.hadoop.io.bigquery.UnshardedInputSplit;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of BigQuery table exports in GCS, which lets runs that read an unchanged table reuse the files exported by an
+ * earlier run instead of exporting the table again.
+ * <p>
+ * Exports are stored in the cache directory under '{table}/{key}/{export}', where the key is derived from the last
+ * modification time of the table and the fields, filter and partition range of the read. Concurrent runs that miss
+ * the cache each export into their own directory. An export can be read once its marker file exists. Exports expire
+ * after a time to live, and the oldest exports are evicted once the cache exceeds its size limit. Runs lease the
+ * export they read, and leased exports are neither expired nor evicted until the lease ends, so that an export found
+ * by a run is not deleted by a concurrent run while it is being read.
+ */
+public class BigQueryExportCache {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryExportCache.class);
+  // Starts with an underscore, so that it is not read as an exported file
+  static final String COMPLETE_MARKER = "_EXPORT_COMPLETE";
+  // Modified whenever a run starts reading the export
+  static final String LEASE_MARKER = "_EXPORT_LEASE";
+  public static final long DEFAULT_TTL_HOURS = 24;
+  public static final long DEFAULT_LEASE_HOURS = 6;
+
+  private final Configuration conf;
+  private final Path root;
+  private final long ttlMillis;
+  private final long maxBytes;
+  private final long leaseMillis;
+
+  public BigQueryExportCache(Configuration conf, Path root, long ttlMillis, long maxBytes, long leaseMillis) {
+    this.conf = conf;
+    this.root = root;
+    this.ttlMillis = ttlMillis;
+    this.maxBytes = maxBytes;
+    this.leaseMillis = leaseMillis;
+  }
+
+  /**
+   * Creates the export cache configured with {@link BigQueryConstants#CONFIG_EXPORT_CACHE_PATH}.
+   *
+   * @return the cache, or null if no cache is configured
+   */
+  @Nullable
+  public static BigQueryExportCache create(Configuration conf) {
+    String path = conf.get(BigQueryConstants.CONFIG_EXPORT_CACHE_PATH);
+    if (Strings.isNullOrEmpty(path)) {
+      return null;
+    }
+    long ttlMillis = TimeUnit.HOURS.toMillis(conf.getLong(BigQueryConstants.CONFIG_EXPORT_CACHE_TTL_HOURS,
+                                                          DEFAULT_TTL_HOURS));
+    long maxBytes = conf.getLong(BigQueryConstants.CONFIG_EXPORT_CACHE_MAX_BYTES, Long.MAX_VALUE);
+    long leaseMillis = TimeUnit.HOURS.toMillis(conf.getLong(BigQueryConstants.CONFIG_EXPORT_CACHE_LEASE_HOURS,
+                                                            DEFAULT_LEASE_HOURS));
+    return new BigQueryExportCache(conf, new Path(path), ttlMillis, maxBytes, leaseMillis);
+  }
+
+  /**
+   * Returns the directory of the exports of a table read with the given options.
+   *
+   * @param table fully qualified name of the table
+   * @param lastModifiedTime last modification time of the table
+   * @param selectList fields read from the table
+   * @param filter filter applied to the rows of the table
+   * @param partitionFromDate start of the partition range
+   * @param partitionToDate end of the partition range
+   */
+  public Path getEntry(String table, long lastModifiedTime, String selectList, @Nullable String filter,
+                       @Nullable String partitionFromDate, @Nullable String partitionToDate) {
+    String key = String.join("\n", table, Long.toString(lastModifiedTime), selectList, Strings.nullToEmpty(filter),
+                             Strings.nullToEmpty(partitionFromDate), Strings.nullToEmpty(partitionToDate));
+    return new Path(new Path(root, table), Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString());
+  }
+
+  /**
+   * Returns the most recent complete export in the given entry which has not expired.
+   *
+   * @return the directory of the export, or null if there is none
+   */
+  @Nullable
+  public Path findExport(Path entry) throws IOException {
+    FileSystem fs = entry.getFileSystem(conf);
+    FileStatus[] markers = fs.globStatus(new Path(entry, "*/" + COMPLETE_MARKER));
+    if (markers == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    FileStatus latest = null;
+    for (FileStatus marker : markers) {
+      if (now - marker.getModificationTime() < ttlMillis &&
+        (latest == null || marker.getModificationTime() > latest.getModificationTime())) {
+        latest = marker;
+      }
+    }
+    return latest == null ? null : latest.getPath().getParent();
+  }
+
+  /**
+   * Returns a new directory to export into, which is part of the given entry once {@link #markComplete} is called.
+   */
+  public Path newExport(Path entry) {
+    return new Path(entry, UUID.randomUUID().toString());
+  }
+
+  public void markComplete(Path export) throws IOException {
+    export.getFileSystem(conf).create(new Path(export, COMPLETE_MARKER), true).close();
+  }
+
+  /**
+   * Leases an export to the current run, which keeps it from being deleted until the lease ends. Leasing an export
+   * again extends the lease.
+   */
+  public void lease(Path export) throws IOException {
+    export.getFileSystem(conf).create(new Path(export, LEASE_MARKER), true).close();
+  }
+
+  /**
+   * Returns the splits of the files of an export, including the files in its sub-directories.
+   */
+  public List<InputSplit> getSplits(JobContext context, Path export) throws IOException {
+    Configuration listConf = new Configuration(context.getConfiguration());
+    listConf.set(FileInputFormat.INPUT_DIR, export.toString());
+    listConf.setBoolean(FileInputFormat.INPUT_DIR_RECURSIVE, true);
+    List<InputSplit> splits = new ArrayList<>();
+    for (InputSplit split : new TextInputFormat().getSplits(new JobContextImpl(listConf, context.getJobID()))) {
+      FileSplit fileSplit = (FileSplit) split;
+      splits.add(new UnshardedInputSplit(fileSplit.getPath(), fileSplit.getStart(), fileSplit.getLength(),
+                                         fileSplit.getLocations()));
+    }
+    return splits;
+  }
+
+  /**
+   * Deletes expired exports and incomplete exports older than the time to live. If the remaining exports exceed the
+   * size limit, the oldest ones are deleted until the cache fits. Exports which are leased are never deleted. Failures
+   * are logged, since they do not affect the current run.
+   *
+   * @param inUse export read by the current run, which is never deleted
+   */
+  public void evict(Path inUse) {
+    try {
+      FileSystem fs = root.getFileSystem(conf);
+      FileStatus[] exports = fs.globStatus(new Path(root, "*/*/*"));
+      if (exports == null) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      List<CachedExport> remaining = new ArrayList<>();
+      long totalBytes = 0;
+      for (FileStatus export : exports) {
+        Path path = export.getPath();
+        if (!export.isDirectory() || path.equals(fs.makeQualified(inUse))) {
+          continue;
+        }
+        Path marker = new Path(path, COMPLETE_MARKER);
+        long exportTime = fs.exists(marker) ? fs.getFileStatus(marker).getModificationTime() : -1L;
+        long age = now - (exportTime < 0 ? export.getModificationTime() : exportTime);
+        if (isLeased(fs, path, now)) {
+          LOG.debug("Keeping leased export '{}' in the export cache.", path);
+          totalBytes += fs.getContentSummary(path).getLength();
+        } else if (age >= ttlMillis) {
+          LOG.debug("Deleting expired export '{}' from the export cache.", path);
+          fs.delete(path, true);
+        } else if (exportTime >= 0) {
+          long bytes = fs.getContentSummary(path).getLength();
+          remaining.add(new CachedExport(path, exportTime, bytes));
+          totalBytes += bytes;
+        }
+      }
+      totalBytes += fs.getContentSummary(inUse).getLength();
+
+      remaining.sort(Comparator.comparingLong(export -> export.exportTime));
+      for (CachedExport export : remaining) {
+        if (totalBytes <= maxBytes) {
+          break;
+        }
+        LOG.debug("Deleting export '{}' to keep the export cache within {} bytes.", export.path, maxBytes);
+        fs.delete(export.path, true);
+        totalBytes -= export.bytes;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to evict exports from the export cache in '{}'.", root, e);
+    }
+  }
+
+  private boolean isLeased(FileSystem fs, Path export, long now) throws IOException {
+    Path marker = new Path(export, LEASE_MARKER);
+    return fs.exists(marker) && now - fs.getFileStatus(marker).getModificationTime() < leaseMillis;
+  }
+
+  /**
+   * Complete export in the cache.
+   */
+  private static final class CachedExport {
+    private final Path path;
+    private final long exportTime;
+    private final long bytes;
+
+    private CachedExport(Path path, long exportTime, long bytes) {
+      this.path = path;
+      this.exportTime = exportTime;
+      this.bytes = bytes;
+    }
+  }
+}
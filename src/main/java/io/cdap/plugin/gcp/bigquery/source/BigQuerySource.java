@@ -22,6 +22,10 @@ import com.google.cloud.bigquery.Dataset;
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.StandardSQLTypeName;
 import com.google.cloud.bigquery.StandardTableDefinition;
 import com.google.cloud.bigquery.Table;
 import com.google.cloud.bigquery.TableDefinition.Type;
@@ -55,12 +59,15 @@ import io.cdap.plugin.gcp.common.CmekUtils;
 import io.cdap.plugin.gcp.common.GCPUtils;
 import org.apache.avro.generic.GenericData;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.time.DateTimeException;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -83,6 +90,9 @@ public final class BigQuerySource extends BatchSource<LongWritable, GenericData.
   private final BigQueryAvroToStructuredTransformer transformer = new BigQueryAvroToStructuredTransformer();
   // UUID for the run. Will be used as bucket name if bucket is not provided.
   private String bucketPath;
+  // Watermark stored once the run succeeds, if the source reads incrementally and there are new rows
+  private BigQueryWatermark watermark;
+  private Path watermarkPath;
 
   @Override
   public void configurePipeline(PipelineConfigurer configurer) {
@@ -117,7 +127,8 @@ public final class BigQuerySource extends BatchSource<LongWritable, GenericData.
     FailureCollector collector = context.getFailureCollector();
     config.validate(collector, context.getArguments().asMap());
 
-    if (getBQSchema(collector).getFields().isEmpty()) {
+    FieldList tableFields = getBQSchema(collector).getFields();
+    if (tableFields.isEmpty()) {
       collector.addFailure(String.format("BigQuery table %s.%s does not have a schema.",
                                          config.getDataset(), config.getTable()),
                            "Please edit the table to add a schema.");
@@ -136,26 +147,47 @@ public final class BigQuerySource extends BatchSource<LongWritable, GenericData.
     // Get Configuration for this run
     bucketPath = UUID.randomUUID().toString();
     CryptoKeyName cmekKeyName = CmekUtils.getCmekKey(config.cmekKey, context.getArguments().asMap(), collector);
+    // Number of export jobs submitted concurrently when a partitioned table is exported partition by partition
+    Integer exportParallelism = BigQueryUtil.getPositiveIntArgument(
+      context.getArguments().asMap(), BigQueryConstants.CONFIG_EXPORT_PARALLELISM, collector);
     collector.getOrThrowException();
     configuration = BigQueryUtil.getBigQueryConfig(serviceAccount, config.getProject(), cmekKeyName,
                                                    config.getServiceAccountType());
+    if (exportParallelism != null) {
+      configuration.setInt(BigQueryConstants.CONFIG_EXPORT_PARALLELISM, exportParallelism);
+    }
+    // Exports of unchanged tables are reused by later runs if an export cache is configured
+    for (String cacheProperty : Arrays.asList(BigQueryConstants.CONFIG_EXPORT_CACHE_PATH,
+                                              BigQueryConstants.CONFIG_EXPORT_CACHE_TTL_HOURS,
+                                              BigQueryConstants.CONFIG_EXPORT_CACHE_MAX_BYTES,
+                                              BigQueryConstants.CONFIG_EXPORT_CACHE_LEASE_HOURS)) {
+      String value = context.getArguments().get(cacheProperty);
+      if (!Strings.isNullOrEmpty(value)) {
+        configuration.set(cacheProperty, value);
+      }
+    }
 
-    // Configure GCS Bucket to use
-    String bucket = BigQuerySourceUtils.getOrCreateBucket(configuration,
-                                                          storage,
-                                                          config.getBucket(),
-                                                          dataset,
-                                                          bucketPath,
-                                                          cmekKeyName);
+    // Configure GCS Bucket to use. The Storage Read API reads the table directly, so it does not need a bucket.
+    String temporaryGcsPath = null;
+    if (config.getReadMethod() == ReadMethod.GCS) {
+      String bucket = BigQuerySourceUtils.getOrCreateBucket(configuration,
+                                                            storage,
+                                                            config.getBucket(),
+                                                            dataset,
+                                                            bucketPath,
+                                                            cmekKeyName);
+      temporaryGcsPath = BigQuerySourceUtils.getTemporaryGcsPath(bucket, bucketPath, bucketPath);
+    }
 
     // Configure Service account credentials
     BigQuerySourceUtils.configureServiceAccount(configuration, config.getConnection());
 
     // Configure BQ Source
     configureBigQuerySource();
+    configureSelectedFields(configuredSchema, tableFields);
+    configureWatermark(context, bigQuery, dataset, tableFields);
 
     // Configure BigQuery input format.
-    String temporaryGcsPath = BigQuerySourceUtils.getTemporaryGcsPath(bucket, bucketPath, bucketPath);
     BigQuerySourceUtils.configureBigQueryInput(configuration,
                                                DatasetId.of(config.getDatasetProject(), config.getDataset()),
                                                config.getTable(),
@@ -191,11 +223,22 @@ public final class BigQuerySource extends BatchSource<LongWritable, GenericData.
 
   @Override
   public void onRunFinish(boolean succeeded, BatchSourceContext context) {
-    BigQuerySourceUtils.deleteGcsTemporaryDirectory(configuration, config.getBucket(), bucketPath);
+    if (config.getReadMethod() == ReadMethod.GCS) {
+      BigQuerySourceUtils.deleteGcsTemporaryDirectory(configuration, config.getBucket(), bucketPath);
+    }
     BigQuerySourceUtils.deleteBigQueryTemporaryTable(configuration, config);
+    if (succeeded && watermark != null) {
+      try {
+        watermark.write(configuration, watermarkPath);
+      } catch (IOException e) {
+        LOG.error("Failed to store the watermark in '{}', the next run will read the rows of this run again: {}",
+                  watermarkPath, e.getMessage(), e);
+      }
+    }
   }
 
   private void configureBigQuerySource() {
+    configuration.setEnum(BigQueryConstants.CONFIG_READ_METHOD, config.getReadMethod());
     if (config.getPartitionFrom() != null) {
       configuration.set(BigQueryConstants.CONFIG_PARTITION_FROM_DATE, config.getPartitionFrom());
     }
@@ -213,6 +256,84 @@ public final class BigQuerySource extends BatchSource<LongWritable, GenericData.
     }
   }
 
+  /**
+   * Restricts the read to the rows whose watermark field is greater than the watermark of the previous successful run,
+   * and not greater than the highest value of the field in the table, which becomes the watermark of this run.
+   */
+  private void configureWatermark(BatchSourceContext context, BigQuery bigQuery, @Nullable Dataset dataset,
+                                  FieldList tableFields) throws IOException, InterruptedException {
+    String field = config.getWatermarkField();
+    if (field == null) {
+      return;
+    }
+    FailureCollector collector = context.getFailureCollector();
+    Field bqField = tableFields.stream().filter(f -> f.getName().equals(field)).findFirst().orElse(null);
+    StandardSQLTypeName type = bqField == null ? null : bqField.getType().getStandardType();
+    if (bqField == null || bqField.getMode() == Field.Mode.REPEATED
+      || !BigQueryWatermark.SUPPORTED_TYPES.contains(type)) {
+      collector.addFailure(
+        String.format("Watermark field '%s' is not an integer, numeric, date, datetime or timestamp field of '%s'.",
+                      field, config.getTable()), "Select a field whose values increase over time.")
+        .withConfigProperty(BigQuerySourceConfig.NAME_WATERMARK_FIELD);
+      throw collector.getOrThrowException();
+    }
+
+    watermarkPath = BigQueryWatermark.getStatePath(config.getBucket(), context.getNamespace(),
+                                                   context.getPipelineName(), context.getStageName());
+    BigQueryWatermark previous = BigQueryWatermark.read(configuration, watermarkPath);
+    if (previous != null && (!field.equals(previous.getField()) || type != previous.getType())) {
+      LOG.warn("Ignoring the stored watermark of field '{}' of type {}, since the watermark field is '{}' of type {}.",
+               previous.getField(), previous.getType(), field, type);
+      previous = null;
+    }
+
+    String tableName = String.format("%s.%s.%s", config.getDatasetProject(), config.getDataset(), config.getTable());
+    QueryJobConfiguration queryConfig =
+      QueryJobConfiguration.newBuilder(BigQueryWatermark.getMaxQuery(tableName, field, previous))
+        .setUseLegacySql(false)
+        .build();
+    JobId jobId = JobId.newBuilder().setRandomJob().setLocation(dataset == null ? null : dataset.getLocation()).build();
+    FieldValue max = bigQuery.query(queryConfig, jobId).iterateAll().iterator().next().get(0);
+    watermark = BigQueryWatermark.of(field, type, max);
+
+    String condition = BigQueryWatermark.getCondition(field, previous, watermark);
+    String filter = config.getFilter();
+    configuration.set(BigQueryConstants.CONFIG_FILTER,
+                      filter == null ? condition : String.format("(%s) AND %s", filter, condition));
+    LOG.info("Reading the rows of table '{}' where {}.", tableName, condition);
+
+    // BigQuery prunes the partitions below the previous watermark if the table is partitioned by the watermark field.
+    // The partition range is restricted as well, so that the partitions are also skipped when reading the table
+    // without a query.
+    String previousDate = previous == null ? null : previous.getDate();
+    String partitionFrom = config.getPartitionFrom();
+    if (previousDate != null && isPartitionedBy(field)
+      && (partitionFrom == null || partitionFrom.compareTo(previousDate) < 0)) {
+      configuration.set(BigQueryConstants.CONFIG_PARTITION_FROM_DATE, previousDate);
+    }
+  }
+
+  private boolean isPartitionedBy(String field) {
+    Table table = BigQueryUtil.getBigQueryTable(config.getDatasetProject(), config.getDataset(), config.getTable(),
+                                                config.getServiceAccount(), config.isServiceAccountFilePath());
+    if (table == null || !(table.getDefinition() instanceof StandardTableDefinition)) {
+      return false;
+    }
+    TimePartitioning timePartitioning = ((StandardTableDefinition) table.getDefinition()).getTimePartitioning();
+    return timePartitioning != null && field.equals(timePartitioning.getField());
+  }
+
+  /**
+   * Restricts the read to the fields of the output schema, if it does not contain all fields of the table.
+   */
+  private void configureSelectedFields(@Nullable Schema schema, FieldList tableFields) {
+    if (schema == null || schema.getFields() == null || schema.getFields().size() >= tableFields.size()) {
+      return;
+    }
+    configuration.setStrings(BigQueryConstants.CONFIG_SELECTED_FIELDS,
+                             schema.getFields().stream().map(Schema.Field::getName).toArray(String[]::new));
+  }
+
   public Schema getSchema(FailureCollector collector) {
     com.google.cloud.bigquery.Schema bqSchema = getBQSchema(collector);
     return BigQueryUtil.getTableSchema(bqSchema, collector);
@@ -45,6 +45,7 @@ import io.cdap.plugin.gcp.gcs.GCSPath;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -69,6 +70,8 @@ public final class BigQuerySourceConfig extends BigQueryBaseConfig {
   public static final String NAME_ENABLE_QUERYING_VIEWS = "enableQueryingViews";
   public static final String NAME_VIEW_MATERIALIZATION_PROJECT = "viewMaterializationProject";
   public static final String NAME_VIEW_MATERIALIZATION_DATASET = "viewMaterializationDataset";
+  public static final String NAME_READ_METHOD = "readMethod";
+  public static final String NAME_WATERMARK_FIELD = "watermarkField";
 
   @Name(Constants.Reference.REFERENCE_NAME)
   @Description("This will be used to uniquely identify this source for lineage, annotating metadata, etc.")
@@ -130,6 +133,22 @@ public final class BigQuerySourceConfig extends BigQueryBaseConfig {
     + "Defaults to the same dataset in which the table is located.")
   private String viewMaterializationDataset;
 
+  @Name(NAME_READ_METHOD)
+  @Macro
+  @Nullable
+  @Description("Method used to read records from BigQuery. 'GCS' exports the table to Avro files in the GCS bucket " +
+    "and reads the files. 'Storage Read API' reads the table directly with the BigQuery Storage Read API, without a " +
+    "temporary bucket. Defaults to 'GCS'.")
+  private String readMethod;
+
+  @Name(NAME_WATERMARK_FIELD)
+  @Macro
+  @Nullable
+  @Description("Field whose values increase over time, such as an update timestamp. If it is set, each run only " +
+    "reads the rows whose value is greater than the highest value read by the previous successful run, which is " +
+    "stored in the temporary bucket. The field must be an integer, numeric, date, datetime or timestamp.")
+  private String watermarkField;
+
   public String getTable() {
     return table;
   }
@@ -169,6 +188,19 @@ public final class BigQuerySourceConfig extends BigQueryBaseConfig {
     if (!containsMacro(NAME_TABLE)) {
       validateTable(collector);
     }
+
+    if (!containsMacro(NAME_READ_METHOD) && !Strings.isNullOrEmpty(readMethod)
+      && Arrays.stream(ReadMethod.values()).noneMatch(method -> method.name().equalsIgnoreCase(readMethod))) {
+      collector.addFailure(String.format("Read method has incorrect value '%s'.", readMethod),
+                           "Set the read method to 'GCS' or 'Storage Read API'.")
+        .withConfigProperty(NAME_READ_METHOD);
+    }
+    if (!containsMacro(NAME_WATERMARK_FIELD) && getWatermarkField() != null && !containsMacro(NAME_BUCKET)
+      && bucket == null) {
+      collector.addFailure("Incremental reads require a temporary bucket to store the watermark in.",
+                           "Set the temporary bucket name.")
+        .withConfigProperty(NAME_WATERMARK_FIELD).withConfigProperty(NAME_BUCKET);
+    }
     if (!containsMacro(NAME_CMEK_KEY)) {
       validateCmekKey(collector, arguments);
     }
@@ -300,6 +332,15 @@ public final class BigQuerySourceConfig extends BigQueryBaseConfig {
     return viewMaterializationDataset;
   }
 
+  @Nullable
+  public String getWatermarkField() {
+    return Strings.isNullOrEmpty(watermarkField) ? null : watermarkField;
+  }
+
+  public ReadMethod getReadMethod() {
+    return Strings.isNullOrEmpty(readMethod) ? ReadMethod.GCS : ReadMethod.valueOf(readMethod.toUpperCase());
+  }
+
   /**
    * Returns true if bigquery table can be connected and schema is not a macro.
    */
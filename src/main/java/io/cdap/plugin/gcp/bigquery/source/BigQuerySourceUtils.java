@@ -122,18 +122,21 @@ public class BigQuerySourceUtils {
    * @param configuration Hadoop configuration instance.
    * @param dataset the dataset to use.
    * @param table the name of the table to pull from.
-   * @param gcsPath Path to use to store output files.
+   * @param gcsPath Path to use to store output files, or null if the table is not exported to GCS.
    * @throws IOException if the BigQuery input could not be configured.
    */
   public static void configureBigQueryInput(Configuration configuration,
                                             DatasetId dataset,
                                             String table,
-                                            String gcsPath) throws IOException {
-    // Configure GCS bucket path
-    LOG.debug("Using GCS path {} as temp storage for table {}.", gcsPath, table);
-    configuration.set("fs.default.name", gcsPath);
-    configuration.setBoolean("fs.gs.impl.disable.cache", true);
-    configuration.setBoolean("fs.gs.metadata.cache.enable", false);
+                                            @Nullable String gcsPath) throws IOException {
+    if (gcsPath != null) {
+      // Configure GCS bucket path
+      LOG.debug("Using GCS path {} as temp storage for table {}.", gcsPath, table);
+      configuration.set("fs.default.name", gcsPath);
+      configuration.setBoolean("fs.gs.impl.disable.cache", true);
+      configuration.setBoolean("fs.gs.metadata.cache.enable", false);
+      PartitionedBigQueryInputFormat.setTemporaryCloudStorageDirectory(configuration, gcsPath);
+    }
 
     // Set up temporary table name. This will be used if the source table is a view
     String temporaryTableName = String.format("_%s_%s", table,
@@ -141,8 +144,6 @@ public class BigQuerySourceUtils {
     configuration.set(BigQueryConstants.CONFIG_TEMPORARY_TABLE_NAME, temporaryTableName);
 
     // Configure BigQuery input format.
-    PartitionedBigQueryInputFormat.setTemporaryCloudStorageDirectory(configuration,
-                                                                     gcsPath);
     BigQueryConfiguration.configureBigQueryInput(configuration,
                                                  dataset.getProject(),
                                                  dataset.getDataset(),
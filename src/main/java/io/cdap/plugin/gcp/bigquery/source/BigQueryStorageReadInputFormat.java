@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.hadoop.io.bigquery.BigQueryConfiguration;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.avro.generic.GenericData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BigQuery input format which reads the table directly with the BigQuery Storage Read API instead of exporting it to
+ * GCS first.
+ * <p>
+ * A read session is created when computing the splits, and every stream of the session becomes one input split. The
+ * session only reads the selected fields, and applies the partition range and the filter as its row restriction, so
+ * tables are read without running a query. Views and external tables cannot be read directly. They are materialized
+ * into a temporary table first, like in {@link PartitionedBigQueryInputFormat}, and the session then reads that table.
+ * <p>
+ * Sessions return Avro rows, which are read by the record readers of this format. If
+ * {@link BigQueryConstants#CONFIG_STORAGE_READ_DATA_FORMAT} is set to Arrow, the session returns Arrow record batches
+ * instead, and the splits are meant for an input format that decodes them.
+ */
+public class BigQueryStorageReadInputFormat extends PartitionedBigQueryInputFormat {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryStorageReadInputFormat.class);
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    // The query of a view already applies the filter
+    boolean materialized = processQuery(context);
+    ReadSession.TableReadOptions.Builder readOptions = ReadSession.TableReadOptions.newBuilder()
+      .addAllSelectedFields(getSelectedFields(conf));
+    String rowRestriction = materialized ? null : getRowRestriction(conf);
+    if (rowRestriction != null) {
+      readOptions.setRowRestriction(rowRestriction);
+    }
+
+    String tableName = BigQueryStorageReadUtils.getTableName(conf.get(BigQueryConfiguration.INPUT_PROJECT_ID_KEY),
+                                                             conf.get(BigQueryConfiguration.INPUT_DATASET_ID_KEY),
+                                                             conf.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY));
+    DataFormat dataFormat = BigQueryStorageReadUtils.getDataFormat(conf);
+    // A max stream count of 0 lets the service choose the number of streams based on the size of the table
+    CreateReadSessionRequest request = CreateReadSessionRequest.newBuilder()
+      .setParent(BigQueryStorageReadUtils.getProjectName(conf.get(BigQueryConfiguration.PROJECT_ID_KEY)))
+      .setReadSession(ReadSession.newBuilder().setTable(tableName).setDataFormat(dataFormat)
+                        .setReadOptions(readOptions))
+      .setMaxStreamCount(conf.getInt(BigQueryConstants.CONFIG_STORAGE_READ_MAX_STREAMS, 0))
+      .build();
+
+    ReadSession session;
+    try (BigQueryReadClient client = BigQueryStorageReadUtils.getReadClient(conf)) {
+      session = client.createReadSession(request);
+    }
+    LOG.debug("Created read session {} with {} streams for table {}.",
+              session.getName(), session.getStreamsCount(), tableName);
+
+    List<InputSplit> splits = new ArrayList<>(session.getStreamsCount());
+    if (dataFormat == DataFormat.ARROW) {
+      byte[] arrowSchema = session.getArrowSchema().getSerializedSchema().toByteArray();
+      for (ReadStream stream : session.getStreamsList()) {
+        splits.add(new BigQueryStorageReadInputSplit(stream.getName(), arrowSchema));
+      }
+      return splits;
+    }
+    String avroSchema = session.getAvroSchema().getSchema();
+    for (ReadStream stream : session.getStreamsList()) {
+      splits.add(new BigQueryStorageReadInputSplit(stream.getName(), avroSchema));
+    }
+    return splits;
+  }
+
+  @Override
+  protected boolean isQueryRequiredForTables() {
+    return false;
+  }
+
+  @Override
+  public RecordReader<LongWritable, GenericData.Record> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+    return new BigQueryStorageReadRecordReader();
+  }
+
+  @Override
+  public RecordReader<LongWritable, GenericData.Record> createRecordReader(InputSplit split,
+                                                                           Configuration configuration) {
+    return new BigQueryStorageReadRecordReader();
+  }
+}
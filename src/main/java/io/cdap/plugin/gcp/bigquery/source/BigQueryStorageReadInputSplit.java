@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Input split which reads a single stream of a BigQuery Storage Read API session.
+ * <p>
+ * The schema of the session, in Avro or in serialized Arrow form depending on the data format of the session, is
+ * carried by every split, since the configuration changes made while computing the splits are not visible to the tasks.
+ */
+public class BigQueryStorageReadInputSplit extends InputSplit implements Writable {
+  private String streamName;
+  private String avroSchema;
+  private byte[] arrowSchema;
+
+  /**
+   * This constructor is only used when the split is deserialized.
+   */
+  public BigQueryStorageReadInputSplit() {
+    // no-op
+  }
+
+  public BigQueryStorageReadInputSplit(String streamName, String avroSchema) {
+    this(streamName, avroSchema, new byte[0]);
+  }
+
+  /**
+   * Creates a split for a stream of a session that returns Arrow record batches.
+   */
+  public BigQueryStorageReadInputSplit(String streamName, byte[] arrowSchema) {
+    this(streamName, "", arrowSchema);
+  }
+
+  private BigQueryStorageReadInputSplit(String streamName, String avroSchema, byte[] arrowSchema) {
+    this.streamName = streamName;
+    this.avroSchema = avroSchema;
+    this.arrowSchema = arrowSchema;
+  }
+
+  public String getStreamName() {
+    return streamName;
+  }
+
+  public String getAvroSchema() {
+    return avroSchema;
+  }
+
+  /**
+   * @return serialized Arrow schema of the session, empty if the session returns Avro rows
+   */
+  public byte[] getArrowSchema() {
+    return arrowSchema;
+  }
+
+  @Override
+  public long getLength() {
+    // The size of a stream is not known before it is read
+    return 0;
+  }
+
+  @Override
+  public String[] getLocations() {
+    return new String[0];
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, streamName);
+    Text.writeString(out, avroSchema);
+    WritableUtils.writeVInt(out, arrowSchema.length);
+    out.write(arrowSchema);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    streamName = Text.readString(in);
+    avroSchema = Text.readString(in);
+    arrowSchema = new byte[WritableUtils.readVInt(in)];
+    in.readFully(arrowSchema);
+  }
+
+  @Override
+  public String toString() {
+    return streamName;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+
+/**
+ * Record reader which reads the rows of a single BigQuery Storage Read API stream.
+ * <p>
+ * Rows arrive in blocks of Avro encoded records, which are decoded one at a time into the same
+ * {@link GenericData.Record} the export based reader returns. The stream is read through a
+ * {@link BigQueryStorageReadStream}, which logs its throughput when the reader is closed.
+ */
+public class BigQueryStorageReadRecordReader extends RecordReader<LongWritable, GenericData.Record> {
+
+  private final LongWritable currentKey = new LongWritable();
+  private GenericData.Record currentValue;
+  private BigQueryStorageReadStream stream;
+  private GenericDatumReader<GenericData.Record> datumReader;
+  private BinaryDecoder decoder;
+  private long rowCount;
+
+  @Override
+  public void initialize(InputSplit inputSplit, TaskAttemptContext context) throws IOException {
+    BigQueryStorageReadInputSplit split = (BigQueryStorageReadInputSplit) inputSplit;
+    datumReader = new GenericDatumReader<>(new Schema.Parser().parse(split.getAvroSchema()));
+    stream = new BigQueryStorageReadStream(context.getConfiguration(), split.getStreamName());
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    // A response may contain no rows, so keep reading until a block with rows arrives or the stream ends
+    while (decoder == null || decoder.isEnd()) {
+      ReadRowsResponse response = stream.next();
+      if (response == null) {
+        return false;
+      }
+      byte[] rows = response.getAvroRows().getSerializedBinaryRows().toByteArray();
+      stream.addBytesRead(rows.length);
+      decoder = DecoderFactory.get().binaryDecoder(rows, decoder);
+    }
+    long decodeStartNanos = System.nanoTime();
+    currentValue = datumReader.read(null, decoder);
+    stream.addDecodedRows(1, System.nanoTime() - decodeStartNanos);
+    currentKey.set(rowCount++);
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return currentKey;
+  }
+
+  @Override
+  public GenericData.Record getCurrentValue() {
+    return currentValue;
+  }
+
+  @Override
+  public float getProgress() {
+    return stream.getProgress();
+  }
+
+  @Override
+  public void close() {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  /**
+   * @return number of bytes of serialized rows received from the stream
+   */
+  public long getBytesRead() {
+    return stream.getBytesRead();
+  }
+}
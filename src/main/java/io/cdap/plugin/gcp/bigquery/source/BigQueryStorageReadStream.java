@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Responses of a single BigQuery Storage Read API stream, shared by the record readers of the Avro and Arrow data
+ * formats.
+ * <p>
+ * The client resumes the stream from the last received offset if the connection fails, so every row is returned
+ * exactly once. The stream tracks the time spent waiting for responses, and the readers add the rows and bytes they
+ * decode. When the stream is closed, it logs its throughput along with these times.
+ */
+public class BigQueryStorageReadStream implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryStorageReadStream.class);
+
+  private final String streamName;
+  private final long startNanos;
+  private final BigQueryReadClient client;
+  private final ServerStream<ReadRowsResponse> stream;
+  private final Iterator<ReadRowsResponse> responses;
+  private long rowCount;
+  private long bytesRead;
+  private long waitNanos;
+  private long decodeNanos;
+  private double progress;
+  private boolean finished;
+
+  public BigQueryStorageReadStream(Configuration conf, String streamName) throws IOException {
+    this.streamName = streamName;
+    this.startNanos = System.nanoTime();
+    this.client = BigQueryStorageReadUtils.getReadClient(conf);
+    this.stream = client.readRowsCallable().call(ReadRowsRequest.newBuilder().setReadStream(streamName).build());
+    this.responses = stream.iterator();
+  }
+
+  /**
+   * Waits for the next response of the stream.
+   *
+   * @return the next response, or null if the stream has been read until the end
+   */
+  @Nullable
+  public ReadRowsResponse next() {
+    long waitStartNanos = System.nanoTime();
+    boolean hasNext = responses.hasNext();
+    ReadRowsResponse response = hasNext ? responses.next() : null;
+    waitNanos += System.nanoTime() - waitStartNanos;
+    if (response == null) {
+      finished = true;
+      return null;
+    }
+    if (response.hasStats()) {
+      progress = response.getStats().getProgress().getAtResponseEnd();
+    }
+    return response;
+  }
+
+  /**
+   * Adds the size of the serialized rows of a response to the statistics of the stream.
+   */
+  public void addBytesRead(long bytes) {
+    bytesRead += bytes;
+  }
+
+  /**
+   * Adds decoded rows and the time spent decoding them to the statistics of the stream.
+   */
+  public void addDecodedRows(long rows, long nanos) {
+    rowCount += rows;
+    decodeNanos += nanos;
+  }
+
+  /**
+   * @return fraction of the stream that has been read, as reported by the last response with statistics
+   */
+  public float getProgress() {
+    return (float) progress;
+  }
+
+  /**
+   * @return number of bytes of serialized rows received from the stream
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public void close() {
+    if (!finished) {
+      // The stream was not read until the end
+      stream.cancel();
+    }
+    client.close();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    LOG.info("Read {} rows ({} bytes) from stream {} in {} ms, {} rows/s. " +
+               "Waited {} ms for responses and decoded rows in {} ms.", rowCount, bytesRead, streamName, elapsedMillis,
+             elapsedMillis == 0 ? rowCount : rowCount * 1000 / elapsedMillis,
+             TimeUnit.NANOSECONDS.toMillis(waitNanos), TimeUnit.NANOSECONDS.toMillis(decodeNanos));
+  }
+}
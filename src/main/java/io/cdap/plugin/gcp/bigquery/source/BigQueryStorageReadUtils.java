@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadSettings;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import io.cdap.plugin.gcp.common.GCPUtils;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Utility methods shared by the Storage Read API input format and its record reader.
+ */
+public final class BigQueryStorageReadUtils {
+  private static final String TABLE_NAME_FORMAT = "projects/%s/datasets/%s/tables/%s";
+  private static final String PROJECT_NAME_FORMAT = "projects/%s";
+
+  // Creates the Storage Read API clients, tests replace it to connect to a stand-in of the API
+  @VisibleForTesting
+  static ReadClientFactory readClientFactory =
+    conf -> BigQueryReadClient.create(
+      BigQueryReadSettings.newBuilder()
+        .setCredentialsProvider(FixedCredentialsProvider.create(GCPUtils.loadCredentialsFromConf(conf)))
+        .build());
+
+  /**
+   * Creates the Storage Read API clients of the input format and of the record readers.
+   */
+  interface ReadClientFactory {
+
+    /**
+     * Creates a client. Closing the client releases the channel it uses.
+     */
+    BigQueryReadClient create(Configuration conf) throws IOException;
+  }
+
+  /**
+   * @return read method configured for the input
+   */
+  public static ReadMethod getReadMethod(Configuration conf) {
+    return conf.getEnum(BigQueryConstants.CONFIG_READ_METHOD, ReadMethod.GCS);
+  }
+
+  /**
+   * @return format in which the read session returns rows, Avro unless configured otherwise
+   */
+  public static DataFormat getDataFormat(Configuration conf) {
+    return conf.getEnum(BigQueryConstants.CONFIG_STORAGE_READ_DATA_FORMAT, DataFormat.AVRO);
+  }
+
+  /**
+   * @return Storage Read API resource name of the table
+   */
+  public static String getTableName(String project, String dataset, String table) {
+    return String.format(TABLE_NAME_FORMAT, project, dataset, table);
+  }
+
+  /**
+   * @return Storage Read API resource name of the project
+   */
+  public static String getProjectName(String project) {
+    return String.format(PROJECT_NAME_FORMAT, project);
+  }
+
+  /**
+   * Creates a Storage Read API client with the credentials of the configuration.
+   */
+  public static BigQueryReadClient getReadClient(Configuration conf) throws IOException {
+    return readClientFactory.create(conf);
+  }
+
+  private BigQueryStorageReadUtils() {
+    //no-op
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Highest value of the watermark field read by an incremental BigQuery source.
+ * <p>
+ * Each run of an incremental source reads the rows whose watermark field is greater than the watermark stored by the
+ * previous successful run, up to the highest value of the field when the run started. That value is stored as a small
+ * JSON file in the bucket of the source once the run has succeeded, so a failed run is read again by the next run.
+ */
+public final class BigQueryWatermark {
+  private static final Gson GSON = new Gson();
+  private static final String STATE_PATH_FORMAT = "gs://%s/_watermarks/%s/%s/%s.json";
+  private static final DateTimeFormatter TIMESTAMP_FORMATTER =
+    DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSxxx").withZone(ZoneOffset.UTC);
+
+  public static final Set<StandardSQLTypeName> SUPPORTED_TYPES =
+    ImmutableSet.of(StandardSQLTypeName.INT64, StandardSQLTypeName.NUMERIC, StandardSQLTypeName.BIGNUMERIC,
+                    StandardSQLTypeName.DATE, StandardSQLTypeName.DATETIME, StandardSQLTypeName.TIMESTAMP);
+
+  private final String field;
+  private final StandardSQLTypeName type;
+  // Timestamps are stored as microseconds since the epoch, other types in the canonical format of BigQuery
+  private final String value;
+
+  public BigQueryWatermark(String field, StandardSQLTypeName type, String value) {
+    this.field = field;
+    this.type = type;
+    this.value = value;
+  }
+
+  /**
+   * Creates the watermark of a value returned by a query.
+   *
+   * @return the watermark, or null if the value is null
+   */
+  @Nullable
+  public static BigQueryWatermark of(String field, StandardSQLTypeName type, FieldValue value) {
+    if (value.isNull()) {
+      return null;
+    }
+    return new BigQueryWatermark(field, type, type == StandardSQLTypeName.TIMESTAMP ?
+      Long.toString(value.getTimestampValue()) : value.getStringValue());
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public StandardSQLTypeName getType() {
+    return type;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the watermark as a typed literal of Standard SQL, which can also be used in the row restriction of the
+   * Storage Read API.
+   */
+  public String toLiteral() {
+    switch (type) {
+      case INT64:
+        return Long.toString(Long.parseLong(value));
+      case TIMESTAMP:
+        return String.format("TIMESTAMP '%s'", TIMESTAMP_FORMATTER.format(getInstant(Long.parseLong(value))));
+      default:
+        return String.format("%s '%s'", type.name(), value.replace("\\", "\\\\").replace("'", "\\'"));
+    }
+  }
+
+  /**
+   * Returns the date of the watermark in the format 'yyyy-MM-dd', in UTC for timestamps.
+   *
+   * @return the date, or null if the watermark is not a date, datetime or timestamp
+   */
+  @Nullable
+  public String getDate() {
+    switch (type) {
+      case DATE:
+      case DATETIME:
+        return value.substring(0, "yyyy-MM-dd".length());
+      case TIMESTAMP:
+        return getInstant(Long.parseLong(value)).atOffset(ZoneOffset.UTC).toLocalDate()
+          .format(DateTimeFormatter.ISO_LOCAL_DATE);
+      default:
+        return null;
+    }
+  }
+
+  private static Instant getInstant(long micros) {
+    long second = Math.floorDiv(micros, TimeUnit.SECONDS.toMicros(1));
+    return Instant.ofEpochSecond(second, TimeUnit.MICROSECONDS.toNanos(micros - TimeUnit.SECONDS.toMicros(second)));
+  }
+
+  /**
+   * Returns the query which selects the highest value of the watermark field in the given table. Only values above
+   * the previous watermark are considered, so that BigQuery prunes the partitions below it if the table is partitioned
+   * by the watermark field.
+   *
+   * @param tableName fully qualified name of the table
+   * @param field the watermark field
+   * @param previous watermark of the previous run, or null if there was no previous run
+   */
+  public static String getMaxQuery(String tableName, String field, @Nullable BigQueryWatermark previous) {
+    String query = String.format("SELECT MAX(`%s`) FROM `%s`", field, tableName);
+    return previous == null ? query : String.format("%s WHERE `%s` > %s", query, field, previous.toLiteral());
+  }
+
+  /**
+   * Returns the condition which selects the rows between two watermarks.
+   *
+   * @param field the watermark field
+   * @param previous exclusive lower bound, or null to read all rows up to the upper bound
+   * @param current inclusive upper bound, or null if there are no rows to read
+   */
+  public static String getCondition(String field, @Nullable BigQueryWatermark previous,
+                                    @Nullable BigQueryWatermark current) {
+    if (current == null) {
+      return "FALSE";
+    }
+    String condition = String.format("`%s` <= %s", field, current.toLiteral());
+    return previous == null ? condition : String.format("`%s` > %s AND %s", field, previous.toLiteral(), condition);
+  }
+
+  /**
+   * Returns the path of the watermark of a source stage, which is located in the given bucket.
+   */
+  public static Path getStatePath(String bucket, String namespace, String pipeline, String stage) {
+    return new Path(String.format(STATE_PATH_FORMAT, bucket, namespace, pipeline, stage));
+  }
+
+  /**
+   * Writes the watermark to the given file, replacing the file if it exists.
+   */
+  public void write(Configuration conf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    try (FSDataOutputStream out = fs.create(path, true);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      GSON.toJson(this, writer);
+    }
+  }
+
+  /**
+   * Reads the watermark from the given file.
+   *
+   * @return the watermark, or null if the file does not exist
+   */
+  @Nullable
+  public static BigQueryWatermark read(Configuration conf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    try (FSDataInputStream in = fs.open(path);
+         Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, BigQueryWatermark.class);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+}
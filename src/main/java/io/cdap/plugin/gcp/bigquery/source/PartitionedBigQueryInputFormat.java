@@ -18,29 +18,45 @@ import com.google.cloud.hadoop.io.bigquery.BigQueryFactory;
 import com.google.cloud.hadoop.io.bigquery.BigQueryHelper;
 import com.google.cloud.hadoop.io.bigquery.BigQueryUtils;
 import com.google.cloud.hadoop.io.bigquery.ExportFileFormat;
+import com.google.cloud.hadoop.io.bigquery.UnshardedExportToCloudStorage;
 import com.google.cloud.hadoop.util.ConfigurationUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
 import io.cdap.plugin.gcp.common.GCPUtils;
 import org.apache.avro.generic.GenericData;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
 import org.apache.hadoop.util.Progressable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -48,7 +64,10 @@ import javax.annotation.Nullable;
  * in order to create input splits.
  */
 public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<LongWritable, GenericData.Record> {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedBigQueryInputFormat.class);
   private static final String DEFAULT_COLUMN_NAME = "_PARTITIONTIME";
+  private static final String NULL_PARTITION_ID = "__NULL__";
+  private static final String UNPARTITIONED_PARTITION_ID = "__UNPARTITIONED__";
 
   private InputFormat<LongWritable, GenericData.Record> delegateInputFormat =
     new AvroBigQueryInputFormat();
@@ -60,11 +79,296 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
 
   @Override
   public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
+    Configuration configuration = context.getConfiguration();
+    BigQueryExportCache exportCache = BigQueryExportCache.create(configuration);
+    Path cacheEntry = exportCache == null ? null : getExportCacheEntry(exportCache, configuration);
+    if (cacheEntry == null) {
+      return exportSplits(context);
+    }
+
+    Path cachedExport = exportCache.findExport(cacheEntry);
+    if (cachedExport != null) {
+      exportCache.lease(cachedExport);
+      LOG.info("Reading table '{}' from the cached export in '{}'.",
+               configuration.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY), cachedExport);
+      return exportCache.getSplits(context, cachedExport);
+    }
+    Path export = exportCache.newExport(cacheEntry);
+    configuration.set(BigQueryConfiguration.TEMP_GCS_PATH_KEY, export.toString());
+    List<InputSplit> splits = exportSplits(context);
+    exportCache.markComplete(export);
+    exportCache.lease(export);
+    exportCache.evict(export);
+    return splits;
+  }
+
+  /**
+   * Returns the directory of the export cache for the input, if it is a table whose exports can be cached. Rows in the
+   * streaming buffer of a table are not exported and do not change its modification time, so such tables are not
+   * cached.
+   *
+   * @return the directory of the cached exports, or null if the input cannot be cached
+   */
+  @Nullable
+  private Path getExportCacheEntry(BigQueryExportCache exportCache, Configuration configuration) {
+    String datasetProjectId = configuration.get(BigQueryConfiguration.INPUT_PROJECT_ID_KEY);
+    String datasetId = configuration.get(BigQueryConfiguration.INPUT_DATASET_ID_KEY);
+    String tableName = configuration.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY);
+    com.google.cloud.bigquery.Table bigQueryTable = BigQueryUtil.getBigQueryTable(
+      datasetProjectId, datasetId, tableName, configuration.get(BigQueryConstants.CONFIG_SERVICE_ACCOUNT, null),
+      configuration.getBoolean(BigQueryConstants.CONFIG_SERVICE_ACCOUNT_IS_FILE, true));
+    if (Objects.requireNonNull(bigQueryTable).getDefinition().getType() != Type.TABLE
+      || ((StandardTableDefinition) bigQueryTable.getDefinition()).getStreamingBuffer() != null
+      || bigQueryTable.getLastModifiedTime() == null) {
+      return null;
+    }
+    return exportCache.getEntry(String.join(".", datasetProjectId, datasetId, tableName),
+                                bigQueryTable.getLastModifiedTime(), getSelectList(configuration),
+                                configuration.get(BigQueryConstants.CONFIG_FILTER),
+                                configuration.get(BigQueryConstants.CONFIG_PARTITION_FROM_DATE),
+                                configuration.get(BigQueryConstants.CONFIG_PARTITION_TO_DATE));
+  }
+
+  /**
+   * Exports the input into the temporary GCS path and returns the splits of the exported files.
+   */
+  private List<InputSplit> exportSplits(JobContext context) throws IOException, InterruptedException {
+    Configuration configuration = context.getConfiguration();
+    int exportParallelism = configuration.getInt(BigQueryConstants.CONFIG_EXPORT_PARALLELISM,
+                                                 BigQueryConstants.DEFAULT_EXPORT_PARALLELISM);
+    if (exportParallelism > 1) {
+      List<String> partitionIds = getPartitionsToExport(configuration);
+      if (partitionIds != null) {
+        return exportPartitions(context, partitionIds, exportParallelism);
+      }
+    }
+
     processQuery(context);
 
     return delegateInputFormat.getSplits(context);
   }
 
+  /**
+   * Returns the partitions to export if the input is a partitioned table which can be exported partition by partition.
+   * This is the case if no filter is configured, and the configured partition range, if any, covers whole partitions.
+   *
+   * @return the ids of the partitions to export, or null if the input has to be exported as a whole
+   */
+  @Nullable
+  private List<String> getPartitionsToExport(Configuration configuration) {
+    if (configuration.get(BigQueryConstants.CONFIG_FILTER) != null) {
+      return null;
+    }
+    String datasetProjectId = configuration.get(BigQueryConfiguration.INPUT_PROJECT_ID_KEY);
+    String datasetId = configuration.get(BigQueryConfiguration.INPUT_DATASET_ID_KEY);
+    String tableName = configuration.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY);
+    String serviceAccount = configuration.get(BigQueryConstants.CONFIG_SERVICE_ACCOUNT, null);
+    boolean isServiceAccountFilePath = configuration.getBoolean(BigQueryConstants.CONFIG_SERVICE_ACCOUNT_IS_FILE,
+                                                                true);
+
+    com.google.cloud.bigquery.Table bigQueryTable = BigQueryUtil.getBigQueryTable(
+      datasetProjectId, datasetId, tableName, serviceAccount, isServiceAccountFilePath);
+    if (Objects.requireNonNull(bigQueryTable).getDefinition().getType() != Type.TABLE) {
+      return null;
+    }
+    StandardTableDefinition tableDefinition = bigQueryTable.getDefinition();
+    TimePartitioning timePartitioning = tableDefinition.getTimePartitioning();
+    if (timePartitioning == null && tableDefinition.getRangePartitioning() == null) {
+      return null;
+    }
+    List<String> partitionIds = BigQueryUtil.getPartitionIds(datasetProjectId, datasetId, tableName, serviceAccount,
+                                                             isServiceAccountFilePath);
+    return selectPartitions(partitionIds, timePartitioning == null ? null : timePartitioning.getType(),
+                            configuration.get(BigQueryConstants.CONFIG_PARTITION_FROM_DATE),
+                            configuration.get(BigQueryConstants.CONFIG_PARTITION_TO_DATE));
+  }
+
+  /**
+   * Selects the partitions within the partition range, which follows the condition of {@link #generateQuery}. A
+   * partition range can only be applied to daily and hourly partitions, which either lie completely within the range
+   * or outside of it.
+   *
+   * @param partitionIds ids of all partitions of the table
+   * @param partitioningType type of the time partitioning of the table, or null for integer range partitioning
+   * @param partitionFromDate inclusive start date of the range in the format 'yyyy-MM-dd'
+   * @param partitionToDate exclusive end date of the range in the format 'yyyy-MM-dd'
+   * @return the ids of the selected partitions, or null if the range cannot be applied by selecting partitions
+   */
+  @VisibleForTesting
+  @Nullable
+  static List<String> selectPartitions(List<String> partitionIds, @Nullable TimePartitioning.Type partitioningType,
+                                       @Nullable String partitionFromDate, @Nullable String partitionToDate) {
+    if (partitionIds.isEmpty()) {
+      return null;
+    }
+    if (partitionFromDate == null && partitionToDate == null) {
+      return partitionIds;
+    }
+    if (partitioningType != TimePartitioning.Type.DAY && partitioningType != TimePartitioning.Type.HOUR) {
+      return null;
+    }
+    // Partition ids start with the date in the format 'yyyyMMdd'
+    String fromDay = partitionFromDate == null ? null : partitionFromDate.replace("-", "");
+    String toDay = partitionToDate == null ? null : partitionToDate.replace("-", "");
+    List<String> selected = new ArrayList<>();
+    for (String partitionId : partitionIds) {
+      if (UNPARTITIONED_PARTITION_ID.equals(partitionId)) {
+        // Rows outside of the partitioned range may still fall into the configured range
+        return null;
+      }
+      if (NULL_PARTITION_ID.equals(partitionId)) {
+        continue;
+      }
+      String day = partitionId.substring(0, 8);
+      if ((fromDay == null || day.compareTo(fromDay) >= 0) && (toDay == null || day.compareTo(toDay) < 0)) {
+        selected.add(partitionId);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Exports the given partitions of the input table concurrently, each into its own directory below the temporary
+   * GCS path. The splits of each partition are listed as soon as its export finishes. If an export fails, the export
+   * jobs which were already started are cancelled.
+   * <p>
+   * Export jobs cannot select fields, so all fields of the partitions are exported even if
+   * {@link BigQueryConstants#CONFIG_SELECTED_FIELDS} is set, and the fields which are not selected are dropped when
+   * the records are read. Projecting the fields would require a query for every partition, which is billed, while
+   * export jobs are not.
+   */
+  private List<InputSplit> exportPartitions(JobContext context, List<String> partitionIds, int parallelism)
+    throws IOException, InterruptedException {
+    List<InputSplit> splits = new ArrayList<>();
+    if (partitionIds.isEmpty()) {
+      return splits;
+    }
+    Configuration configuration = context.getConfiguration();
+    BigQueryHelper bigQueryHelper;
+    try {
+      bigQueryHelper = getBigQueryHelper(configuration);
+    } catch (GeneralSecurityException gse) {
+      throw new IOException("Failed to create BigQuery client", gse);
+    }
+    String exportPath = BigQueryConfiguration.getTemporaryPathRoot(configuration, context.getJobID());
+    configuration.set(BigQueryConfiguration.TEMP_GCS_PATH_KEY, exportPath);
+    Map<String, String> mandatoryConfig = ConfigurationUtil.getMandatoryConfig(
+      configuration, BigQueryConfiguration.MANDATORY_CONFIG_PROPERTIES_INPUT);
+    String projectId = mandatoryConfig.get(BigQueryConfiguration.PROJECT_ID_KEY);
+    TableReference tableReference = new TableReference()
+      .setProjectId(mandatoryConfig.get(BigQueryConfiguration.INPUT_PROJECT_ID_KEY))
+      .setDatasetId(mandatoryConfig.get(BigQueryConfiguration.INPUT_DATASET_ID_KEY))
+      .setTableId(mandatoryConfig.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY));
+    String location = bigQueryHelper.getTable(tableReference).getLocation();
+    LOG.info("Exporting {} partitions of table '{}' with {} concurrent export jobs.", partitionIds.size(),
+             tableReference.getTableId(), parallelism);
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(parallelism, partitionIds.size()),
+      new ThreadFactoryBuilder().setNameFormat("bigquery-export-job-%d").setDaemon(true).build());
+    ExportJobs exportJobs = new ExportJobs(bigQueryHelper, location);
+    boolean exported = false;
+    try {
+      CompletionService<List<InputSplit>> completionService = new ExecutorCompletionService<>(executor);
+      for (String partitionId : partitionIds) {
+        TableReference partitionReference = new TableReference()
+          .setProjectId(tableReference.getProjectId())
+          .setDatasetId(tableReference.getDatasetId())
+          .setTableId(tableReference.getTableId() + "$" + partitionId);
+        Table partition = new Table().setTableReference(partitionReference).setLocation(location);
+        String partitionPath = getPartitionExportPath(exportPath, partitionId);
+        completionService.submit(() -> exportPartition(context, bigQueryHelper, projectId, partition, partitionPath,
+                                                       exportJobs));
+      }
+      for (int i = 0; i < partitionIds.size(); i++) {
+        try {
+          splits.addAll(completionService.take().get());
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+      }
+      exported = true;
+    } finally {
+      executor.shutdownNow();
+      if (!exported) {
+        exportJobs.cancelAll();
+      }
+    }
+    return splits;
+  }
+
+  /**
+   * Returns the directory which the given partition is exported into. Partition ids such as '__NULL__' start with an
+   * underscore, which would hide the directory from the listing of the exported files, so the directory name starts
+   * with a prefix.
+   */
+  @VisibleForTesting
+  static String getPartitionExportPath(String exportPath, String partitionId) {
+    return exportPath + "/partition_" + partitionId;
+  }
+
+  private List<InputSplit> exportPartition(JobContext context, BigQueryHelper bigQueryHelper, String projectId,
+                                           Table partition, String partitionPath, ExportJobs exportJobs)
+    throws IOException, InterruptedException {
+    // Listing the exported files sets the input directory, so each export uses its own copy of the configuration
+    Configuration configuration = new Configuration(context.getConfiguration());
+    UnshardedExportToCloudStorage export = new UnshardedExportToCloudStorage(
+      configuration, partitionPath, getExportFileFormat(), bigQueryHelper, projectId, partition,
+      new TextInputFormat()) {
+      @Override
+      public void beginExport() throws IOException {
+        super.beginExport();
+        exportJobs.add(exportJobReference);
+      }
+    };
+    export.prepare();
+    export.beginExport();
+    export.waitForUsableMapReduceInput();
+    return export.getSplits(new JobContextImpl(configuration, context.getJobID()));
+  }
+
+  /**
+   * Export jobs started for the partitions of a table, which are cancelled if the export of any partition fails. Jobs
+   * that are started after the others were cancelled are cancelled right away.
+   */
+  @VisibleForTesting
+  static final class ExportJobs {
+    private final BigQueryHelper bigQueryHelper;
+    private final String location;
+    private final List<JobReference> jobs = new ArrayList<>();
+    private boolean cancelled;
+
+    ExportJobs(BigQueryHelper bigQueryHelper, String location) {
+      this.bigQueryHelper = bigQueryHelper;
+      this.location = location;
+    }
+
+    synchronized void add(JobReference job) {
+      if (cancelled) {
+        cancel(job);
+      } else {
+        jobs.add(job);
+      }
+    }
+
+    synchronized void cancelAll() {
+      cancelled = true;
+      jobs.forEach(this::cancel);
+    }
+
+    private void cancel(JobReference job) {
+      try {
+        // Cancelling a job which is already done has no effect
+        bigQueryHelper.getRawBigquery().jobs().cancel(job.getProjectId(), job.getJobId())
+          .setLocation(location).execute();
+        LOG.debug("Cancelled export job '{}'.", job.getJobId());
+      } catch (IOException e) {
+        LOG.warn("Unable to cancel export job '{}': {}", job.getJobId(), e.getMessage());
+      }
+    }
+  }
+
 
   @Override
   public RecordReader<LongWritable, GenericData.Record> createDelegateRecordReader(InputSplit split,
@@ -89,7 +393,23 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
     return factory.getBigQueryHelper(config);
   }
 
-  private void processQuery(JobContext context) throws IOException, InterruptedException {
+  /**
+   * Returns whether the filter and the partition range of a table are applied by a query which materializes the
+   * matching rows into a temporary table. Input formats which can filter rows while reading return false, in which case
+   * only views and external tables are queried.
+   */
+  protected boolean isQueryRequiredForTables() {
+    return true;
+  }
+
+  /**
+   * Runs the query of the input, if any, and points the input at the temporary table holding its results. A query is
+   * needed to read views, external tables and filtered or partition bounded tables. The query only selects the fields
+   * configured with {@link BigQueryConstants#CONFIG_SELECTED_FIELDS}.
+   *
+   * @return true if the input now points at the temporary table
+   */
+  protected boolean processQuery(JobContext context) throws IOException, InterruptedException {
     final Configuration configuration = context.getConfiguration();
     BigQueryHelper bigQueryHelper;
     try {
@@ -115,12 +435,15 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
       datasetProjectId, datasetId, tableName, serviceAccount, isServiceAccountFilePath);
     Type type = Objects.requireNonNull(bigQueryTable).getDefinition().getType();
 
+    String selectList = getSelectList(configuration);
     String query;
     if (type == Type.VIEW || type == Type.MATERIALIZED_VIEW || type == Type.EXTERNAL) {
-      query = generateQueryForMaterializingView(datasetProjectId, datasetId, tableName, filter);
+      query = generateProjectedQueryForMaterializingView(selectList, datasetProjectId, datasetId, tableName, filter);
+    } else if (isQueryRequiredForTables()) {
+      query = generateProjectedQuery(selectList, partitionFromDate, partitionToDate, filter, datasetProjectId,
+                                     datasetId, tableName, serviceAccount, isServiceAccountFilePath);
     } else {
-      query = generateQuery(partitionFromDate, partitionToDate, filter, projectId, datasetProjectId, datasetId,
-                            tableName, serviceAccount, isServiceAccountFilePath);
+      query = null;
     }
 
     if (query != null) {
@@ -138,17 +461,78 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
       configuration.set(BigQueryConfiguration.INPUT_DATASET_ID_KEY,
                         configuration.get(BigQueryConstants.CONFIG_VIEW_MATERIALIZATION_DATASET));
       configuration.set(BigQueryConfiguration.INPUT_TABLE_ID_KEY, temporaryTableName);
+      return true;
     }
+    return false;
+  }
+
+  /**
+   * Returns the condition which restricts the rows of the input table to the configured partition range and filter.
+   *
+   * @return the condition, or null if all rows are read
+   */
+  @Nullable
+  protected String getRowRestriction(Configuration configuration) {
+    return generateRowRestriction(configuration.get(BigQueryConstants.CONFIG_PARTITION_FROM_DATE, null),
+                                  configuration.get(BigQueryConstants.CONFIG_PARTITION_TO_DATE, null),
+                                  configuration.get(BigQueryConstants.CONFIG_FILTER, null),
+                                  configuration.get(BigQueryConfiguration.INPUT_PROJECT_ID_KEY),
+                                  configuration.get(BigQueryConfiguration.INPUT_DATASET_ID_KEY),
+                                  configuration.get(BigQueryConfiguration.INPUT_TABLE_ID_KEY),
+                                  configuration.get(BigQueryConstants.CONFIG_SERVICE_ACCOUNT, null),
+                                  configuration.getBoolean(BigQueryConstants.CONFIG_SERVICE_ACCOUNT_IS_FILE, true));
+  }
+
+  /**
+   * @return the fields to read, or an empty list if all fields are read
+   */
+  public static List<String> getSelectedFields(Configuration configuration) {
+    String[] fields = configuration.getStrings(BigQueryConstants.CONFIG_SELECTED_FIELDS);
+    return fields == null ? Collections.emptyList() : Arrays.asList(fields);
+  }
+
+  @VisibleForTesting
+  static String getSelectList(Configuration configuration) {
+    List<String> fields = getSelectedFields(configuration);
+    return fields.isEmpty() ? "*" : fields.stream().map(field -> "`" + field + "`").collect(Collectors.joining(", "));
   }
 
   @VisibleForTesting
   String generateQuery(String partitionFromDate, String partitionToDate, String filter, String project,
                        String datasetProject, String dataset, String table, @Nullable String serviceAccount,
                        @Nullable Boolean isServiceAccountFilePath) {
+    return generateProjectedQuery("*", partitionFromDate, partitionToDate, filter, datasetProject, dataset, table,
+                                  serviceAccount, isServiceAccountFilePath);
+  }
+
+  /**
+   * Generates the query which selects the given fields of the rows within the partition range that match the filter.
+   *
+   * @param selectList fields to select, see {@link #getSelectList(Configuration)}
+   * @return the query, or null if all rows are read
+   */
+  @Nullable
+  @VisibleForTesting
+  String generateProjectedQuery(String selectList, String partitionFromDate, String partitionToDate, String filter,
+                                String datasetProject, String dataset, String table, @Nullable String serviceAccount,
+                                @Nullable Boolean isServiceAccountFilePath) {
+    String condition = generateRowRestriction(partitionFromDate, partitionToDate, filter, datasetProject, dataset,
+                                              table, serviceAccount, isServiceAccountFilePath);
+    if (condition == null) {
+      return null;
+    }
+    String queryTemplate = "select %s from `%s` where %s";
+    String tableName = datasetProject + "." + dataset + "." + table;
+    return String.format(queryTemplate, selectList, tableName, condition);
+  }
+
+  @Nullable
+  private String generateRowRestriction(String partitionFromDate, String partitionToDate, String filter,
+                                        String datasetProject, String dataset, String table,
+                                        @Nullable String serviceAccount, @Nullable Boolean isServiceAccountFilePath) {
     if (partitionFromDate == null && partitionToDate == null && filter == null) {
       return null;
     }
-    String queryTemplate = "select * from `%s` where %s";
     com.google.cloud.bigquery.Table sourceTable = BigQueryUtil.getBigQueryTable(datasetProject, dataset, table,
                                                                                 serviceAccount,
                                                                                 isServiceAccountFilePath);
@@ -173,13 +557,23 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
       }
     }
 
-    String tableName = datasetProject + "." + dataset + "." + table;
-    return String.format(queryTemplate, tableName, condition.toString());
+    return condition.toString();
   }
 
   @VisibleForTesting
   String generateQueryForMaterializingView(String datasetProject, String dataset, String table, String filter) {
-    String queryTemplate = "select * from `%s`%s";
+    return generateProjectedQueryForMaterializingView("*", datasetProject, dataset, table, filter);
+  }
+
+  /**
+   * Generates the query which selects the given fields of the rows of a view that match the filter.
+   *
+   * @param selectList fields to select, see {@link #getSelectList(Configuration)}
+   */
+  @VisibleForTesting
+  String generateProjectedQueryForMaterializingView(String selectList, String datasetProject, String dataset,
+                                                    String table, String filter) {
+    String queryTemplate = "select %s from `%s`%s";
     StringBuilder condition = new StringBuilder();
 
     if (!Strings.isNullOrEmpty(filter)) {
@@ -187,7 +581,7 @@ public class PartitionedBigQueryInputFormat extends AbstractBigQueryInputFormat<
     }
 
     String tableName = datasetProject + "." + dataset + "." + table;
-    return String.format(queryTemplate, tableName, condition.toString());
+    return String.format(queryTemplate, selectList, tableName, condition.toString());
   }
 
   /**
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+/**
+ * The method used to read records from BigQuery into the source.
+ */
+public enum ReadMethod {
+  /**
+   * The table is exported to Avro files in a temporary GCS location, which are then read into the pipeline.
+   */
+  GCS,
+  /**
+   * The table is read directly with the BigQuery Storage Read API, using one read stream per input split.
+   */
+  STORAGE_READ_API
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2021 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.protobuf.ByteString;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.source.BigQueryStorageReadInputSplit;
+import io.cdap.plugin.gcp.bigquery.source.BigQueryStorageReadStream;
+import io.cdap.plugin.gcp.bigquery.sqlengine.transform.SQLEngineArrowToStructuredTransformer;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Record reader which reads the Arrow record batches of a single BigQuery Storage Read API stream.
+ * <p>
+ * Every batch is loaded into the same {@link VectorSchemaRoot} and decoded column by column into StructuredRecords of
+ * the schema set in {@link BigQueryConstants#CONFIG_STORAGE_READ_OUTPUT_SCHEMA}, so pulled records do not go through
+ * an intermediate Avro record.
+ */
+public class BigQueryArrowRecordReader extends RecordReader<LongWritable, StructuredRecord> {
+
+  private final LongWritable currentKey = new LongWritable();
+  private StructuredRecord currentValue;
+  private BigQueryStorageReadStream stream;
+  private BufferAllocator allocator;
+  private VectorSchemaRoot root;
+  private VectorLoader loader;
+  private SQLEngineArrowToStructuredTransformer transformer;
+  private List<StructuredRecord> batch = Collections.emptyList();
+  private int batchIndex;
+  private long rowCount;
+
+  @Override
+  public void initialize(InputSplit inputSplit, TaskAttemptContext context) throws IOException {
+    BigQueryStorageReadInputSplit split = (BigQueryStorageReadInputSplit) inputSplit;
+    if (split.getArrowSchema().length == 0) {
+      throw new IOException(String.format("Stream '%s' does not return Arrow record batches.", split.getStreamName()));
+    }
+    Configuration conf = context.getConfiguration();
+    Schema schema = Schema.parseJson(conf.get(BigQueryConstants.CONFIG_STORAGE_READ_OUTPUT_SCHEMA));
+    allocator = new RootAllocator(Long.MAX_VALUE);
+    root = VectorSchemaRoot.create(MessageSerializer.deserializeSchema(
+      getReadChannel(ByteString.copyFrom(split.getArrowSchema()))), allocator);
+    loader = new VectorLoader(root);
+    transformer = new SQLEngineArrowToStructuredTransformer(schema, root);
+    stream = new BigQueryStorageReadStream(conf, split.getStreamName());
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    // A response may contain no rows, so keep reading until a batch with rows arrives or the stream ends
+    while (batchIndex >= batch.size()) {
+      ReadRowsResponse response = stream.next();
+      if (response == null) {
+        return false;
+      }
+      ByteString serializedBatch = response.getArrowRecordBatch().getSerializedRecordBatch();
+      if (serializedBatch.isEmpty()) {
+        continue;
+      }
+      stream.addBytesRead(serializedBatch.size());
+      long decodeStartNanos = System.nanoTime();
+      try (ArrowRecordBatch recordBatch = MessageSerializer.deserializeRecordBatch(getReadChannel(serializedBatch),
+                                                                                   allocator)) {
+        loader.load(recordBatch);
+      }
+      batch = transformer.transform();
+      batchIndex = 0;
+      stream.addDecodedRows(batch.size(), System.nanoTime() - decodeStartNanos);
+    }
+    currentValue = batch.get(batchIndex++);
+    currentKey.set(rowCount++);
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return currentKey;
+  }
+
+  @Override
+  public StructuredRecord getCurrentValue() {
+    return currentValue;
+  }
+
+  @Override
+  public float getProgress() {
+    return stream.getProgress();
+  }
+
+  @Override
+  public void close() {
+    if (stream != null) {
+      stream.close();
+    }
+    // The vectors hold the buffers of the last batch, they must be released before the allocator is closed
+    if (root != null) {
+      root.close();
+    }
+    if (allocator != null) {
+      allocator.close();
+    }
+  }
+
+  private static ReadChannel getReadChannel(ByteString bytes) {
+    InputStream input = bytes.newInput();
+    return new ReadChannel(Channels.newChannel(input));
+  }
+}
@@ -18,6 +18,7 @@ package io.cdap.plugin.gcp.bigquery.sqlengine;
 
 import com.google.cloud.bigquery.BigQuery;
 import com.google.cloud.bigquery.DatasetId;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
@@ -26,9 +27,11 @@ import io.cdap.cdap.etl.api.engine.sql.dataset.SQLPullDataset;
 import io.cdap.cdap.etl.api.engine.sql.request.SQLPullRequest;
 import io.cdap.plugin.gcp.bigquery.source.BigQueryInputFormatProvider;
 import io.cdap.plugin.gcp.bigquery.source.BigQuerySourceUtils;
+import io.cdap.plugin.gcp.bigquery.source.ReadMethod;
 import io.cdap.plugin.gcp.bigquery.sqlengine.transform.PullTransform;
+import io.cdap.plugin.gcp.bigquery.sqlengine.transform.SQLEngineArrowToStructuredTransformer;
 import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
-import org.apache.avro.generic.GenericData;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 
@@ -37,15 +40,19 @@ import javax.annotation.Nullable;
 
 /**
  * SQL Pull Dataset implementation for BigQuery backed datasets.
+ *
+ * Records are read as Avro records, or as StructuredRecords when the Storage Read API reads them from Arrow record
+ * batches, so the values of the pulled key-value pairs are either one of them.
  */
 public class BigQueryPullDataset extends BigQueryInputFormatProvider
-  implements SQLPullDataset<StructuredRecord, LongWritable, GenericData.Record>, BigQuerySQLDataset {
+  implements SQLPullDataset<StructuredRecord, LongWritable, Object>, BigQuerySQLDataset {
 
   private final BigQuery bigQuery;
   private final String datasetName;
   private final Schema schema;
   private final DatasetId bqDataset;
   private final String bqTable;
+  @Nullable
   private final String gcsPath;
   private Long numRows;
 
@@ -55,7 +62,7 @@ public class BigQueryPullDataset extends BigQueryInputFormatProvider
                               BigQuery bigQuery,
                               DatasetId bqDataset,
                               String bqTable,
-                              String gcsPath) {
+                              @Nullable String gcsPath) {
     super(configuration);
     this.datasetName = datasetName;
     this.schema = schema;
@@ -71,13 +78,25 @@ public class BigQueryPullDataset extends BigQueryInputFormatProvider
                                                 DatasetId bqDataset,
                                                 String bqTable,
                                                 String bucket,
-                                                String runId) throws IOException {
+                                                String runId,
+                                                boolean useStorageReadAPI) throws IOException {
 
     // Clone configuration object
     Configuration configuration = new Configuration(baseConfiguration);
 
-    // Configure BigQuery input format.
-    String gcsPath = BigQuerySQLEngineUtils.getGCSPath(bucket, runId, bqTable);
+    // Configure BigQuery input format. The Storage Read API reads the table directly, without exporting it to GCS.
+    String gcsPath = null;
+    if (useStorageReadAPI) {
+      configuration.setEnum(BigQueryConstants.CONFIG_READ_METHOD, ReadMethod.STORAGE_READ_API);
+      // Records are decoded column-wise from Arrow record batches when all fields can be, from Avro rows otherwise
+      Schema schema = pullRequest.getDatasetSchema();
+      if (SQLEngineArrowToStructuredTransformer.isSupported(schema)) {
+        configuration.setEnum(BigQueryConstants.CONFIG_STORAGE_READ_DATA_FORMAT, DataFormat.ARROW);
+        configuration.set(BigQueryConstants.CONFIG_STORAGE_READ_OUTPUT_SCHEMA, schema.toString());
+      }
+    } else {
+      gcsPath = BigQuerySQLEngineUtils.getGCSPath(bucket, runId, bqTable);
+    }
     BigQuerySourceUtils.configureBigQueryInput(configuration, bqDataset, bqTable, gcsPath);
 
     return new BigQueryPullDataset(configuration,
@@ -90,7 +109,16 @@ public class BigQueryPullDataset extends BigQueryInputFormatProvider
   }
 
   @Override
-  public Transform<KeyValue<LongWritable, GenericData.Record>, StructuredRecord> fromKeyValue() {
+  public String getInputFormatClassName() {
+    String dataFormat = inputFormatConfiguration.get(BigQueryConstants.CONFIG_STORAGE_READ_DATA_FORMAT);
+    if (DataFormat.ARROW.name().equals(dataFormat)) {
+      return BigQueryArrowInputFormat.class.getName();
+    }
+    return super.getInputFormatClassName();
+  }
+
+  @Override
+  public Transform<KeyValue<LongWritable, Object>, StructuredRecord> fromKeyValue() {
     return new PullTransform(schema);
   }
 
@@ -136,6 +164,7 @@ public class BigQueryPullDataset extends BigQueryInputFormatProvider
   }
 
   @Override
+  @Nullable
   public String getGCSPath() {
     return gcsPath;
   }
@@ -19,6 +19,7 @@ package io.cdap.plugin.gcp.bigquery.sqlengine;
 import com.google.cloud.bigquery.BigQuery;
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.hadoop.io.bigquery.output.BigQueryTableFieldSchema;
+import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
@@ -28,6 +29,7 @@ import io.cdap.cdap.etl.api.engine.sql.request.SQLPushRequest;
 import io.cdap.plugin.gcp.bigquery.sink.BigQueryOutputFormatProvider;
 import io.cdap.plugin.gcp.bigquery.sink.BigQuerySinkUtils;
 import io.cdap.plugin.gcp.bigquery.sink.Operation;
+import io.cdap.plugin.gcp.bigquery.sink.WriteMethod;
 import io.cdap.plugin.gcp.bigquery.sqlengine.transform.PushTransform;
 import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
@@ -96,10 +98,10 @@ public class BigQueryPushDataset extends BigQueryOutputFormatProvider
     List<BigQueryTableFieldSchema> fields =
       BigQuerySinkUtils.getBigQueryTableFieldsFromSchema(pushRequest.getDatasetSchema());
     BigQuerySinkUtils.configureOutput(configuration, dataset, table, gcsPath, fields);
+    BigQuerySinkUtils.configureAvroStaging(configuration, sqlEngineConfig.getStagingFileCodec(),
+                                           sqlEngineConfig.getStagingFileBlockSize());
 
-    // Create empty table to store uploaded records.
-    BigQuerySQLEngineUtils.createEmptyTable(sqlEngineConfig, bigQuery, dataset.getProject(), dataset.getDataset(),
-                                            table);
+    createTable(configuration, sqlEngineConfig, bigQuery, dataset, table, pushRequest.getDatasetSchema());
 
     //Build new Instance
     return new BigQueryPushDataset(pushRequest.getDatasetName(),
@@ -112,6 +114,28 @@ public class BigQueryPushDataset extends BigQueryOutputFormatProvider
                                    gcsPath);
   }
 
+  /**
+   * Creates the empty table which stores the pushed records, and configures how the records are written into it.
+   */
+  @VisibleForTesting
+  static void createTable(Configuration configuration, BigQuerySQLEngineConfig sqlEngineConfig, BigQuery bigQuery,
+                          DatasetId dataset, String table, Schema schema) {
+    if (sqlEngineConfig.shouldUseStorageWriteAPI()) {
+      // Records are appended to pending write streams, which are committed by the output committer once all tasks
+      // have finished, before any stage reads the pushed dataset. Streams can only append to a table with a schema, and
+      // appending directly to that table requires that its schema is not relaxed.
+      configuration.setEnum(BigQueryConstants.CONFIG_WRITE_METHOD, WriteMethod.STORAGE_WRITE_API);
+      configuration.setBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, false);
+      configuration.setBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION_ON_EMPTY_OUTPUT, false);
+      BigQuerySQLEngineUtils.createEmptyTable(sqlEngineConfig, bigQuery, dataset.getProject(), dataset.getDataset(),
+                                              table, BigQuerySinkUtils.convertCdapSchemaToBigQuerySchema(schema));
+    } else {
+      // Create empty table to store uploaded records.
+      BigQuerySQLEngineUtils.createEmptyTable(sqlEngineConfig, bigQuery, dataset.getProject(), dataset.getDataset(),
+                                              table);
+    }
+  }
+
   @Override
   public Transform<StructuredRecord, KeyValue<StructuredRecord, NullWritable>> toKeyValue() {
     return new PushTransform();
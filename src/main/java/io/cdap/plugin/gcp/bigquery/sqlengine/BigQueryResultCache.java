@@ -0,0 +1,444 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.CopyJobConfiguration;
+import com.google.cloud.bigquery.DatasetId;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobException;
+import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.JobInfo;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.Table;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.TableResult;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
+import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of the results of joins and transformations executed by the {@link BigQuerySQLEngine}, which lets runs that
+ * execute the same SQL statement over the same records reuse the table computed by an earlier run.
+ * <p>
+ * Results are stored in the dataset of the engine, in a table named after the {@link Fingerprint} of the stage, which
+ * is derived from the SQL statement, the output schema, and the tables read by the statement. Tables pushed to
+ * BigQuery by the current run are written to a new table in every run, so they are identified by their number of rows
+ * in the key of the fingerprint, and by their contents in its content fingerprint. Computing the fingerprint of the
+ * contents scans the pushed tables, so it is only computed when a cached table with the same key exists, or in the
+ * background when results are copied into the cache. Tables of other joins and transformations are identified by the
+ * fingerprint of the stage which computed them.
+ * <p>
+ * Results are copied into the cache once the stage has been executed, so that cached tables are always complete.
+ * Copies complete in the background, and the tables read by a copy are only deleted once it has completed. Cached
+ * tables expire after the temporary table TTL since they were last used.
+ */
+public class BigQueryResultCache implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryResultCache.class);
+  static final String TABLE_PREFIX = "cache_";
+  private static final String FINGERPRINT_OPERATION = "fingerprint";
+  private static final String CACHE_OPERATION = "cache";
+  // Functions whose results change between runs, and system variables
+  private static final Pattern NON_DETERMINISTIC = Pattern.compile(
+    "\\b(" + String.join("|", BigQuerySQLEngineUtils.NON_DETERMINISTIC_FUNCTIONS) + ")\\b|@@",
+    Pattern.CASE_INSENSITIVE);
+  // Order independent fingerprint of the rows of a table, which includes the column names
+  private static final String CONTENT_FINGERPRINT_QUERY =
+    "SELECT FORMAT('%%d:%%d:%%s', COUNT(*), IFNULL(BIT_XOR(h), 0), " +
+      "CAST(IFNULL(SUM(CAST(h AS BIGNUMERIC)), 0) AS STRING)) " +
+      "FROM (SELECT FARM_FINGERPRINT(TO_JSON_STRING(t)) AS h FROM `%s.%s.%s` AS t)";
+
+  private final BigQuerySQLEngineConfig sqlEngineConfig;
+  private final BigQuery bigQuery;
+  private final BigQueryJobWaiter jobWaiter;
+  private final String project;
+  private final DatasetId dataset;
+  // Fingerprints of the tables read by the pushed down stages of this run
+  private final Map<String, Fingerprint> fingerprints;
+  // Copies into the cache which may not have completed yet, by source table
+  private final Map<String, PendingCopy> copies;
+  private final ExecutorService executor;
+  // Names of the cached tables which existed when the cache was first looked up in this run
+  private Set<String> cachedTables;
+
+  public BigQueryResultCache(BigQuerySQLEngineConfig sqlEngineConfig,
+                             BigQuery bigQuery,
+                             BigQueryJobWaiter jobWaiter,
+                             String project,
+                             DatasetId dataset) {
+    this.sqlEngineConfig = sqlEngineConfig;
+    this.bigQuery = bigQuery;
+    this.jobWaiter = jobWaiter;
+    this.project = project;
+    this.dataset = dataset;
+    this.fingerprints = new ConcurrentHashMap<>();
+    this.copies = new ConcurrentHashMap<>();
+    // Contents are fingerprinted and cached tables are updated off the pipeline threads and the polling thread of the
+    // job waiter
+    this.executor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("bigquery-result-cache-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Computes the fingerprint of the results of a select statement. The contents of the tables read by the statement
+   * are not scanned until the content fingerprint is needed.
+   *
+   * @param query SQL statement
+   * @param outputSchema schema of the results
+   * @param inputs datasets read by the statement
+   * @return the fingerprint, or null if the results cannot be cached
+   */
+  @Nullable
+  public Fingerprint getFingerprint(String query, Schema outputSchema, Collection<BigQuerySQLDataset> inputs) {
+    if (NON_DETERMINISTIC.matcher(query).find()) {
+      return null;
+    }
+
+    Map<String, Fingerprint> inputFingerprints = new LinkedHashMap<>();
+    for (BigQuerySQLDataset input : inputs) {
+      Fingerprint inputFingerprint = getTableFingerprint(input);
+      if (inputFingerprint == null) {
+        return null;
+      }
+      inputFingerprints.put(String.format("`%s.%s.%s`", input.getBigQueryProject(), input.getBigQueryDataset(),
+                                          input.getBigQueryTable()), inputFingerprint);
+    }
+
+    // Table names change in every run, so tables are referenced by their fingerprint instead
+    String key = query;
+    for (Map.Entry<String, Fingerprint> input : inputFingerprints.entrySet()) {
+      key = key.replace(input.getKey(), String.format("`%s`", input.getValue().getKey()));
+    }
+    Set<String> tables = new HashSet<>();
+    inputFingerprints.values().forEach(input -> tables.addAll(input.getTables()));
+    return new Fingerprint(hash(key, outputSchema), () -> {
+      String contentKey = query;
+      for (Map.Entry<String, Fingerprint> input : inputFingerprints.entrySet()) {
+        String inputContentFingerprint = input.getValue().getContentFingerprint();
+        if (inputContentFingerprint == null) {
+          return null;
+        }
+        contentKey = contentKey.replace(input.getKey(), String.format("`%s`", inputContentFingerprint));
+      }
+      return hash(contentKey, outputSchema);
+    }, tables);
+  }
+
+  /**
+   * Registers the fingerprint of the table of a join or transformation, so that the stages which read from it can be
+   * cached.
+   */
+  public void register(String table, Fingerprint fingerprint) {
+    fingerprints.put(table, fingerprint);
+  }
+
+  /**
+   * Returns the name of the cached table of a fingerprint. The content fingerprint is computed if it was not yet.
+   */
+  public static String getTableName(Fingerprint fingerprint) {
+    return getTablePrefix(fingerprint) + fingerprint.getContentFingerprint();
+  }
+
+  public static boolean isCacheTable(String table) {
+    return table.startsWith(TABLE_PREFIX);
+  }
+
+  private static String getTablePrefix(Fingerprint fingerprint) {
+    return TABLE_PREFIX + fingerprint.getKey() + "_";
+  }
+
+  /**
+   * Looks up the cached results for a fingerprint. The contents of the tables read by the stage are only fingerprinted
+   * if results with the same key are cached. The expiration of cached results is extended when they are found, so that
+   * they do not expire while they are read by this run.
+   *
+   * @return true if the results are cached
+   */
+  public boolean reuse(Fingerprint fingerprint) {
+    String prefix = getTablePrefix(fingerprint);
+    if (getCachedTables().stream().noneMatch(table -> table.startsWith(prefix))) {
+      return false;
+    }
+    if (fingerprint.getContentFingerprint() == null) {
+      return false;
+    }
+
+    TableId tableId = TableId.of(dataset.getProject(), dataset.getDataset(), getTableName(fingerprint));
+    try {
+      Table table = bigQuery.getTable(tableId);
+      if (table == null) {
+        return false;
+      }
+      bigQuery.update(table.toBuilder().setExpirationTime(getExpirationTime()).build());
+      return true;
+    } catch (BigQueryException e) {
+      // The table may have expired since it was looked up
+      LOG.warn("Unable to reuse cached results in table '{}': {}", tableId.getTable(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Starts copying the results of a stage into the cache, without waiting for the copy to complete. The content
+   * fingerprint of the results is computed in the background first. Failures are logged, since they do not affect the
+   * current run.
+   *
+   * @param fingerprint fingerprint of the results
+   * @param source table which contains the results
+   */
+  public void put(Fingerprint fingerprint, TableId source) {
+    CompletableFuture<?> copy = CompletableFuture
+      .supplyAsync(fingerprint::getContentFingerprint, executor)
+      .thenCompose(contentFingerprint -> contentFingerprint == null ?
+        CompletableFuture.completedFuture(null) : copy(getTableName(fingerprint), source));
+    copies.put(source.getTable(), new PendingCopy(copy, fingerprint.getTables()));
+  }
+
+  private CompletableFuture<?> copy(String cachedTable, TableId source) {
+    TableId destination = TableId.of(dataset.getProject(), dataset.getDataset(), cachedTable);
+    CopyJobConfiguration copyConfig = CopyJobConfiguration.newBuilder(destination, source)
+      .setCreateDisposition(JobInfo.CreateDisposition.CREATE_IF_NEEDED)
+      .setWriteDisposition(JobInfo.WriteDisposition.WRITE_TRUNCATE)
+      .setLabels(BigQuerySQLEngineUtils.getJobTags(CACHE_OPERATION))
+      .build();
+
+    JobId jobId;
+    try {
+      jobId = bigQuery.create(JobInfo.of(JobId.of(project, BigQuerySQLEngineUtils.newIdentifier()), copyConfig))
+        .getJobId();
+    } catch (BigQueryException e) {
+      LOG.warn("Unable to cache results of table '{}' in table '{}': {}", source.getTable(), destination.getTable(),
+               e.getMessage());
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return jobWaiter.waitFor(jobId).handleAsync((job, error) -> {
+      completeCopy(job, error, source, destination);
+      return null;
+    }, executor);
+  }
+
+  /**
+   * Waits until the copies which read the given table have completed, so that the table can be deleted. These are the
+   * copy of the results stored in the table, and the copies whose content fingerprint scans the table.
+   *
+   * @param table table which contains the results of a stage, or records pushed to BigQuery
+   */
+  public void awaitCopy(String table) {
+    for (Map.Entry<String, PendingCopy> copy : copies.entrySet()) {
+      if (copy.getKey().equals(table) || copy.getValue().tables.contains(table)) {
+        awaitCopy(copy.getKey(), copy.getValue());
+      }
+    }
+  }
+
+  private void awaitCopy(String source, PendingCopy copy) {
+    try {
+      copy.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while caching results of table '{}'", source);
+      return;
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to cache results of table '{}': {}", source, e.getCause().getMessage());
+    }
+    copies.remove(source, copy);
+  }
+
+  /**
+   * Waits for the copies which have not completed yet, and stops the background thread of the cache.
+   */
+  @Override
+  public void close() {
+    new ArrayList<>(copies.entrySet()).forEach(copy -> awaitCopy(copy.getKey(), copy.getValue()));
+    executor.shutdownNow();
+  }
+
+  private void completeCopy(@Nullable Job job, @Nullable Throwable error, TableId source, TableId destination) {
+    if (error != null || job == null || job.getStatus().getError() != null) {
+      LOG.warn("Unable to cache results of table '{}' in table '{}': {}", source.getTable(), destination.getTable(),
+               error != null ? error.getMessage() : job == null ? "job not found" : job.getStatus().getError());
+      return;
+    }
+    try {
+      Table table = bigQuery.getTable(destination);
+      bigQuery.update(table.toBuilder().setExpirationTime(getExpirationTime()).build());
+      LOG.info("Cached results of table '{}' in table '{}'", source.getTable(), destination.getTable());
+    } catch (BigQueryException e) {
+      LOG.warn("Unable to cache results of table '{}' in table '{}': {}", source.getTable(), destination.getTable(),
+               e.getMessage());
+    }
+  }
+
+  @Nullable
+  private Fingerprint getTableFingerprint(BigQuerySQLDataset input) {
+    String table = input.getBigQueryTable();
+    // Joins and transformations which cannot be cached are not registered
+    if (input instanceof BigQuerySelectDataset) {
+      return fingerprints.get(table);
+    }
+    Fingerprint fingerprint = fingerprints.get(table);
+    if (fingerprint == null) {
+      // The number of rows of a pushed table is known without scanning it
+      fingerprint = new Fingerprint("rows_" + input.getNumRows(), () -> computeContentFingerprint(input),
+                                    ImmutableSet.of(table));
+      Fingerprint registered = fingerprints.putIfAbsent(table, fingerprint);
+      if (registered != null) {
+        fingerprint = registered;
+      }
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Lists the cached tables the first time the cache is looked up, so that the contents of the tables read by a stage
+   * are only fingerprinted if results with the same key were cached by an earlier run.
+   */
+  private synchronized Set<String> getCachedTables() {
+    if (cachedTables == null) {
+      Set<String> tables = new HashSet<>();
+      try {
+        for (Table table : bigQuery.listTables(dataset).iterateAll()) {
+          if (isCacheTable(table.getTableId().getTable())) {
+            tables.add(table.getTableId().getTable());
+          }
+        }
+      } catch (BigQueryException e) {
+        LOG.warn("Unable to list the cached results in dataset '{}', results are not reused: {}",
+                 dataset.getDataset(), e.getMessage());
+      }
+      cachedTables = tables;
+    }
+    return cachedTables;
+  }
+
+  private static String hash(String key, Schema outputSchema) {
+    return Hashing.sha256().hashString(String.join("\n", key, outputSchema.toString()), StandardCharsets.UTF_8)
+      .toString();
+  }
+
+  /**
+   * Computes the fingerprint of the records of a table with a query which scans the table.
+   *
+   * @return the fingerprint, or null if it could not be computed
+   */
+  @Nullable
+  @VisibleForTesting
+  String computeContentFingerprint(BigQuerySQLDataset input) {
+    String query = String.format(CONTENT_FINGERPRINT_QUERY, input.getBigQueryProject(), input.getBigQueryDataset(),
+                                 input.getBigQueryTable());
+    QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(query)
+      .setPriority(sqlEngineConfig.getJobPriority())
+      .setLabels(BigQuerySQLEngineUtils.getJobTags(FINGERPRINT_OPERATION))
+      .build();
+
+    try {
+      JobId jobId = JobId.of(project, BigQuerySQLEngineUtils.newIdentifier());
+      TableResult result = bigQuery.query(queryConfig, jobId);
+      return result.iterateAll().iterator().next().get(0).getStringValue();
+    } catch (BigQueryException | JobException e) {
+      LOG.warn("Unable to compute the fingerprint of table '{}', results which depend on it are not cached: {}",
+               input.getBigQueryTable(), e.getMessage());
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLEngineException("Interrupted exception when computing the fingerprint of dataset "
+                                     + input.getDatasetName(), e);
+    }
+  }
+
+  private long getExpirationTime() {
+    return Instant.now().toEpochMilli() + TimeUnit.HOURS.toMillis(sqlEngineConfig.getTempTableTTLHours());
+  }
+
+  /**
+   * Fingerprint of the results of a stage, or of a table pushed to BigQuery. The key is computed without reading any
+   * records. The content fingerprint identifies the records of the pushed tables read by the stage, which are scanned
+   * to compute it, so it is computed when it is first needed and at most once.
+   */
+  public static final class Fingerprint {
+    private final String key;
+    private final Supplier<String> contentFingerprint;
+    private final Set<String> tables;
+
+    private Fingerprint(String key, Supplier<String> contentFingerprint, Set<String> tables) {
+      this.key = key;
+      this.contentFingerprint = Suppliers.memoize(contentFingerprint);
+      this.tables = tables;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * @return the content fingerprint, or null if the contents of a pushed table could not be fingerprinted
+     */
+    @Nullable
+    public String getContentFingerprint() {
+      return contentFingerprint.get();
+    }
+
+    /**
+     * @return the pushed tables which are scanned to compute the content fingerprint
+     */
+    public Set<String> getTables() {
+      return tables;
+    }
+  }
+
+  /**
+   * Copy into the cache which may not have completed yet, along with the pushed tables it scans.
+   */
+  private static final class PendingCopy {
+    private final CompletableFuture<?> future;
+    private final Set<String> tables;
+
+    private PendingCopy(CompletableFuture<?> future, Set<String> tables) {
+      this.future = future;
+      this.tables = tables;
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.google.cloud.kms.v1.CryptoKeyName;
 import com.google.cloud.storage.Storage;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.cdap.cdap.api.RuntimeContext;
 import io.cdap.cdap.api.SQLEngineContext;
 import io.cdap.cdap.api.annotation.Description;
@@ -70,10 +71,10 @@ import io.cdap.plugin.gcp.bigquery.sink.BigQuerySinkUtils;
 import io.cdap.plugin.gcp.bigquery.source.BigQuerySourceUtils;
 import io.cdap.plugin.gcp.bigquery.sqlengine.builder.BigQueryJoinSQLBuilder;
 import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
 import io.cdap.plugin.gcp.common.CmekUtils;
 import io.cdap.plugin.gcp.common.GCPUtils;
-import org.apache.avro.generic.GenericData;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
@@ -82,12 +83,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -101,7 +105,7 @@ import javax.annotation.Nullable;
   + "BigQuery is Google's serverless, highly scalable, enterprise data warehouse.")
 @Metadata(properties = {@MetadataProperty(key = Connector.PLUGIN_TYPE, value = BigQueryConnector.NAME)})
 public class BigQuerySQLEngine
-  extends BatchSQLEngine<LongWritable, GenericData.Record, StructuredRecord, NullWritable>
+  extends BatchSQLEngine<LongWritable, Object, StructuredRecord, NullWritable>
   implements Engine {
 
   private static final Logger LOG = LoggerFactory.getLogger(BigQuerySQLEngine.class);
@@ -111,6 +115,9 @@ public class BigQuerySQLEngine
   private final BigQuerySQLEngineConfig sqlEngineConfig;
   private SQLEngineContext ctx;
   private BigQuery bigQuery;
+  private BigQueryJobWaiter jobWaiter;
+  private ExecutorService executor;
+  private BigQueryResultCache resultCache;
   private Storage storage;
   private Configuration configuration;
   private String project;
@@ -145,7 +152,8 @@ public class BigQuerySQLEngine
     sqlEngineConfig.validate();
 
     runId = BigQuerySQLEngineUtils.newIdentifier();
-    datasets = new HashMap<>();
+    // Stages may be pushed down from several threads
+    datasets = new ConcurrentHashMap<>();
 
     String serviceAccount = sqlEngineConfig.getServiceAccount();
     Credentials credentials = serviceAccount == null ?
@@ -158,6 +166,17 @@ public class BigQuerySQLEngine
     // Initialize BQ and GCS clients.
     bigQuery = GCPUtils.getBigQuery(project, credentials);
     storage = GCPUtils.getStorage(project, credentials);
+    // Jobs of all stages are polled together
+    jobWaiter = new BigQueryJobWaiter(bigQuery);
+    // Joins and transformations are executed in the background if the number of concurrent jobs is configured
+    executor = sqlEngineConfig.getMaxConcurrentJobs() == null ? null : Executors.newFixedThreadPool(
+      sqlEngineConfig.getMaxConcurrentJobs(),
+      new ThreadFactoryBuilder().setNameFormat("bigquery-sql-engine-%d").setDaemon(true).build());
+
+    // Results of joins and transformations are cached in the dataset of the engine
+    resultCache = sqlEngineConfig.shouldUseResultCache() ?
+      new BigQueryResultCache(sqlEngineConfig, bigQuery, jobWaiter, project, DatasetId.of(datasetProject, dataset)) :
+      null;
 
     String cmekKey = !Strings.isNullOrEmpty(sqlEngineConfig.cmekKey) ? sqlEngineConfig.cmekKey :
       ctx.getRuntimeArguments().get(CmekUtils.CMEK_KEY);
@@ -185,6 +204,17 @@ public class BigQuerySQLEngine
   public void onRunFinish(boolean succeeded, SQLEngineContext context) {
     super.onRunFinish(succeeded, context);
 
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    // Copies into the result cache are awaited through the job waiter
+    if (resultCache != null) {
+      resultCache.close();
+    }
+    if (jobWaiter != null) {
+      jobWaiter.close();
+    }
+
     String gcsPath;
     // If the bucket was created for this run, we should delete it.
     // Otherwise, just clean the directory within the provided bucket.
@@ -225,14 +255,14 @@ public class BigQuerySQLEngine
   }
 
   @Override
-  public SQLPullDataset<StructuredRecord, LongWritable, GenericData.Record> getPullProvider(
+  public SQLPullDataset<StructuredRecord, LongWritable, Object> getPullProvider(
     SQLPullRequest sqlPullRequest) throws SQLEngineException {
     if (!datasets.containsKey(sqlPullRequest.getDatasetName())) {
       throw new SQLEngineException(String.format("Trying to pull non-existing dataset: '%s",
                                                  sqlPullRequest.getDatasetName()));
     }
 
-    String table = datasets.get(sqlPullRequest.getDatasetName()).getBigQueryTable();
+    String table = getExecutedDataset(sqlPullRequest.getDatasetName()).getBigQueryTable();
 
     LOG.info("Executing Pull operation for dataset {} stored in table {}", sqlPullRequest.getDatasetName(), table);
 
@@ -243,7 +273,8 @@ public class BigQuerySQLEngine
                                              DatasetId.of(datasetProject, dataset),
                                              table,
                                              bucket,
-                                             runId);
+                                             runId,
+                                             sqlEngineConfig.shouldUseStorageReadAPI());
     } catch (IOException ioe) {
       throw new SQLEngineException(ioe);
     }
@@ -312,7 +343,10 @@ public class BigQuerySQLEngine
     return executeSelect(sqlJoinRequest.getDatasetName(),
                          sqlJoinRequest.getJoinDefinition().getOutputSchema(),
                          BigQueryJobType.JOIN,
-                         builder.getQuery());
+                         builder.getQuery(),
+                         sqlJoinRequest.getJoinDefinition().getStages().stream()
+                           .map(JoinStage::getStageName)
+                           .collect(Collectors.toList()));
   }
 
   @Nullable
@@ -323,7 +357,7 @@ public class BigQuerySQLEngine
       return null;
     }
 
-    String table = datasets.get(pullRequest.getDatasetName()).getBigQueryTable();
+    String table = getExecutedDataset(pullRequest.getDatasetName()).getBigQueryTable();
 
     return new BigQuerySparkDatasetProducer(sqlEngineConfig,
                                             datasetProject,
@@ -353,13 +387,14 @@ public class BigQuerySQLEngine
     }
 
     // Get source table information (from the stage we are attempting to write into the sink)
-    String sourceTable = datasets.get(writeRequest.getDatasetName()).getBigQueryTable();
+    String sourceTable = getExecutedDataset(writeRequest.getDatasetName()).getBigQueryTable();
     TableId sourceTableId = TableId.of(datasetProject, dataset, sourceTable);
 
     // Build Big Query Write instance and execute write operation.
     BigQueryWrite bigQueryWrite = BigQueryWrite.getInstance(datasetName,
                                                             sqlEngineConfig,
                                                             bigQuery,
+                                                            jobWaiter,
                                                             writeRequest,
                                                             sourceTableId,
                                                             metrics);
@@ -376,6 +411,11 @@ public class BigQuerySQLEngine
 
     LOG.info("Cleaning up dataset {}", datasetName);
 
+    // Stop the execution of this dataset if it has not started yet
+    if (bqDataset instanceof BigQuerySelectDataset) {
+      ((BigQuerySelectDataset) bqDataset).cancel();
+    }
+
     SQLEngineException ex = null;
 
     // Cancel BQ job
@@ -387,6 +427,11 @@ public class BigQuerySQLEngine
       ex = new SQLEngineException(String.format("Exception when executing cleanup for stage '%s'", datasetName), e);
     }
 
+    // The results of this dataset may still be copied into the result cache
+    if (resultCache != null) {
+      resultCache.awaitCopy(bqDataset.getBigQueryTable());
+    }
+
     // Delete BQ Table
     try {
       deleteTable(datasetName, bqDataset);
@@ -505,29 +550,41 @@ public class BigQuerySQLEngine
     return executeSelect(context.getOutputDatasetName(),
                          context.getOutputSchema(),
                          BigQueryJobType.TRANSFORM,
-                         relation.getSQLStatement());
+                         relation.getSQLStatement(),
+                         bqDatasets.keySet());
   }
 
   private BigQuerySelectDataset executeSelect(String datasetName,
                                               Schema outputSchema,
                                               BigQueryJobType jobType,
-                                              String query) {
+                                              String query,
+                                              Collection<String> inputDatasetNames) {
     LOG.info("Executing {} operation for dataset {}", jobType.getType(), datasetName);
 
     // Get new Job ID for this push operation
     String jobId = BigQuerySQLEngineUtils.newIdentifier();
 
-    // Build new table name for this dataset
-    String table = BigQuerySQLEngineUtils.getNewTableName(runId);
+    // Look up results computed by an earlier run for the same statement and input records
+    BigQueryResultCache.Fingerprint fingerprint = null;
+    if (resultCache != null) {
+      List<BigQuerySQLDataset> inputDatasets = inputDatasetNames.stream()
+        .map(datasets::get)
+        .collect(Collectors.toList());
+      fingerprint = inputDatasets.contains(null) ? null :
+        resultCache.getFingerprint(query, outputSchema, inputDatasets);
+    }
+    boolean cached = fingerprint != null && resultCache.reuse(fingerprint);
 
-    // Create empty table to store query results.
-    BigQuerySQLEngineUtils.createEmptyTable(sqlEngineConfig, bigQuery, project, dataset, table);
+    // Build new table name for this dataset, unless the results are read from the cache
+    String table = cached ?
+      BigQueryResultCache.getTableName(fingerprint) : BigQuerySQLEngineUtils.getNewTableName(runId);
 
     BigQuerySelectDataset selectDataset = BigQuerySelectDataset.getInstance(
       datasetName,
       outputSchema,
       sqlEngineConfig,
       bigQuery,
+      jobWaiter,
       project,
       DatasetId.of(datasetProject, dataset),
       table,
@@ -535,14 +592,68 @@ public class BigQuerySQLEngine
       jobType,
       query,
       metrics
-    ).execute();
+    );
+
+    if (fingerprint != null) {
+      resultCache.register(table, fingerprint);
+    }
+
+    if (cached) {
+      selectDataset.setCachedResults();
+      datasets.put(datasetName, selectDataset);
+      LOG.info("Reused cached results of {} operation for dataset {} from table {}",
+               jobType.getType(), datasetName, table);
+      return selectDataset;
+    }
+
+    if (fingerprint != null) {
+      selectDataset.setResultCache(resultCache, fingerprint);
+    }
+
+    // Keep track of the datasets read by this select statement, as their execution may have been deferred.
+    for (String inputDatasetName : inputDatasetNames) {
+      BigQuerySQLDataset inputDataset = datasets.get(inputDatasetName);
+      if (inputDataset instanceof BigQuerySelectDataset) {
+        selectDataset.addInput((BigQuerySelectDataset) inputDataset);
+      }
+    }
 
     datasets.put(datasetName, selectDataset);
 
-    LOG.info("Executed {} operation for dataset {}", jobType.getType(), datasetName);
+    // In lazy mode, the dataset is only executed when its records are pulled or written, or when it is read by more
+    // than one stage.
+    if (sqlEngineConfig.shouldUseLazyExecution()) {
+      LOG.info("Deferred {} operation for dataset {}", jobType.getType(), datasetName);
+      return selectDataset;
+    }
+
+    if (executor == null) {
+      selectDataset.execute();
+      LOG.info("Executed {} operation for dataset {}", jobType.getType(), datasetName);
+      return selectDataset;
+    }
+
+    // The dataset is executed once the datasets it reads from have been executed. Callers wait for the execution when
+    // the records of the dataset are needed.
+    selectDataset.submit(executor);
+    LOG.info("Submitted {} operation for dataset {}", jobType.getType(), datasetName);
     return selectDataset;
   }
 
+  /**
+   * Gets a dataset whose records are stored in its BigQuery table, executing the dataset if its execution was deferred.
+   *
+   * @param datasetName dataset name
+   * @return dataset
+   */
+  private BigQuerySQLDataset getExecutedDataset(String datasetName) {
+    BigQuerySQLDataset bqDataset = datasets.get(datasetName);
+    if (bqDataset instanceof BigQuerySelectDataset) {
+      ((BigQuerySelectDataset) bqDataset).execute();
+    }
+    return bqDataset;
+  }
+
   /**
    * Get a map that contains stage names as keys and BigQuery tables as Values.
    *
@@ -601,6 +712,11 @@ public class BigQuerySQLEngine
     }
 
     String tableName = bqDataset.getBigQueryTable();
+
+    // Cached results are kept for later runs, and expire after the temporary table TTL.
+    if (BigQueryResultCache.isCacheTable(tableName)) {
+      return;
+    }
     TableId tableId = TableId.of(datasetProject, dataset, tableName);
 
     // Delete this table if found
@@ -28,6 +28,8 @@ import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
 import io.cdap.plugin.common.ConfigUtil;
 import io.cdap.plugin.gcp.bigquery.common.BigQueryBaseConfig;
 import io.cdap.plugin.gcp.bigquery.connector.BigQueryConnectorConfig;
+import io.cdap.plugin.gcp.bigquery.sink.AvroCodec;
+import io.cdap.plugin.gcp.bigquery.sink.BigQuerySinkUtils;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
 import io.cdap.plugin.gcp.common.CmekUtils;
 
@@ -50,6 +52,12 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
     public static final String NAME_INCLUDED_STAGES = "includedStages";
     public static final String NAME_EXCLUDED_STAGES = "excludedStages";
     public static final String NAME_USE_STORAGE_READ_API = "useStorageReadAPI";
+    public static final String NAME_USE_STORAGE_WRITE_API = "useStorageWriteAPI";
+    public static final String NAME_USE_LAZY_EXECUTION = "useLazyExecution";
+    public static final String NAME_MAX_CONCURRENT_JOBS = "maxConcurrentJobs";
+    public static final String NAME_USE_RESULT_CACHE = "useResultCache";
+    public static final String NAME_STAGING_FILE_CODEC = "stagingFileCodec";
+    public static final String NAME_STAGING_FILE_BLOCK_SIZE = "stagingFileBlockSize";
 
     // Job priority options
     public static final String PRIORITY_BATCH = "batch";
@@ -92,10 +100,47 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
     @Nullable
     @Description("Select this option to use the BigQuery Storage Read API when extracting records from BigQuery " +
       "during pipeline execution. This option can increase the performance of the BigQuery ELT Transformation " +
-      "Pushdown execution. The usage of this API incurrs additional costs. " +
-      "This requires Scala version 2.12 to be installed in the execution environment.")
+      "Pushdown execution. The usage of this API incurs additional costs. " +
+      "Reading records directly into Spark requires Scala version 2.12 to be installed in the execution " +
+      "environment. Otherwise, records are read from the streams of the API instead of being exported to the " +
+      "temporary bucket.")
     private Boolean useStorageReadAPI;
 
+    @Name(NAME_USE_STORAGE_WRITE_API)
+    @Macro
+    @Nullable
+    @Description("Select this option to use the BigQuery Storage Write API when pushing records into BigQuery. " +
+      "Records are appended to pending write streams which are committed once all records have been written, " +
+      "instead of being staged in the temporary bucket and loaded with a load job. " +
+      "The usage of this API incurs additional costs.")
+    private Boolean useStorageWriteAPI;
+
+    @Name(NAME_USE_LAZY_EXECUTION)
+    @Macro
+    @Nullable
+    @Description("Select this option to defer the execution of joins and transformations until their records are " +
+      "pulled from BigQuery, written to a sink, or read by more than one stage. The SQL statements of deferred " +
+      "stages are composed into the statement of the stage which reads from them, instead of storing the results " +
+      "of each stage in a temporary table. The number of records of deferred stages is not reported in the " +
+      "pipeline metrics, where they report 0 records, since counting them would compute them again.")
+    private Boolean useLazyExecution;
+
+    @Name(NAME_MAX_CONCURRENT_JOBS)
+    @Macro
+    @Nullable
+    @Description("Maximum number of joins and transformations executed at the same time in BigQuery. Stages which " +
+      "do not depend on each other are executed concurrently in the background, up to this limit. When not set, " +
+      "each join and transformation is executed when it is pushed down.")
+    private Integer maxConcurrentJobs;
+
+    @Name(NAME_USE_RESULT_CACHE)
+    @Macro
+    @Nullable
+    @Description("Select this option to reuse the results of joins and transformations computed by earlier runs when " +
+      "the SQL statement of the stage and the contents of the tables it reads are unchanged. Cached results are kept " +
+      "in the dataset for the number of hours configured in the Temporary Table TTL.")
+    private Boolean useResultCache;
+
     @Name(NAME_INCLUDED_STAGES)
     @Macro
     @Nullable
@@ -110,6 +155,20 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
     "even when supported. Each stage name should be in a separate line.")
     protected String excludedStages;
 
+    @Name(NAME_STAGING_FILE_CODEC)
+    @Macro
+    @Nullable
+    @Description("Compression codec of the Avro files staged in the temporary bucket when records are pushed to " +
+      "BigQuery. Supported values are 'none', 'deflate' and 'snappy'. Defaults to 'none'.")
+    protected String stagingFileCodec;
+
+    @Name(NAME_STAGING_FILE_BLOCK_SIZE)
+    @Macro
+    @Nullable
+    @Description("Approximate uncompressed size in kilobytes of the blocks of the Avro files staged in the " +
+      "temporary bucket when records are pushed to BigQuery. Defaults to 64 KB.")
+    protected Integer stagingFileBlockSize;
+
 
     private BigQuerySQLEngineConfig(@Nullable BigQueryConnectorConfig connection,
                                     @Nullable String dataset, @Nullable String location,
@@ -155,6 +214,32 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
         return useStorageReadAPI != null ? useStorageReadAPI : false;
     }
 
+    public Boolean shouldUseStorageWriteAPI() {
+        return useStorageWriteAPI != null ? useStorageWriteAPI : false;
+    }
+
+    public Boolean shouldUseLazyExecution() {
+        return useLazyExecution != null ? useLazyExecution : false;
+    }
+
+    @Nullable
+    public Integer getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public Boolean shouldUseResultCache() {
+        return useResultCache != null ? useResultCache : false;
+    }
+
+    public AvroCodec getStagingFileCodec() {
+        return BigQuerySinkUtils.getAvroCodec(stagingFileCodec);
+    }
+
+    @Nullable
+    public Integer getStagingFileBlockSize() {
+        return stagingFileBlockSize;
+    }
+
     public QueryJobConfiguration.Priority getJobPriority() {
         String priority = jobPriority != null ? jobPriority : "batch";
         return QueryJobConfiguration.Priority.valueOf(priority.toUpperCase());
@@ -170,6 +255,10 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
                 && !PRIORITY_INTERACTIVE.equalsIgnoreCase(jobPriority)) {
             throw new SQLEngineException("Property 'jobPriority' must be 'batch' or 'interactive'");
         }
+        // Ensure at least one job can be executed
+        if (maxConcurrentJobs != null && !containsMacro(NAME_MAX_CONCURRENT_JOBS) && maxConcurrentJobs < 1) {
+            throw new SQLEngineException("Property 'maxConcurrentJobs' must be at least 1");
+        }
     }
 
     public void validate(FailureCollector failureCollector) {
@@ -189,6 +278,10 @@ public class BigQuerySQLEngineConfig extends BigQueryBaseConfig {
         if (!containsMacro(NAME_CMEK_KEY)) {
             validateCmekKey(failureCollector, arguments);
         }
+        BigQuerySinkUtils.validateAvroStaging(containsMacro(NAME_STAGING_FILE_CODEC) ? null : stagingFileCodec,
+                                              NAME_STAGING_FILE_CODEC,
+                                              containsMacro(NAME_STAGING_FILE_BLOCK_SIZE) ? null : stagingFileBlockSize,
+                                              NAME_STAGING_FILE_BLOCK_SIZE, failureCollector);
     }
 
     void validateCmekKey(FailureCollector failureCollector, Map<String, String> arguments) {
@@ -10,22 +10,38 @@ import com.google.cloud.bigquery.QueryJobConfiguration;
 import com.google.cloud.bigquery.Table;
 import com.google.cloud.bigquery.TableDefinition;
 import com.google.cloud.bigquery.TableId;
+import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.metrics.Metrics;
 import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
 import io.cdap.cdap.etl.api.engine.sql.dataset.SQLDataset;
 import io.cdap.plugin.gcp.bigquery.sink.BigQuerySinkUtils;
 import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
  * SQL Dataset that represents the result of a "Select" operation, such as join, that is executed in BigQuery.
+ * <p>
+ * The execution of a dataset can be deferred until its records are needed. The select statement of a deferred dataset
+ * is then composed into the statements of the datasets which read from it as a common table expression, so that a
+ * chain of pushed down stages runs as a single job instead of writing and scanning a table at every stage.
  */
 public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
 
@@ -35,6 +51,7 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
   private final Schema outputSchema;
   private final BigQuerySQLEngineConfig sqlEngineConfig;
   private final BigQuery bigQuery;
+  private final BigQueryJobWaiter jobWaiter;
   private final String project;
   private final DatasetId bqDataset;
   private final String bqTable;
@@ -42,12 +59,26 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
   private final BigQueryJobType operation;
   private final String selectQuery;
   private final Metrics metrics;
+  // Datasets read by the select statement, whose execution may have been deferred. Datasets are linked to their inputs
+  // and consumers without taking their locks, which are held while they are executed.
+  private final List<BigQuerySelectDataset> inputs;
+  // Datasets which read from this dataset
+  private final List<BigQuerySelectDataset> consumers;
+  // The state of the execution is read without the lock of this dataset, which is held while the dataset is executed
+  private volatile boolean executed;
+  // Whether the select statement of this dataset was composed into the statement of an executed dataset
+  private volatile boolean composed;
+  private volatile CompletableFuture<BigQuerySelectDataset> future;
+  // Cache which stores the results of this dataset once it has been executed, and their fingerprint
+  private BigQueryResultCache resultCache;
+  private BigQueryResultCache.Fingerprint fingerprint;
   private Long numRows;
 
   public static BigQuerySelectDataset getInstance(String datasetName,
                                                   Schema outputSchema,
                                                   BigQuerySQLEngineConfig sqlEngineConfig,
                                                   BigQuery bigQuery,
+                                                  BigQueryJobWaiter jobWaiter,
                                                   String project,
                                                   DatasetId bqDataset,
                                                   String bqTable,
@@ -60,6 +91,7 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
                                      outputSchema,
                                      sqlEngineConfig,
                                      bigQuery,
+                                     jobWaiter,
                                      project,
                                      bqDataset,
                                      bqTable,
@@ -73,6 +105,7 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
                                 Schema outputSchema,
                                 BigQuerySQLEngineConfig sqlEngineConfig,
                                 BigQuery bigQuery,
+                                BigQueryJobWaiter jobWaiter,
                                 String project,
                                 DatasetId bqDataset,
                                 String bqTable,
@@ -84,6 +117,7 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
     this.outputSchema = outputSchema;
     this.sqlEngineConfig = sqlEngineConfig;
     this.bigQuery = bigQuery;
+    this.jobWaiter = jobWaiter;
     this.project = project;
     this.bqDataset = bqDataset;
     this.bqTable = bqTable;
@@ -91,9 +125,151 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
     this.operation = operation;
     this.selectQuery = selectQuery;
     this.metrics = metrics;
+    this.inputs = new CopyOnWriteArrayList<>();
+    this.consumers = new CopyOnWriteArrayList<>();
   }
 
+  /**
+   * Registers a dataset read by the select statement of this dataset.
+   *
+   * @param input dataset read by this dataset
+   * @return this dataset
+   */
+  public BigQuerySelectDataset addInput(BigQuerySelectDataset input) {
+    inputs.add(input);
+    input.addConsumer(this);
+    return this;
+  }
+
+  /**
+   * Stores the results of this dataset in the given cache once it has been executed.
+   *
+   * @param resultCache result cache
+   * @param fingerprint fingerprint of the results
+   * @return this dataset
+   */
+  public synchronized BigQuerySelectDataset setResultCache(BigQueryResultCache resultCache,
+                                                           BigQueryResultCache.Fingerprint fingerprint) {
+    this.resultCache = resultCache;
+    this.fingerprint = fingerprint;
+    return this;
+  }
+
+  /**
+   * Marks this dataset as executed, as its table contains the results cached by an earlier run.
+   *
+   * @return this dataset
+   */
+  public synchronized BigQuerySelectDataset setCachedResults() {
+    executed = true;
+    return this;
+  }
+
+  private void addConsumer(BigQuerySelectDataset consumer) {
+    consumers.add(consumer);
+  }
+
+  /**
+   * Counts the datasets which read from this dataset and have not been computed yet, either by executing them or as
+   * part of the statement of another dataset.
+   */
+  private int getPendingConsumers() {
+    return (int) consumers.stream().filter(consumer -> !consumer.isComputed()).count();
+  }
+
+  private void setComposed() {
+    composed = true;
+  }
+
+  private boolean isComputed() {
+    return executed || composed;
+  }
+
+  public boolean isExecuted() {
+    return executed;
+  }
+
+  /**
+   * Submits the execution of this dataset to the given executor. The dataset is executed once all the datasets it
+   * reads from have been executed.
+   *
+   * @param executor executor which limits the number of concurrent executions
+   * @return this dataset
+   */
+  public BigQuerySelectDataset submit(Executor executor) {
+    if (future != null) {
+      return this;
+    }
+
+    // The futures of the inputs are read without holding the lock of this dataset
+    CompletableFuture<?>[] pendingInputs = inputs.stream()
+      .map(BigQuerySelectDataset::getFuture)
+      .filter(Objects::nonNull)
+      .toArray(CompletableFuture[]::new);
+
+    synchronized (this) {
+      if (future == null) {
+        future = CompletableFuture.allOf(pendingInputs).thenApplyAsync(ignored -> run(), executor);
+      }
+    }
+    return this;
+  }
+
+  @Nullable
+  private CompletableFuture<BigQuerySelectDataset> getFuture() {
+    return future;
+  }
+
+  /**
+   * Cancels the execution of this dataset if it was submitted and has not started yet.
+   */
+  public void cancel() {
+    CompletableFuture<BigQuerySelectDataset> submitted = future;
+    if (submitted != null) {
+      submitted.cancel(false);
+    }
+  }
+
+  /**
+   * Executes the select statement of this dataset and stores its results in the table of this dataset. If the
+   * execution was submitted, this waits until the execution has completed. Datasets which have already been executed
+   * are not executed again.
+   *
+   * @return this dataset
+   */
   public BigQuerySelectDataset execute() {
+    CompletableFuture<BigQuerySelectDataset> submitted = getFuture();
+    if (submitted == null) {
+      return run();
+    }
+
+    try {
+      return submitted.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new SQLEngineException("Interrupted exception when waiting for the execution of " + datasetName, ie);
+    } catch (CancellationException ce) {
+      throw new SQLEngineException(String.format("Execution of dataset '%s' was cancelled", datasetName), ce);
+    } catch (ExecutionException ee) {
+      // Failures of the datasets read by this dataset are reported as is
+      if (ee.getCause() instanceof SQLEngineException) {
+        throw (SQLEngineException) ee.getCause();
+      }
+      throw new SQLEngineException(String.format("Failed to execute dataset '%s'", datasetName), ee.getCause());
+    }
+  }
+
+  private synchronized BigQuerySelectDataset run() {
+    if (executed) {
+      return this;
+    }
+
+    Set<BigQuerySelectDataset> definitions = getDefinitions();
+    String query = getExecutableQuery(definitions);
+
+    // Create empty table to store query results.
+    BigQuerySQLEngineUtils.createEmptyTable(sqlEngineConfig, bigQuery, project, bqDataset.getDataset(), bqTable);
+
     TableId destinationTable = TableId.of(bqDataset.getProject(), bqDataset.getDataset(), bqTable);
 
     // Get location for target dataset. This way, the job will run in the same location as the dataset
@@ -104,11 +280,11 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
     updateTableSchema(destinationTable, outputSchema);
 
     LOG.info("Creating table `{}` using job: {} with SQL statement: {}", bqTable, jobId,
-             selectQuery);
+             query);
 
     // Run BigQuery job with supplied SQL statement, storing results in a new table
     QueryJobConfiguration queryConfig =
-      QueryJobConfiguration.newBuilder(selectQuery)
+      QueryJobConfiguration.newBuilder(query)
         .setDestinationTable(destinationTable)
         .setCreateDisposition(JobInfo.CreateDisposition.CREATE_NEVER)
         .setWriteDisposition(JobInfo.WriteDisposition.WRITE_APPEND)
@@ -123,7 +299,7 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
 
     // Wait for the query to complete.
     try {
-      queryJob = queryJob.waitFor();
+      queryJob = jobWaiter.await(bqJobId);
     } catch (InterruptedException ie) {
       throw new SQLEngineException("Interrupted exception when executing Join operation", ie);
     }
@@ -140,9 +316,79 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
 
     LOG.info("Created BigQuery table `{}` using Job: {}", bqTable, jobId);
     BigQuerySQLEngineUtils.logJobMetrics(queryJob, metrics);
+    executed = true;
+    definitions.forEach(BigQuerySelectDataset::setComposed);
+
+    // Copy the results into the cache in the background, so that later runs can reuse them
+    if (resultCache != null) {
+      resultCache.put(fingerprint, destinationTable);
+    }
     return this;
   }
 
+  /**
+   * Builds the statement which is executed for this dataset.
+   * <p>
+   * Inputs which have not been executed are defined as common table expressions of the statement. Inputs which are
+   * still to be read by more than one dataset are executed first instead, so that their results are only computed
+   * once. The engine does not know which stages will read from a dataset until they are pushed down, so an input
+   * whose statement was already composed into an executed dataset is composed again into a single later consumer,
+   * since storing its results would not save computing them.
+   *
+   * @return SQL statement
+   */
+  @VisibleForTesting
+  String getExecutableQuery() {
+    return getExecutableQuery(getDefinitions());
+  }
+
+  private Set<BigQuerySelectDataset> getDefinitions() {
+    Set<BigQuerySelectDataset> definitions = new LinkedHashSet<>();
+    collectDefinitions(this, definitions);
+    return definitions;
+  }
+
+  private String getExecutableQuery(Set<BigQuerySelectDataset> definitions) {
+    if (definitions.isEmpty()) {
+      return selectQuery;
+    }
+
+    String with = definitions.stream()
+      .map(d -> String.format("`%s` AS (%s)", d.bqTable, d.replaceTableReferences(definitions)))
+      .collect(Collectors.joining(" , "));
+    return String.format("WITH %s %s", with, replaceTableReferences(definitions));
+  }
+
+  /**
+   * Collects the inputs of a dataset which need to be defined as common table expressions, in the order in which they
+   * must be defined.
+   */
+  private static void collectDefinitions(BigQuerySelectDataset dataset, Set<BigQuerySelectDataset> definitions) {
+    for (BigQuerySelectDataset input : dataset.inputs) {
+      if (!input.isExecuted() && input.getPendingConsumers() > 1) {
+        input.execute();
+      }
+      if (input.isExecuted() || definitions.contains(input)) {
+        continue;
+      }
+      collectDefinitions(input, definitions);
+      definitions.add(input);
+    }
+  }
+
+  /**
+   * Replaces the references to the tables of the given datasets with the names of their common table expressions.
+   */
+  private String replaceTableReferences(Set<BigQuerySelectDataset> definitions) {
+    String query = selectQuery;
+    for (BigQuerySelectDataset definition : definitions) {
+      query = query.replace(String.format("`%s.%s.%s`", definition.getBigQueryProject(),
+                                          definition.getBigQueryDataset(), definition.bqTable),
+                            String.format("`%s`", definition.bqTable));
+    }
+    return query;
+  }
+
   @Override
   public String getDatasetName() {
     return datasetName;
@@ -155,6 +401,15 @@ public class BigQuerySelectDataset implements SQLDataset, BigQuerySQLDataset {
 
   @Override
   public long getNumRows() {
+    // The number of rows is not known until the dataset is executed, and counting them would compute the dataset.
+    if (getFuture() == null && !isExecuted()) {
+      LOG.debug("Number of rows of deferred dataset {} is not known", datasetName);
+      return 0;
+    }
+
+    // Wait for the execution of the dataset if it was submitted
+    execute();
+
     // Get the number of rows from BQ if not known at this time.
     if (numRows == null) {
       numRows = BigQuerySQLEngineUtils.getNumRows(bigQuery, bqDataset, bqTable);
@@ -46,6 +46,7 @@ import io.cdap.plugin.gcp.bigquery.sink.BigQuerySinkUtils;
 import io.cdap.plugin.gcp.bigquery.sink.Operation;
 import io.cdap.plugin.gcp.bigquery.sink.PartitionType;
 import io.cdap.plugin.gcp.bigquery.sqlengine.util.BigQuerySQLEngineUtils;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +76,7 @@ public class BigQueryWrite {
 
   private final BigQuerySQLEngineConfig sqlEngineConfig;
   private final BigQuery bigQuery;
+  private final BigQueryJobWaiter jobWaiter;
   private final String datasetName;
   private final SQLWriteRequest writeRequest;
   private final TableId sourceTableId;
@@ -83,12 +85,14 @@ public class BigQueryWrite {
   private BigQueryWrite(String datasetName,
                         BigQuerySQLEngineConfig sqlEngineConfig,
                         BigQuery bigQuery,
+                        BigQueryJobWaiter jobWaiter,
                         SQLWriteRequest writeRequest,
                         TableId sourceTableId,
                         Metrics metrics) {
     this.datasetName = datasetName;
     this.sqlEngineConfig = sqlEngineConfig;
     this.bigQuery = bigQuery;
+    this.jobWaiter = jobWaiter;
     this.writeRequest = writeRequest;
     this.sourceTableId = sourceTableId;
     this.metrics = metrics;
@@ -97,12 +101,14 @@ public class BigQueryWrite {
   public static BigQueryWrite getInstance(String datasetName,
                                           BigQuerySQLEngineConfig sqlEngineConfig,
                                           BigQuery bigQuery,
+                                          BigQueryJobWaiter jobWaiter,
                                           SQLWriteRequest writeRequest,
                                           TableId sourceTableId,
                                           Metrics metrics) {
     return new BigQueryWrite(datasetName,
                              sqlEngineConfig,
                              bigQuery,
+                             jobWaiter,
                              writeRequest,
                              sourceTableId,
                              metrics);
@@ -229,7 +235,11 @@ public class BigQueryWrite {
     TableResult result = null;
 
     // Wait for the query to complete.
-    queryJob = queryJob.waitFor();
+    queryJob = jobWaiter.await(bqJobId);
+    if (queryJob == null) {
+      LOG.error("BigQuery job '{}' not found in Project '{}'", jobId, sqlEngineConfig.getProject());
+      return SQLWriteResult.faiure(datasetName);
+    }
     JobStatistics.QueryStatistics queryJobStats = queryJob.getStatistics();
 
     // Check for errors
@@ -26,8 +26,10 @@ import org.apache.hadoop.io.LongWritable;
 
 /**
  * Transform used when pulling records from BigQuery.
+ *
+ * Records read from Arrow record batches are already StructuredRecords, only Avro records are transformed.
  */
-public class PullTransform extends SerializableTransform<KeyValue<LongWritable, GenericData.Record>, StructuredRecord> {
+public class PullTransform extends SerializableTransform<KeyValue<LongWritable, Object>, StructuredRecord> {
   private final SQLEngineAvroToStructuredTransformer transformer;
   private final Schema schema;
 
@@ -37,9 +39,14 @@ public class PullTransform extends SerializableTransform<KeyValue<LongWritable,
   }
 
   @Override
-  public void transform(KeyValue<LongWritable, GenericData.Record> input, Emitter<StructuredRecord> emitter)
+  public void transform(KeyValue<LongWritable, Object> input, Emitter<StructuredRecord> emitter)
     throws Exception {
-    StructuredRecord transformed = transformer.transform(input.getValue(), schema);
+    Object value = input.getValue();
+    if (value instanceof StructuredRecord) {
+      emitter.emit((StructuredRecord) value);
+      return;
+    }
+    StructuredRecord transformed = transformer.transform((GenericData.Record) value, schema);
     emitter.emit(transformed);
   }
 }
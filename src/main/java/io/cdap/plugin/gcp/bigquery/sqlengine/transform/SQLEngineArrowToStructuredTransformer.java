@@ -0,0 +1,368 @@
+/*
+ * Copyright © 2021 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.gcp.bigquery.sqlengine.transform;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.BaseRepeatedValueVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Create StructuredRecords from the Arrow record batches returned by the BigQuery Storage Read API when pulling records
+ * from BigQuery.
+ *
+ * The output schema is compiled once against the vectors of a {@link VectorSchemaRoot} into one decoder per column,
+ * specialized for the type of the vector and of the field. Every batch loaded into the root is then decoded column by
+ * column: each decoder reads the values of its vector for all rows of the batch, and the records are assembled from
+ * these columns. Values are converted like in {@link SQLEngineAvroToStructuredTransformer}, including the overflow
+ * checks of BigQuery INT64 to Integer and FLOAT64 to Float.
+ */
+public class SQLEngineArrowToStructuredTransformer {
+
+  private static final Set<Schema.LogicalType> SUPPORTED_LOGICAL_TYPES = EnumSet.of(
+    Schema.LogicalType.DATE, Schema.LogicalType.TIME_MILLIS, Schema.LogicalType.TIME_MICROS,
+    Schema.LogicalType.TIMESTAMP_MILLIS, Schema.LogicalType.TIMESTAMP_MICROS, Schema.LogicalType.DATETIME,
+    Schema.LogicalType.DECIMAL);
+  private static final Set<Schema.Type> SUPPORTED_TYPES = EnumSet.of(
+    Schema.Type.BOOLEAN, Schema.Type.INT, Schema.Type.LONG, Schema.Type.FLOAT, Schema.Type.DOUBLE,
+    Schema.Type.STRING, Schema.Type.BYTES, Schema.Type.RECORD, Schema.Type.ARRAY);
+  private static final long MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+  private static final long NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+  private final VectorSchemaRoot root;
+  private final RecordDecoder recordDecoder;
+
+  /**
+   * Compiles the decoders of the given schema for the vectors of the root. Fields without a vector in the root are
+   * null, as with the Avro records of the Storage Read API.
+   *
+   * @throws IllegalArgumentException if a field cannot be decoded from the vector of the same name
+   */
+  public SQLEngineArrowToStructuredTransformer(Schema schema, VectorSchemaRoot root) {
+    this.root = root;
+    this.recordDecoder = new RecordDecoder(schema, root::getVector, null);
+  }
+
+  /**
+   * Returns whether records of the given schema can be decoded from Arrow record batches. Records of other schemas
+   * are read as Avro rows instead.
+   */
+  public static boolean isSupported(Schema schema) {
+    Schema nonNullable = schema.isNullable() ? schema.getNonNullable() : schema;
+    if (nonNullable.getLogicalType() != null) {
+      return SUPPORTED_LOGICAL_TYPES.contains(nonNullable.getLogicalType());
+    }
+    if (!SUPPORTED_TYPES.contains(nonNullable.getType())) {
+      return false;
+    }
+    if (nonNullable.getType() == Schema.Type.RECORD) {
+      return nonNullable.getFields().stream().allMatch(field -> isSupported(field.getSchema()));
+    }
+    return nonNullable.getType() != Schema.Type.ARRAY || isSupported(nonNullable.getComponentSchema());
+  }
+
+  /**
+   * Decodes the records of the batch currently loaded into the root.
+   */
+  public List<StructuredRecord> transform() {
+    return Arrays.asList(recordDecoder.decodeRecords(0, root.getRowCount()));
+  }
+
+  /**
+   * Decodes the values of a vector, null values included.
+   */
+  private interface ColumnDecoder {
+    Object[] decode(int start, int count);
+  }
+
+  /**
+   * Reads the non-null value at an index of a vector.
+   */
+  private interface ValueReader {
+    Object read(int index);
+  }
+
+  /**
+   * Looks up the child vectors of a record by field name.
+   */
+  private interface VectorLookup {
+    @Nullable
+    FieldVector get(String name);
+  }
+
+  private static ColumnDecoder compile(String name, Schema schema, @Nullable FieldVector vector) {
+    if (vector == null) {
+      return (start, count) -> new Object[count];
+    }
+    Schema fieldSchema = schema.isNullable() ? schema.getNonNullable() : schema;
+    Schema.LogicalType logicalType = fieldSchema.getLogicalType();
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          if (vector instanceof DateDayVector) {
+            return perValue(vector, ((DateDayVector) vector)::get);
+          }
+          break;
+        case TIME_MILLIS:
+          if (vector instanceof TimeMicroVector) {
+            TimeMicroVector timeVector = (TimeMicroVector) vector;
+            return perValue(vector, index -> (int) TimeUnit.MICROSECONDS.toMillis(timeVector.get(index)));
+          }
+          break;
+        case TIME_MICROS:
+          if (vector instanceof TimeMicroVector) {
+            return perValue(vector, ((TimeMicroVector) vector)::get);
+          }
+          break;
+        case TIMESTAMP_MILLIS:
+          if (vector instanceof TimeStampMicroTZVector) {
+            TimeStampMicroTZVector timestampVector = (TimeStampMicroTZVector) vector;
+            return perValue(vector, index -> TimeUnit.MICROSECONDS.toMillis(timestampVector.get(index)));
+          }
+          break;
+        case TIMESTAMP_MICROS:
+          if (vector instanceof TimeStampMicroTZVector) {
+            return perValue(vector, ((TimeStampMicroTZVector) vector)::get);
+          }
+          break;
+        case DATETIME:
+          // BigQuery DATETIME values are timestamps without time zone, StructuredRecord keeps them as ISO-8601 strings
+          if (vector instanceof TimeStampMicroVector) {
+            TimeStampMicroVector dateTimeVector = (TimeStampMicroVector) vector;
+            return perValue(vector, index -> formatDateTime(dateTimeVector.get(index)));
+          }
+          if (vector instanceof VarCharVector) {
+            return compileString((VarCharVector) vector);
+          }
+          break;
+        case DECIMAL:
+          // NUMERIC and BIGNUMERIC values, StructuredRecord keeps the unscaled value in the scale of the schema
+          if (vector instanceof DecimalVector || vector instanceof Decimal256Vector) {
+            int scale = fieldSchema.getScale();
+            return perValue(vector, index -> ((BigDecimal) vector.getObject(index)).setScale(scale)
+              .unscaledValue().toByteArray());
+          }
+          break;
+        default:
+          break;
+      }
+      throw unsupported(name, fieldSchema, vector);
+    }
+
+    switch (fieldSchema.getType()) {
+      case BOOLEAN:
+        if (vector instanceof BitVector) {
+          BitVector bitVector = (BitVector) vector;
+          return perValue(vector, index -> bitVector.get(index) != 0);
+        }
+        break;
+      case INT:
+        if (vector instanceof BigIntVector) {
+          BigIntVector intVector = (BigIntVector) vector;
+          return perValue(vector, index -> SQLEngineAvroToStructuredTransformer.mapInteger(intVector.get(index)));
+        }
+        if (vector instanceof IntVector) {
+          return perValue(vector, ((IntVector) vector)::get);
+        }
+        break;
+      case LONG:
+        if (vector instanceof BigIntVector) {
+          return perValue(vector, ((BigIntVector) vector)::get);
+        }
+        break;
+      case FLOAT:
+        if (vector instanceof Float8Vector) {
+          Float8Vector floatVector = (Float8Vector) vector;
+          return perValue(vector, index -> SQLEngineAvroToStructuredTransformer.mapFloat(floatVector.get(index)));
+        }
+        if (vector instanceof Float4Vector) {
+          return perValue(vector, ((Float4Vector) vector)::get);
+        }
+        break;
+      case DOUBLE:
+        if (vector instanceof Float8Vector) {
+          return perValue(vector, ((Float8Vector) vector)::get);
+        }
+        break;
+      case STRING:
+        // STRING, GEOGRAPHY and JSON values
+        if (vector instanceof VarCharVector) {
+          return compileString((VarCharVector) vector);
+        }
+        break;
+      case BYTES:
+        if (vector instanceof VarBinaryVector) {
+          return perValue(vector, ((VarBinaryVector) vector)::get);
+        }
+        break;
+      case RECORD:
+        if (vector instanceof StructVector) {
+          StructVector structVector = (StructVector) vector;
+          RecordDecoder decoder = new RecordDecoder(fieldSchema, structVector::getChild, structVector);
+          return decoder::decodeRecords;
+        }
+        break;
+      case ARRAY:
+        if (vector instanceof ListVector) {
+          return compileList(name, fieldSchema, (ListVector) vector);
+        }
+        break;
+      default:
+        break;
+    }
+    throw unsupported(name, fieldSchema, vector);
+  }
+
+  private static ColumnDecoder compileString(VarCharVector vector) {
+    return perValue(vector, index -> new String(vector.get(index), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes the elements of all lists in the range at once, and splits them into one list per row.
+   */
+  private static ColumnDecoder compileList(String name, Schema schema, ListVector vector) {
+    ColumnDecoder elementDecoder = compile(name, schema.getComponentSchema(), vector.getDataVector());
+    return (start, count) -> {
+      Object[] values = new Object[count];
+      if (count == 0) {
+        return values;
+      }
+      int firstElement = getOffset(vector, start);
+      Object[] elements = elementDecoder.decode(firstElement, getOffset(vector, start + count) - firstElement);
+      for (int i = 0; i < count; i++) {
+        int index = start + i;
+        if (!vector.isNull(index)) {
+          values[i] = Arrays.asList(Arrays.copyOfRange(elements, getOffset(vector, index) - firstElement,
+                                                       getOffset(vector, index + 1) - firstElement));
+        }
+      }
+      return values;
+    };
+  }
+
+  private static int getOffset(ListVector vector, int index) {
+    return vector.getOffsetBuffer().getInt((long) index * BaseRepeatedValueVector.OFFSET_WIDTH);
+  }
+
+  private static ColumnDecoder perValue(ValueVector vector, ValueReader reader) {
+    return (start, count) -> {
+      Object[] values = new Object[count];
+      for (int i = 0; i < count; i++) {
+        int index = start + i;
+        if (!vector.isNull(index)) {
+          values[i] = reader.read(index);
+        }
+      }
+      return values;
+    };
+  }
+
+  private static String formatDateTime(long micros) {
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                                                         (int) (Math.floorMod(micros, MICROS_PER_SECOND)
+                                                           * NANOS_PER_MICRO),
+                                                         ZoneOffset.UTC);
+    return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(dateTime);
+  }
+
+  private static IllegalArgumentException unsupported(String name, Schema schema, ValueVector vector) {
+    return new IllegalArgumentException(
+      String.format("Field '%s' of type '%s' cannot be read from Arrow vectors of type '%s'.",
+                    name, schema.getDisplayName(), vector.getMinorType()));
+  }
+
+  /**
+   * Decoders of the fields of a record schema, used for the rows of the batch and for STRUCT columns.
+   */
+  private static final class RecordDecoder {
+    private final Schema schema;
+    private final String[] names;
+    private final ColumnDecoder[] decoders;
+    @Nullable
+    private final ValueVector vector;
+
+    /**
+     * @param vector the STRUCT vector of the records, or null for the rows of the batch, which are never null
+     */
+    private RecordDecoder(Schema schema, VectorLookup children, @Nullable ValueVector vector) {
+      List<Schema.Field> fields = schema.getFields();
+      this.schema = schema;
+      this.names = new String[fields.size()];
+      this.decoders = new ColumnDecoder[fields.size()];
+      this.vector = vector;
+      for (int i = 0; i < names.length; i++) {
+        Schema.Field field = fields.get(i);
+        names[i] = field.getName();
+        decoders[i] = compile(field.getName(), field.getSchema(), children.get(field.getName()));
+      }
+    }
+
+    private StructuredRecord[] decodeRecords(int start, int count) {
+      Object[][] columns = new Object[names.length][];
+      for (int i = 0; i < names.length; i++) {
+        try {
+          columns[i] = decoders[i].decode(start, count);
+        } catch (UnexpectedFormatException e) {
+          // Name the field in the message, other failures propagate unchanged
+          throw new UnexpectedFormatException(
+            String.format("Error converting field '%s': %s", names[i], e.getMessage()), e);
+        }
+      }
+      StructuredRecord[] records = new StructuredRecord[count];
+      for (int row = 0; row < count; row++) {
+        if (vector != null && vector.isNull(start + row)) {
+          continue;
+        }
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (int i = 0; i < names.length; i++) {
+          builder.set(names[i], columns[i][row]);
+        }
+        records[row] = builder.build();
+      }
+      return records;
+    }
+  }
+}
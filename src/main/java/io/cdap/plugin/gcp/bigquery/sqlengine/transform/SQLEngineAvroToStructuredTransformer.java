@@ -21,11 +21,9 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
 import io.cdap.plugin.gcp.bigquery.source.BigQueryAvroToStructuredTransformer;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import javax.annotation.Nullable;
 
 /**
  * Create StructuredRecords from GenericRecords when pulling records from BigQuery.
@@ -49,37 +47,26 @@ public class SQLEngineAvroToStructuredTransformer extends BigQueryAvroToStructur
     "Could not convert Object '%s' into Float when reading from BigQuery";
 
   @Override
-  @Nullable
-  protected Object convertField(Object field, Schema fieldSchema) throws IOException {
-    if (field == null) {
-      return null;
-    }
-
-    // Use this variable in case we need to unbox the nullable type.
-    Schema schema = fieldSchema;
-
-    // For nullable types, check the underlying type.
-    if (schema.isNullable()) {
-      schema = schema.getNonNullable();
-    }
-
-    // Handle Int types
-    if (schema.getType() == Schema.Type.INT && schema.getLogicalType() == null) {
-      return mapInteger(field);
-    }
-
-    // Handle float types
-    if (schema.getType() == Schema.Type.FLOAT && schema.getLogicalType() == null) {
-      return mapFloat(field);
-    }
-
-    // Handle Strings that are stored as a Byte Buffer.
-    if (schema.getType() == Schema.Type.STRING && schema.getLogicalType() == null && field instanceof ByteBuffer) {
-      return StandardCharsets.UTF_8.decode((ByteBuffer) field).toString();
+  protected FieldConverter compileField(Schema fieldSchema) {
+    if (fieldSchema.getLogicalType() == null) {
+      switch (fieldSchema.getType()) {
+        // Handle Int types
+        case INT:
+          return SQLEngineAvroToStructuredTransformer::mapInteger;
+        // Handle float types
+        case FLOAT:
+          return SQLEngineAvroToStructuredTransformer::mapFloat;
+        // Handle Strings that are stored as a Byte Buffer.
+        case STRING:
+          return value -> value instanceof ByteBuffer ?
+            StandardCharsets.UTF_8.decode((ByteBuffer) value).toString() : value.toString();
+        default:
+          break;
+      }
     }
 
     // Delegate to superclass if none of these exceptions apply.
-    return super.convertField(field, fieldSchema);
+    return super.compileField(fieldSchema);
   }
 
   @VisibleForTesting
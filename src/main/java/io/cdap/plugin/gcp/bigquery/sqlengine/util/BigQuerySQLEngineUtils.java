@@ -26,6 +26,7 @@ import com.google.cloud.bigquery.Table;
 import com.google.cloud.bigquery.TableDefinition;
 import com.google.cloud.bigquery.TableId;
 import com.google.cloud.bigquery.TableInfo;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.metrics.Metrics;
@@ -44,6 +45,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -62,6 +64,9 @@ public class BigQuerySQLEngineUtils {
   public static final String METRIC_BYTES_PROCESSED = "bytes.processed";
   public static final String METRIC_BYTES_BILLED = "bytes.billed";
   public static final String METRIC_SLOT_MS = "slot.ms";
+  // Functions whose results change between calls, such as RAND, or between runs, such as CURRENT_DATE
+  public static final Set<String> NON_DETERMINISTIC_FUNCTIONS = ImmutableSet.of(
+    "RAND", "GENERATE_UUID", "CURRENT_DATE", "CURRENT_DATETIME", "CURRENT_TIME", "CURRENT_TIMESTAMP", "SESSION_USER");
 
   private BigQuerySQLEngineUtils() {
     // no-op
@@ -138,12 +143,33 @@ public class BigQuerySQLEngineUtils {
                                       String project,
                                       String dataset,
                                       String table) {
+    createEmptyTable(config, bigQuery, project, dataset, table, com.google.cloud.bigquery.Schema.of());
+  }
+
+  /**
+   * Creates an empty table with the supplied schema to store records.
+   * <p>
+   * If the Engine Configuration specifies a TTL for tables, the table is created with the specified TTL.
+   *
+   * @param config   BigQuery SQL Engine Config instance
+   * @param bigQuery BigQuery client
+   * @param project  Project Name
+   * @param dataset  Dataset Name
+   * @param table    Table Name
+   * @param schema   Table Schema
+   */
+  public static void createEmptyTable(BigQuerySQLEngineConfig config,
+                                      BigQuery bigQuery,
+                                      String project,
+                                      String dataset,
+                                      String table,
+                                      com.google.cloud.bigquery.Schema schema) {
 
     LOG.debug("Creating empty table {} in dataset {} and project {}", table, dataset, project);
 
     // Define table name and create builder.
     TableId tableId = TableId.of(project, dataset, table);
-    TableDefinition tableDefinition = StandardTableDefinition.of(com.google.cloud.bigquery.Schema.of());
+    TableDefinition tableDefinition = StandardTableDefinition.of(schema);
     TableInfo.Builder tableInfoBuilder = TableInfo.newBuilder(tableId, tableDefinition);
 
     // Set TTL for table if needed.
@@ -35,6 +35,7 @@ public interface BigQueryConstants {
   String CONFIG_DEDUPE_BY = "cdap.bq.sink.dedupe.by";
   String CONFIG_TABLE_FIELDS = "cdap.bq.sink.table.fields";
   String CONFIG_FILTER = "cdap.bq.source.filter";
+  String CONFIG_SELECTED_FIELDS = "cdap.bq.source.selected.fields";
   String CONFIG_PARTITION_FILTER = "cdap.bq.sink.partition.filter";
   String CONFIG_JOB_ID = "cdap.bq.sink.job.id";
   String CONFIG_VIEW_MATERIALIZATION_PROJECT = "cdap.bq.source.view.materialization.project";
@@ -44,5 +45,28 @@ public interface BigQueryConstants {
   String CONFIG_PARTITION_INTEGER_RANGE_END = "cdap.bq.sink.partition.integer.range.end";
   String CONFIG_PARTITION_INTEGER_RANGE_INTERVAL = "cdap.bq.sink.partition.integer.range.interval";
   String CONFIG_TEMPORARY_TABLE_NAME = "cdap.bq.source.temporary.table.name";
+  String CONFIG_READ_METHOD = "cdap.bq.source.read.method";
+  String CONFIG_STORAGE_READ_MAX_STREAMS = "cdap.bq.source.storage.read.max.streams";
+  String CONFIG_STORAGE_READ_DATA_FORMAT = "cdap.bq.source.storage.read.data.format";
+  String CONFIG_STORAGE_READ_OUTPUT_SCHEMA = "cdap.bq.source.storage.read.output.schema";
+  String CONFIG_EXPORT_PARALLELISM = "cdap.bq.source.export.parallelism";
+  // Partitioned tables are exported by a single job unless a higher parallelism is configured
+  int DEFAULT_EXPORT_PARALLELISM = 1;
+  String CONFIG_EXPORT_CACHE_PATH = "cdap.bq.source.export.cache.path";
+  String CONFIG_EXPORT_CACHE_TTL_HOURS = "cdap.bq.source.export.cache.ttl.hours";
+  String CONFIG_EXPORT_CACHE_MAX_BYTES = "cdap.bq.source.export.cache.max.bytes";
+  String CONFIG_EXPORT_CACHE_LEASE_HOURS = "cdap.bq.source.export.cache.lease.hours";
   String CDAP_BQ_SINK_OUTPUT_SCHEMA = "cdap.bq.sink.output.schema";
+  String CONFIG_WRITE_METHOD = "cdap.bq.sink.write.method";
+  String CONFIG_LOAD_JOB_PARALLELISM = "cdap.bq.sink.load.job.parallelism";
+  int DEFAULT_LOAD_JOB_PARALLELISM = 4;
+  String CONFIG_TABLE_COMMIT_PARALLELISM = "cdap.bq.sink.table.commit.parallelism";
+  int DEFAULT_TABLE_COMMIT_PARALLELISM = 4;
+  String CONFIG_STAGING_FILE_SIZE = "cdap.bq.sink.staging.file.size";
+  String CONFIG_STAGING_FILE_FORMAT = "cdap.bq.sink.staging.file.format";
+  String CONFIG_AVRO_CODEC = "cdap.bq.sink.avro.codec";
+  String CONFIG_AVRO_SYNC_INTERVAL = "cdap.bq.sink.avro.sync.interval";
+  String CONFIG_DEDUPE_BUFFER_SIZE = "cdap.bq.sink.dedupe.buffer.size";
+  String CONFIG_STAGE_BY_PARTITION = "cdap.bq.sink.stage.by.partition";
+  String CONFIG_METRICS_PATH = "cdap.bq.sink.metrics.path";
 }
@@ -0,0 +1,402 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.util;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.JobStatistics;
+import com.google.cloud.bigquery.JobStatus;
+import com.google.cloud.bigquery.QueryStage;
+import com.google.cloud.bigquery.TimelineSample;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Waits for BigQuery jobs to complete without blocking a thread per job.
+ *
+ * All jobs registered with a waiter are polled by a single background thread. Whenever several jobs of the client
+ * project are due at the same time, one jobs.list call filtered on pending and running jobs created since the earliest
+ * of them replaces the individual jobs.get calls, and only the jobs that are not reported as running are fetched. Only
+ * the first page of the listing is read: if the project has more running jobs than fit on a page, the waited jobs are
+ * fetched through jobs.get instead and listing is paused for a while. The poll interval of every job
+ * follows the progress reported by BigQuery: when a query job reports the work units it has completed, the next poll
+ * is scheduled from the estimated remaining time of the job. Jobs that do not report progress are polled at an
+ * interval that grows with the time the job has spent in its current state. Short jobs are therefore noticed quickly,
+ * while long running jobs do not consume request quota.
+ *
+ * The futures returned by {@link #waitFor(JobId)} complete on the polling thread; dependent stages that block should
+ * use the async variants of {@link CompletableFuture}.
+ */
+public class BigQueryJobWaiter implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(BigQueryJobWaiter.class);
+
+  static final long MIN_POLL_INTERVAL_MILLIS = 250;
+  private static final long MAX_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  // Fraction of the time spent in the current state that is waited before the next poll
+  private static final int POLL_INTERVAL_DIVISOR = 10;
+  // Fraction of the estimated remaining time of a job that is waited before the next poll
+  private static final int REMAINING_TIME_DIVISOR = 4;
+  // Minimum number of due jobs in the client project for which a jobs.list call is used instead of jobs.get calls
+  private static final int LIST_JOBS_THRESHOLD = 3;
+  // Jobs may have been created some time before they were registered, for example when a retried commit fetches an
+  // existing job. Such jobs are still found through jobs.get if they fall outside this window.
+  private static final long CREATION_TIME_SLACK_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final long LIST_JOBS_PAGE_SIZE = 1000;
+
+  private final BigQuery bigQuery;
+  private final ScheduledExecutorService executor;
+  private final LongSupplier clock;
+  private final Map<JobId, PendingJob> pendingJobs;
+  private boolean closed;
+  // Jobs are not listed before this time, set when the project had more running jobs than fit on a page
+  private long nextListTime;
+
+  public BigQueryJobWaiter(BigQuery bigQuery) {
+    this(bigQuery, Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("bigquery-job-waiter-%d").setDaemon(true).build()),
+         System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  BigQueryJobWaiter(BigQuery bigQuery, ScheduledExecutorService executor, LongSupplier clock) {
+    this.bigQuery = bigQuery;
+    this.pendingJobs = new LinkedHashMap<>();
+    this.executor = executor;
+    this.clock = clock;
+    this.executor.scheduleWithFixedDelay(this::poll, MIN_POLL_INTERVAL_MILLIS, MIN_POLL_INTERVAL_MILLIS,
+                                         TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a future that completes with the job once it is done, or with null if the job does not exist. Errors
+   * reported by the job itself are not treated as failures, callers are expected to check the job status. The future
+   * fails if the job status cannot be fetched. Waiting twice for the same job returns the same future.
+   */
+  public CompletableFuture<Job> waitFor(JobId jobId) {
+    synchronized (pendingJobs) {
+      if (closed) {
+        CompletableFuture<Job> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("BigQuery job waiter is closed."));
+        return future;
+      }
+      return pendingJobs.computeIfAbsent(jobId, id -> new PendingJob(id, clock.getAsLong())).future;
+    }
+  }
+
+  /**
+   * Blocks until the job is done.
+   *
+   * @return the completed job, or null if the job does not exist
+   * @throws BigQueryException if the job status cannot be fetched
+   */
+  @Nullable
+  public Job await(JobId jobId) throws InterruptedException {
+    try {
+      return waitFor(jobId).get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Blocks until the job is done or the timeout expires. The job is no longer polled once the timeout expires.
+   *
+   * @return the completed job, or null if the job does not exist
+   * @throws BigQueryException if the job status cannot be fetched
+   */
+  @Nullable
+  public Job await(JobId jobId, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+    CompletableFuture<Job> future = waitFor(jobId);
+    try {
+      return future.get(timeout, unit);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (TimeoutException e) {
+      future.cancel(false);
+      throw e;
+    }
+  }
+
+  /**
+   * Stops polling. Futures of jobs that are not done yet are cancelled, the jobs themselves keep running.
+   */
+  @Override
+  public void close() {
+    List<PendingJob> remaining;
+    synchronized (pendingJobs) {
+      closed = true;
+      remaining = new ArrayList<>(pendingJobs.values());
+      pendingJobs.clear();
+    }
+    executor.shutdownNow();
+    remaining.forEach(job -> job.future.cancel(false));
+  }
+
+  @VisibleForTesting
+  void poll() {
+    try {
+      long now = clock.getAsLong();
+      List<PendingJob> due = new ArrayList<>();
+      synchronized (pendingJobs) {
+        Iterator<PendingJob> iterator = pendingJobs.values().iterator();
+        while (iterator.hasNext()) {
+          PendingJob job = iterator.next();
+          if (job.future.isDone()) {
+            // Cancelled by the caller
+            iterator.remove();
+          } else if (job.nextPollTime <= now) {
+            due.add(job);
+          }
+        }
+      }
+      if (due.isEmpty()) {
+        return;
+      }
+
+      String project = getClientProject();
+      Map<JobId, Job> runningJobs = listRunningJobs(project, due);
+      for (PendingJob pendingJob : due) {
+        poll(pendingJob, runningJobs.get(getQualifiedJobId(pendingJob.jobId, project)));
+      }
+    } catch (RuntimeException e) {
+      // An exception would cancel the periodic poll, so it is only logged here
+      LOG.warn("Failed to poll BigQuery jobs: {}", e.getMessage(), e);
+    }
+  }
+
+  private void poll(PendingJob pendingJob, @Nullable Job runningJob) {
+    long now = clock.getAsLong();
+    try {
+      Job job = runningJob == null ? bigQuery.getJob(pendingJob.jobId) : runningJob;
+      if (job == null) {
+        complete(pendingJob, null);
+      } else if (job.getStatus() != null && job.getStatus().getState() == JobStatus.State.DONE) {
+        complete(pendingJob, job);
+      } else {
+        pendingJob.reschedule(job.getStatus() == null ? null : job.getStatus().getState(), getProgress(job), now);
+        LOG.trace("BigQuery job {} is {}, polling again in {} ms.", pendingJob.jobId.getJob(), pendingJob.state,
+                  pendingJob.nextPollTime - now);
+      }
+    } catch (BigQueryException e) {
+      if (!e.isRetryable()) {
+        fail(pendingJob, e);
+        return;
+      }
+      LOG.debug("Retrying to get status of BigQuery job {}: {}", pendingJob.jobId.getJob(), e.getMessage());
+      pendingJob.reschedule(pendingJob.state, null, now);
+    } catch (RuntimeException e) {
+      fail(pendingJob, e);
+    }
+  }
+
+  /**
+   * Lists the pending and running jobs of the client project if enough of the given jobs belong to it.
+   *
+   * @return running jobs by qualified job id, empty if jobs are not listed
+   */
+  private Map<JobId, Job> listRunningJobs(@Nullable String project, List<PendingJob> due) {
+    if (project == null) {
+      return Collections.emptyMap();
+    }
+    long minRegistrationTime = Long.MAX_VALUE;
+    int count = 0;
+    for (PendingJob job : due) {
+      if (job.jobId.getProject() == null || project.equals(job.jobId.getProject())) {
+        minRegistrationTime = Math.min(minRegistrationTime, job.registrationTime);
+        count++;
+      }
+    }
+    long now = clock.getAsLong();
+    if (count < LIST_JOBS_THRESHOLD || now < nextListTime) {
+      return Collections.emptyMap();
+    }
+
+    Map<JobId, Job> runningJobs = new HashMap<>();
+    try {
+      Page<Job> page = bigQuery.listJobs(
+        BigQuery.JobListOption.stateFilter(JobStatus.State.PENDING, JobStatus.State.RUNNING),
+        BigQuery.JobListOption.minCreationTime(minRegistrationTime - CREATION_TIME_SLACK_MILLIS),
+        BigQuery.JobListOption.pageSize(LIST_JOBS_PAGE_SIZE));
+      for (Job job : page.getValues()) {
+        runningJobs.put(getQualifiedJobId(job.getJobId(), project), job);
+      }
+      if (page.hasNextPage()) {
+        // Paging through the running jobs of a busy project costs more than fetching the waited jobs. Jobs that are
+        // not on the first page are fetched through jobs.get.
+        LOG.debug("Project {} has more than {} running BigQuery jobs, fetching jobs individually.", project,
+                  LIST_JOBS_PAGE_SIZE);
+        nextListTime = now + MAX_POLL_INTERVAL_MILLIS;
+      }
+    } catch (BigQueryException e) {
+      // Fall back to fetching every job
+      LOG.debug("Failed to list running BigQuery jobs in project {}: {}", project, e.getMessage());
+      return Collections.emptyMap();
+    }
+    return runningJobs;
+  }
+
+  /**
+   * Returns the progress reported by a query job, from the latest sample of its timeline or else from its query plan.
+   * Jobs listed through jobs.list and jobs of other types do not report progress.
+   */
+  @Nullable
+  private static Progress getProgress(Job job) {
+    JobStatistics statistics = job.getStatistics();
+    if (!(statistics instanceof JobStatistics.QueryStatistics)) {
+      return null;
+    }
+    JobStatistics.QueryStatistics queryStatistics = (JobStatistics.QueryStatistics) statistics;
+
+    List<TimelineSample> timeline = queryStatistics.getTimeline();
+    if (timeline != null && !timeline.isEmpty()) {
+      TimelineSample sample = timeline.get(timeline.size() - 1);
+      long completed = sample.getCompletedUnits() == null ? 0 : sample.getCompletedUnits();
+      long total = completed + (sample.getActiveUnits() == null ? 0 : sample.getActiveUnits())
+        + (sample.getPendingUnits() == null ? 0 : sample.getPendingUnits());
+      if (total > 0 && sample.getElapsedMs() != null) {
+        return new Progress((double) completed / total, sample.getElapsedMs());
+      }
+    }
+
+    List<QueryStage> plan = queryStatistics.getQueryPlan();
+    if (plan != null && !plan.isEmpty()) {
+      long completed = 0;
+      long total = 0;
+      for (QueryStage stage : plan) {
+        completed += stage.getCompletedParallelInputs();
+        total += stage.getParallelInputs();
+      }
+      if (total > 0) {
+        return new Progress((double) completed / total, null);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the job id with the client project filled in if it has none. Job names are only unique within a project
+   * and location, so a job registered without a location is not matched with a listed job, which always has one.
+   */
+  private static JobId getQualifiedJobId(JobId jobId, @Nullable String project) {
+    return JobId.newBuilder()
+      .setProject(jobId.getProject() == null ? project : jobId.getProject())
+      .setLocation(jobId.getLocation())
+      .setJob(jobId.getJob())
+      .build();
+  }
+
+  @Nullable
+  private String getClientProject() {
+    BigQueryOptions options = bigQuery.getOptions();
+    return options == null ? null : options.getProjectId();
+  }
+
+  private void complete(PendingJob pendingJob, @Nullable Job job) {
+    remove(pendingJob);
+    pendingJob.future.complete(job);
+  }
+
+  private void fail(PendingJob pendingJob, Exception e) {
+    remove(pendingJob);
+    pendingJob.future.completeExceptionally(e);
+  }
+
+  private void remove(PendingJob pendingJob) {
+    synchronized (pendingJobs) {
+      pendingJobs.remove(pendingJob.jobId, pendingJob);
+    }
+  }
+
+  /**
+   * A job that is being waited for. Only accessed by the polling thread once it is registered.
+   */
+  private static final class PendingJob {
+    private final JobId jobId;
+    private final long registrationTime;
+    private final CompletableFuture<Job> future;
+    private JobStatus.State state;
+    private long stateChangeTime;
+    private volatile long nextPollTime;
+
+    private PendingJob(JobId jobId, long registrationTime) {
+      this.jobId = jobId;
+      this.registrationTime = registrationTime;
+      this.future = new CompletableFuture<>();
+      this.stateChangeTime = registrationTime;
+      this.nextPollTime = registrationTime + MIN_POLL_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Schedules the next poll. If the job reports progress, the interval is a fraction of the remaining time
+     * estimated from that progress. Otherwise it grows with the time spent in the current state, and is reset whenever
+     * the job changes state, since a job that just started running gives no indication of how long it will take.
+     */
+    private void reschedule(@Nullable JobStatus.State newState, @Nullable Progress progress, long now) {
+      if (!Objects.equals(state, newState)) {
+        state = newState;
+        stateChangeTime = now;
+      }
+      long interval = (now - stateChangeTime) / POLL_INTERVAL_DIVISOR;
+      if (progress != null && progress.completedFraction > 0) {
+        long elapsed = progress.elapsedMillis != null ? progress.elapsedMillis : now - stateChangeTime;
+        double remaining = elapsed * (1 - progress.completedFraction) / progress.completedFraction;
+        interval = (long) (remaining / REMAINING_TIME_DIVISOR);
+      }
+      nextPollTime = now + Math.max(MIN_POLL_INTERVAL_MILLIS, Math.min(MAX_POLL_INTERVAL_MILLIS, interval));
+    }
+  }
+
+  /**
+   * Fraction of the work of a job that is completed, and the time the job has been running for if it is known.
+   */
+  private static final class Progress {
+    private final double completedFraction;
+    private final Long elapsedMillis;
+
+    private Progress(double completedFraction, @Nullable Long elapsedMillis) {
+      this.completedFraction = completedFraction;
+      this.elapsedMillis = elapsedMillis;
+    }
+  }
+}
@@ -542,7 +542,41 @@ public final class BigQueryUtil {
   public static Table getBigQueryTable(String datasetProject, String datasetId, String tableName,
                                        @Nullable String serviceAccount, boolean isServiceAccountFilePath) {
     TableId tableId = TableId.of(datasetProject, datasetId, tableName);
+    BigQuery bigQuery = getBigQuery(datasetProject, serviceAccount, isServiceAccountFilePath);
 
+    Table table;
+    try {
+      table = bigQuery.getTable(tableId);
+    } catch (BigQueryException e) {
+      throw new InvalidStageException("Unable to get details about the BigQuery table: " + e.getMessage(), e);
+    }
+
+    return table;
+  }
+
+  /**
+   * Get the ids of the partitions of a partitioned BigQuery table.
+   *
+   * @param datasetProject           project where dataset is in
+   * @param datasetId                BigQuery dataset ID
+   * @param tableName                BigQuery table name
+   * @param serviceAccount           service account file path or JSON content
+   * @param isServiceAccountFilePath indicator for whether service account is file or json
+   * @return partition ids, as used in partition decorators
+   */
+  public static List<String> getPartitionIds(String datasetProject, String datasetId, String tableName,
+                                             @Nullable String serviceAccount, boolean isServiceAccountFilePath) {
+    TableId tableId = TableId.of(datasetProject, datasetId, tableName);
+    BigQuery bigQuery = getBigQuery(datasetProject, serviceAccount, isServiceAccountFilePath);
+    try {
+      return bigQuery.listPartitions(tableId);
+    } catch (BigQueryException e) {
+      throw new InvalidStageException("Unable to list the partitions of the BigQuery table: " + e.getMessage(), e);
+    }
+  }
+
+  private static BigQuery getBigQuery(String project, @Nullable String serviceAccount,
+                                      boolean isServiceAccountFilePath) {
     com.google.auth.Credentials credentials = null;
     if (serviceAccount != null) {
       try {
@@ -553,16 +587,7 @@ public final class BigQueryUtil {
           "serviceFilePath");
       }
     }
-    BigQuery bigQuery = GCPUtils.getBigQuery(datasetProject, credentials);
-
-    Table table;
-    try {
-      table = bigQuery.getTable(tableId);
-    } catch (BigQueryException e) {
-      throw new InvalidStageException("Unable to get details about the BigQuery table: " + e.getMessage(), e);
-    }
-
-    return table;
+    return GCPUtils.getBigQuery(project, credentials);
   }
 
   /**
@@ -683,6 +708,35 @@ public final class BigQueryUtil {
     }
   }
 
+  /**
+   * Reads a runtime argument that must be a positive integer. If the argument is set to anything else, the method
+   * adds a new failure to failure collector.
+   *
+   * @param arguments runtime arguments
+   * @param name      name of the runtime argument
+   * @param collector failure collector
+   * @return value of the argument, or null if it is not set or invalid
+   */
+  @Nullable
+  public static Integer getPositiveIntArgument(Map<String, String> arguments, String name,
+                                               FailureCollector collector) {
+    String value = arguments.get(name);
+    if (Strings.isNullOrEmpty(value)) {
+      return null;
+    }
+    try {
+      int parsed = Integer.parseInt(value.trim());
+      if (parsed >= 1) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    collector.addFailure(String.format("Runtime argument '%s' has invalid value '%s'.", name, value),
+                         "Set it to a whole number greater than or equal to 1.");
+    return null;
+  }
+
   /**
    * Matches text with provided pattern. If the text does not match the pattern, the method adds a new failure to
    * failure collector.
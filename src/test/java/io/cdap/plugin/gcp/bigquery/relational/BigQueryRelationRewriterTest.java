@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.relational;
+
+import io.cdap.cdap.etl.api.relational.Expression;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+public class BigQueryRelationRewriterTest {
+
+  private static final SQLExpressionFactory factory = new SQLExpressionFactory();
+
+  @Test
+  public void testMergeProjections() {
+    BigQuerySelectStatement inner = statement(null, "a", "`a`", "b", "b + 1", "c", "`ds`.`c`");
+    BigQuerySelectStatement merged =
+      BigQueryRelationRewriter.rewrite(columns("x", "b * 2", "y", "`ds`.c", "z", "CONCAT(`a`, 'b', \"a\")"),
+                                       null, "ds", inner);
+    Assert.assertEquals("SELECT (b + 1) * 2 AS `x` , `ds`.`c` AS `y` , CONCAT(`a`, 'b', \"a\") AS `z` "
+                          + "FROM `project.dataset.table` AS `ds`",
+                        merged.getQuery());
+  }
+
+  @Test
+  public void testPushFilterBelowProjection() {
+    BigQuerySelectStatement inner = statement("a > 0", "a", "`a`", "b", "UPPER(s)");
+    BigQuerySelectStatement merged =
+      BigQueryRelationRewriter.rewrite(columns("a", "`a`", "b", "`b`"), "b = 'B' AND a.f < 3", "ds", inner);
+    Assert.assertEquals("SELECT `a` AS `a` , (UPPER(s)) AS `b` FROM `project.dataset.table` AS `ds` "
+                          + "WHERE (a > 0) AND ((UPPER(s)) = 'B' AND `a`.f < 3)",
+                        merged.getQuery());
+  }
+
+  @Test
+  public void testKeepNestedStatements() {
+    // Aggregates must be computed after the filter
+    BigQuerySelectStatement aggregate = statement(null, "a", "`a`", "n", "COUNT(*) OVER (PARTITION BY a)");
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "`a`", "n", "`n`"), "a > 1", "ds", aggregate));
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "`a`", "n", "n + 1"), null, "ds", aggregate));
+    // Dropping an aggregate changes the number of rows
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "`a`"), null, "ds", aggregate));
+    Assert.assertNotNull(BigQueryRelationRewriter.rewrite(columns("n", "`n`", "a", "`a`"), null, "ds", aggregate));
+
+    // Non-deterministic expressions are evaluated once per row
+    BigQuerySelectStatement random = statement(null, "r", "RAND()");
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("r", "`r`"), "r < 0.5", "ds", random));
+    Assert.assertNotNull(BigQueryRelationRewriter.rewrite(columns("r", "`r`"), null, "ds", random));
+
+    BigQuerySelectStatement inner = statement(null, "a", "`a`", "day", "`d`", "ds", "`ds`.`ds`");
+    // Subqueries, comments and parameters
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "(SELECT MAX(a) FROM t)"), null, "ds", inner));
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "a -- comment"), null, "ds", inner));
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "@param"), null, "ds", inner));
+    // Date parts and types with the name of a column
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "DATE_TRUNC(a, day)"), null, "ds", inner));
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "CAST(a AS a)"), null, "ds", inner));
+    // Alias which is also the name of a column
+    Assert.assertNull(BigQueryRelationRewriter.rewrite(columns("a", "`ds`"), null, "ds", inner));
+  }
+
+  private static BigQuerySelectStatement statement(@Nullable String filter, String... columns) {
+    return new BigQuerySelectStatement(columns(columns), "project.dataset.table", false, "ds", filter);
+  }
+
+  private static Map<String, Expression> columns(String... aliasesAndExpressions) {
+    Map<String, Expression> columns = new LinkedHashMap<>();
+    for (int i = 0; i < aliasesAndExpressions.length; i += 2) {
+      columns.put(aliasesAndExpressions[i], factory.compile(aliasesAndExpressions[i + 1]));
+    }
+    return Collections.unmodifiableMap(columns);
+  }
+}
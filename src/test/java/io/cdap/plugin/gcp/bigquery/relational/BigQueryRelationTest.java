@@ -577,6 +577,74 @@ BigQueryRelationTest {
     filterFields.clear();
   }
 
+  @Test
+  public void testRewriteChainOfProjectionsAndFilters() {
+    BigQueryRelation tableRelation = getTableRelation();
+    Assert.assertEquals("SELECT `a` AS `a` , `b` AS `b` FROM `project.dataset.table` AS `d s`",
+                        tableRelation.getSQLStatement());
+
+    Map<String, Expression> selectColumns = new LinkedHashMap<>();
+    selectColumns.put("x", factory.compile("c"));
+    selectColumns.put("y", factory.compile("`a` * 2"));
+    Relation relation = tableRelation.filter(factory.compile("a > 2"))
+      .setColumn("c", factory.compile("a + b"))
+      .filter(factory.compile("c > 5"))
+      .dropColumn("b")
+      .select(selectColumns);
+
+    // Each operation would otherwise add a nested select
+    String statement = ((BigQueryRelation) relation).getSQLStatement();
+    Assert.assertEquals("SELECT (`a` + `b`) AS `x` , `a` * 2 AS `y` FROM `project.dataset.table` AS `d s` "
+                          + "WHERE (`a` > 2) AND ((`a` + `b`) > 5)",
+                        statement);
+    Assert.assertEquals(1, statement.split("SELECT").length - 1);
+  }
+
+  @Test
+  public void testRewriteRenamedDataset() {
+    Relation relation = getTableRelation()
+      .setDatasetName("other")
+      .filter(factory.compile("`other`.`a` > 2"))
+      .filter(factory.compile("`other`.b IS NOT NULL"));
+    Assert.assertEquals("SELECT `a` AS `a` , `b` AS `b` FROM `project.dataset.table` AS `d s` "
+                          + "WHERE (`a` > 2) AND (`b` IS NOT NULL)",
+                        ((BigQueryRelation) relation).getSQLStatement());
+  }
+
+  @Test
+  public void testRewriteStopsAtGroupBy() {
+    Map<String, Expression> selectFields = new LinkedHashMap<>();
+    selectFields.put("a", factory.compile("a"));
+    selectFields.put("m", factory.compile("MAX(b)"));
+    GroupByAggregationDefinition def = new GroupByAggregationDefinition.Builder()
+      .select(selectFields)
+      .groupBy(Collections.singletonList(factory.compile("a")))
+      .build();
+
+    Relation relation = getTableRelation()
+      .filter(factory.compile("b > 0"))
+      .groupBy(def)
+      .filter(factory.compile("m > 1"))
+      .dropColumn("a");
+    Assert.assertEquals("SELECT `m` AS `m` FROM (SELECT a AS `a` , MAX(b) AS `m` FROM "
+                          + "( SELECT `a` AS `a` , `b` AS `b` FROM `project.dataset.table` AS `d s` WHERE `b` > 0 ) "
+                          + "AS `d s` GROUP BY a) AS `d s` WHERE m > 1",
+                        ((BigQueryRelation) relation).getSQLStatement());
+  }
+
+  private BigQueryRelation getTableRelation() {
+    BigQuerySQLDataset ds = mock(BigQuerySQLDataset.class);
+    when(ds.getBigQueryProject()).thenReturn("project");
+    when(ds.getBigQueryDataset()).thenReturn("dataset");
+    when(ds.getBigQueryTable()).thenReturn("table");
+
+    BigQueryRelation relation = new BigQueryRelation("d s",
+                                                     new LinkedHashSet<>(Arrays.asList("a", "b")),
+                                                     featureFlagsProvider);
+    relation.setInputDatasets(Collections.singletonMap("d s", ds));
+    return relation;
+  }
+
   @Test
   public void testSupportsExpressions() {
     List<Expression> expressions = new ArrayList<>(2);
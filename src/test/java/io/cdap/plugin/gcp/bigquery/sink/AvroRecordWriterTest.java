@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.AvroKey;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AvroRecordWriterTest {
+
+  private static final Schema SCHEMA = SchemaBuilder.record("record").fields()
+    .requiredLong("id")
+    .requiredString("payload")
+    .endRecord();
+
+  @Test
+  public void testRollsOverAtTargetSize() throws Exception {
+    List<ByteArrayOutputStream> files = new ArrayList<>();
+    files.add(new ByteArrayOutputStream());
+    List<Integer> parts = new ArrayList<>();
+    AvroRecordWriter writer = new AvroRecordWriter(SCHEMA, GenericData.get(), CodecFactory.nullCodec(),
+                                                   files.get(0), 1024, 4096, part -> {
+      parts.add(part);
+      ByteArrayOutputStream file = new ByteArrayOutputStream();
+      files.add(file);
+      return file;
+    });
+
+    int numRecords = 1000;
+    for (int i = 0; i < numRecords; i++) {
+      writer.write(new AvroKey<>(createRecord(i)), NullWritable.get());
+    }
+    writer.close(null);
+
+    Assert.assertTrue(files.size() > 1);
+    for (int i = 1; i < files.size(); i++) {
+      Assert.assertEquals(i, (int) parts.get(i - 1));
+    }
+    long expectedId = 0;
+    for (ByteArrayOutputStream file : files) {
+      // Files exceed the target size by at most one block
+      Assert.assertTrue(file.size() < 4096 + 2048);
+      for (GenericRecord record : read(file)) {
+        Assert.assertEquals(expectedId++, record.get("id"));
+      }
+    }
+    Assert.assertEquals(numRecords, expectedId);
+  }
+
+  @Test
+  public void testSingleFileWithoutTargetSize() throws Exception {
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    AvroRecordWriter writer = new AvroRecordWriter(SCHEMA, GenericData.get(), CodecFactory.nullCodec(), file, 1024);
+    for (int i = 0; i < 1000; i++) {
+      writer.write(new AvroKey<>(createRecord(i)), NullWritable.get());
+    }
+    writer.close(null);
+    Assert.assertEquals(1000, read(file).size());
+  }
+
+  @Test
+  public void testCodecs() throws Exception {
+    for (AvroCodec codec : AvroCodec.values()) {
+      ByteArrayOutputStream file = new ByteArrayOutputStream();
+      AvroRecordWriter writer = new AvroRecordWriter(SCHEMA, GenericData.get(),
+                                                     CodecFactory.fromString(codec.getAvroName()), file, 1024);
+      for (int i = 0; i < 1000; i++) {
+        writer.write(new AvroKey<>(createRecord(i)), NullWritable.get());
+      }
+      writer.close(null);
+
+      try (DataFileStream<GenericRecord> stream = new DataFileStream<>(new ByteArrayInputStream(file.toByteArray()),
+                                                                        new GenericDatumReader<>(SCHEMA))) {
+        Assert.assertEquals(codec.getAvroName(), stream.getMetaString(DataFileConstants.CODEC));
+      }
+      Assert.assertEquals(1000, read(file).size());
+    }
+  }
+
+  private static GenericRecord createRecord(long id) {
+    GenericData.Record record = new GenericData.Record(SCHEMA);
+    record.put("id", id);
+    record.put("payload", "payload of record " + id);
+    return record;
+  }
+
+  private static List<GenericRecord> read(ByteArrayOutputStream file) throws IOException {
+    List<GenericRecord> records = new ArrayList<>();
+    try (DataFileStream<GenericRecord> stream = new DataFileStream<>(new ByteArrayInputStream(file.toByteArray()),
+                                                                      new GenericDatumReader<>(SCHEMA))) {
+      stream.forEach(records::add);
+    }
+    return records;
+  }
+}
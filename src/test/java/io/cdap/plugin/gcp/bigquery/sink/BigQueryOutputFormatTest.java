@@ -17,37 +17,62 @@ package io.cdap.plugin.gcp.bigquery.sink;
 
 import com.google.api.services.bigquery.model.Dataset;
 import com.google.api.services.bigquery.model.JobConfiguration;
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableFieldSchema;
 import com.google.api.services.bigquery.model.TableReference;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.google.api.services.bigquery.model.TimePartitioning;
 import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsRequest;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsResponse;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
+import com.google.cloud.bigquery.storage.v1.StorageError;
 import com.google.cloud.hadoop.io.bigquery.BigQueryConfiguration;
 import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
 import com.google.cloud.hadoop.io.bigquery.BigQueryHelper;
 import com.google.cloud.hadoop.io.bigquery.output.ForwardingBigQueryFileOutputCommitter;
+import com.google.protobuf.Timestamp;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.mockito.internal.util.reflection.FieldSetter;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.api.support.membermodification.MemberMatcher;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.Mockito.times;
 import static org.powermock.api.support.membermodification.MemberModifier.suppress;
 
 @RunWith(PowerMockRunner.class)
+// Hadoop logs in the current user when the staged stream manifests are written and read
+@PowerMockIgnore({"javax.security.*", "com.sun.security.*"})
 @PrepareForTest({BigQueryOutputFormat.BigQueryOutputCommitter.class})
 public class BigQueryOutputFormatTest {
 
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   private static List<String> listOfStrings;
+  private BigQueryStorageWriteUtils.WriteClientFactory writeClientFactory;
   private JobContext jobContextMock;
+  private BigQueryHelper bigQueryHelperMock;
 
   public static void generateList(int pathListSize) {
     StringBuilder sb = new StringBuilder();
@@ -63,7 +88,7 @@ public class BigQueryOutputFormatTest {
     suppress(PowerMockito.constructor(BigQueryOutputFormat.BigQueryOutputCommitter.class));
     suppress(MemberMatcher.methodsDeclaredIn(ForwardingBigQueryFileOutputCommitter.class));
 
-    BigQueryHelper bigQueryHelperMock = PowerMockito.mock(BigQueryHelper.class, Mockito.RETURNS_DEEP_STUBS);
+    bigQueryHelperMock = PowerMockito.mock(BigQueryHelper.class, Mockito.RETURNS_DEEP_STUBS);
     PowerMockito.when(bigQueryHelperMock.getRawBigquery().datasets().get(ArgumentMatchers.any(), ArgumentMatchers.any())
                         .execute()).thenReturn(new Dataset());
 
@@ -134,6 +159,32 @@ public class BigQueryOutputFormatTest {
               ArgumentMatchers.any(TableReference.class));
   }
 
+  @Test
+  public void commitJobTestParallelBatchJobIds() throws Exception {
+
+    generateList(40001);
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initMocks("INSERT");
+    jobContextMock.getConfiguration().set(BigQueryConstants.CONFIG_JOB_ID, "job");
+    jobContextMock.getConfiguration().setInt(BigQueryConstants.CONFIG_LOAD_JOB_PARALLELISM, 3);
+    bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+
+    // 5 batches in temp table, each with a deterministic job id, and 1 job for table copy
+    for (int i = 1; i <= 5; i++) {
+      PowerMockito.verifyPrivate(bqQueryOutputCommitterSpy, times(1))
+        .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+                ArgumentMatchers.eq("job_" + i),
+                ArgumentMatchers.any(Dataset.class),
+                ArgumentMatchers.any(JobConfiguration.class),
+                ArgumentMatchers.any(TableReference.class));
+    }
+    PowerMockito.verifyPrivate(bqQueryOutputCommitterSpy, times(6))
+      .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+              ArgumentMatchers.anyString(),
+              ArgumentMatchers.any(Dataset.class),
+              ArgumentMatchers.any(JobConfiguration.class),
+              ArgumentMatchers.any(TableReference.class));
+  }
+
   @Test
   public void commitJobTestUpdateBQInvocations() throws Exception {
 
@@ -160,4 +211,176 @@ public class BigQueryOutputFormatTest {
               ArgumentMatchers.any(Dataset.class));
   }
 
+  @Test
+  public void commitJobTestLoadPartitions() throws Exception {
+
+    listOfStrings = Arrays.asList("gs://bucket/partition_20220101-r-00000.avro",
+                                  "gs://bucket/partition_20220102-r-00000.avro",
+                                  "gs://bucket/partition_20220102-r-00001.avro",
+                                  "gs://bucket/partition___NULL__-r-00000.avro");
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initMocks("INSERT");
+    configurePartitionedTable(jobContextMock.getConfiguration());
+    bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+
+    // Every partition is loaded into its partition by its own job, whose id depends on the partition
+    verifyLoad(bqQueryOutputCommitterSpy, "job_20220101", "test_table$20220101", "WRITE_APPEND",
+               "gs://bucket/partition_20220101-r-00000.avro");
+    verifyLoad(bqQueryOutputCommitterSpy, "job_20220102", "test_table$20220102", "WRITE_APPEND",
+               "gs://bucket/partition_20220102-r-00000.avro", "gs://bucket/partition_20220102-r-00001.avro");
+    // Records with a null partition value cannot be loaded through a partition decorator
+    verifyLoad(bqQueryOutputCommitterSpy, "job___NULL__", "test_table", "WRITE_APPEND",
+               "gs://bucket/partition___NULL__-r-00000.avro");
+    PowerMockito.verifyPrivate(bqQueryOutputCommitterSpy, times(3))
+      .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+              ArgumentMatchers.anyString(),
+              ArgumentMatchers.any(Dataset.class),
+              ArgumentMatchers.any(JobConfiguration.class),
+              ArgumentMatchers.any(TableReference.class));
+  }
+
+  @Test
+  public void commitJobTestTruncatePartitions() throws Exception {
+
+    listOfStrings = Arrays.asList("gs://bucket/partition_20220101-r-00000.avro",
+                                  "gs://bucket/partition_20220102-r-00000.avro");
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initMocks("INSERT");
+    configurePartitionedTable(jobContextMock.getConfiguration());
+    jobContextMock.getConfiguration().set(BigQueryConfiguration.OUTPUT_TABLE_WRITE_DISPOSITION_KEY, "WRITE_TRUNCATE");
+    bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+
+    // Only the partitions that receive records are replaced
+    verifyLoad(bqQueryOutputCommitterSpy, "job_20220101", "test_table$20220101", "WRITE_TRUNCATE",
+               "gs://bucket/partition_20220101-r-00000.avro");
+    verifyLoad(bqQueryOutputCommitterSpy, "job_20220102", "test_table$20220102", "WRITE_TRUNCATE",
+               "gs://bucket/partition_20220102-r-00000.avro");
+  }
+
+  @Test
+  public void commitJobTestTruncateNullPartitionLoadsTogether() throws Exception {
+
+    listOfStrings = Arrays.asList("gs://bucket/partition_20220101-r-00000.avro",
+                                  "gs://bucket/partition___NULL__-r-00000.avro");
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initMocks("INSERT");
+    configurePartitionedTable(jobContextMock.getConfiguration());
+    jobContextMock.getConfiguration().set(BigQueryConfiguration.OUTPUT_TABLE_WRITE_DISPOSITION_KEY, "WRITE_TRUNCATE");
+    bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+
+    // Records with a null partition value can only be truncated with the whole table
+    verifyLoad(bqQueryOutputCommitterSpy, "job", "test_table", "WRITE_TRUNCATE",
+               "gs://bucket/partition_20220101-r-00000.avro", "gs://bucket/partition___NULL__-r-00000.avro");
+    PowerMockito.verifyPrivate(bqQueryOutputCommitterSpy, times(1))
+      .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+              ArgumentMatchers.anyString(),
+              ArgumentMatchers.any(Dataset.class),
+              ArgumentMatchers.any(JobConfiguration.class),
+              ArgumentMatchers.any(TableReference.class));
+  }
+
+  @Test
+  public void commitJobTestCommitWriteStreams() throws Exception {
+
+    BigQueryWriteClient client = mockWriteClient(BatchCommitWriteStreamsResponse.newBuilder()
+                                                   .setCommitTime(Timestamp.newBuilder().setSeconds(1))
+                                                   .build());
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initStreamMocks("stream0", "stream1");
+    try {
+      bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+    } finally {
+      BigQueryStorageWriteUtils.writeClientFactory = writeClientFactory;
+    }
+
+    // The streams of all tasks are committed together into the destination table, without any load job
+    Mockito.verify(client).batchCommitWriteStreams(BatchCommitWriteStreamsRequest.newBuilder()
+                                                     .setParent("projects/test_project/datasets/test_dataset/"
+                                                                  + "tables/test_table")
+                                                     .addWriteStreams("stream0")
+                                                     .addWriteStreams("stream1")
+                                                     .build());
+    Mockito.verify(client).close();
+    PowerMockito.verifyPrivate(bqQueryOutputCommitterSpy, times(0))
+      .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+              ArgumentMatchers.anyString(),
+              ArgumentMatchers.any(Dataset.class),
+              ArgumentMatchers.any(JobConfiguration.class),
+              ArgumentMatchers.any(TableReference.class));
+  }
+
+  @Test
+  public void commitJobTestCommitWriteStreamsErrors() throws Exception {
+
+    // Streams are committed atomically, the commit time is not set if any of them could not be committed
+    BigQueryWriteClient client = mockWriteClient(BatchCommitWriteStreamsResponse.newBuilder()
+                                                   .addStreamErrors(StorageError.newBuilder()
+                                                                      .setEntity("stream1")
+                                                                      .setErrorMessage("Stream is not finalized"))
+                                                   .build());
+    BigQueryOutputFormat.BigQueryOutputCommitter bqQueryOutputCommitterSpy = initStreamMocks("stream0", "stream1");
+    try {
+      bqQueryOutputCommitterSpy.commitJob(jobContextMock);
+      Assert.fail("Expected the commit to fail");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getCause().getMessage().contains("stream1: Stream is not finalized"));
+    } finally {
+      BigQueryStorageWriteUtils.writeClientFactory = writeClientFactory;
+    }
+    Mockito.verify(client).close();
+  }
+
+  /**
+   * Configures the commit of streams written by tasks into a new table, one stream per task.
+   */
+  private BigQueryOutputFormat.BigQueryOutputCommitter initStreamMocks(String... streamNames) throws Exception {
+    File dir = tmpFolder.newFolder();
+    List<String> manifests = new ArrayList<>();
+    Configuration conf = new Configuration();
+    for (String streamName : streamNames) {
+      Path manifest = new Path(dir.getAbsolutePath(), streamName + BigQueryStorageWriteUtils.STREAM_MANIFEST_EXTENSION);
+      BigQueryStorageWriteUtils.writeStreamManifest(conf, manifest, streamName);
+      manifests.add(manifest.toString());
+    }
+    listOfStrings = manifests;
+    BigQueryOutputFormat.BigQueryOutputCommitter committer = initMocks("INSERT");
+    jobContextMock.getConfiguration().setEnum(BigQueryConstants.CONFIG_WRITE_METHOD, WriteMethod.STORAGE_WRITE_API);
+    return committer;
+  }
+
+  private BigQueryWriteClient mockWriteClient(BatchCommitWriteStreamsResponse response) {
+    BigQueryWriteClient client = Mockito.mock(BigQueryWriteClient.class);
+    Mockito.when(client.batchCommitWriteStreams(ArgumentMatchers.any(BatchCommitWriteStreamsRequest.class)))
+      .thenReturn(response);
+    writeClientFactory = BigQueryStorageWriteUtils.writeClientFactory;
+    BigQueryStorageWriteUtils.writeClientFactory = conf -> client;
+    return client;
+  }
+
+  /**
+   * Configures the commit of files staged by partition into an existing table partitioned by day on a column.
+   */
+  private void configurePartitionedTable(Configuration conf) throws Exception {
+    conf.set(BigQueryConstants.CONFIG_JOB_ID, "job");
+    conf.setBoolean(BigQueryConstants.CONFIG_STAGE_BY_PARTITION, true);
+    conf.setEnum(BigQueryConstants.CONFIG_PARTITION_TYPE, PartitionType.TIME);
+    conf.set(BigQueryConstants.CONFIG_PARTITION_BY_FIELD, "ts");
+    conf.setBoolean(BigQueryConstants.CONFIG_DESTINATION_TABLE_EXISTS, true);
+
+    Table table = new Table()
+      .setSchema(new TableSchema().setFields(
+        new ArrayList<>(Collections.singletonList(new TableFieldSchema().setName("ts").setType("TIMESTAMP")))))
+      .setTimePartitioning(new TimePartitioning().setType("DAY").setField("ts"));
+    PowerMockito.when(bigQueryHelperMock.tableExists(ArgumentMatchers.any())).thenReturn(true);
+    PowerMockito.when(bigQueryHelperMock.getTable(ArgumentMatchers.any())).thenReturn(table);
+  }
+
+  private static void verifyLoad(BigQueryOutputFormat.BigQueryOutputCommitter committer, String jobId,
+                                 String tableId, String writeDisposition, String... sourceUris) throws Exception {
+    PowerMockito.verifyPrivate(committer, times(1))
+      .invoke("triggerBigqueryJob", ArgumentMatchers.eq("test_project"),
+              ArgumentMatchers.eq(jobId),
+              ArgumentMatchers.any(Dataset.class),
+              ArgumentMatchers.<JobConfiguration>argThat(
+                config -> tableId.equals(config.getLoad().getDestinationTable().getTableId())
+                  && writeDisposition.equals(config.getLoad().getWriteDisposition())
+                  && Arrays.asList(sourceUris).equals(config.getLoad().getSourceUris())),
+              ArgumentMatchers.any(TableReference.class));
+  }
 }
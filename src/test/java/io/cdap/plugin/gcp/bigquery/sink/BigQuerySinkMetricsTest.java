@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobStatistics;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import io.cdap.cdap.api.metrics.Metrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+
+public class BigQuerySinkMetricsTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testAddJob() {
+    JobStatistics.QueryStatistics queryStatistics = Mockito.mock(JobStatistics.QueryStatistics.class);
+    Mockito.when(queryStatistics.getCreationTime()).thenReturn(1000L);
+    Mockito.when(queryStatistics.getStartTime()).thenReturn(1500L);
+    Mockito.when(queryStatistics.getEndTime()).thenReturn(4500L);
+    Mockito.when(queryStatistics.getTotalSlotMs()).thenReturn(20000L);
+    Mockito.when(queryStatistics.getTotalBytesProcessed()).thenReturn(1024L);
+    Mockito.when(queryStatistics.getTotalBytesBilled()).thenReturn(null);
+    Job queryJob = Mockito.mock(Job.class);
+    Mockito.when(queryJob.getStatistics()).thenReturn(queryStatistics);
+    Mockito.when(queryJob.getConfiguration()).thenReturn(QueryJobConfiguration.of("SELECT 1"));
+
+    JobStatistics.LoadStatistics loadStatistics = Mockito.mock(JobStatistics.LoadStatistics.class);
+    Mockito.when(loadStatistics.getCreationTime()).thenReturn(1000L);
+    Mockito.when(loadStatistics.getStartTime()).thenReturn(1100L);
+    Mockito.when(loadStatistics.getEndTime()).thenReturn(2100L);
+    Job loadJob = Mockito.mock(Job.class);
+    Mockito.when(loadJob.getStatistics()).thenReturn(loadStatistics);
+
+    BigQuerySinkMetrics metrics = new BigQuerySinkMetrics();
+    metrics.addJob(queryJob);
+    metrics.addJob(loadJob);
+
+    Assert.assertEquals(1, metrics.getQueryJobs());
+    Assert.assertEquals(1, metrics.getLoadJobs());
+    Assert.assertEquals(20000L, metrics.getSlotMillis());
+
+    Metrics stageMetrics = Mockito.mock(Metrics.class);
+    metrics.emit("table", stageMetrics);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_QUERY_MS, 3000L);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_LOAD_MS, 1000L);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_JOB_PENDING_MS, 600L);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_BYTES_PROCESSED, 1024L);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_BYTES_BILLED, 0L);
+  }
+
+  @Test
+  public void testReadAll() throws Exception {
+    Configuration conf = new Configuration();
+    File directory = TMP_FOLDER.newFolder();
+    Path metricsDirectory = new Path(directory.toURI().toString(), BigQuerySinkMetrics.TASK_METRICS_DIRECTORY);
+
+    // The directory does not exist if no task stored its metrics
+    Assert.assertEquals(0, BigQuerySinkMetrics.readAll(conf, metricsDirectory).getStagedBytes());
+    Assert.assertNull(BigQuerySinkMetrics.read(conf, new Path(metricsDirectory, "metrics-r-00000.json")));
+
+    for (int task = 0; task < 3; task++) {
+      BigQuerySinkMetrics taskMetrics = new BigQuerySinkMetrics();
+      taskMetrics.addStagedFile(100);
+      taskMetrics.addStagedFile(task);
+      taskMetrics.write(conf, new Path(metricsDirectory, String.format("metrics-r-%05d.json", task)));
+    }
+
+    BigQuerySinkMetrics metrics = BigQuerySinkMetrics.readAll(conf, metricsDirectory);
+    Assert.assertEquals(303, metrics.getStagedBytes());
+    Metrics stageMetrics = Mockito.mock(Metrics.class);
+    metrics.emit("table", stageMetrics);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_STAGED_FILES, 6L);
+  }
+
+  @Test
+  public void testWriterMetrics() {
+    BigQuerySinkMetrics metrics = new BigQuerySinkMetrics();
+    for (int task = 1; task <= 3; task++) {
+      BigQuerySinkMetrics taskMetrics = new BigQuerySinkMetrics();
+      taskMetrics.updatePeakOpenWriters(task * 2);
+      taskMetrics.updatePeakOpenWriters(1);
+      taskMetrics.addEvictedWriter();
+      metrics.add(taskMetrics);
+    }
+
+    // The peak is the highest peak of any task, while evicted writers add up
+    Assert.assertEquals(6, metrics.getPeakOpenWriters());
+    Assert.assertEquals(3, metrics.getEvictedWriters());
+    Metrics stageMetrics = Mockito.mock(Metrics.class);
+    metrics.emitWriters(stageMetrics);
+    Mockito.verify(stageMetrics).gauge(BigQuerySinkMetrics.METRIC_PEAK_OPEN_WRITERS, 6L);
+    Mockito.verify(stageMetrics).countLong(BigQuerySinkMetrics.METRIC_EVICTED_WRITERS, 3L);
+  }
+}
@@ -89,6 +89,27 @@ public class BigQuerySinkTest {
     Assert.assertEquals(3, failures.size());
   }
 
+  @Test
+  public void testBigQuerySinkWriteMethod() {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    BigQuerySinkConfig config = new BigQuerySinkConfig("44", "ds", "tb", "bucket", schema.toString(),
+                                                       "INTEGER", 0L, 100L, 10L, null);
+
+    // The label of the option is not a value of the property
+    config.writeMethod = "Storage Write API";
+    MockFailureCollector collector = new MockFailureCollector("bqsink");
+    config.validate(collector);
+    Assert.assertEquals(1, collector.getValidationFailures().size());
+    Assert.assertEquals("Write method has incorrect value 'Storage Write API'.",
+                        collector.getValidationFailures().get(0).getMessage());
+
+    config.writeMethod = "storage_write_api";
+    collector = new MockFailureCollector("bqsink");
+    config.validate(collector);
+    Assert.assertEquals(0, collector.getValidationFailures().size());
+    Assert.assertEquals(WriteMethod.STORAGE_WRITE_API, config.getWriteMethod());
+  }
+
   @Test
   public void testBigQueryTimePartitionConfig() {
     Schema schema =
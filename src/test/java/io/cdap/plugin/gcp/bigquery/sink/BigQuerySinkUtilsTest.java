@@ -23,8 +23,12 @@ import com.google.cloud.bigquery.DatasetInfo;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.LegacySQLTypeName;
 import com.google.cloud.bigquery.TableId;
+import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
+import com.google.cloud.hadoop.io.bigquery.output.BigQueryOutputConfiguration;
 import com.google.cloud.hadoop.io.bigquery.output.BigQueryTableFieldSchema;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryTypeSize;
 import org.apache.hadoop.conf.Configuration;
 import org.junit.Assert;
@@ -34,6 +38,8 @@ import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -65,6 +71,59 @@ public class BigQuerySinkUtilsTest {
     Assert.assertFalse(configuration.getBoolean("fs.gs.metadata.cache.enable", true));
   }
 
+  @Test
+  public void testConfigureAvroStaging() {
+    Configuration configuration = new Configuration();
+
+    BigQuerySinkUtils.configureAvroStaging(configuration, BigQuerySinkUtils.getAvroCodec("Snappy"), 256);
+
+    Assert.assertEquals("snappy", configuration.get(BigQueryConstants.CONFIG_AVRO_CODEC));
+    Assert.assertEquals(256 * 1024, configuration.getInt(BigQueryConstants.CONFIG_AVRO_SYNC_INTERVAL, 0));
+    Assert.assertEquals(AvroCodec.NONE, BigQuerySinkUtils.getAvroCodec(null));
+  }
+
+  @Test
+  public void testValidateAvroStaging() {
+    MockFailureCollector collector = new MockFailureCollector();
+    BigQuerySinkUtils.validateAvroStaging("deflate", "codec", 64, "blockSize", collector);
+    Assert.assertEquals(0, collector.getValidationFailures().size());
+
+    BigQuerySinkUtils.validateAvroStaging("zstd", "codec", 0, "blockSize", collector);
+    Assert.assertEquals(2, collector.getValidationFailures().size());
+  }
+
+  @Test
+  public void testConfigureStagingFileFormat() throws IOException {
+    List<BigQueryTableFieldSchema> fields = BigQuerySinkUtils.getBigQueryTableFieldsFromSchema(
+      Schema.recordOf("record", Schema.Field.of("dt", Schema.of(Schema.LogicalType.DATETIME))));
+    Configuration configuration = new Configuration();
+    BigQuerySinkUtils.configureOutput(configuration, DatasetId.of("project", "dataset"), "table",
+                                      "file:///tmp/staging", fields);
+    Assert.assertEquals(BigQueryFileFormat.AVRO, BigQueryOutputConfiguration.getFileFormat(configuration));
+    Assert.assertTrue(BigQueryOutputConfiguration.getFileOutputFormat(configuration) instanceof AvroOutputFormat);
+
+    configuration.setEnum(BigQueryConstants.CONFIG_STAGING_FILE_FORMAT, BigQuerySinkUtils.getStagingFileFormat("JSON"));
+    BigQuerySinkUtils.configureOutput(configuration, DatasetId.of("project", "dataset"), "table",
+                                      "file:///tmp/staging", fields);
+    Assert.assertEquals(BigQueryFileFormat.NEWLINE_DELIMITED_JSON,
+                        BigQueryOutputConfiguration.getFileFormat(configuration));
+    Assert.assertTrue(BigQueryOutputConfiguration.getFileOutputFormat(configuration) instanceof JsonOutputFormat);
+  }
+
+  @Test
+  public void testValidateStagingFileFormat() {
+    MockFailureCollector collector = new MockFailureCollector();
+    BigQuerySinkUtils.validateStagingFileFormat(null, "format", "snappy", "codec", collector);
+    BigQuerySinkUtils.validateStagingFileFormat("avro", "format", "snappy", "codec", collector);
+    BigQuerySinkUtils.validateStagingFileFormat("json", "format", "none", "codec", collector);
+    Assert.assertEquals(0, collector.getValidationFailures().size());
+
+    // Unknown formats, and compression of JSON files
+    BigQuerySinkUtils.validateStagingFileFormat("parquet", "format", null, "codec", collector);
+    BigQuerySinkUtils.validateStagingFileFormat("json", "format", "deflate", "codec", collector);
+    Assert.assertEquals(2, collector.getValidationFailures().size());
+  }
+
   @Test
   public void testNumericPrecision() {
     List<BigQueryTableFieldSchema> bqSchema;
@@ -595,4 +654,43 @@ public class BigQuerySinkUtilsTest {
                           "WHEN MATCHED THEN UPDATE SET T.`c` = S.`c` " +
                           "WHEN NOT MATCHED THEN INSERT (`a`, `b`, `c`) VALUES(`a`, `b`, `c`)", query);
   }
+
+  @Test
+  public void testGenerateUpdateUpsertQueryWithPartitionCondition() {
+    TableId sourceTableId = TableId.of("dummy_src_project", "dummy_src_dataset", "dummy_src_table");
+    TableId destinationTableId = TableId.of("dummy_dest_project", "dummy_dest_dataset", "dummy_dest_table");
+    String partitionCondition = BigQuerySinkUtils.generatePartitionCondition(
+      "d", "DATE", Arrays.asList("20220102", PartitionedRecordWriter.NULL_PARTITION, "20211231"));
+
+    String query = BigQuerySinkUtils.generateUpdateUpsertQuery(Operation.UPSERT, sourceTableId, destinationTableId,
+                                                               Arrays.asList("a", "d"),
+                                                               Collections.singletonList("a"),
+                                                               Collections.emptyList(), null, partitionCondition);
+
+    Assert.assertEquals("MERGE `dummy_dest_project.dummy_dest_dataset.dummy_dest_table` T USING (SELECT * " +
+                          "FROM (SELECT row_number() OVER (PARTITION BY `a`) as rowid, * FROM " +
+                          "`dummy_src_project.dummy_src_dataset.dummy_src_table`) " +
+                          "where rowid = 1) S ON (T.`d` IN (DATE '2021-12-31', DATE '2022-01-02') " +
+                          "OR T.`d` IS NULL) AND T.`a` = S.`a` " +
+                          "WHEN MATCHED THEN UPDATE SET T.`d` = S.`d` " +
+                          "WHEN NOT MATCHED THEN INSERT (`a`, `d`) VALUES(`a`, `d`)", query);
+  }
+
+  @Test
+  public void testGeneratePartitionCondition() {
+    Assert.assertEquals("((T.`ts` >= TIMESTAMP '2022-02-28' AND T.`ts` < TIMESTAMP '2022-03-01'))",
+                        BigQuerySinkUtils.generatePartitionCondition("ts", "TIMESTAMP",
+                                                                     Collections.singletonList("20220228")));
+    Assert.assertEquals("((T.`dt` >= DATETIME '2021-12-31' AND T.`dt` < DATETIME '2022-01-01') " +
+                          "OR (T.`dt` >= DATETIME '2022-01-01' AND T.`dt` < DATETIME '2022-01-02'))",
+                        BigQuerySinkUtils.generatePartitionCondition("dt", "DATETIME",
+                                                                     Arrays.asList("20220101", "20211231")));
+    Assert.assertEquals("(T.`d` IS NULL)", BigQuerySinkUtils.generatePartitionCondition(
+      "d", "DATE", Collections.singletonList(PartitionedRecordWriter.NULL_PARTITION)));
+    // Rows of the __UNPARTITIONED__ partition cannot be selected by day
+    Assert.assertNull(BigQuerySinkUtils.generatePartitionCondition(
+      "d", "DATE", Arrays.asList("20220101", PartitionedRecordWriter.UNPARTITIONED)));
+    Assert.assertNull(BigQuerySinkUtils.generatePartitionCondition(
+      "i", "INTEGER", Collections.singletonList("20220101")));
+  }
 }
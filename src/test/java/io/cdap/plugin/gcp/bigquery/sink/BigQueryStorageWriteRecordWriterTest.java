@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.services.bigquery.model.TableReference;
+import com.google.cloud.bigquery.storage.v1.AppendRowsRequest;
+import com.google.cloud.bigquery.storage.v1.AppendRowsResponse;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsRequest;
+import com.google.cloud.bigquery.storage.v1.BatchCommitWriteStreamsResponse;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteGrpc;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteSettings;
+import com.google.cloud.bigquery.storage.v1.CreateWriteStreamRequest;
+import com.google.cloud.bigquery.storage.v1.FinalizeWriteStreamRequest;
+import com.google.cloud.bigquery.storage.v1.FinalizeWriteStreamResponse;
+import com.google.cloud.bigquery.storage.v1.WriteStream;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.Timestamp;
+import com.google.rpc.Status;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link BigQueryStorageWriteRecordWriter} against a local stand-in of the BigQuery Storage Write API.
+ */
+public class BigQueryStorageWriteRecordWriterTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+  private static final TableReference TABLE = new TableReference()
+    .setProjectId("project").setDatasetId("dataset").setTableId("table");
+
+  private FakeBigQueryWrite service;
+  private Server server;
+  private Configuration conf;
+  private BigQueryStorageWriteUtils.WriteClientFactory writeClientFactory;
+
+  @Before
+  public void setUp() throws IOException {
+    service = new FakeBigQueryWrite();
+    // The Storage Write API accepts append requests of up to 10MB
+    server = ServerBuilder.forPort(0).addService(service).maxInboundMessageSize(10 * 1024 * 1024).build().start();
+    conf = new Configuration();
+    writeClientFactory = BigQueryStorageWriteUtils.writeClientFactory;
+    BigQueryStorageWriteUtils.writeClientFactory = c -> BigQueryWriteClient.create(
+      BigQueryWriteSettings.newBuilder()
+        .setEndpoint("localhost:" + server.getPort())
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .setTransportChannelProvider(BigQueryWriteSettings.defaultGrpcTransportProviderBuilder()
+                                       .setChannelConfigurator(builder -> builder.usePlaintext())
+                                       .build())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    BigQueryStorageWriteUtils.writeClientFactory = writeClientFactory;
+    server.shutdownNow();
+  }
+
+  @Test
+  public void testWriteAndCommit() throws Exception {
+    Path manifest = new Path(TMP_FOLDER.newFolder().getAbsolutePath(), "part-m-00000.stream");
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    BigQueryStorageWriteRecordWriter writer = new BigQueryStorageWriteRecordWriter(context, TABLE, manifest, SCHEMA);
+    for (long i = 0; i < 10; i++) {
+      writer.write(StructuredRecord.builder(SCHEMA).set("id", i).set("name", "name" + i).build(),
+                   NullWritable.get());
+    }
+    writer.close(context);
+
+    List<String> streams = BigQueryStorageWriteUtils.readStreamManifests(
+      conf, Collections.singletonList(manifest.toString()));
+    Assert.assertEquals(1, streams.size());
+    String stream = streams.get(0);
+    Assert.assertTrue(stream.startsWith("projects/project/datasets/dataset/tables/table/streams/"));
+    Assert.assertTrue(service.finalized.contains(stream));
+    Assert.assertTrue(service.committed.isEmpty());
+
+    List<DynamicMessage> rows = service.getRows(stream, BigQueryRecordToProto.getDescriptor(SCHEMA));
+    Assert.assertEquals(10, rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      DynamicMessage row = rows.get(i);
+      Assert.assertEquals((long) i, row.getField(row.getDescriptorForType().findFieldByName("id")));
+      Assert.assertEquals("name" + i, row.getField(row.getDescriptorForType().findFieldByName("name")));
+    }
+
+    try (BigQueryWriteClient client = BigQueryStorageWriteUtils.getWriteClient(conf)) {
+      BatchCommitWriteStreamsResponse response = client.batchCommitWriteStreams(
+        BatchCommitWriteStreamsRequest.newBuilder()
+          .setParent(BigQueryStorageWriteUtils.getTableName(TABLE))
+          .addAllWriteStreams(streams)
+          .build());
+      Assert.assertTrue(response.hasCommitTime());
+    }
+    Assert.assertEquals(streams, service.committed);
+  }
+
+  @Test
+  public void testLargeWriteIsSplitIntoMultipleAppends() throws Exception {
+    Path manifest = new Path(TMP_FOLDER.newFolder().getAbsolutePath(), "part-m-00000.stream");
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    BigQueryStorageWriteRecordWriter writer = new BigQueryStorageWriteRecordWriter(context, TABLE, manifest, SCHEMA);
+    char[] chars = new char[1024 * 1024];
+    Arrays.fill(chars, 'a');
+    String value = new String(chars);
+    for (long i = 0; i < 12; i++) {
+      writer.write(StructuredRecord.builder(SCHEMA).set("id", i).set("name", value).build(), NullWritable.get());
+    }
+    writer.close(context);
+
+    String stream = BigQueryStorageWriteUtils.readStreamManifests(
+      conf, Collections.singletonList(manifest.toString())).get(0);
+    Assert.assertEquals(12, service.getRows(stream, BigQueryRecordToProto.getDescriptor(SCHEMA)).size());
+    Assert.assertEquals(3, service.appends.get());
+  }
+
+  @Test
+  public void testFailedAppendClosesStream() throws Exception {
+    service.failAppends = true;
+    File dir = TMP_FOLDER.newFolder();
+    Path manifest = new Path(dir.getAbsolutePath(), "part-m-00000.stream");
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    BigQueryStorageWriteRecordWriter writer = new BigQueryStorageWriteRecordWriter(context, TABLE, manifest, SCHEMA);
+    writer.write(StructuredRecord.builder(SCHEMA).set("id", 1L).build(), NullWritable.get());
+    try {
+      writer.close(context);
+      Assert.fail("Expected the failed append to fail the writer");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("Append failed"));
+    }
+
+    // The connection of the stream is closed, and the stream is neither finalized nor part of the output
+    Assert.assertEquals(1, service.closedConnections.get());
+    Assert.assertTrue(service.finalized.isEmpty());
+    Assert.assertFalse(new File(dir, "part-m-00000.stream").exists());
+  }
+
+  @Test
+  public void testNoRecordsNoStream() throws Exception {
+    File dir = TMP_FOLDER.newFolder();
+    Path manifest = new Path(dir.getAbsolutePath(), "part-m-00000.stream");
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    new BigQueryStorageWriteRecordWriter(context, TABLE, manifest, SCHEMA).close(context);
+
+    Assert.assertFalse(new File(dir, "part-m-00000.stream").exists());
+    Assert.assertTrue(service.streams.isEmpty());
+  }
+
+  @Test
+  public void testUseStagingTable() {
+    Configuration conf = new Configuration();
+    conf.set(BigQueryConstants.CONFIG_OPERATION, Operation.INSERT.name());
+    Assert.assertFalse(BigQueryStorageWriteUtils.useStagingTable(conf));
+
+    conf.set(BigQueryConstants.CONFIG_OPERATION, Operation.UPSERT.name());
+    Assert.assertFalse(BigQueryStorageWriteUtils.useStagingTable(conf));
+    conf.setBoolean(BigQueryConstants.CONFIG_DESTINATION_TABLE_EXISTS, true);
+    Assert.assertTrue(BigQueryStorageWriteUtils.useStagingTable(conf));
+
+    conf.set(BigQueryConstants.CONFIG_OPERATION, Operation.UPDATE.name());
+    Assert.assertTrue(BigQueryStorageWriteUtils.useStagingTable(conf));
+
+    conf.set(BigQueryConstants.CONFIG_OPERATION, Operation.INSERT.name());
+    Assert.assertFalse(BigQueryStorageWriteUtils.useStagingTable(conf));
+    conf.setBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, true);
+    Assert.assertTrue(BigQueryStorageWriteUtils.useStagingTable(conf));
+
+    conf.set(BigQueryConstants.CONFIG_JOB_ID, "1234-abcd");
+    Assert.assertEquals("table_1234_abcd",
+                        BigQueryStorageWriteUtils.getStreamTableReference(conf, TABLE).getTableId());
+  }
+
+  /**
+   * Minimal in-memory implementation of the BigQuery Storage Write API for pending streams.
+   */
+  private static class FakeBigQueryWrite extends BigQueryWriteGrpc.BigQueryWriteImplBase {
+    private final Map<String, List<ByteString>> streams = new ConcurrentHashMap<>();
+    private final List<String> finalized = new CopyOnWriteArrayList<>();
+    private final List<String> committed = new CopyOnWriteArrayList<>();
+    private final AtomicInteger appends = new AtomicInteger();
+    private final AtomicInteger closedConnections = new AtomicInteger();
+    private volatile boolean failAppends;
+
+    List<DynamicMessage> getRows(String stream, com.google.protobuf.Descriptors.Descriptor descriptor)
+      throws IOException {
+      List<DynamicMessage> rows = new ArrayList<>();
+      for (ByteString row : streams.get(stream)) {
+        rows.add(DynamicMessage.parseFrom(descriptor, row));
+      }
+      return rows;
+    }
+
+    @Override
+    public void createWriteStream(CreateWriteStreamRequest request, StreamObserver<WriteStream> responseObserver) {
+      String name = String.format("%s/streams/%d", request.getParent(), streams.size());
+      streams.put(name, new CopyOnWriteArrayList<>());
+      responseObserver.onNext(request.getWriteStream().toBuilder().setName(name).build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<AppendRowsRequest> appendRows(StreamObserver<AppendRowsResponse> responseObserver) {
+      return new StreamObserver<AppendRowsRequest>() {
+        private String stream;
+
+        @Override
+        public void onNext(AppendRowsRequest request) {
+          // Only the first request of a connection carries the stream name
+          if (!request.getWriteStream().isEmpty()) {
+            stream = request.getWriteStream();
+          }
+          if (failAppends) {
+            responseObserver.onNext(AppendRowsResponse.newBuilder()
+                                      .setError(Status.newBuilder().setCode(3).setMessage("Append failed"))
+                                      .build());
+            return;
+          }
+          List<ByteString> rows = streams.get(stream);
+          long offset = rows.size();
+          rows.addAll(request.getProtoRows().getRows().getSerializedRowsList());
+          appends.incrementAndGet();
+          responseObserver.onNext(AppendRowsResponse.newBuilder()
+                                    .setAppendResult(AppendRowsResponse.AppendResult.newBuilder()
+                                                       .setOffset(Int64Value.of(offset)))
+                                    .build());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          // no-op
+        }
+
+        @Override
+        public void onCompleted() {
+          closedConnections.incrementAndGet();
+          responseObserver.onCompleted();
+        }
+      };
+    }
+
+    @Override
+    public void finalizeWriteStream(FinalizeWriteStreamRequest request,
+                                    StreamObserver<FinalizeWriteStreamResponse> responseObserver) {
+      finalized.add(request.getName());
+      responseObserver.onNext(FinalizeWriteStreamResponse.newBuilder()
+                                .setRowCount(streams.get(request.getName()).size()).build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void batchCommitWriteStreams(BatchCommitWriteStreamsRequest request,
+                                        StreamObserver<BatchCommitWriteStreamsResponse> responseObserver) {
+      committed.addAll(request.getWriteStreamsList());
+      responseObserver.onNext(BatchCommitWriteStreamsResponse.newBuilder()
+                                .setCommitTime(Timestamp.newBuilder().setSeconds(System.currentTimeMillis() / 1000))
+                                .build());
+      responseObserver.onCompleted();
+    }
+  }
+}
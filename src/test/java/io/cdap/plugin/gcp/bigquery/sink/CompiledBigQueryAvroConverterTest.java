@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.AvroKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CompiledBigQueryAvroConverterTest {
+
+  private static final Schema NESTED_SCHEMA = Schema.recordOf(
+    "nested",
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("score", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))));
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("flag", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("count", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("ratio", Schema.of(Schema.Type.FLOAT)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("payload", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+    Schema.Field.of("date", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("ts", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))),
+    Schema.Field.of("amount", Schema.nullableOf(Schema.decimalOf(10, 2))),
+    Schema.Field.of("tags", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.STRING)))),
+    Schema.Field.of("attributes", Schema.nullableOf(Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                 Schema.of(Schema.Type.LONG)))),
+    Schema.Field.of("nested", Schema.nullableOf(NESTED_SCHEMA)),
+    Schema.Field.of("nestedList", Schema.arrayOf(NESTED_SCHEMA)));
+
+  @Test
+  public void testSameOutputAsBigQueryAvroConverter() throws Exception {
+    StructuredRecord full = StructuredRecord.builder(SCHEMA)
+      .set("id", 1L)
+      .set("flag", true)
+      .set("count", 5)
+      .set("ratio", 0.5f)
+      .set("name", "test")
+      .set("payload", "bytes".getBytes(StandardCharsets.UTF_8))
+      .setDate("date", LocalDate.of(2022, 1, 31))
+      .setTimestamp("ts", ZonedDateTime.of(2022, 1, 31, 10, 20, 30, 0, ZoneOffset.UTC))
+      .setDecimal("amount", new BigDecimal("12.34"))
+      .set("tags", Arrays.asList("a", "b"))
+      .set("attributes", ImmutableMap.of("x", 1L))
+      .set("nested", StructuredRecord.builder(NESTED_SCHEMA).set("name", "n").set("score", 1.5d).build())
+      .set("nestedList", Collections.singletonList(StructuredRecord.builder(NESTED_SCHEMA).set("name", "l").build()))
+      .build();
+    StructuredRecord sparse = StructuredRecord.builder(SCHEMA)
+      .set("id", 2L)
+      .set("flag", false)
+      .set("ratio", 1.5f)
+      .set("tags", new String[] {"c"})
+      .set("nestedList", Collections.emptyList())
+      .build();
+
+    BigQueryAvroConverter expectedConverter = new BigQueryAvroConverter();
+    CompiledBigQueryAvroConverter converter = new CompiledBigQueryAvroConverter(false);
+    for (StructuredRecord record : Arrays.asList(full, sparse, full)) {
+      Assert.assertEquals(expectedConverter.transform(record, SCHEMA).datum(),
+                          converter.transform(record, SCHEMA).datum());
+      Assert.assertEquals(expectedConverter.transform(record, null).datum(),
+                          converter.transform(record, null).datum());
+    }
+  }
+
+  @Test
+  public void testOutputSchemaSubset() throws Exception {
+    Schema outputSchema = Schema.recordOf(
+      "record",
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    StructuredRecord record = StructuredRecord.builder(SCHEMA)
+      .set("id", 3L)
+      .set("flag", true)
+      .set("ratio", 1f)
+      .set("name", "subset")
+      .set("nestedList", Collections.emptyList())
+      .build();
+
+    GenericRecord result = new CompiledBigQueryAvroConverter(false).transform(record, outputSchema).datum();
+    Assert.assertEquals(new BigQueryAvroConverter().transform(record, outputSchema).datum(), result);
+    Assert.assertEquals("subset", result.get(0));
+    Assert.assertEquals(3L, result.get(1));
+  }
+
+  @Test
+  public void testRecordReuse() throws Exception {
+    CompiledBigQueryAvroConverter converter = new CompiledBigQueryAvroConverter(true);
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+                                    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+    AvroKey<GenericRecord> first = converter.transform(
+      StructuredRecord.builder(schema).set("id", 1L).set("name", "first").build(), schema);
+    GenericRecord firstRecord = first.datum();
+    AvroKey<GenericRecord> second = converter.transform(StructuredRecord.builder(schema).set("id", 2L).build(), schema);
+
+    Assert.assertSame(first, second);
+    Assert.assertSame(firstRecord, second.datum());
+    Assert.assertEquals(2L, second.datum().get("id"));
+    // Values of the previous record must not leak into the next one
+    Assert.assertNull(second.datum().get("name"));
+  }
+
+  @Test
+  public void testMissingInputField() {
+    Schema outputSchema = Schema.recordOf("record", Schema.Field.of("missing", Schema.of(Schema.Type.STRING)));
+    StructuredRecord record = StructuredRecord.builder(NESTED_SCHEMA).set("name", "n").build();
+    try {
+      new CompiledBigQueryAvroConverter(false).transform(record, outputSchema);
+      Assert.fail("Expected conversion to fail");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("Input record does not contain the missing field.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testNullForNonNullableField() {
+    Schema inputSchema = Schema.recordOf("record",
+                                         Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    Schema outputSchema = Schema.recordOf("record", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    StructuredRecord record = StructuredRecord.builder(inputSchema).build();
+    try {
+      new CompiledBigQueryAvroConverter(false).transform(record, outputSchema);
+      Assert.fail("Expected conversion to fail");
+    } catch (AvroRuntimeException e) {
+      Assert.assertTrue(e.getMessage().contains("does not accept null values"));
+    }
+  }
+
+  @Test
+  public void testDatetimeIsAnnotatedString() throws Exception {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("dt", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))));
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .setDateTime("dt", LocalDateTime.of(2022, 1, 31, 10, 20, 30, 123456000))
+      .build();
+
+    GenericRecord result = new CompiledBigQueryAvroConverter(false).transform(record, schema).datum();
+    // BigQuery loads strings with the datetime logical type into DATETIME columns
+    org.apache.avro.Schema fieldSchema = result.getSchema().getField("dt").schema().getTypes().get(0);
+    Assert.assertEquals(org.apache.avro.Schema.Type.STRING, fieldSchema.getType());
+    Assert.assertEquals("datetime", fieldSchema.getProp("logicalType"));
+    Assert.assertEquals("2022-01-31T10:20:30.123456", result.get("dt"));
+  }
+}
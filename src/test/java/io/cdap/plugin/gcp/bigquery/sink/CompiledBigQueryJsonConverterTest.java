@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.cloud.hadoop.io.bigquery.BigQueryFileFormat;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CompiledBigQueryJsonConverterTest {
+
+  private static final Schema NESTED_SCHEMA = Schema.recordOf(
+    "nested",
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("score", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))));
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("count", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("flag", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("ratio", Schema.nullableOf(Schema.of(Schema.Type.FLOAT))),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("payload", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+    Schema.Field.of("date", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("timeMillis", Schema.nullableOf(Schema.of(Schema.LogicalType.TIME_MILLIS))),
+    Schema.Field.of("timeMicros", Schema.nullableOf(Schema.of(Schema.LogicalType.TIME_MICROS))),
+    Schema.Field.of("tsMillis", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MILLIS))),
+    Schema.Field.of("tsMicros", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))),
+    Schema.Field.of("datetime", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))),
+    Schema.Field.of("amount", Schema.nullableOf(Schema.decimalOf(38, 9))),
+    Schema.Field.of("integral", Schema.nullableOf(Schema.decimalOf(10, 0))),
+    Schema.Field.of("tags", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.STRING)))),
+    Schema.Field.of("nested", Schema.nullableOf(NESTED_SCHEMA)),
+    Schema.Field.of("nestedList", Schema.nullableOf(Schema.arrayOf(NESTED_SCHEMA))));
+
+  @Test
+  public void testSameOutputAsBigQueryJsonConverter() throws Exception {
+    List<StructuredRecord> records = new ArrayList<>();
+    records.add(StructuredRecord.builder(SCHEMA).set("id", 0L).build());
+    long[] timestamps = {0L, -1L, 1L, -86_400_000_001L, 1_643_624_430_123_456L, -62_135_596_800_000_000L,
+      253_402_300_799_999_999L};
+    int[] dates = {0, -1, 19_023, -719_162, 2_932_896, -719_163, 2_932_897};
+    String[] decimals = {"0.000000000", "12.340000000", "-12.340000000", "0.000000001", "-0.000000001",
+      "9223372036.854775807", "-9223372036.854775808", "12345678901234567890.123456789"};
+    String[] strings = {"", "plain", "quote \" backslash \\ slash /", "\t\b\n\r\f \u0000\u001f\u007f",
+      "é€😀", "  ", "lone \ud83d surrogate", "<html>&'="};
+    for (int i = 0; i < timestamps.length; i++) {
+      long ts = timestamps[i];
+      records.add(StructuredRecord.builder(SCHEMA)
+                    .set("id", ts)
+                    .set("count", -i)
+                    .set("flag", i % 2 == 0)
+                    .set("ratio", i / 3f)
+                    .set("name", strings[i])
+                    .set("payload", Arrays.copyOf("payload".getBytes(StandardCharsets.UTF_8), i))
+                    .set("date", dates[i])
+                    .set("timeMillis", (int) Math.floorMod(ts / 1000, 86_400_000L))
+                    .set("timeMicros", Math.floorMod(ts, 86_400_000_000L))
+                    .set("tsMillis", ts / 1000)
+                    .set("tsMicros", ts)
+                    .set("datetime", "2022-01-31T10:20:30." + i)
+                    .setDecimal("amount", new BigDecimal(decimals[i]))
+                    .setDecimal("integral", new BigDecimal(i - 3))
+                    .set("tags", i % 2 == 0 ? Arrays.asList(strings) : new String[] {strings[i]})
+                    .set("nested", StructuredRecord.builder(NESTED_SCHEMA).set("name", strings[i + 1])
+                      .set("score", (double) ts).build())
+                    .set("nestedList", Collections.nCopies(i, StructuredRecord.builder(NESTED_SCHEMA)
+                      .set("name", strings[i]).build()))
+                    .build());
+    }
+    records.add(StructuredRecord.builder(SCHEMA)
+                  .set("id", Long.MIN_VALUE)
+                  .set("payload", ByteBuffer.wrap("abcdef".getBytes(StandardCharsets.UTF_8), 1, 4).slice())
+                  .setDecimal("amount", new BigDecimal(decimals[7]))
+                  .build());
+
+    CompiledBigQueryJsonConverter converter = new CompiledBigQueryJsonConverter();
+    BigQueryJsonConverter expectedConverter = new BigQueryJsonConverter();
+    for (StructuredRecord record : records) {
+      // Compare the bytes written by the text output format, which replaces unpaired surrogates
+      Assert.assertArrayEquals(expectedConverter.transform(record, SCHEMA).toString().getBytes(StandardCharsets.UTF_8),
+                               getBytes(converter.transform(record, SCHEMA)));
+      Assert.assertArrayEquals(expectedConverter.transform(record, null).toString().getBytes(StandardCharsets.UTF_8),
+                               getBytes(converter.transform(record, null)));
+    }
+  }
+
+  @Test
+  public void testOutputSchemaSubset() throws Exception {
+    Schema outputSchema = Schema.recordOf("record",
+                                          Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                          Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("id", 3L).set("name", "subset").build();
+    Assert.assertEquals("{\"id\":3,\"name\":\"subset\"}",
+                        new CompiledBigQueryJsonConverter().transform(record, outputSchema).toString());
+  }
+
+  @Test
+  public void testTextReuse() throws Exception {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    CompiledBigQueryJsonConverter converter = new CompiledBigQueryJsonConverter();
+    Text first = converter.transform(StructuredRecord.builder(schema).set("name", "a longer value").build(), schema);
+    Text second = converter.transform(StructuredRecord.builder(schema).set("name", "short").build(), schema);
+    Assert.assertSame(first, second);
+    Assert.assertEquals("{\"name\":\"short\"}", second.toString());
+  }
+
+  @Test
+  public void testJsonStagingFiles() throws Exception {
+    // Records staged as newline delimited JSON are encoded by this converter
+    Schema schema = Schema.recordOf("record", Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+                                    Schema.Field.of("datetime", Schema.of(Schema.LogicalType.DATETIME)));
+    List<String> lines = new ArrayList<>();
+    RecordWriter<Text, NullWritable> delegate = new RecordWriter<Text, NullWritable>() {
+      @Override
+      public void write(Text key, NullWritable value) {
+        lines.add(key.toString());
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) {
+      }
+    };
+    BigQueryRecordWriter writer = new BigQueryRecordWriter(delegate, BigQueryFileFormat.NEWLINE_DELIMITED_JSON,
+                                                           schema);
+    writer.write(StructuredRecord.builder(schema).set("id", 1L)
+                   .setDateTime("datetime", LocalDateTime.of(2022, 1, 31, 10, 20, 30)).build(), NullWritable.get());
+    writer.close(null);
+    Assert.assertEquals(Collections.singletonList("{\"id\":1,\"datetime\":\"2022-01-31T10:20:30\"}"), lines);
+  }
+
+  @Test
+  public void testNullArrayElement() {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+    StructuredRecord record = StructuredRecord.builder(schema).set("tags", Arrays.asList("a", null)).build();
+    try {
+      new CompiledBigQueryJsonConverter().transform(record, schema);
+      Assert.fail("Expected conversion to fail");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("Field 'tags' contains null values in its array, which is not allowed by BigQuery.",
+                          e.getMessage());
+    }
+  }
+
+  @Test
+  public void testNaNIsRejected() {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("value", Schema.of(Schema.Type.DOUBLE)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("value", Double.NaN).build();
+    try {
+      new CompiledBigQueryJsonConverter().transform(record, schema);
+      Assert.fail("Expected conversion to fail");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("JSON forbids NaN and infinities: NaN", e.getMessage());
+    }
+  }
+
+  private static byte[] getBytes(Text text) {
+    return Arrays.copyOf(text.getBytes(), text.getLength());
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DeduplicatingRecordWriterTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("region", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("version", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("score", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("amount", Schema.nullableOf(Schema.decimalOf(10, 2))),
+    Schema.Field.of("payload", Schema.nullableOf(Schema.of(Schema.Type.BYTES))));
+
+  @Test
+  public void testKeepsFirstRecordInDedupeOrder() throws Exception {
+    CollectingRecordWriter delegate = new CollectingRecordWriter();
+    DeduplicatingRecordWriter writer = new DeduplicatingRecordWriter(
+      delegate, Arrays.asList("id", "region"), Arrays.asList("version desc", " name ASC"), 100);
+
+    write(writer, record(1, "us").set("version", 1L).set("name", "first"));
+    write(writer, record(1, "us").set("version", 3L).set("name", "b"));
+    write(writer, record(1, "us").set("version", 3L).set("name", "a"));
+    write(writer, record(1, "us").set("version", 2L).set("name", "c"));
+    write(writer, record(1, "eu").set("version", 1L).set("name", "other region"));
+    // Nulls come last in descending order
+    write(writer, record(1, "eu").set("name", "null version"));
+    write(writer, record(1, null).set("version", 1L).set("name", "null region"));
+    write(writer, record(1, null).set("version", 2L).set("name", "null region, later version"));
+    writer.close(null);
+
+    Assert.assertEquals(Arrays.asList("a", "other region", "null region, later version"), delegate.getNames());
+    Assert.assertTrue(delegate.closed);
+  }
+
+  @Test
+  public void testKeepsLastRecordWithoutDedupeBy() throws Exception {
+    CollectingRecordWriter delegate = new CollectingRecordWriter();
+    DeduplicatingRecordWriter writer = new DeduplicatingRecordWriter(
+      delegate, Collections.singletonList("id"), Collections.emptyList(), 100);
+
+    for (int i = 0; i < 10; i++) {
+      write(writer, record(i % 3, "us").set("name", "record " + i));
+    }
+    writer.close(null);
+
+    Assert.assertEquals(Arrays.asList("record 7", "record 8", "record 9"), delegate.getNames());
+  }
+
+  @Test
+  public void testWritesLeastRecentlyUsedKeyWhenBufferIsFull() throws Exception {
+    CollectingRecordWriter delegate = new CollectingRecordWriter();
+    DeduplicatingRecordWriter writer = new DeduplicatingRecordWriter(
+      delegate, Collections.singletonList("id"), Collections.emptyList(), 2);
+
+    write(writer, record(1, "us").set("name", "1a"));
+    write(writer, record(2, "us").set("name", "2a"));
+    write(writer, record(1, "us").set("name", "1b"));
+    // Key 2 is the least recently written one
+    write(writer, record(3, "us").set("name", "3a"));
+    Assert.assertEquals(Collections.singletonList("2a"), delegate.getNames());
+    write(writer, record(2, "us").set("name", "2b"));
+    Assert.assertEquals(Arrays.asList("2a", "1b"), delegate.getNames());
+    writer.close(null);
+
+    Assert.assertEquals(Arrays.asList("2a", "1b", "3a", "2b"), delegate.getNames());
+  }
+
+  @Test
+  public void testBigQueryOrdering() throws Exception {
+    // NaN comes after null and before every number
+    assertFirst("score", null, Double.NaN);
+    assertFirst("score", Double.NaN, Double.NEGATIVE_INFINITY);
+    assertFirst("score", -1.5d, 0d);
+    // Strings are ordered by code point, so supplementary characters come after all other characters
+    assertFirst("name", "\ufffd", "\ud83d\ude00");
+    assertFirst("name", "ab", "abc");
+    // Bytes are ordered as unsigned values
+    assertFirst("payload", new byte[] {1}, new byte[] {(byte) 0x80});
+    assertFirst("payload", new byte[] {1}, new byte[] {1, 0});
+  }
+
+  @Test
+  public void testDecimalOrdering() throws Exception {
+    CollectingRecordWriter delegate = new CollectingRecordWriter();
+    DeduplicatingRecordWriter writer = new DeduplicatingRecordWriter(
+      delegate, Collections.singletonList("id"), Collections.singletonList("amount asc"), 100);
+
+    write(writer, record(1, "us").setDecimal("amount", new BigDecimal("1.50")).set("name", "larger"));
+    write(writer, record(1, "us").setDecimal("amount", new BigDecimal("-2.00")).set("name", "smaller"));
+    writer.close(null);
+
+    Assert.assertEquals(Collections.singletonList("smaller"), delegate.getNames());
+  }
+
+  /**
+   * Asserts that a record with the first value is chosen over a record with the second value, in ascending order.
+   */
+  private static void assertFirst(String field, Object first, Object second) throws Exception {
+    for (boolean firstWrittenFirst : new boolean[] {true, false}) {
+      CollectingRecordWriter delegate = new CollectingRecordWriter();
+      DeduplicatingRecordWriter writer = new DeduplicatingRecordWriter(
+        delegate, Collections.singletonList("id"), Collections.singletonList(field + " asc"), 100);
+      StructuredRecord.Builder firstRecord = record(1, "us").set(field, first).set("region", "first");
+      StructuredRecord.Builder secondRecord = record(1, "us").set(field, second).set("region", "second");
+      write(writer, firstWrittenFirst ? firstRecord : secondRecord);
+      write(writer, firstWrittenFirst ? secondRecord : firstRecord);
+      writer.close(null);
+
+      Assert.assertEquals(1, delegate.records.size());
+      Assert.assertEquals("first", delegate.records.get(0).get("region"));
+    }
+  }
+
+  private static StructuredRecord.Builder record(long id, String region) {
+    return StructuredRecord.builder(SCHEMA).set("id", id).set("region", region);
+  }
+
+  private static void write(DeduplicatingRecordWriter writer, StructuredRecord.Builder record) throws Exception {
+    writer.write(record.build(), NullWritable.get());
+  }
+
+  private static class CollectingRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+    private final List<StructuredRecord> records = new ArrayList<>();
+    private boolean closed;
+
+    @Override
+    public void write(StructuredRecord record, NullWritable value) {
+      records.add(record);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) {
+      closed = true;
+    }
+
+    private List<String> getNames() {
+      return records.stream().map(record -> record.<String>get("name")).collect(Collectors.toList());
+    }
+  }
+}
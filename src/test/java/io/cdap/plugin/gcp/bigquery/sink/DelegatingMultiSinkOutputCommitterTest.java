@@ -17,19 +17,29 @@
 package io.cdap.plugin.gcp.bigquery.sink;
 
 import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.JobStatus;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doNothing;
@@ -229,4 +239,69 @@ public class DelegatingMultiSinkOutputCommitterTest {
     Assert.assertTrue(exceptionMessages.contains(message));
     exceptionMessages.remove(message);
   }
+
+  @Test
+  public void testParallelCommitJob() throws Exception {
+    DelegatingMultiSinkOutputCommitter parallelCommitter = createParallelCommitter();
+    parallelCommitter.addCommitterAndSchema(c1, "table1", s1, ctx);
+    parallelCommitter.addCommitterAndSchema(c2, "table2", s2, ctx);
+    parallelCommitter.addCommitterAndSchema(c3, "table3", s3, ctx);
+
+    // Every commit waits for the others to start, which only completes if they run concurrently
+    CountDownLatch started = new CountDownLatch(3);
+    Set<Configuration> configurations = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    for (OutputCommitter c : new OutputCommitter[] {c1, c2, c3}) {
+      doAnswer(invocation -> {
+        configurations.add(((JobContext) invocation.getArgument(0)).getConfiguration());
+        started.countDown();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        return null;
+      }).when(c).commitJob(any());
+    }
+
+    parallelCommitter.commitJob(ctx);
+
+    verify(c1, times(1)).commitJob(any());
+    verify(c2, times(1)).commitJob(any());
+    verify(c3, times(1)).commitJob(any());
+    // Each table is committed with its own copy of the configuration
+    Assert.assertEquals(3, configurations.size());
+    Assert.assertFalse(configurations.contains(ctx.getConfiguration()));
+  }
+
+  @Test
+  public void testParallelCommitTaskCollectsExceptions() throws Exception {
+    DelegatingMultiSinkOutputCommitter parallelCommitter = createParallelCommitter();
+    parallelCommitter.addCommitterAndSchema(c1, "table1", s1, ctx);
+    parallelCommitter.addCommitterAndSchema(c2, "table2", s2, ctx);
+    parallelCommitter.addCommitterAndSchema(c3, "table3", s3, ctx);
+
+    doThrow(new IOException("e1")).when(c1).commitTask(any());
+    doThrow(new IOException("e3")).when(c3).commitTask(any());
+
+    IOException expected = null;
+    try {
+      parallelCommitter.commitTask(ctx);
+    } catch (IOException ex) {
+      expected = ex;
+    }
+
+    // The failures do not prevent the other tables from being committed
+    verify(c2, times(1)).commitTask(any());
+    Assert.assertNotNull(expected);
+    Assert.assertEquals(1, expected.getSuppressed().length);
+    Set<String> exceptionMessages = new HashSet<>();
+    exceptionMessages.add(expected.getMessage());
+    exceptionMessages.add(expected.getSuppressed()[0].getMessage());
+    Assert.assertEquals(new HashSet<>(Arrays.asList("e1", "e3")), exceptionMessages);
+  }
+
+  private DelegatingMultiSinkOutputCommitter createParallelCommitter() throws IOException {
+    DelegatingMultiSinkOutputCommitter parallelCommitter =
+      spy(new DelegatingMultiSinkOutputCommitter("project", "ds", "bucket", "path", 4));
+    doNothing().when(parallelCommitter).configureContext(any(), anyString());
+    when(ctx.getConfiguration()).thenReturn(new Configuration());
+    when(ctx.getTaskAttemptID()).thenReturn(new TaskAttemptID("job", 1, TaskType.REDUCE, 0, 0));
+    return parallelCommitter;
+  }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import com.google.cloud.bigquery.DatasetId;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DelegatingMultiSinkRecordWriterTest {
+
+  private static final Schema SCHEMA = Schema.recordOf("record",
+                                                       Schema.Field.of("tablename", Schema.of(Schema.Type.STRING)));
+
+  private TaskAttemptContext context;
+  private DelegatingMultiSinkOutputCommitter committer;
+  private Map<String, List<RecordWriter<StructuredRecord, NullWritable>>> delegates;
+  private List<Integer> delegateCounts;
+
+  @Before
+  public void setUp() {
+    context = mock(TaskAttemptContext.class);
+    when(context.getConfiguration()).thenReturn(new Configuration());
+    committer = mock(DelegatingMultiSinkOutputCommitter.class);
+    delegates = new HashMap<>();
+    delegateCounts = new ArrayList<>();
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedWriter() throws Exception {
+    DelegatingMultiSinkRecordWriter writer = createWriter(2);
+
+    write(writer, "t1", "t2", "t1", "t3", "t2");
+
+    // t2 was the least recently used writer when t3 arrived, and t1 when t2 came back
+    Assert.assertEquals(1, delegates.get("t1").size());
+    Assert.assertEquals(2, delegates.get("t2").size());
+    Assert.assertEquals(1, delegates.get("t3").size());
+    verify(delegates.get("t1").get(0), times(1)).close(context);
+    verify(delegates.get("t2").get(0), times(1)).close(context);
+    verify(delegates.get("t2").get(0), times(1)).write(any(), any());
+    verify(delegates.get("t3").get(0), never()).close(any());
+    verify(delegates.get("t1").get(0), times(2)).write(any(), any());
+    // The reopened writer of t2 is the second one created for the table
+    Assert.assertEquals(0, (int) delegateCounts.get(1));
+    Assert.assertEquals(1, (int) delegateCounts.get(3));
+
+    Assert.assertEquals(2, writer.getMetrics().getEvictedWriters());
+    Assert.assertEquals(2, writer.getMetrics().getPeakOpenWriters());
+
+    writer.close(context);
+    verify(delegates.get("t2").get(1), times(1)).close(context);
+    verify(delegates.get("t3").get(0), times(1)).close(context);
+    verify(delegates.get("t1").get(0), times(1)).close(context);
+    verify(committer, times(1)).commitTask(context);
+    verify(committer, times(1)).commitJob(context);
+  }
+
+  @Test
+  public void testUnboundedWriters() throws Exception {
+    DelegatingMultiSinkRecordWriter writer = createWriter(Integer.MAX_VALUE);
+
+    write(writer, "t1", "t2", "t3", "t1", "t2", "t3");
+
+    for (List<RecordWriter<StructuredRecord, NullWritable>> tableDelegates : delegates.values()) {
+      Assert.assertEquals(1, tableDelegates.size());
+      verify(tableDelegates.get(0), times(2)).write(any(), any());
+      verify(tableDelegates.get(0), never()).close(any());
+    }
+    Assert.assertEquals(0, writer.getMetrics().getEvictedWriters());
+    Assert.assertEquals(3, writer.getMetrics().getPeakOpenWriters());
+  }
+
+  @SuppressWarnings("unchecked")
+  private DelegatingMultiSinkRecordWriter createWriter(int maxOpenWriters) throws Exception {
+    DelegatingMultiSinkRecordWriter writer = spy(new DelegatingMultiSinkRecordWriter(
+      context, "tablename", "bucket", "path", DatasetId.of("project", "dataset"), committer, maxOpenWriters, null));
+    doAnswer(invocation -> {
+      RecordWriter<StructuredRecord, NullWritable> delegate = mock(RecordWriter.class);
+      delegates.computeIfAbsent(invocation.getArgument(0), table -> new ArrayList<>()).add(delegate);
+      delegateCounts.add(invocation.getArgument(2));
+      return delegate;
+    }).when(writer).createRecordWriterDelegate(anyString(), any(), anyInt());
+    return writer;
+  }
+
+  private static void write(DelegatingMultiSinkRecordWriter writer, String... tableNames) throws Exception {
+    for (String tableName : tableNames) {
+      writer.write(StructuredRecord.builder(SCHEMA).set("tablename", tableName).build(), NullWritable.get());
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link JsonOutputFormat}, which writes the newline delimited JSON staging files of the BigQuery sinks.
+ */
+public class JsonOutputFormatTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void testRollsOverAtTargetSize() throws Exception {
+    // Every line is 18 bytes long with its newline, so each file is closed after 6 lines
+    List<String> files = writeLines(24, 100);
+    Assert.assertEquals(Arrays.asList("part-r-00000", "part-r-00000-00001", "part-r-00000-00002",
+                                      "part-r-00000-00003"), files);
+  }
+
+  @Test
+  public void testSingleFileWithoutTargetSize() throws Exception {
+    Assert.assertEquals(1, writeLines(20, 0).size());
+  }
+
+  /**
+   * Writes lines through the output format and returns the names of the files in the task work directory, after
+   * checking that they contain every line in order.
+   */
+  private List<String> writeLines(int numLines, long targetFileSize) throws IOException, InterruptedException {
+    File outputDir = new File(tmpFolder.newFolder(), "output");
+    Configuration conf = new Configuration();
+    conf.set(FileOutputFormat.OUTDIR, outputDir.toURI().toString());
+    conf.setLong(BigQueryConstants.CONFIG_STAGING_FILE_SIZE, targetFileSize);
+    TaskAttemptContext context =
+      new TaskAttemptContextImpl(conf, TaskAttemptID.forName("attempt_200707121733_0001_r_000000_0"));
+
+    RecordWriter<Text, NullWritable> writer = new JsonOutputFormat().getRecordWriter(context);
+    for (int i = 0; i < numLines; i++) {
+      writer.write(new Text(String.format("{\"id\":%10d}", i)), NullWritable.get());
+    }
+    writer.close(context);
+
+    List<File> files;
+    try (Stream<java.nio.file.Path> paths = Files.walk(outputDir.toPath())) {
+      files = paths.map(java.nio.file.Path::toFile)
+        .filter(file -> file.isFile() && file.getName().startsWith("part-"))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+    List<String> lines = new ArrayList<>();
+    for (File file : files) {
+      lines.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+    for (int i = 0; i < numLines; i++) {
+      Assert.assertEquals(String.format("{\"id\":%10d}", i), lines.get(i));
+    }
+    Assert.assertEquals(numLines, lines.size());
+    return files.stream().map(File::getName).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sink;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class PartitionedRecordWriterTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("day", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))));
+
+  @Test
+  public void testGetPartitionId() {
+    Assert.assertEquals("20220315", PartitionedRecordWriter.getPartitionId(
+      Schema.LogicalType.DATE, (int) LocalDate.of(2022, 3, 15).toEpochDay()));
+    Assert.assertEquals(PartitionedRecordWriter.NULL_PARTITION,
+                        PartitionedRecordWriter.getPartitionId(Schema.LogicalType.DATE, null));
+    Assert.assertEquals("19600101", PartitionedRecordWriter.getPartitionId(
+      Schema.LogicalType.DATE, (int) LocalDate.of(1960, 1, 1).toEpochDay()));
+    Assert.assertEquals(PartitionedRecordWriter.UNPARTITIONED, PartitionedRecordWriter.getPartitionId(
+      Schema.LogicalType.DATE, (int) LocalDate.of(1959, 12, 31).toEpochDay()));
+    Assert.assertEquals(PartitionedRecordWriter.UNPARTITIONED, PartitionedRecordWriter.getPartitionId(
+      Schema.LogicalType.DATE, (int) LocalDate.of(2160, 1, 1).toEpochDay()));
+
+    // Timestamps are partitioned by their UTC date, also before the epoch
+    long millis = LocalDateTime.of(1969, 12, 31, 23, 59, 59).toInstant(ZoneOffset.UTC).toEpochMilli();
+    Assert.assertEquals("19691231", PartitionedRecordWriter.getPartitionId(Schema.LogicalType.TIMESTAMP_MILLIS,
+                                                                           millis));
+    Assert.assertEquals("19691231", PartitionedRecordWriter.getPartitionId(Schema.LogicalType.TIMESTAMP_MICROS,
+                                                                           TimeUnit.MILLISECONDS.toMicros(millis)));
+    Assert.assertEquals("19700101", PartitionedRecordWriter.getPartitionId(Schema.LogicalType.TIMESTAMP_MICROS,
+                                                                           0L));
+  }
+
+  @Test
+  public void testGetPartitionIdOfFile() {
+    Assert.assertEquals("20220315", PartitionedRecordWriter.getPartitionIdOfFile(
+      "gs://bucket/path/partition_20220315-r-00000.avro"));
+    Assert.assertEquals("20220315", PartitionedRecordWriter.getPartitionIdOfFile(
+      "gs://bucket/path/partition_20220315-2-m-00001-00003.avro"));
+    Assert.assertEquals(PartitionedRecordWriter.NULL_PARTITION, PartitionedRecordWriter.getPartitionIdOfFile(
+      "gs://bucket/path/partition___NULL__-r-00000.json"));
+    Assert.assertEquals(PartitionedRecordWriter.UNPARTITIONED, PartitionedRecordWriter.getPartitionIdOfFile(
+      "partition___UNPARTITIONED__-r-00000"));
+    Assert.assertNull(PartitionedRecordWriter.getPartitionIdOfFile("gs://bucket/partition_20220315/part-r-00000"));
+    Assert.assertNull(PartitionedRecordWriter.getPartitionIdOfFile("gs://bucket/path/partition_2022-r-00000"));
+  }
+
+  @Test
+  public void testWritesPartitionsToSeparateFiles() throws Exception {
+    Map<String, CollectingRecordWriter> writers = new LinkedHashMap<>();
+    PartitionedRecordWriter writer = new PartitionedRecordWriter(null, "day", Schema.LogicalType.DATE, outputName -> {
+      CollectingRecordWriter partitionWriter = new CollectingRecordWriter();
+      writers.put(outputName, partitionWriter);
+      return partitionWriter;
+    }, 2);
+
+    write(writer, 1, LocalDate.of(2022, 1, 1));
+    write(writer, 2, LocalDate.of(2022, 1, 2));
+    write(writer, 3, LocalDate.of(2022, 1, 1));
+    // The writer of 2022-01-02 is the least recently used one
+    write(writer, 4, null);
+    Assert.assertTrue(writers.get("partition_20220102").closed);
+    write(writer, 5, LocalDate.of(2022, 1, 2));
+    Assert.assertTrue(writers.get("partition_20220101").closed);
+    writer.close(null);
+
+    Assert.assertEquals(Arrays.asList("partition_20220101", "partition_20220102", "partition___NULL__",
+                                      "partition_20220102-1"), new ArrayList<>(writers.keySet()));
+    Assert.assertEquals(Arrays.asList(1L, 3L), writers.get("partition_20220101").ids);
+    Assert.assertEquals(Arrays.asList(2L), writers.get("partition_20220102").ids);
+    Assert.assertEquals(Arrays.asList(4L), writers.get("partition___NULL__").ids);
+    Assert.assertEquals(Arrays.asList(5L), writers.get("partition_20220102-1").ids);
+    for (CollectingRecordWriter partitionWriter : writers.values()) {
+      Assert.assertTrue(partitionWriter.closed);
+    }
+  }
+
+  private static void write(PartitionedRecordWriter writer, long id, LocalDate day) throws Exception {
+    writer.write(StructuredRecord.builder(SCHEMA).set("id", id).setDate("day", day).build(), NullWritable.get());
+  }
+
+  private static class CollectingRecordWriter extends RecordWriter<StructuredRecord, NullWritable> {
+    private final List<Long> ids = new ArrayList<>();
+    private boolean closed;
+
+    @Override
+    public void write(StructuredRecord record, NullWritable value) {
+      ids.add(record.get("id"));
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.avro.generic.GenericData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class BigQueryAvroToStructuredTransformerTest {
+
+  // Avro schema of the files exported by BigQuery, which stores dates and times as strings
+  private static final org.apache.avro.Schema AVRO_SCHEMA = new org.apache.avro.Schema.Parser().parse(
+    "{\"type\":\"record\",\"name\":\"Root\",\"fields\":[" +
+      "{\"name\":\"id\",\"type\":\"long\"}," +
+      "{\"name\":\"day\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"time\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"datetime\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}}," +
+      "{\"name\":\"nested\",\"type\":[\"null\",{\"type\":\"record\",\"name\":\"Nested\",\"fields\":[" +
+      "{\"name\":\"name\",\"type\":\"string\"}]}]}]}");
+
+  private static final Schema NESTED_SCHEMA =
+    Schema.recordOf("nested", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+  // The fields are in a different order than in the Avro schema, and the 'missing' field is not in the Avro schema
+  private static final Schema SCHEMA = Schema.recordOf(
+    "output",
+    Schema.Field.of("nested", Schema.nullableOf(NESTED_SCHEMA)),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("datetime", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))),
+    Schema.Field.of("time", Schema.nullableOf(Schema.of(Schema.LogicalType.TIME_MICROS))),
+    Schema.Field.of("day", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("missing", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  @Test
+  public void testTransform() throws Exception {
+    BigQueryAvroToStructuredTransformer transformer = new BigQueryAvroToStructuredTransformer();
+    for (int i = 0; i < 3; i++) {
+      GenericData.Record nested = new GenericData.Record(AVRO_SCHEMA.getField("nested").schema().getTypes().get(1));
+      nested.put("name", "name" + i);
+      GenericData.Record record = new GenericData.Record(AVRO_SCHEMA);
+      record.put("id", (long) i);
+      record.put("day", "2022-03-0" + (i + 1));
+      record.put("time", "12:30:0" + i + ".25");
+      record.put("datetime", "2022-03-01T12:30:0" + i);
+      record.put("tags", Arrays.asList("a", "b" + i));
+      record.put("nested", nested);
+
+      StructuredRecord result = transformer.transform(record, SCHEMA);
+      Assert.assertEquals(Long.valueOf(i), result.get("id"));
+      Assert.assertEquals(LocalDate.of(2022, 3, i + 1), result.getDate("day"));
+      Assert.assertEquals(LocalTime.of(12, 30, i, 250_000_000), result.getTime("time"));
+      Assert.assertEquals("2022-03-01T12:30:0" + i, result.get("datetime"));
+      Assert.assertEquals(Arrays.asList("a", "b" + i), result.get("tags"));
+      Assert.assertEquals("name" + i, result.<StructuredRecord>get("nested").get("name"));
+      Assert.assertNull(result.get("missing"));
+    }
+
+    GenericData.Record record = new GenericData.Record(AVRO_SCHEMA);
+    record.put("id", 3L);
+    record.put("tags", Collections.emptyList());
+    StructuredRecord result = transformer.transform(record, SCHEMA);
+    Assert.assertNull(result.get("day"));
+    Assert.assertNull(result.get("time"));
+    Assert.assertNull(result.get("nested"));
+    Assert.assertEquals(Collections.emptyList(), result.<List<String>>get("tags"));
+  }
+
+  @Test
+  public void testTransformInvalidDatetime() throws Exception {
+    GenericData.Record record = new GenericData.Record(AVRO_SCHEMA);
+    record.put("id", 0L);
+    record.put("datetime", "2022-03-01 12:30:00");
+    record.put("tags", Collections.emptyList());
+    try {
+      new BigQueryAvroToStructuredTransformer().transform(record, SCHEMA);
+      Assert.fail("Expected the datetime to be rejected");
+    } catch (UnexpectedFormatException e) {
+      Assert.assertTrue(e.getMessage().contains("'datetime'"));
+    }
+  }
+
+  @Test
+  public void testParseDate() {
+    for (String date : Arrays.asList("2022-03-15", "1970-01-01", "1969-12-31", "2024-02-29", "0001-01-01",
+                                     "9999-12-31")) {
+      Assert.assertEquals(LocalDate.parse(date).toEpochDay(), BigQueryAvroToStructuredTransformer.parseDate(date));
+    }
+    // Dates in other ISO-8601 formats are parsed as well
+    Assert.assertEquals(LocalDate.of(10000, 1, 1).toEpochDay(),
+                        BigQueryAvroToStructuredTransformer.parseDate("+10000-01-01"));
+    for (String date : Arrays.asList("2023-02-29", "2022-13-01", "2022-00-01", "2022-1-011", "2022/01/01")) {
+      try {
+        BigQueryAvroToStructuredTransformer.parseDate(date);
+        Assert.fail("Expected date " + date + " to be rejected");
+      } catch (DateTimeParseException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testParseNanoOfDay() {
+    for (String time : Arrays.asList("00:00:00", "12:34:56", "23:59:59.999999", "01:02:03.4", "01:02:03.123456789",
+                                     "12:34")) {
+      Assert.assertEquals(LocalTime.parse(time).toNanoOfDay(),
+                          BigQueryAvroToStructuredTransformer.parseNanoOfDay(time));
+    }
+    for (String time : Arrays.asList("24:00:00", "12:60:00", "12:00:60", "12:00:00.1234567890",
+                                     "12-00-00")) {
+      try {
+        BigQueryAvroToStructuredTransformer.parseNanoOfDay(time);
+        Assert.fail("Expected time " + time + " to be rejected");
+      } catch (DateTimeParseException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testIsDateTime() {
+    Assert.assertTrue(BigQueryAvroToStructuredTransformer.isDateTime("2022-03-15T12:34:56"));
+    Assert.assertTrue(BigQueryAvroToStructuredTransformer.isDateTime("2022-03-15T12:34:56.123456"));
+    Assert.assertFalse(BigQueryAvroToStructuredTransformer.isDateTime("2022-03-15 12:34:56"));
+    Assert.assertFalse(BigQueryAvroToStructuredTransformer.isDateTime("2022-02-30T12:34:56"));
+    Assert.assertFalse(BigQueryAvroToStructuredTransformer.isDateTime("2022-03-15T12:34"));
+  }
+}
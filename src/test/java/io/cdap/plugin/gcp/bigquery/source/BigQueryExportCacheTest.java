@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.hadoop.io.bigquery.UnshardedInputSplit;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for {@link BigQueryExportCache}, which store the cache in a local directory.
+ */
+public class BigQueryExportCacheTest {
+
+  private static final long LEASE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  @Rule
+  public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    root = new Path(tmpFolder.newFolder().toURI());
+    fs = root.getFileSystem(conf);
+  }
+
+  @Test
+  public void testCreate() {
+    Assert.assertNull(BigQueryExportCache.create(conf));
+    conf.set(BigQueryConstants.CONFIG_EXPORT_CACHE_PATH, root.toString());
+    Assert.assertNotNull(BigQueryExportCache.create(conf));
+  }
+
+  @Test
+  public void testEntryKey() {
+    BigQueryExportCache cache = createCache(Long.MAX_VALUE);
+    Path entry = cache.getEntry("project.dataset.table", 1000L, "*", null, null, null);
+    Assert.assertEquals(new Path(root, "project.dataset.table"), entry.getParent());
+    Assert.assertEquals(entry, cache.getEntry("project.dataset.table", 1000L, "*", null, null, null));
+    // A modification of the table or different read options lead to a different entry
+    Assert.assertNotEquals(entry, cache.getEntry("project.dataset.table", 2000L, "*", null, null, null));
+    Assert.assertNotEquals(entry, cache.getEntry("project.dataset.table", 1000L, "`id`", null, null, null));
+    Assert.assertNotEquals(entry, cache.getEntry("project.dataset.table", 1000L, "*", "id > 1", null, null));
+    Assert.assertNotEquals(entry, cache.getEntry("project.dataset.table", 1000L, "*", null, "2022-01-01", null));
+  }
+
+  @Test
+  public void testFindExport() throws IOException {
+    BigQueryExportCache cache = createCache(Long.MAX_VALUE);
+    Path entry = cache.getEntry("project.dataset.table", 1000L, "*", null, null, null);
+    Assert.assertNull(cache.findExport(entry));
+
+    // Exports can only be read once they are complete
+    Path export = cache.newExport(entry);
+    writeFile(new Path(export, "data-000000000000.avro"), 10);
+    Assert.assertNull(cache.findExport(entry));
+    cache.markComplete(export);
+    Assert.assertEquals(fs.makeQualified(export), cache.findExport(entry));
+
+    // Expired exports are not read
+    setExportTime(export, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+    Assert.assertNull(cache.findExport(entry));
+  }
+
+  @Test
+  public void testGetSplits() throws IOException {
+    BigQueryExportCache cache = createCache(Long.MAX_VALUE);
+    Path export = cache.newExport(cache.getEntry("project.dataset.table", 1000L, "*", null, null, null));
+    writeFile(new Path(export, "data-000000000000.avro"), 10);
+    // Partitions exported by separate jobs are stored in sub-directories
+    writeFile(new Path(export, "partition_20220101/data-000000000000.avro"), 10);
+    cache.markComplete(export);
+
+    List<InputSplit> splits = cache.getSplits(new JobContextImpl(conf, new JobID()), export);
+    Assert.assertEquals(2, splits.size());
+    for (InputSplit split : splits) {
+      Assert.assertTrue(split instanceof UnshardedInputSplit);
+      Assert.assertTrue(((UnshardedInputSplit) split).getPath().getName().endsWith(".avro"));
+    }
+  }
+
+  @Test
+  public void testEvict() throws IOException {
+    BigQueryExportCache cache = createCache(25);
+    long now = System.currentTimeMillis();
+    Path expired = createExport(cache, "expired", 10, now - TimeUnit.HOURS.toMillis(2));
+    Path oldest = createExport(cache, "oldest", 10, now - TimeUnit.MINUTES.toMillis(30));
+    Path older = createExport(cache, "older", 10, now - TimeUnit.MINUTES.toMillis(20));
+    Path incomplete = cache.newExport(cache.getEntry("incomplete", 1000L, "*", null, null, null));
+    writeFile(new Path(incomplete, "data-000000000000.avro"), 10);
+    Path inUse = createExport(cache, "inUse", 10, now - TimeUnit.HOURS.toMillis(3));
+
+    cache.evict(inUse);
+
+    // The expired export is deleted, then the oldest exports until the complete exports fit into 25 bytes
+    Set<String> remaining = Arrays.stream(fs.globStatus(new Path(root, "*/*/*")))
+      .map(status -> status.getPath().getName()).collect(Collectors.toSet());
+    Assert.assertFalse(remaining.contains(expired.getName()));
+    Assert.assertFalse(remaining.contains(oldest.getName()));
+    Assert.assertTrue(remaining.contains(older.getName()));
+    Assert.assertTrue(remaining.contains(incomplete.getName()));
+    Assert.assertTrue(remaining.contains(inUse.getName()));
+  }
+
+  @Test
+  public void testEvictKeepsLeasedExports() throws IOException {
+    BigQueryExportCache cache = createCache(15);
+    long now = System.currentTimeMillis();
+    Path expired = createExport(cache, "expired", 10, now - TimeUnit.HOURS.toMillis(2));
+    Path oldest = createExport(cache, "oldest", 10, now - TimeUnit.MINUTES.toMillis(30));
+    Path newest = createExport(cache, "newest", 10, now - TimeUnit.MINUTES.toMillis(10));
+    Path inUse = createExport(cache, "inUse", 10, now);
+    // Concurrent runs found the expired and the oldest export just before they would be deleted
+    cache.lease(expired);
+    cache.lease(oldest);
+    // A lease that ended does not protect the export any more
+    cache.lease(newest);
+    fs.setTimes(new Path(newest, BigQueryExportCache.LEASE_MARKER), now - LEASE_MILLIS, -1);
+
+    cache.evict(inUse);
+
+    Set<String> remaining = Arrays.stream(fs.globStatus(new Path(root, "*/*/*")))
+      .map(status -> status.getPath().getName()).collect(Collectors.toSet());
+    Assert.assertTrue(remaining.contains(expired.getName()));
+    Assert.assertTrue(remaining.contains(oldest.getName()));
+    Assert.assertFalse(remaining.contains(newest.getName()));
+    Assert.assertTrue(remaining.contains(inUse.getName()));
+  }
+
+  private BigQueryExportCache createCache(long maxBytes) {
+    return new BigQueryExportCache(conf, root, TimeUnit.HOURS.toMillis(1), maxBytes, LEASE_MILLIS);
+  }
+
+  private Path createExport(BigQueryExportCache cache, String table, int bytes, long exportTime) throws IOException {
+    Path export = cache.newExport(cache.getEntry(table, 1000L, "*", null, null, null));
+    writeFile(new Path(export, "data-000000000000.avro"), bytes);
+    cache.markComplete(export);
+    setExportTime(export, exportTime);
+    return export;
+  }
+
+  private void setExportTime(Path export, long exportTime) throws IOException {
+    fs.setTimes(new Path(export, BigQueryExportCache.COMPLETE_MARKER), exportTime, -1);
+  }
+
+  private void writeFile(Path path, int bytes) throws IOException {
+    try (FSDataOutputStream out = fs.create(path)) {
+      out.write(new byte[bytes]);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.cloud.bigquery.storage.v1.AvroRows;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadGrpc;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadSettings;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.StreamStats;
+import com.google.protobuf.ByteString;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link BigQueryStorageReadRecordReader} against a local stand-in of the BigQuery Storage Read API.
+ */
+public class BigQueryStorageReadRecordReaderTest {
+
+  // Avro schema of a read session, as returned by the Storage Read API
+  private static final org.apache.avro.Schema AVRO_SCHEMA = new org.apache.avro.Schema.Parser().parse(
+    "{\"type\":\"record\",\"name\":\"__root__\",\"fields\":[" +
+      "{\"name\":\"id\",\"type\":[\"null\",\"long\"]}," +
+      "{\"name\":\"day\",\"type\":[\"null\",{\"type\":\"int\",\"logicalType\":\"date\"}]}," +
+      "{\"name\":\"time\",\"type\":[\"null\",{\"type\":\"long\",\"logicalType\":\"time-micros\"}]}]}");
+  private static final String STREAM = "projects/project/locations/us/sessions/session/streams/stream";
+
+  private FakeBigQueryRead service;
+  private Server server;
+  private Configuration conf;
+  private BigQueryStorageReadUtils.ReadClientFactory readClientFactory;
+
+  @Before
+  public void setUp() throws IOException {
+    service = new FakeBigQueryRead();
+    server = ServerBuilder.forPort(0).addService(service).build().start();
+    conf = new Configuration();
+    readClientFactory = BigQueryStorageReadUtils.readClientFactory;
+    BigQueryStorageReadUtils.readClientFactory = c -> BigQueryReadClient.create(
+      BigQueryReadSettings.newBuilder()
+        .setEndpoint("localhost:" + server.getPort())
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .setTransportChannelProvider(BigQueryReadSettings.defaultGrpcTransportProviderBuilder()
+                                       .setChannelConfigurator(builder -> builder.usePlaintext())
+                                       .build())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    BigQueryStorageReadUtils.readClientFactory = readClientFactory;
+    server.shutdownNow();
+  }
+
+  @Test
+  public void testReadStream() throws Exception {
+    // Rows of a stream may be spread over several responses, some of which contain no rows
+    List<ReadRowsResponse> responses = new ArrayList<>();
+    responses.add(response(0.4, record(0), record(1)));
+    responses.add(response(0.4));
+    responses.add(response(1.0, record(2)));
+    service.streams.put(STREAM, responses);
+
+    BigQueryStorageReadInputSplit split = new BigQueryStorageReadInputSplit(STREAM, AVRO_SCHEMA.toString());
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    BigQueryStorageReadRecordReader reader = new BigQueryStorageReadRecordReader();
+    reader.initialize(split, context);
+
+    BigQueryAvroToStructuredTransformer transformer = new BigQueryAvroToStructuredTransformer();
+    Schema schema = Schema.recordOf("output",
+                                    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+                                    Schema.Field.of("day", Schema.of(Schema.LogicalType.DATE)),
+                                    Schema.Field.of("time", Schema.of(Schema.LogicalType.TIME_MICROS)));
+    for (long i = 0; i < 3; i++) {
+      Assert.assertTrue(reader.nextKeyValue());
+      Assert.assertEquals(i, reader.getCurrentKey().get());
+      StructuredRecord record = transformer.transform(reader.getCurrentValue(), schema);
+      Assert.assertEquals(Long.valueOf(i), record.get("id"));
+      Assert.assertEquals(LocalDate.of(2022, 1, 1).plusDays(i), record.getDate("day"));
+      Assert.assertEquals(LocalTime.of(12, 0).plusSeconds(i), record.getTime("time"));
+    }
+    Assert.assertFalse(reader.nextKeyValue());
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    Assert.assertEquals(responses.stream().mapToLong(r -> r.getAvroRows().getSerializedBinaryRows().size()).sum(),
+                        reader.getBytesRead());
+    reader.close();
+  }
+
+  @Test
+  public void testSplitSerialization() throws IOException {
+    BigQueryStorageReadInputSplit split = new BigQueryStorageReadInputSplit(STREAM, AVRO_SCHEMA.toString());
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    BigQueryStorageReadInputSplit deserialized = new BigQueryStorageReadInputSplit();
+    deserialized.readFields(in);
+
+    Assert.assertEquals(STREAM, deserialized.getStreamName());
+    Assert.assertEquals(AVRO_SCHEMA, new org.apache.avro.Schema.Parser().parse(deserialized.getAvroSchema()));
+  }
+
+  @Test
+  public void testInputFormatOfReadMethod() {
+    Configuration conf = new Configuration();
+    Assert.assertEquals(PartitionedBigQueryInputFormat.class.getName(),
+                        new BigQueryInputFormatProvider(conf).getInputFormatClassName());
+    conf.setEnum(BigQueryConstants.CONFIG_READ_METHOD, ReadMethod.STORAGE_READ_API);
+    Assert.assertEquals(BigQueryStorageReadInputFormat.class.getName(),
+                        new BigQueryInputFormatProvider(conf).getInputFormatClassName());
+  }
+
+  private static GenericData.Record record(long id) {
+    GenericData.Record record = new GenericData.Record(AVRO_SCHEMA);
+    record.put("id", id);
+    record.put("day", (int) LocalDate.of(2022, 1, 1).plusDays(id).toEpochDay());
+    record.put("time", TimeUnit.NANOSECONDS.toMicros(LocalTime.of(12, 0).plusSeconds(id).toNanoOfDay()));
+    return record;
+  }
+
+  private static ReadRowsResponse response(double progress, GenericData.Record... records) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    GenericDatumWriter<GenericData.Record> writer = new GenericDatumWriter<>(AVRO_SCHEMA);
+    for (GenericData.Record record : records) {
+      writer.write(record, encoder);
+    }
+    encoder.flush();
+    return ReadRowsResponse.newBuilder()
+      .setAvroRows(AvroRows.newBuilder().setSerializedBinaryRows(ByteString.copyFrom(out.toByteArray())))
+      .setRowCount(records.length)
+      .setStats(StreamStats.newBuilder().setProgress(StreamStats.Progress.newBuilder().setAtResponseEnd(progress)))
+      .build();
+  }
+
+  /**
+   * Minimal in-memory implementation of the BigQuery Storage Read API, which serves prepared responses.
+   */
+  private static class FakeBigQueryRead extends BigQueryReadGrpc.BigQueryReadImplBase {
+    private final Map<String, List<ReadRowsResponse>> streams = new ConcurrentHashMap<>();
+
+    @Override
+    public void readRows(ReadRowsRequest request, StreamObserver<ReadRowsResponse> responseObserver) {
+      for (ReadRowsResponse response : streams.get(request.getReadStream())) {
+        responseObserver.onNext(response);
+      }
+      responseObserver.onCompleted();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.source;
+
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+public class BigQueryWatermarkTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testToLiteral() {
+    long micros = TimeUnit.SECONDS.toMicros(LocalDateTime.of(2022, 3, 15, 12, 30).toEpochSecond(ZoneOffset.UTC)) + 5;
+    Assert.assertEquals("TIMESTAMP '2022-03-15 12:30:00.000005+00:00'",
+                        watermark(StandardSQLTypeName.TIMESTAMP, Long.toString(micros)).toLiteral());
+    Assert.assertEquals("TIMESTAMP '1969-12-31 23:59:59.999999+00:00'",
+                        watermark(StandardSQLTypeName.TIMESTAMP, "-1").toLiteral());
+    Assert.assertEquals("42", watermark(StandardSQLTypeName.INT64, "42").toLiteral());
+    Assert.assertEquals("DATE '2022-03-15'", watermark(StandardSQLTypeName.DATE, "2022-03-15").toLiteral());
+    Assert.assertEquals("DATETIME '2022-03-15T12:30:00'",
+                        watermark(StandardSQLTypeName.DATETIME, "2022-03-15T12:30:00").toLiteral());
+    Assert.assertEquals("NUMERIC '1.5'", watermark(StandardSQLTypeName.NUMERIC, "1.5").toLiteral());
+  }
+
+  @Test
+  public void testGetDate() {
+    long micros = TimeUnit.SECONDS.toMicros(LocalDateTime.of(2022, 3, 15, 23, 59).toEpochSecond(ZoneOffset.UTC));
+    Assert.assertEquals("2022-03-15", watermark(StandardSQLTypeName.TIMESTAMP, Long.toString(micros)).getDate());
+    Assert.assertEquals("1969-12-31", watermark(StandardSQLTypeName.TIMESTAMP, "-1").getDate());
+    Assert.assertEquals("2022-03-15", watermark(StandardSQLTypeName.DATE, "2022-03-15").getDate());
+    Assert.assertEquals("2022-03-15", watermark(StandardSQLTypeName.DATETIME, "2022-03-15T12:30:00").getDate());
+    Assert.assertNull(watermark(StandardSQLTypeName.INT64, "42").getDate());
+  }
+
+  @Test
+  public void testOf() {
+    Assert.assertNull(BigQueryWatermark.of("id", StandardSQLTypeName.INT64,
+                                           FieldValue.of(FieldValue.Attribute.PRIMITIVE, null)));
+    // Timestamps are returned in seconds since the epoch, and stored in microseconds
+    BigQueryWatermark watermark = BigQueryWatermark.of("updated", StandardSQLTypeName.TIMESTAMP,
+                                                       FieldValue.of(FieldValue.Attribute.PRIMITIVE, "1.5"));
+    Assert.assertEquals("1500000", watermark.getValue());
+    Assert.assertEquals("updated", watermark.getField());
+  }
+
+  @Test
+  public void testQueries() {
+    BigQueryWatermark previous = watermark(StandardSQLTypeName.INT64, "10");
+    BigQueryWatermark current = watermark(StandardSQLTypeName.INT64, "20");
+    Assert.assertEquals("SELECT MAX(`id`) FROM `project.dataset.table`",
+                        BigQueryWatermark.getMaxQuery("project.dataset.table", "id", null));
+    Assert.assertEquals("SELECT MAX(`id`) FROM `project.dataset.table` WHERE `id` > 10",
+                        BigQueryWatermark.getMaxQuery("project.dataset.table", "id", previous));
+    Assert.assertEquals("`id` <= 20", BigQueryWatermark.getCondition("id", null, current));
+    Assert.assertEquals("`id` > 10 AND `id` <= 20", BigQueryWatermark.getCondition("id", previous, current));
+    // No rows above the previous watermark
+    Assert.assertEquals("FALSE", BigQueryWatermark.getCondition("id", previous, null));
+  }
+
+  @Test
+  public void testReadWrite() throws Exception {
+    Configuration conf = new Configuration();
+    Path path = new Path(TMP_FOLDER.newFolder().toURI().toString(), "namespace/pipeline/stage.json");
+    Assert.assertNull(BigQueryWatermark.read(conf, path));
+
+    watermark(StandardSQLTypeName.DATE, "2022-03-15").write(conf, path);
+    watermark(StandardSQLTypeName.DATE, "2022-03-16").write(conf, path);
+    BigQueryWatermark watermark = BigQueryWatermark.read(conf, path);
+    Assert.assertEquals("updated", watermark.getField());
+    Assert.assertEquals(StandardSQLTypeName.DATE, watermark.getType());
+    Assert.assertEquals("2022-03-16", watermark.getValue());
+
+    Assert.assertEquals(new Path("gs://bucket/_watermarks/default/pipeline/source.json"),
+                        BigQueryWatermark.getStatePath("bucket", "default", "pipeline", "source"));
+  }
+
+  private static BigQueryWatermark watermark(StandardSQLTypeName type, String value) {
+    return new BigQueryWatermark("updated", type, value);
+  }
+}
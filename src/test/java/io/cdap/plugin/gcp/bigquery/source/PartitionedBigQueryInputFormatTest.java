@@ -16,17 +16,28 @@
 
 package io.cdap.plugin.gcp.bigquery.source;
 
+import com.google.api.services.bigquery.Bigquery;
+import com.google.api.services.bigquery.model.JobReference;
 import com.google.cloud.bigquery.StandardTableDefinition;
 import com.google.cloud.bigquery.Table;
+import com.google.cloud.bigquery.TimePartitioning;
+import com.google.cloud.hadoop.io.bigquery.BigQueryHelper;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -77,4 +88,91 @@ public class PartitionedBigQueryInputFormatTest {
                                                                   dataset, table, null, true);
     Assert.assertNull(generatedQuery);
   }
+
+  @Test
+  public void testGenerateQueryWithSelectedFields() {
+    String datasetProject = "test_bq_dataset_project";
+    String dataset = "test_bq_dataset";
+    String table = "test_bq_table";
+    String filter = "tableColumn = 'abc'";
+    Configuration configuration = new Configuration();
+    Assert.assertEquals("*", PartitionedBigQueryInputFormat.getSelectList(configuration));
+    configuration.setStrings(BigQueryConstants.CONFIG_SELECTED_FIELDS, "id", "tableColumn");
+    String selectList = PartitionedBigQueryInputFormat.getSelectList(configuration);
+    Assert.assertEquals("`id`, `tableColumn`", selectList);
+
+    PartitionedBigQueryInputFormat partitionedBigQueryInputFormat = new PartitionedBigQueryInputFormat();
+    String generatedQuery = partitionedBigQueryInputFormat.generateProjectedQueryForMaterializingView(
+      selectList, datasetProject, dataset, table, filter);
+    Assert.assertEquals(String.format("select `id`, `tableColumn` from `%s.%s.%s` where %s",
+                                      datasetProject, dataset, table, filter), generatedQuery);
+
+    PowerMockito.mockStatic(BigQueryUtil.class);
+    Table t = PowerMockito.mock(Table.class);
+    StandardTableDefinition tableDefinition = PowerMockito.mock(StandardTableDefinition.class);
+    PowerMockito.when(BigQueryUtil.getBigQueryTable(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                                                    ArgumentMatchers.anyString(), ArgumentMatchers.any(),
+                                                    ArgumentMatchers.anyBoolean())).thenReturn(t);
+    PowerMockito.when(t.getDefinition()).thenReturn(tableDefinition);
+    generatedQuery = partitionedBigQueryInputFormat.generateProjectedQuery(selectList, null, null, filter,
+                                                                           datasetProject, dataset, table, null,
+                                                                           true);
+    Assert.assertEquals(String.format("select `id`, `tableColumn` from `%s.%s.%s` where %s",
+                                      datasetProject, dataset, table, filter), generatedQuery);
+  }
+
+  @Test
+  public void testSelectPartitions() {
+    List<String> dailyPartitions = Arrays.asList("20220101", "20220102", "20220103", "__NULL__");
+    Assert.assertEquals(dailyPartitions, PartitionedBigQueryInputFormat.selectPartitions(
+      dailyPartitions, TimePartitioning.Type.DAY, null, null));
+    // The start of the range is inclusive, the end exclusive
+    Assert.assertEquals(Arrays.asList("20220102", "20220103"), PartitionedBigQueryInputFormat.selectPartitions(
+      dailyPartitions, TimePartitioning.Type.DAY, "2022-01-02", null));
+    Assert.assertEquals(Collections.singletonList("20220101"), PartitionedBigQueryInputFormat.selectPartitions(
+      dailyPartitions, TimePartitioning.Type.DAY, null, "2022-01-02"));
+    Assert.assertEquals(Collections.emptyList(), PartitionedBigQueryInputFormat.selectPartitions(
+      dailyPartitions, TimePartitioning.Type.DAY, "2022-02-01", "2022-03-01"));
+
+    List<String> hourlyPartitions = Arrays.asList("2022010123", "2022010200", "2022010201");
+    Assert.assertEquals(Arrays.asList("2022010200", "2022010201"), PartitionedBigQueryInputFormat.selectPartitions(
+      hourlyPartitions, TimePartitioning.Type.HOUR, "2022-01-02", "2022-01-03"));
+
+    // Ranges which do not cover whole partitions are applied by a query
+    Assert.assertNull(PartitionedBigQueryInputFormat.selectPartitions(
+      Arrays.asList("202201", "202202"), TimePartitioning.Type.MONTH, "2022-01-15", null));
+    Assert.assertNull(PartitionedBigQueryInputFormat.selectPartitions(
+      Arrays.asList("20220101", "__UNPARTITIONED__"), TimePartitioning.Type.DAY, "2022-01-01", null));
+    Assert.assertNull(PartitionedBigQueryInputFormat.selectPartitions(
+      Arrays.asList("0", "10"), null, "2022-01-01", null));
+    Assert.assertNull(PartitionedBigQueryInputFormat.selectPartitions(
+      Collections.emptyList(), TimePartitioning.Type.DAY, null, null));
+  }
+
+  @Test
+  public void testPartitionExportPath() {
+    // Directories which start with an underscore are hidden from the listing of the exported files
+    Path path = new Path(PartitionedBigQueryInputFormat.getPartitionExportPath("gs://bucket/export", "__NULL__"));
+    Assert.assertEquals("partition___NULL__", path.getName());
+    Assert.assertEquals("gs://bucket/export", path.getParent().toString());
+  }
+
+  @Test
+  public void testCancelExportJobs() throws Exception {
+    BigQueryHelper bigQueryHelper = Mockito.mock(BigQueryHelper.class, Mockito.RETURNS_DEEP_STUBS);
+    Bigquery.Jobs jobs = bigQueryHelper.getRawBigquery().jobs();
+    PartitionedBigQueryInputFormat.ExportJobs exportJobs =
+      new PartitionedBigQueryInputFormat.ExportJobs(bigQueryHelper, "US");
+    exportJobs.add(new JobReference().setProjectId("project").setJobId("job1"));
+    exportJobs.add(new JobReference().setProjectId("project").setJobId("job2"));
+    Mockito.verify(jobs, Mockito.never()).cancel(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+
+    exportJobs.cancelAll();
+    Mockito.verify(jobs).cancel("project", "job1");
+    Mockito.verify(jobs).cancel("project", "job2");
+
+    // Jobs which are started after the others were cancelled are cancelled right away
+    exportJobs.add(new JobReference().setProjectId("project").setJobId("job3"));
+    Mockito.verify(jobs).cancel("project", "job3");
+  }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.DatasetId;
+import com.google.cloud.hadoop.io.bigquery.BigQueryConfiguration;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.engine.sql.request.SQLPullRequest;
+import io.cdap.plugin.gcp.bigquery.source.BigQueryStorageReadInputFormat;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test for {@link BigQueryPullDataset} class
+ */
+public class BigQueryPullDatasetTest {
+
+  @Test
+  public void testPullThroughStorageReadAPI() throws Exception {
+    SQLPullRequest pullRequest = Mockito.mock(SQLPullRequest.class);
+    Mockito.when(pullRequest.getDatasetName()).thenReturn("stage");
+    Mockito.when(pullRequest.getDatasetSchema())
+      .thenReturn(Schema.recordOf("record", Schema.Field.of("id", Schema.of(Schema.Type.LONG))));
+
+    BigQueryPullDataset pullDataset =
+      BigQueryPullDataset.getInstance(pullRequest, new Configuration(), Mockito.mock(BigQuery.class),
+                                      DatasetId.of("project", "dataset"), "table", "bucket", "run", true);
+
+    Assert.assertEquals(BigQueryArrowInputFormat.class.getName(), pullDataset.getInputFormatClassName());
+    Assert.assertEquals("ARROW", pullDataset.getInputFormatConfiguration()
+      .get(BigQueryConstants.CONFIG_STORAGE_READ_DATA_FORMAT));
+    Assert.assertEquals("table",
+                        pullDataset.getInputFormatConfiguration().get(BigQueryConfiguration.INPUT_TABLE_ID_KEY));
+    // The table is not exported, so there is no temporary directory to clean up
+    Assert.assertNull(pullDataset.getGCSPath());
+  }
+
+  @Test
+  public void testPullThroughStorageReadAPIFallsBackToAvro() throws Exception {
+    SQLPullRequest pullRequest = Mockito.mock(SQLPullRequest.class);
+    Mockito.when(pullRequest.getDatasetName()).thenReturn("stage");
+    Mockito.when(pullRequest.getDatasetSchema())
+      .thenReturn(Schema.recordOf("record", Schema.Field.of("tags", Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                                   Schema.of(Schema.Type.STRING)))));
+
+    BigQueryPullDataset pullDataset =
+      BigQueryPullDataset.getInstance(pullRequest, new Configuration(), Mockito.mock(BigQuery.class),
+                                      DatasetId.of("project", "dataset"), "table", "bucket", "run", true);
+
+    // Maps cannot be decoded from Arrow record batches, so the session returns Avro rows
+    Assert.assertEquals(BigQueryStorageReadInputFormat.class.getName(), pullDataset.getInputFormatClassName());
+    Assert.assertNull(pullDataset.getInputFormatConfiguration()
+                        .get(BigQueryConstants.CONFIG_STORAGE_READ_DATA_FORMAT));
+  }
+}
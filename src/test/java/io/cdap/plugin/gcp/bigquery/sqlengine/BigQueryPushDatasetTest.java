@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.DatasetId;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.TableInfo;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.sink.WriteMethod;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Test for {@link BigQueryPushDataset} class
+ */
+public class BigQueryPushDatasetTest {
+
+  private static final Schema SCHEMA = Schema.recordOf("record",
+                                                       Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+                                                       Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+
+  private BigQuerySQLEngineConfig sqlEngineConfig;
+  private BigQuery bigQuery;
+  private Configuration configuration;
+
+  @Before
+  public void setUp() {
+    sqlEngineConfig = Mockito.mock(BigQuerySQLEngineConfig.class);
+    bigQuery = Mockito.mock(BigQuery.class);
+    configuration = new Configuration();
+    configuration.setBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, true);
+    configuration.setBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION_ON_EMPTY_OUTPUT, true);
+  }
+
+  @Test
+  public void testCreateTableForStorageWriteAPI() {
+    Mockito.when(sqlEngineConfig.shouldUseStorageWriteAPI()).thenReturn(true);
+
+    BigQueryPushDataset.createTable(configuration, sqlEngineConfig, bigQuery, DatasetId.of("project", "dataset"),
+                                    "table", SCHEMA);
+
+    // Write streams append directly to the pushed table, whose schema must not be relaxed
+    Assert.assertEquals(WriteMethod.STORAGE_WRITE_API,
+                        configuration.getEnum(BigQueryConstants.CONFIG_WRITE_METHOD, WriteMethod.GCS));
+    Assert.assertFalse(configuration.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, true));
+    Assert.assertFalse(configuration.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION_ON_EMPTY_OUTPUT,
+                                                true));
+
+    // Write streams can only be created on a table with a schema
+    Assert.assertEquals(com.google.cloud.bigquery.Schema.of(
+      Field.newBuilder("id", StandardSQLTypeName.INT64).setMode(Field.Mode.REQUIRED).build(),
+      Field.newBuilder("name", StandardSQLTypeName.STRING).setMode(Field.Mode.REQUIRED).build()),
+                        getCreatedTable().getDefinition().getSchema());
+  }
+
+  @Test
+  public void testCreateTableForGCS() {
+    BigQueryPushDataset.createTable(configuration, sqlEngineConfig, bigQuery, DatasetId.of("project", "dataset"),
+                                    "table", SCHEMA);
+
+    // Files are loaded into a table without a schema, which is relaxed by the load job
+    Assert.assertNull(configuration.get(BigQueryConstants.CONFIG_WRITE_METHOD));
+    Assert.assertTrue(configuration.getBoolean(BigQueryConstants.CONFIG_ALLOW_SCHEMA_RELAXATION, false));
+    Assert.assertTrue(getCreatedTable().getDefinition().getSchema().getFields().isEmpty());
+  }
+
+  private TableInfo getCreatedTable() {
+    ArgumentCaptor<TableInfo> tableInfo = ArgumentCaptor.forClass(TableInfo.class);
+    Mockito.verify(bigQuery).create(tableInfo.capture());
+    Assert.assertEquals("table", tableInfo.getValue().getTableId().getTable());
+    return tableInfo.getValue();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.DatasetId;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.JobInfo;
+import com.google.cloud.bigquery.JobStatus;
+import com.google.cloud.bigquery.Table;
+import com.google.cloud.bigquery.TableId;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test for {@link BigQueryResultCache} class
+ */
+public class BigQueryResultCacheTest {
+
+  private static final Schema SCHEMA =
+    Schema.recordOf("record", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+
+  @Test
+  public void testFingerprintAcrossRuns() {
+    // Pushed tables have a new name in every run, and are fingerprinted by their number of rows and their contents
+    BigQueryResultCache.Fingerprint first = fingerprintOfJoin(cache("rows"), "run1_pushed", "run1_joined");
+    Assert.assertNotNull(first);
+    BigQueryResultCache.Fingerprint second = fingerprintOfJoin(cache("rows"), "run2_pushed", "run2_joined");
+    Assert.assertEquals(first.getKey(), second.getKey());
+    Assert.assertEquals(first.getContentFingerprint(), second.getContentFingerprint());
+    Assert.assertEquals(Collections.singleton("run2_pushed"), second.getTables());
+
+    BigQueryResultCache.Fingerprint other = fingerprintOfJoin(cache("other rows"), "run2_pushed", "run2_joined");
+    Assert.assertEquals(first.getKey(), other.getKey());
+    Assert.assertNotEquals(first.getContentFingerprint(), other.getContentFingerprint());
+  }
+
+  @Test
+  public void testContentsScannedOnlyForCachedKeys() {
+    BigQuery bigQuery = Mockito.mock(BigQuery.class);
+    BigQueryResultCache cache = cache("rows", bigQuery, Mockito.mock(BigQueryJobWaiter.class));
+    BigQueryResultCache.Fingerprint fingerprint = fingerprintOfJoin(cache, "pushed", "joined");
+
+    // No results with the same key were cached, so the pushed table is not scanned
+    mockCachedTables(bigQuery, Collections.emptyList());
+    Assert.assertFalse(cache.reuse(fingerprint));
+    Mockito.verify(cache, Mockito.never()).computeContentFingerprint(Mockito.any());
+
+    // Results with the same key were cached by an earlier run, for other contents
+    cache = cache("rows", bigQuery, Mockito.mock(BigQueryJobWaiter.class));
+    fingerprint = fingerprintOfJoin(cache, "pushed", "joined");
+    mockCachedTables(bigQuery, Collections.singletonList(BigQueryResultCache.TABLE_PREFIX + fingerprint.getKey()
+                                                           + "_other"));
+    Assert.assertFalse(cache.reuse(fingerprint));
+    Mockito.verify(cache, Mockito.times(1)).computeContentFingerprint(Mockito.any());
+    Mockito.verify(bigQuery).getTable(TableId.of("project", "dataset",
+                                                 BigQueryResultCache.getTableName(fingerprint)));
+  }
+
+  @Test
+  public void testSkipUncacheableStatements() {
+    BigQueryResultCache cache = cache("rows");
+    BigQuerySQLDataset pushed = dataset(BigQuerySQLDataset.class, "pushed");
+    Assert.assertNull(cache.getFingerprint("SELECT id, RAND() AS r FROM `project.dataset.pushed`", SCHEMA,
+                                           Collections.singletonList(pushed)));
+    Assert.assertNull(cache.getFingerprint("SELECT id FROM `project.dataset.pushed` WHERE d < current_date()",
+                                           SCHEMA, Collections.singletonList(pushed)));
+
+    // Joins and transformations which were not cached
+    BigQuerySQLDataset selected = dataset(BigQuerySelectDataset.class, "selected");
+    Assert.assertNull(cache.getFingerprint("SELECT id FROM `project.dataset.selected`", SCHEMA,
+                                           Collections.singletonList(selected)));
+    cache.register("selected", cache.getFingerprint("SELECT id FROM `project.dataset.pushed`", SCHEMA,
+                                                    Collections.singletonList(pushed)));
+    Assert.assertNotNull(cache.getFingerprint("SELECT id FROM `project.dataset.selected`", SCHEMA,
+                                              Collections.singletonList(selected)));
+  }
+
+  @Test(timeout = 10000)
+  public void testCopyInBackground() {
+    BigQuery bigQuery = Mockito.mock(BigQuery.class);
+    Job copyJob = Mockito.mock(Job.class);
+    JobId copyJobId = JobId.of("project", "copy");
+    Mockito.when(copyJob.getJobId()).thenReturn(copyJobId);
+    Mockito.when(copyJob.getStatus()).thenReturn(Mockito.mock(JobStatus.class));
+    Mockito.when(bigQuery.create(Mockito.any(JobInfo.class))).thenReturn(copyJob);
+    BigQueryJobWaiter jobWaiter = Mockito.mock(BigQueryJobWaiter.class);
+    CompletableFuture<Job> copied = new CompletableFuture<>();
+    Mockito.when(jobWaiter.waitFor(copyJobId)).thenReturn(copied);
+    Table cachedTable = Mockito.mock(Table.class);
+    Mockito.when(cachedTable.toBuilder()).thenReturn(Mockito.mock(Table.Builder.class, Mockito.RETURNS_SELF));
+    Mockito.when(bigQuery.getTable(Mockito.any(TableId.class))).thenReturn(cachedTable);
+
+    try (BigQueryResultCache cache = cache("rows", bigQuery, jobWaiter)) {
+      BigQueryResultCache.Fingerprint fingerprint = fingerprintOfJoin(cache, "pushed", "joined");
+
+      // Stages do not wait for their contents to be fingerprinted and their results to be copied into the cache
+      cache.put(fingerprint, TableId.of("project", "dataset", "selected"));
+      Mockito.verify(bigQuery, Mockito.never()).getTable(Mockito.any(TableId.class));
+
+      // The expiration of the cached table is set once the copy has completed. The pushed table which is scanned to
+      // fingerprint the results is only deleted after that.
+      copied.complete(copyJob);
+      cache.awaitCopy("pushed");
+      Mockito.verify(bigQuery).getTable(TableId.of("project", "dataset",
+                                                   BigQueryResultCache.getTableName(fingerprint)));
+    }
+  }
+
+  /**
+   * Computes the fingerprint of a transformation which reads the results of a join of a pushed table.
+   */
+  private static BigQueryResultCache.Fingerprint fingerprintOfJoin(BigQueryResultCache cache, String pushedTable,
+                                                                   String joinedTable) {
+    BigQuerySQLDataset pushed = dataset(BigQuerySQLDataset.class, pushedTable);
+    BigQueryResultCache.Fingerprint join =
+      cache.getFingerprint(String.format("SELECT a.id FROM `project.dataset.%s` AS a", pushedTable),
+                           SCHEMA, Collections.singletonList(pushed));
+    cache.register(joinedTable, join);
+    BigQuerySQLDataset joined = dataset(BigQuerySelectDataset.class, joinedTable);
+    return cache.getFingerprint(String.format("SELECT id FROM `project.dataset.%s` WHERE id > 0", joinedTable),
+                                SCHEMA, Collections.singletonList(joined));
+  }
+
+  private static BigQueryResultCache cache(String contentFingerprint) {
+    return cache(contentFingerprint, Mockito.mock(BigQuery.class), Mockito.mock(BigQueryJobWaiter.class));
+  }
+
+  private static BigQueryResultCache cache(String contentFingerprint, BigQuery bigQuery,
+                                           BigQueryJobWaiter jobWaiter) {
+    BigQueryResultCache cache = Mockito.spy(new BigQueryResultCache(Mockito.mock(BigQuerySQLEngineConfig.class),
+                                                                    bigQuery, jobWaiter,
+                                                                    "project", DatasetId.of("project", "dataset")));
+    Mockito.doReturn(contentFingerprint).when(cache).computeContentFingerprint(Mockito.any());
+    return cache;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void mockCachedTables(BigQuery bigQuery, List<String> tableNames) {
+    List<Table> tables = new ArrayList<>();
+    for (String tableName : tableNames) {
+      Table table = Mockito.mock(Table.class);
+      Mockito.when(table.getTableId()).thenReturn(TableId.of("project", "dataset", tableName));
+      tables.add(table);
+    }
+    Page<Table> page = Mockito.mock(Page.class);
+    Mockito.when(page.iterateAll()).thenReturn(tables);
+    Mockito.when(bigQuery.listTables(Mockito.any(DatasetId.class))).thenReturn(page);
+  }
+
+  private static <T extends BigQuerySQLDataset> T dataset(Class<T> type, String table) {
+    T dataset = Mockito.mock(type);
+    Mockito.when(dataset.getBigQueryProject()).thenReturn("project");
+    Mockito.when(dataset.getBigQueryDataset()).thenReturn("dataset");
+    Mockito.when(dataset.getBigQueryTable()).thenReturn(table);
+    return dataset;
+  }
+}
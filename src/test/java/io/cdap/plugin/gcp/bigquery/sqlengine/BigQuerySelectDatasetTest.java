@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.DatasetId;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.metrics.Metrics;
+import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
+import io.cdap.plugin.gcp.bigquery.util.BigQueryJobWaiter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test for {@link BigQuerySelectDataset} class
+ */
+public class BigQuerySelectDatasetTest {
+
+  private static final Schema SCHEMA =
+    Schema.recordOf("record", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+
+  @Test
+  public void testComposeDeferredInputs() {
+    BigQuerySelectDataset a = dataset("a", "SELECT id FROM `project.dataset.pushed`");
+    BigQuerySelectDataset b = dataset("b", "SELECT id FROM `project.dataset.a` WHERE id > 0");
+    BigQuerySelectDataset c = dataset("c", "SELECT x.id FROM `project.dataset.b` AS x "
+      + "JOIN `project.dataset.pushed` AS y ON x.id = y.id").addInput(b.addInput(a));
+
+    Assert.assertFalse(c.isExecuted());
+    // Rows are not counted until the dataset is executed
+    Assert.assertEquals(0, c.getNumRows());
+    Assert.assertEquals("WITH `a` AS (SELECT id FROM `project.dataset.pushed`) , "
+                          + "`b` AS (SELECT id FROM `a` WHERE id > 0) "
+                          + "SELECT x.id FROM `b` AS x JOIN `project.dataset.pushed` AS y ON x.id = y.id",
+                        c.getExecutableQuery());
+    Assert.assertEquals("SELECT id FROM `project.dataset.pushed`", a.getExecutableQuery());
+  }
+
+  @Test
+  public void testExecuteSharedInputs() {
+    // Inputs read by more than one dataset are executed and read from their table
+    AtomicBoolean executed = new AtomicBoolean();
+    BigQuerySelectDataset shared = Mockito.spy(dataset("shared", "SELECT id FROM `project.dataset.pushed`"));
+    Mockito.doAnswer(invocation -> executed.get()).when(shared).isExecuted();
+    Mockito.doAnswer(invocation -> {
+      executed.set(true);
+      return shared;
+    }).when(shared).execute();
+
+    BigQuerySelectDataset left = dataset("left", "SELECT id FROM `project.dataset.shared`").addInput(shared);
+    BigQuerySelectDataset right = dataset("right", "SELECT id FROM `project.dataset.shared`").addInput(shared);
+    BigQuerySelectDataset union = dataset("union", "SELECT id FROM `project.dataset.left` "
+      + "UNION ALL SELECT id FROM `project.dataset.right`").addInput(left).addInput(right);
+
+    Assert.assertEquals("WITH `left` AS (SELECT id FROM `project.dataset.shared`) , "
+                          + "`right` AS (SELECT id FROM `project.dataset.shared`) "
+                          + "SELECT id FROM `left` UNION ALL SELECT id FROM `right`",
+                        union.getExecutableQuery());
+    Mockito.verify(shared).execute();
+  }
+
+  @Test
+  public void testComposeInputsOfExecutedDatasets() {
+    // Inputs whose other consumers have been computed are composed again instead of being stored
+    BigQuerySelectDataset a = Mockito.spy(dataset("a", "SELECT id FROM `project.dataset.pushed`"));
+    dataset("b", "SELECT id FROM `project.dataset.a`").addInput(a).setCachedResults();
+    BigQuerySelectDataset c = dataset("c", "SELECT id FROM `project.dataset.a` WHERE id > 0").addInput(a);
+
+    Assert.assertEquals("WITH `a` AS (SELECT id FROM `project.dataset.pushed`) SELECT id FROM `a` WHERE id > 0",
+                        c.getExecutableQuery());
+    Mockito.verify(a, Mockito.never()).execute();
+  }
+
+  @Test
+  public void testSubmitAfterInputs() {
+    SQLEngineException failure = new SQLEngineException("Dataset not available");
+    BigQuery bigQuery = Mockito.mock(BigQuery.class);
+    Mockito.when(bigQuery.getDataset(Mockito.any(DatasetId.class))).thenThrow(failure);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      BigQuerySelectDataset a = dataset("a", "SELECT id FROM `project.dataset.pushed`", bigQuery).submit(executor);
+      BigQuerySelectDataset b = dataset("b", "SELECT id FROM `project.dataset.a`", bigQuery).addInput(a);
+      b.submit(executor);
+
+      // Failures of an input are reported by the datasets which read from it, which are not executed
+      for (BigQuerySelectDataset dataset : Arrays.asList(b, a)) {
+        try {
+          dataset.execute();
+          Assert.fail("Expected execution of " + dataset.getDatasetName() + " to fail");
+        } catch (SQLEngineException e) {
+          Assert.assertSame(failure, e);
+        }
+        Assert.assertFalse(dataset.isExecuted());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Mockito.verify(bigQuery, Mockito.times(1)).getDataset(Mockito.any(DatasetId.class));
+  }
+
+  private static BigQuerySelectDataset dataset(String table, String query) {
+    return dataset(table, query, Mockito.mock(BigQuery.class));
+  }
+
+  private static BigQuerySelectDataset dataset(String table, String query, BigQuery bigQuery) {
+    return BigQuerySelectDataset.getInstance(table, SCHEMA, Mockito.mock(BigQuerySQLEngineConfig.class),
+                                             bigQuery, Mockito.mock(BigQueryJobWaiter.class),
+                                             "project", DatasetId.of("project", "dataset"), table, "job",
+                                             BigQueryJobType.TRANSFORM, query, Mockito.mock(Metrics.class));
+  }
+}
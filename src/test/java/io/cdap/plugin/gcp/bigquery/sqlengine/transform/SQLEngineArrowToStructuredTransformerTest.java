@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2021 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.sqlengine.transform;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SQLEngineArrowToStructuredTransformerTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("day", Schema.of(Schema.LogicalType.DATE)),
+    Schema.Field.of("scores", Schema.arrayOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("missing", Schema.nullableOf(Schema.of(Schema.Type.LONG))));
+
+  private static final org.apache.arrow.vector.types.pojo.Schema ARROW_SCHEMA =
+    new org.apache.arrow.vector.types.pojo.Schema(Arrays.asList(
+      Field.nullable("id", new ArrowType.Int(64, true)),
+      Field.nullable("name", ArrowType.Utf8.INSTANCE),
+      Field.nullable("day", new ArrowType.Date(DateUnit.DAY)),
+      new Field("scores", FieldType.nullable(ArrowType.List.INSTANCE), Collections.singletonList(
+        Field.nullable("item", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE))))));
+
+  @Test
+  public void testTransform() {
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(ARROW_SCHEMA, allocator)) {
+      SQLEngineArrowToStructuredTransformer transformer = new SQLEngineArrowToStructuredTransformer(SCHEMA, root);
+      load(root, 1L, 2L);
+
+      List<StructuredRecord> records = transformer.transform();
+
+      Assert.assertEquals(2, records.size());
+      StructuredRecord first = records.get(0);
+      Assert.assertEquals(1, (int) first.<Integer>get("id"));
+      Assert.assertEquals("first", first.get("name"));
+      Assert.assertEquals(LocalDate.ofEpochDay(18000), first.getDate("day"));
+      Assert.assertEquals(Arrays.asList(1.5, 2.5), first.get("scores"));
+      Assert.assertNull(first.get("missing"));
+      StructuredRecord second = records.get(1);
+      Assert.assertEquals(2, (int) second.<Integer>get("id"));
+      Assert.assertNull(second.get("name"));
+      Assert.assertEquals(LocalDate.ofEpochDay(18001), second.getDate("day"));
+      Assert.assertEquals(Collections.singletonList(3.5), second.get("scores"));
+
+      // The same decoders are reused for the next batch loaded into the root
+      load(root, 3L, 4L);
+      Assert.assertEquals(3, (int) transformer.transform().get(0).<Integer>get("id"));
+    }
+  }
+
+  @Test(expected = SQLEngineException.class)
+  public void testTransformIntegerOverflow() {
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(ARROW_SCHEMA, allocator)) {
+      SQLEngineArrowToStructuredTransformer transformer = new SQLEngineArrowToStructuredTransformer(SCHEMA, root);
+      load(root, 1L, (long) Integer.MAX_VALUE + 1);
+
+      transformer.transform();
+    }
+  }
+
+  @Test
+  public void testIsSupported() {
+    Assert.assertTrue(SQLEngineArrowToStructuredTransformer.isSupported(SCHEMA));
+    Assert.assertTrue(SQLEngineArrowToStructuredTransformer.isSupported(
+      Schema.recordOf("record", Schema.Field.of("nested", Schema.nullableOf(SCHEMA)))));
+    Assert.assertFalse(SQLEngineArrowToStructuredTransformer.isSupported(
+      Schema.recordOf("record", Schema.Field.of("tags", Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                     Schema.of(Schema.Type.STRING))))));
+  }
+
+  private static void load(VectorSchemaRoot root, long firstId, long secondId) {
+    root.allocateNew();
+    BigIntVector id = (BigIntVector) root.getVector("id");
+    id.setSafe(0, firstId);
+    id.setSafe(1, secondId);
+    VarCharVector name = (VarCharVector) root.getVector("name");
+    name.setSafe(0, "first".getBytes(StandardCharsets.UTF_8));
+    name.setNull(1);
+    DateDayVector day = (DateDayVector) root.getVector("day");
+    day.setSafe(0, 18000);
+    day.setSafe(1, 18001);
+    UnionListWriter scores = ((ListVector) root.getVector("scores")).getWriter();
+    scores.setPosition(0);
+    scores.startList();
+    scores.writeFloat8(1.5);
+    scores.writeFloat8(2.5);
+    scores.endList();
+    scores.setPosition(1);
+    scores.startList();
+    scores.writeFloat8(3.5);
+    scores.endList();
+    root.setRowCount(2);
+  }
+}
@@ -16,10 +16,16 @@
 
 package io.cdap.plugin.gcp.bigquery.sqlengine.transform;
 
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.engine.sql.SQLEngineException;
+import org.apache.avro.generic.GenericData;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class SQLEngineAvroToStructuredTransformerTest {
 
   @Test
@@ -51,4 +57,26 @@ public class SQLEngineAvroToStructuredTransformerTest {
     Assert.assertEquals(0, SQLEngineAvroToStructuredTransformer.mapFloat(0D), 1e-38);
     Assert.assertEquals(Float.MAX_VALUE, SQLEngineAvroToStructuredTransformer.mapFloat(max), 1e-38);
   }
+
+  @Test
+  public void testTransform() throws Exception {
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"Root\",\"fields\":[" +
+        "{\"name\":\"i\",\"type\":\"long\"}," +
+        "{\"name\":\"f\",\"type\":\"double\"}," +
+        "{\"name\":\"s\",\"type\":[\"null\",\"bytes\"]}]}");
+    Schema schema = Schema.recordOf("output",
+                                    Schema.Field.of("i", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("f", Schema.of(Schema.Type.FLOAT)),
+                                    Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    GenericData.Record record = new GenericData.Record(avroSchema);
+    record.put("i", 5L);
+    record.put("f", 0.5d);
+    record.put("s", ByteBuffer.wrap("value".getBytes(StandardCharsets.UTF_8)));
+
+    StructuredRecord result = new SQLEngineAvroToStructuredTransformer().transform(record, schema);
+    Assert.assertEquals(Integer.valueOf(5), result.get("i"));
+    Assert.assertEquals(Float.valueOf(0.5f), result.get("f"));
+    Assert.assertEquals("value", result.get("s"));
+  }
 }
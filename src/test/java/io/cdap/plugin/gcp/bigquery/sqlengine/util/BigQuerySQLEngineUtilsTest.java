@@ -16,8 +16,18 @@
 
 package io.cdap.plugin.gcp.bigquery.sqlengine.util;
 
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.TableInfo;
+import io.cdap.plugin.gcp.bigquery.sqlengine.BigQuerySQLEngineConfig;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
 
 public class BigQuerySQLEngineUtilsTest {
 
@@ -32,4 +42,28 @@ public class BigQuerySQLEngineUtilsTest {
     Assert.assertTrue(BigQuerySQLEngineUtils.isValidIdentifier("コンピューター"));
     Assert.assertTrue(BigQuerySQLEngineUtils.isValidIdentifier("电脑"));
   }
+
+  @Test
+  public void testCreateEmptyTable() {
+    BigQuerySQLEngineConfig config = Mockito.mock(BigQuerySQLEngineConfig.class);
+    Mockito.when(config.shouldRetainTables()).thenReturn(false);
+    Mockito.when(config.getTempTableTTLHours()).thenReturn(2);
+    BigQuery bigQuery = Mockito.mock(BigQuery.class);
+    long minExpirationTime = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2);
+
+    Schema schema = Schema.of(Field.of("id", StandardSQLTypeName.INT64));
+    BigQuerySQLEngineUtils.createEmptyTable(config, bigQuery, "project", "dataset", "table", schema);
+    BigQuerySQLEngineUtils.createEmptyTable(config, bigQuery, "project", "dataset", "other");
+
+    ArgumentCaptor<TableInfo> tableInfo = ArgumentCaptor.forClass(TableInfo.class);
+    Mockito.verify(bigQuery, Mockito.times(2)).create(tableInfo.capture());
+    TableInfo table = tableInfo.getAllValues().get(0);
+    Assert.assertEquals("project", table.getTableId().getProject());
+    Assert.assertEquals("dataset", table.getTableId().getDataset());
+    Assert.assertEquals("table", table.getTableId().getTable());
+    Assert.assertEquals(schema, table.getDefinition().getSchema());
+    Assert.assertTrue(table.getExpirationTime() >= minExpirationTime);
+    // Without a schema, the table is created with an empty schema
+    Assert.assertEquals(Schema.of(), tableInfo.getAllValues().get(1).getDefinition().getSchema());
+  }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.gcp.bigquery.util;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobId;
+import com.google.cloud.bigquery.JobStatistics;
+import com.google.cloud.bigquery.JobStatus;
+import com.google.cloud.bigquery.TimelineSample;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BigQueryJobWaiterTest {
+  private static final String PROJECT = "project";
+
+  private BigQuery bigQuery;
+  private AtomicLong clock;
+  private BigQueryJobWaiter waiter;
+
+  @Before
+  public void setUp() {
+    bigQuery = Mockito.mock(BigQuery.class);
+    BigQueryOptions options = Mockito.mock(BigQueryOptions.class);
+    Mockito.when(options.getProjectId()).thenReturn(PROJECT);
+    Mockito.when(bigQuery.getOptions()).thenReturn(options);
+    // Polls and the passing of time are driven by the test
+    clock = new AtomicLong();
+    waiter = new BigQueryJobWaiter(bigQuery, Mockito.mock(ScheduledExecutorService.class), clock::get);
+  }
+
+  @Test
+  public void testWaitForSingleJob() throws Exception {
+    JobId jobId = JobId.of(PROJECT, "job");
+    Job running = mockJob(jobId, JobStatus.State.RUNNING);
+    Job done = mockJob(jobId, JobStatus.State.DONE);
+    Mockito.when(bigQuery.getJob(jobId)).thenReturn(running, done);
+
+    CompletableFuture<Job> future = waiter.waitFor(jobId);
+    Assert.assertSame(future, waiter.waitFor(jobId));
+
+    pollWhenDue();
+    Assert.assertFalse(future.isDone());
+    pollWhenDue();
+    Assert.assertSame(done, future.get());
+    Mockito.verify(bigQuery, Mockito.never()).listJobs(Mockito.any());
+  }
+
+  @Test
+  public void testJobNotFound() throws Exception {
+    JobId jobId = JobId.of(PROJECT, "missing");
+    CompletableFuture<Job> future = waiter.waitFor(jobId);
+
+    pollWhenDue();
+    Assert.assertNull(future.get());
+  }
+
+  @Test
+  public void testRunningJobsAreListed() throws Exception {
+    JobId[] jobIds = {JobId.of(PROJECT, "a"), JobId.of(PROJECT, "b"), JobId.of(PROJECT, "c"), JobId.of(PROJECT, "d")};
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[jobIds.length];
+    for (int i = 0; i < jobIds.length; i++) {
+      Job done = mockJob(jobIds[i], JobStatus.State.DONE);
+      Mockito.when(bigQuery.getJob(jobIds[i])).thenReturn(done);
+      futures[i] = waiter.waitFor(jobIds[i]);
+    }
+    // The first list reports every job as running except for "d", the second one does not report any job
+    Page<Job> firstPage = mockPage(mockJob(jobIds[0], JobStatus.State.RUNNING),
+                                   mockJob(jobIds[1], JobStatus.State.PENDING),
+                                   mockJob(jobIds[2], JobStatus.State.RUNNING));
+    Page<Job> secondPage = mockPage();
+    Mockito.when(bigQuery.listJobs(Mockito.any())).thenReturn(firstPage, secondPage);
+
+    pollWhenDue();
+    Assert.assertFalse(futures[0].isDone());
+    Assert.assertTrue(futures[3].isDone());
+    Mockito.verify(bigQuery, Mockito.never()).getJob(jobIds[0]);
+    Mockito.verify(bigQuery).getJob(jobIds[3]);
+
+    pollWhenDue();
+    CompletableFuture.allOf(futures).get();
+    for (JobId jobId : jobIds) {
+      Mockito.verify(bigQuery).getJob(jobId);
+    }
+    Mockito.verify(bigQuery, Mockito.times(2)).listJobs(Mockito.any());
+  }
+
+  @Test
+  public void testOnlyFirstPageIsListed() throws Exception {
+    JobId[] jobIds = {JobId.of(PROJECT, "a"), JobId.of(PROJECT, "b"), JobId.of(PROJECT, "c")};
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[jobIds.length];
+    for (int i = 0; i < jobIds.length; i++) {
+      Job running = mockJob(jobIds[i], JobStatus.State.RUNNING);
+      Job done = mockJob(jobIds[i], JobStatus.State.DONE);
+      Mockito.when(bigQuery.getJob(jobIds[i])).thenReturn(running, done);
+      futures[i] = waiter.waitFor(jobIds[i]);
+    }
+    // The project has more running jobs than fit on a page, and only "a" is on the first one
+    Job listed = mockJob(jobIds[0], JobStatus.State.RUNNING);
+    Page<Job> page = mockPage(listed);
+    Mockito.when(page.hasNextPage()).thenReturn(true);
+    Mockito.when(bigQuery.listJobs(Mockito.any())).thenReturn(page);
+
+    pollWhenDue();
+    Mockito.verify(page, Mockito.never()).getNextPage();
+    Mockito.verify(page, Mockito.never()).iterateAll();
+    Mockito.verify(bigQuery, Mockito.never()).getJob(jobIds[0]);
+    Mockito.verify(bigQuery).getJob(jobIds[1]);
+    Mockito.verify(bigQuery).getJob(jobIds[2]);
+
+    // Listing is paused, so every job is fetched individually
+    pollWhenDue();
+    CompletableFuture.allOf(futures).get();
+    Mockito.verify(bigQuery, Mockito.times(1)).listJobs(Mockito.any());
+  }
+
+  @Test
+  public void testListedJobsAreMatchedByLocation() throws Exception {
+    JobId[] jobIds = new JobId[3];
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[jobIds.length];
+    for (int i = 0; i < jobIds.length; i++) {
+      jobIds[i] = JobId.newBuilder().setProject(PROJECT).setLocation("US").setJob("job" + i).build();
+      Job done = mockJob(jobIds[i], JobStatus.State.DONE);
+      Mockito.when(bigQuery.getJob(jobIds[i])).thenReturn(done);
+      futures[i] = waiter.waitFor(jobIds[i]);
+    }
+    // A job with the same name is running in another location
+    JobId otherLocation = JobId.newBuilder().setProject(PROJECT).setLocation("EU").setJob("job0").build();
+    Page<Job> page = mockPage(mockJob(otherLocation, JobStatus.State.RUNNING),
+                              mockJob(jobIds[1], JobStatus.State.RUNNING));
+    Mockito.when(bigQuery.listJobs(Mockito.any())).thenReturn(page);
+
+    pollWhenDue();
+    Assert.assertTrue(futures[0].isDone());
+    Assert.assertFalse(futures[1].isDone());
+    Assert.assertTrue(futures[2].isDone());
+    Mockito.verify(bigQuery).getJob(jobIds[0]);
+    Mockito.verify(bigQuery, Mockito.never()).getJob(jobIds[1]);
+  }
+
+  @Test
+  public void testRetryableErrorIsRetried() throws Exception {
+    JobId jobId = JobId.of(PROJECT, "job");
+    Job done = mockJob(jobId, JobStatus.State.DONE);
+    Mockito.when(bigQuery.getJob(jobId))
+      .thenThrow(new BigQueryException(503, "Service unavailable"))
+      .thenReturn(done);
+
+    CompletableFuture<Job> future = waiter.waitFor(jobId);
+    pollWhenDue();
+    Assert.assertFalse(future.isDone());
+    pollWhenDue();
+    Assert.assertSame(done, future.get());
+  }
+
+  @Test
+  public void testNonRetryableErrorFailsFuture() throws Exception {
+    JobId jobId = JobId.of(PROJECT, "job");
+    Mockito.when(bigQuery.getJob(jobId)).thenThrow(new BigQueryException(403, "Access denied"));
+
+    CompletableFuture<Job> future = waiter.waitFor(jobId);
+    pollWhenDue();
+    try {
+      future.get();
+      Assert.fail("Expected the wait to fail");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof BigQueryException);
+    }
+  }
+
+  @Test
+  public void testPollIntervalFollowsProgress() throws Exception {
+    JobId jobId = JobId.of(PROJECT, "job");
+    // A fifth of the work was completed in 2 seconds, so the job is expected to run for another 8 seconds
+    Job running = mockJob(jobId, JobStatus.State.RUNNING);
+    TimelineSample sample = Mockito.mock(TimelineSample.class);
+    Mockito.when(sample.getElapsedMs()).thenReturn(2000L);
+    Mockito.when(sample.getCompletedUnits()).thenReturn(20L);
+    Mockito.when(sample.getActiveUnits()).thenReturn(30L);
+    Mockito.when(sample.getPendingUnits()).thenReturn(50L);
+    JobStatistics.QueryStatistics statistics = Mockito.mock(JobStatistics.QueryStatistics.class);
+    Mockito.when(statistics.getTimeline()).thenReturn(Collections.singletonList(sample));
+    Mockito.when(running.getStatistics()).thenReturn(statistics);
+    Job done = mockJob(jobId, JobStatus.State.DONE);
+    Mockito.when(bigQuery.getJob(jobId)).thenReturn(running, done);
+
+    CompletableFuture<Job> future = waiter.waitFor(jobId);
+    pollWhenDue();
+    Mockito.verify(bigQuery, Mockito.times(1)).getJob(jobId);
+
+    // The next poll happens after a quarter of the remaining time
+    clock.addAndGet(1999);
+    waiter.poll();
+    Mockito.verify(bigQuery, Mockito.times(1)).getJob(jobId);
+    clock.addAndGet(1);
+    waiter.poll();
+    Assert.assertSame(done, future.get());
+  }
+
+  @Test
+  public void testCloseCancelsPendingJobs() {
+    CompletableFuture<Job> future = waiter.waitFor(JobId.of(PROJECT, "job"));
+    waiter.close();
+    Assert.assertTrue(future.isCancelled());
+    Assert.assertTrue(waiter.waitFor(JobId.of(PROJECT, "other")).isCompletedExceptionally());
+  }
+
+  /**
+   * Jobs are rescheduled with the minimum interval after every state change, so they are due again afterwards.
+   */
+  private void pollWhenDue() {
+    clock.addAndGet(BigQueryJobWaiter.MIN_POLL_INTERVAL_MILLIS);
+    waiter.poll();
+  }
+
+  private static Job mockJob(JobId jobId, JobStatus.State state) {
+    JobStatus status = Mockito.mock(JobStatus.class);
+    Mockito.when(status.getState()).thenReturn(state);
+    Job job = Mockito.mock(Job.class);
+    Mockito.when(job.getJobId()).thenReturn(jobId);
+    Mockito.when(job.getStatus()).thenReturn(status);
+    return job;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Page<Job> mockPage(Job... jobs) {
+    Page<Job> page = Mockito.mock(Page.class);
+    Mockito.when(page.getValues()).thenReturn(jobs.length == 0 ? Collections.emptyList() : Arrays.asList(jobs));
+    return page;
+  }
+}
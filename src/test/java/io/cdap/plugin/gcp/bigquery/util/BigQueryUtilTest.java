@@ -18,9 +18,11 @@ package io.cdap.plugin.gcp.bigquery.util;
 
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.common.collect.ImmutableMap;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.validation.ValidationFailure;
+import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryTypeSize.BigNumeric;
 import io.cdap.plugin.gcp.bigquery.util.BigQueryTypeSize.Numeric;
 import org.junit.Test;
@@ -30,8 +32,10 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.anyString;
 
 @RunWith(PowerMockRunner.class)
@@ -129,4 +133,19 @@ public class BigQueryUtilTest {
       Mockito.verify(collector, Mockito.times(0)).addFailure(anyString(), anyString());
     }
 
+  @Test
+  public void testGetPositiveIntArgument() {
+    FailureCollector collector = new MockFailureCollector();
+    Map<String, String> arguments = ImmutableMap.of("valid", "4", "zero", "0", "text", "four");
+
+    assertEquals(Integer.valueOf(4), BigQueryUtil.getPositiveIntArgument(arguments, "valid", collector));
+    assertNull(BigQueryUtil.getPositiveIntArgument(arguments, "missing", collector));
+    assertEquals(0, collector.getValidationFailures().size());
+
+    assertNull(BigQueryUtil.getPositiveIntArgument(arguments, "zero", collector));
+    assertNull(BigQueryUtil.getPositiveIntArgument(arguments, "text", collector));
+    assertEquals(2, collector.getValidationFailures().size());
+    assertEquals("Runtime argument 'text' has invalid value 'four'.",
+                 collector.getValidationFailures().get(1).getMessage());
+  }
 }